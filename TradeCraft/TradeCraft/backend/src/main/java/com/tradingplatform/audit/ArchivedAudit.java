@@ -0,0 +1,39 @@
+package com.tradingplatform.audit;
+
+import com.tradingplatform.model.AuditLog;
+import com.tradingplatform.model.User;
+
+/**
+ * An audit row as stored in an archive segment.
+ */
+final class ArchivedAudit {
+    private final long id;
+    private final AuditRecord record;
+
+    ArchivedAudit(long id, AuditRecord record) {
+        this.id = id;
+        this.record = record;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    AuditRecord getRecord() {
+        return record;
+    }
+
+    // Detached entity carrying only the user's id, as the user may since have been deleted
+    AuditLog toAuditLog() {
+        User user = null;
+        if (record.getUserId() != null) {
+            user = new User();
+            user.setId(record.getUserId());
+        }
+        AuditLog auditLog = new AuditLog(user, record.getUsername(), record.getAction(), record.getDetails(),
+                record.getIp(), record.getUserAgent());
+        auditLog.setId(id);
+        auditLog.setTimestamp(record.getTimestamp());
+        return auditLog;
+    }
+}
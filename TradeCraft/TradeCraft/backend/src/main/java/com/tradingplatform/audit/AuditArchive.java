@@ -0,0 +1,428 @@
+package com.tradingplatform.audit;
+
+import com.tradingplatform.exception.BadRequestException;
+import com.tradingplatform.model.AuditLog;
+import com.tradingplatform.model.AuditLog.AuditAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Cold storage for old audit rows.
+ *
+ * A nightly job moves rows older than {@code after-days} out of {@code audit_logs} into
+ * {@link AuditSegment} files and drops whole segments once they pass the retention age.
+ * Date-range and per-user queries read the table and the segments, which hold only rows
+ * older than anything left in the table.
+ *
+ * A segment is written under a temporary name, a pending marker is created, and only then
+ * is the segment moved into place and its rows deleted from the table. A segment with a
+ * marker may still have rows in the table, so it is not served until the next run has
+ * deleted them; a marker without a segment is left from a write that never finished.
+ */
+@Component
+public class AuditArchive {
+    private static final Logger logger = LoggerFactory.getLogger(AuditArchive.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Marks a segment whose rows may still be in the table after a crash
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final String TEMP_SUFFIX = ".seg.tmp";
+    private static final String TIMESTAMP = "timestamp";
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, TIMESTAMP, "id");
+
+    private static final String SELECT_SQL = "SELECT id, user_id, username, action, details, ip, user_agent, timestamp "
+            + "FROM audit_logs WHERE timestamp < ? ORDER BY timestamp, id LIMIT ?";
+    private static final String DELETE_SQL = "DELETE FROM audit_logs WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Oldest first
+    private final List<AuditSegment> segments = new CopyOnWriteArrayList<>();
+
+    @Value("${app.audit.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.audit.archive.dir:data/audit-archive}")
+    private String archiveDir;
+
+    @Value("${app.audit.archive.after-days:90}")
+    private int afterDays;
+
+    // 0 keeps archived segments forever
+    @Value("${app.audit.archive.retention-days:0}")
+    private int retentionDays;
+
+    @Value("${app.audit.archive.segment-rows:100000}")
+    private int segmentRows;
+
+    @Value("${app.audit.archive.block-rows:256}")
+    private int blockRows;
+
+    private Path archivePath;
+
+    public AuditArchive(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        archivePath = Files.createDirectories(Paths.get(archiveDir));
+        for (Path temp : list("*" + TEMP_SUFFIX)) {
+            Files.delete(temp);
+        }
+        List<AuditSegment> loaded = new ArrayList<>();
+        for (Path file : list("*" + SEGMENT_SUFFIX)) {
+            Path pending = sibling(file, SEGMENT_SUFFIX, PENDING_SUFFIX);
+            if (Files.exists(pending)) {
+                continue; // Served once the next run has finished its deletes
+            }
+            try {
+                loaded.add(AuditSegment.open(file));
+            } catch (IOException e) {
+                logger.error("Skipping unreadable audit segment {}", file, e);
+            }
+        }
+        for (Path pending : list("*" + PENDING_SUFFIX)) {
+            if (!Files.exists(sibling(pending, PENDING_SUFFIX, SEGMENT_SUFFIX))) {
+                Files.delete(pending);
+            }
+        }
+        loaded.sort(Comparator.comparing(segment -> segment.getPath().getFileName().toString()));
+        segments.addAll(loaded);
+    }
+
+    @Scheduled(cron = "${app.audit.archive.cron:0 30 2 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            archiveAndPurge();
+        }
+    }
+
+    public synchronized void archiveAndPurge() {
+        try {
+            finishPendingDeletes();
+            int archived = archive(LocalDateTime.now().minusDays(afterDays));
+            int purged = retentionDays > 0 ? purge(LocalDateTime.now().minusDays(retentionDays)) : 0;
+            if (archived > 0 || purged > 0) {
+                logger.info("Archived {} audit rows; purged {} segments", archived, purged);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Audit archival failed", e);
+        }
+    }
+
+    private int archive(LocalDateTime cutoff) throws IOException {
+        int total = 0;
+        while (true) {
+            List<ArchivedAudit> rows = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> {
+                long userId = rs.getLong("user_id");
+                Long user = rs.wasNull() ? null : userId;
+                AuditRecord record = new AuditRecord(user, rs.getString("username"),
+                        AuditAction.valueOf(rs.getString("action")), rs.getString("details"), rs.getString("ip"),
+                        rs.getString("user_agent"), rs.getTimestamp("timestamp").toLocalDateTime());
+                return new ArchivedAudit(rs.getLong("id"), record);
+            }, Timestamp.valueOf(cutoff), segmentRows);
+            if (rows.isEmpty()) {
+                return total;
+            }
+
+            // Named by first timestamp so file order is time order
+            String name = String.format("audit-%015d-%019d", AuditSegment.key(rows.get(0).getRecord().getTimestamp()),
+                    rows.get(0).getId());
+            Path temp = archivePath.resolve(name + TEMP_SUFFIX);
+            Path file = archivePath.resolve(name + SEGMENT_SUFFIX);
+            Path pending = archivePath.resolve(name + PENDING_SUFFIX);
+            AuditSegment.write(temp, rows, blockRows);
+            // The marker exists before the segment does, so a crash from here on is finished next run
+            Files.createFile(pending);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            deleteRows(rows);
+            Files.delete(pending);
+            register(AuditSegment.open(file));
+            total += rows.size();
+
+            if (rows.size() < segmentRows) {
+                return total;
+            }
+        }
+    }
+
+    // Deletes from the table any rows of segments written before a crash or failed delete,
+    // then serves those segments; drops markers whose segment was never moved into place
+    private void finishPendingDeletes() throws IOException {
+        for (Path pending : list("*" + PENDING_SUFFIX)) {
+            Path file = sibling(pending, PENDING_SUFFIX, SEGMENT_SUFFIX);
+            Files.deleteIfExists(sibling(pending, PENDING_SUFFIX, TEMP_SUFFIX));
+            if (!Files.exists(file)) {
+                Files.delete(pending);
+                continue;
+            }
+            AuditSegment segment = AuditSegment.open(file);
+            for (int b = 0; b < segment.getBlockCount(); b++) {
+                deleteRows(segment.readBlock(b));
+            }
+            Files.delete(pending);
+            register(segment);
+        }
+    }
+
+    // Keeps segments in file name, and so time, order
+    private void register(AuditSegment segment) {
+        String name = segment.getPath().getFileName().toString();
+        int index = 0;
+        while (index < segments.size()
+                && segments.get(index).getPath().getFileName().toString().compareTo(name) < 0) {
+            index++;
+        }
+        if (index == segments.size() || !segments.get(index).getPath().equals(segment.getPath())) {
+            segments.add(index, segment);
+        }
+    }
+
+    private List<Path> list(String glob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archivePath, glob)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static Path sibling(Path file, String suffix, String replacement) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - suffix.length()) + replacement);
+    }
+
+    private void deleteRows(List<ArchivedAudit> rows) {
+        jdbcTemplate.batchUpdate(DELETE_SQL, rows, 1000, (statement, row) -> statement.setLong(1, row.getId()));
+    }
+
+    private int purge(LocalDateTime before) throws IOException {
+        long beforeKey = AuditSegment.key(before);
+        int purged = 0;
+        for (AuditSegment segment : segments) {
+            if (segment.getMaxKey() < beforeKey) {
+                segments.remove(segment);
+                Files.deleteIfExists(segment.getPath());
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Pages over table rows and archived rows in the same range as one listing. Archived rows
+     * are older than every table row, so they follow the table rows when sorted newest first
+     * (the default) and precede them when sorted by timestamp or id ascending. An unsorted
+     * request is read from the table newest first, by timestamp and id.
+     *
+     * @param hotQuery runs the same query against the table for a page request
+     * @param from     inclusive lower bound, or {@code null} for none
+     * @param to       inclusive upper bound, or {@code null} for none
+     * @param userId   restricts to one user's rows when not {@code null}
+     * @throws BadRequestException if archived rows match and the sort is not by timestamp or id,
+     *                             or mixes directions
+     */
+    public Page<AuditLog> withArchived(Function<Pageable, Page<AuditLog>> hotQuery, Pageable pageable,
+                                       LocalDateTime from, LocalDateTime to, Long userId) {
+        long fromKey = from != null ? AuditSegment.key(from) : Long.MIN_VALUE;
+        long toKey = to != null ? AuditSegment.key(to) : Long.MAX_VALUE;
+        List<AuditSegment> snapshot = new ArrayList<>(segments);
+        if (snapshot.isEmpty() || fromKey > toKey) {
+            return hotQuery.apply(pageable);
+        }
+
+        try {
+            long[] counts = new long[snapshot.size()];
+            long coldTotal = 0;
+            for (int s = 0; s < snapshot.size(); s++) {
+                counts[s] = count(snapshot.get(s), fromKey, toKey, userId);
+                coldTotal += counts[s];
+            }
+            if (coldTotal == 0) {
+                return hotQuery.apply(pageable);
+            }
+
+            boolean ascending = ascending(pageable.getSort());
+            Pageable sorted = sorted(pageable);
+            if (!pageable.isPaged()) {
+                Page<AuditLog> hot = hotQuery.apply(sorted);
+                List<AuditLog> content = new ArrayList<>();
+                if (!ascending) {
+                    content.addAll(hot.getContent());
+                }
+                scan(snapshot, counts, ascending, fromKey, toKey, userId, 0, Integer.MAX_VALUE, content);
+                if (ascending) {
+                    content.addAll(hot.getContent());
+                }
+                return new PageImpl<>(content, pageable, hot.getTotalElements() + coldTotal);
+            }
+
+            if (!ascending) {
+                Page<AuditLog> hot = hotQuery.apply(sorted);
+                List<AuditLog> content = new ArrayList<>(hot.getContent());
+                long skip = Math.max(0, pageable.getOffset() - hot.getTotalElements());
+                scan(snapshot, counts, false, fromKey, toKey, userId, skip,
+                        pageable.getPageSize() - hot.getNumberOfElements(), content);
+                return new PageImpl<>(content, pageable, hot.getTotalElements() + coldTotal);
+            }
+
+            List<AuditLog> content = new ArrayList<>();
+            scan(snapshot, counts, true, fromKey, toKey, userId, pageable.getOffset(), pageable.getPageSize(), content);
+            long hotOffset = Math.max(0, pageable.getOffset() - coldTotal);
+            long hotTotal = hotSlice(hotQuery, sorted, hotOffset, pageable.getPageSize() - content.size(), content);
+            return new PageImpl<>(content, pageable, hotTotal + coldTotal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Timestamp or id order in one direction; archived rows cannot be merged into any other
+    private static boolean ascending(Sort sort) {
+        Boolean ascending = null;
+        for (Sort.Order order : sort) {
+            if (!TIMESTAMP.equals(order.getProperty()) && !"id".equals(order.getProperty())) {
+                throw new BadRequestException("Archived audit logs can only be sorted by timestamp or id");
+            }
+            if (ascending != null && ascending != order.isAscending()) {
+                throw new BadRequestException("Archived audit logs must be sorted in one direction");
+            }
+            ascending = order.isAscending();
+        }
+        return Boolean.TRUE.equals(ascending); // Newest first when unsorted
+    }
+
+    // The table rows in the order the archived rows are merged with them
+    private static Pageable sorted(Pageable pageable) {
+        if (pageable.getSort().isSorted()) {
+            return pageable;
+        }
+        return pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), NEWEST_FIRST)
+                : PageRequest.of(0, Integer.MAX_VALUE, NEWEST_FIRST);
+    }
+
+    /**
+     * Adds up to {@code limit} table rows from position {@code offset} to {@code out}, reading
+     * the one or two pages of the caller's size that cover them.
+     *
+     * @return the number of matching table rows
+     */
+    private static long hotSlice(Function<Pageable, Page<AuditLog>> hotQuery, Pageable pageable, long offset,
+                                 int limit, List<AuditLog> out) {
+        int size = pageable.getPageSize();
+        Page<AuditLog> page = hotQuery.apply(PageRequest.of((int) (offset / size), size, pageable.getSort()));
+        int start = (int) (offset % size);
+        List<AuditLog> rows = page.getContent();
+        for (int i = start; i < rows.size() && limit > 0; i++, limit--) {
+            out.add(rows.get(i));
+        }
+        if (limit > 0 && page.hasNext()) {
+            rows = hotQuery.apply(page.nextPageable()).getContent();
+            for (int i = 0; i < rows.size() && limit > 0; i++, limit--) {
+                out.add(rows.get(i));
+            }
+        }
+        return page.getTotalElements();
+    }
+
+    /**
+     * Rows of a segment in the range and of the user. Taken from the block index and the
+     * user counts; only blocks cut by a range bound, or any block when both a range and a
+     * user are given, are read.
+     */
+    private static long count(AuditSegment segment, long fromKey, long toKey, Long userId) throws IOException {
+        if (!segment.overlaps(fromKey, toKey) || (userId != null && segment.userRowCount(userId) == 0)) {
+            return 0;
+        }
+        boolean whollyInRange = segment.getMinKey() >= fromKey && segment.getMaxKey() <= toKey;
+        if (userId != null && whollyInRange) {
+            return segment.userRowCount(userId);
+        }
+        long count = 0;
+        for (int b = 0; b < segment.getBlockCount(); b++) {
+            if (segment.blockLastKey(b) < fromKey || segment.blockFirstKey(b) > toKey) {
+                continue;
+            }
+            if (userId == null && segment.blockFirstKey(b) >= fromKey && segment.blockLastKey(b) <= toKey) {
+                count += segment.blockCount(b);
+                continue;
+            }
+            for (ArchivedAudit row : segment.readBlock(b)) {
+                if (matches(row.getRecord(), fromKey, toKey, userId)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Walks matching archived rows newest or oldest first, adding those at positions
+     * {@code [skip, skip + limit)} to {@code out}. Segments before the window are skipped by
+     * their counts, and the walk stops once the window is filled.
+     */
+    private static void scan(List<AuditSegment> snapshot, long[] counts, boolean ascending, long fromKey, long toKey,
+                             Long userId, long skip, int limit, List<AuditLog> out) throws IOException {
+        long end = limit == Integer.MAX_VALUE ? Long.MAX_VALUE : skip + limit;
+        long matched = 0;
+        for (int i = 0; i < snapshot.size() && matched < end; i++) {
+            int s = ascending ? i : snapshot.size() - 1 - i;
+            if (counts[s] == 0 || matched + counts[s] <= skip) {
+                matched += counts[s];
+                continue;
+            }
+            AuditSegment segment = snapshot.get(s);
+            for (int j = 0; j < segment.getBlockCount() && matched < end; j++) {
+                int b = ascending ? j : segment.getBlockCount() - 1 - j;
+                if (segment.blockLastKey(b) < fromKey || segment.blockFirstKey(b) > toKey) {
+                    continue;
+                }
+                if (userId == null && segment.blockFirstKey(b) >= fromKey && segment.blockLastKey(b) <= toKey
+                        && matched + segment.blockCount(b) <= skip) {
+                    matched += segment.blockCount(b);
+                    continue;
+                }
+                List<ArchivedAudit> rows = segment.readBlock(b);
+                for (int k = 0; k < rows.size() && matched < end; k++) {
+                    ArchivedAudit row = rows.get(ascending ? k : rows.size() - 1 - k);
+                    if (!matches(row.getRecord(), fromKey, toKey, userId)) {
+                        continue;
+                    }
+                    if (matched >= skip) {
+                        out.add(row.toAuditLog());
+                    }
+                    matched++;
+                }
+            }
+        }
+    }
+
+    private static boolean matches(AuditRecord record, long fromKey, long toKey, Long userId) {
+        long key = AuditSegment.key(record.getTimestamp());
+        return key >= fromKey && key <= toKey && (userId == null || userId.equals(record.getUserId()));
+    }
+}
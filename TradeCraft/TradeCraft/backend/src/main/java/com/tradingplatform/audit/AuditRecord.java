@@ -0,0 +1,85 @@
+package com.tradingplatform.audit;
+
+import com.tradingplatform.model.AuditLog.AuditAction;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Audit event captured on the request thread, ready to be written without touching the
+ * persistence context.
+ */
+public final class AuditRecord {
+    private final Long userId;
+    private final String username;
+    private final AuditAction action;
+    private final String details;
+    private final String ip;
+    private final String userAgent;
+    private final LocalDateTime timestamp;
+
+    public AuditRecord(Long userId, String username, AuditAction action, String details, String ip,
+                       String userAgent, LocalDateTime timestamp) {
+        this.userId = userId;
+        this.username = username;
+        this.action = action;
+        this.details = details;
+        this.ip = ip;
+        this.userAgent = userAgent;
+        this.timestamp = timestamp;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(userId != null ? userId : -1L);
+        out.writeUTF(username);
+        out.writeUTF(action.name());
+        out.writeUTF(details);
+        out.writeUTF(ip);
+        out.writeBoolean(userAgent != null);
+        if (userAgent != null) {
+            out.writeUTF(userAgent);
+        }
+        out.writeUTF(timestamp.toString());
+    }
+
+    static AuditRecord readFrom(DataInput in) throws IOException {
+        long userId = in.readLong();
+        String username = in.readUTF();
+        AuditAction action = AuditAction.valueOf(in.readUTF());
+        String details = in.readUTF();
+        String ip = in.readUTF();
+        String userAgent = in.readBoolean() ? in.readUTF() : null;
+        LocalDateTime timestamp = LocalDateTime.parse(in.readUTF());
+        return new AuditRecord(userId >= 0 ? userId : null, username, action, details, ip, userAgent, timestamp);
+    }
+}
@@ -0,0 +1,292 @@
+package com.tradingplatform.audit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable file of archived audit rows in timestamp order.
+ *
+ * Rows are grouped into deflate-compressed blocks. After the blocks come a sparse index with
+ * one entry per block (offset, first and last timestamp, row count), the row count of each
+ * user id in the segment, and a fixed-size trailer locating them. Only the index and user
+ * counts are kept in memory; blocks are read and inflated on demand.
+ */
+final class AuditSegment {
+    private static final int MAGIC = 0x41554433; // "AUD3"
+    private static final int TRAILER_SIZE = 8 + 8 + 4 + 4 + 8 + 8 + 4;
+    // Key for rows without a user
+    private static final long NO_USER = -1L;
+
+    private final Path path;
+    private final long[] blockOffsets;
+    private final long[] blockFirst;
+    private final long[] blockLast;
+    private final int[] blockCounts;
+    private final int recordCount;
+    private final long minKey;
+    private final long maxKey;
+    // Sorted user keys and their row counts
+    private final long[] userKeys;
+    private final int[] userCounts;
+
+    private AuditSegment(Path path, long[] blockOffsets, long[] blockFirst, long[] blockLast, int[] blockCounts,
+                         int recordCount, long minKey, long maxKey, long[] userKeys, int[] userCounts) {
+        this.path = path;
+        this.blockOffsets = blockOffsets;
+        this.blockFirst = blockFirst;
+        this.blockLast = blockLast;
+        this.blockCounts = blockCounts;
+        this.recordCount = recordCount;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.userKeys = userKeys;
+        this.userCounts = userCounts;
+    }
+
+    /**
+     * Sort key of a timestamp: the local date-time's millis as if it were UTC.
+     */
+    static long key(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Writes rows, already sorted by timestamp and id, to {@code path} and forces them to
+     * disk. Callers write to a temporary name and move the file into place.
+     */
+    static void write(Path path, List<ArchivedAudit> rows, int blockSize) throws IOException {
+        int blocks = (rows.size() + blockSize - 1) / blockSize;
+        long[] offsets = new long[blocks];
+        long[] first = new long[blocks];
+        long[] last = new long[blocks];
+        int[] counts = new int[blocks];
+
+        SortedMap<Long, Integer> userIds = new TreeMap<>();
+        for (ArchivedAudit row : rows) {
+            userIds.merge(userKey(row.getRecord().getUserId()), 1, Integer::sum);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel)));
+            long position = 0;
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            byte[] compressed = new byte[64 * 1024];
+            for (int b = 0; b < blocks; b++) {
+                int from = b * blockSize;
+                int to = Math.min(from + blockSize, rows.size());
+                raw.reset();
+                DataOutputStream block = new DataOutputStream(raw);
+                for (int i = from; i < to; i++) {
+                    block.writeLong(rows.get(i).getId());
+                    rows.get(i).getRecord().writeTo(block);
+                }
+                block.flush();
+                byte[] input = raw.toByteArray();
+
+                deflater.reset();
+                deflater.setInput(input);
+                deflater.finish();
+                ByteArrayOutputStream deflated = new ByteArrayOutputStream(input.length / 2 + 64);
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(compressed);
+                    deflated.write(compressed, 0, n);
+                }
+
+                offsets[b] = position;
+                first[b] = key(rows.get(from).getRecord().getTimestamp());
+                last[b] = key(rows.get(to - 1).getRecord().getTimestamp());
+                counts[b] = to - from;
+                out.writeInt(input.length);
+                out.writeInt(deflated.size());
+                deflated.writeTo(out);
+                position += 8 + deflated.size();
+            }
+
+            long indexOffset = position;
+            for (int b = 0; b < blocks; b++) {
+                out.writeLong(offsets[b]);
+                out.writeLong(first[b]);
+                out.writeLong(last[b]);
+                out.writeInt(counts[b]);
+            }
+            long usersOffset = indexOffset + blocks * 28L;
+            out.writeInt(userIds.size());
+            for (Map.Entry<Long, Integer> entry : userIds.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+
+            long minKey = blocks > 0 ? first[0] : 0;
+            long maxKey = blocks > 0 ? last[blocks - 1] : 0;
+            out.writeLong(indexOffset);
+            out.writeLong(usersOffset);
+            out.writeInt(blocks);
+            out.writeInt(rows.size());
+            out.writeLong(minKey);
+            out.writeLong(maxKey);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static AuditSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException("Truncated audit segment: " + path);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            if (trailer.getInt(TRAILER_SIZE - 4) != MAGIC) {
+                throw new IOException("Not an audit segment: " + path);
+            }
+            long indexOffset = trailer.getLong();
+            long usersOffset = trailer.getLong();
+            int blocks = trailer.getInt();
+            int records = trailer.getInt();
+            long minKey = trailer.getLong();
+            long maxKey = trailer.getLong();
+
+            ByteBuffer index = read(channel, indexOffset, blocks * 28);
+            long[] offsets = new long[blocks];
+            long[] first = new long[blocks];
+            long[] last = new long[blocks];
+            int[] counts = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                offsets[b] = index.getLong();
+                first[b] = index.getLong();
+                last[b] = index.getLong();
+                counts[b] = index.getInt();
+            }
+
+            ByteBuffer table = read(channel, usersOffset, (int) (size - TRAILER_SIZE - usersOffset));
+            int entries = table.getInt();
+            long[] userKeys = new long[entries];
+            int[] userCounts = new int[entries];
+            for (int i = 0; i < entries; i++) {
+                userKeys[i] = table.getLong();
+                userCounts[i] = table.getInt();
+            }
+            return new AuditSegment(path, offsets, first, last, counts, records, minKey, maxKey, userKeys,
+                    userCounts);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    int getBlockCount() {
+        return blockCounts.length;
+    }
+
+    long getMinKey() {
+        return minKey;
+    }
+
+    long getMaxKey() {
+        return maxKey;
+    }
+
+    boolean overlaps(long fromKey, long toKey) {
+        return maxKey >= fromKey && minKey <= toKey;
+    }
+
+    /**
+     * Number of the user's rows in the segment.
+     */
+    int userRowCount(Long userId) {
+        int i = Arrays.binarySearch(userKeys, userKey(userId));
+        return i >= 0 ? userCounts[i] : 0;
+    }
+
+    long blockFirstKey(int block) {
+        return blockFirst[block];
+    }
+
+    long blockLastKey(int block) {
+        return blockLast[block];
+    }
+
+    int blockCount(int block) {
+        return blockCounts[block];
+    }
+
+    /**
+     * Reads and inflates one block.
+     */
+    List<ArchivedAudit> readBlock(int block) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, blockOffsets[block], 8);
+            int rawLength = header.getInt();
+            int compressedLength = header.getInt();
+            ByteBuffer compressed = read(channel, blockOffsets[block] + 8, compressedLength);
+
+            byte[] raw = new byte[rawLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array(), 0, compressedLength);
+                int n = 0;
+                while (n < rawLength && !inflater.finished()) {
+                    n += inflater.inflate(raw, n, rawLength - n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block " + block + " in " + path, e);
+            } finally {
+                inflater.end();
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+            List<ArchivedAudit> rows = new ArrayList<>(blockCounts[block]);
+            for (int i = 0; i < blockCounts[block]; i++) {
+                long id = in.readLong();
+                rows.add(new ArchivedAudit(id, AuditRecord.readFrom(in)));
+            }
+            return rows;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of audit segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long userKey(Long userId) {
+        return userId != null ? userId : NO_USER;
+    }
+}
@@ -0,0 +1,224 @@
+package com.tradingplatform.audit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Local overflow files for audit records that could not be queued or written. Records are
+ * appended to an open file; {@link #replay} seals it and feeds every sealed file back to the
+ * writer. After each batch the writer accepts, the byte offset reached is saved next to the
+ * file, so a replay that stops part way resumes there instead of at the start; a file is
+ * deleted once all of it has been accepted. Records the database will never take are kept
+ * in quarantine files, which are not replayed.
+ */
+class AuditSpill {
+    private static final String SEALED_SUFFIX = ".spill";
+    private static final String OFFSET_PREFIX = "offset-";
+    private static final String QUARANTINE_PREFIX = "quarantine-";
+
+    private final Path directory;
+    private DataOutputStream out;
+    private Path current;
+    private DataOutputStream quarantine;
+
+    AuditSpill(Path directory) {
+        this.directory = directory;
+    }
+
+    synchronized void append(AuditRecord record) throws IOException {
+        if (out == null) {
+            Files.createDirectories(directory);
+            current = directory.resolve("audit-" + System.currentTimeMillis() + ".open");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(current,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        record.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Keeps a record the database rejected for good, in the same format as spill files.
+     */
+    synchronized void quarantine(AuditRecord record) throws IOException {
+        if (quarantine == null) {
+            Files.createDirectories(directory);
+            quarantine = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                    directory.resolve(QUARANTINE_PREFIX + System.currentTimeMillis() + SEALED_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        record.writeTo(quarantine);
+        quarantine.flush();
+    }
+
+    /**
+     * Hands spilled records to {@code sink} in batches, oldest file first. The sink returns
+     * how many records from the start of the batch it accepted; anything less stops the
+     * replay, which resumes after the last accepted record next time.
+     *
+     * @return {@code true} if every spilled record was accepted
+     */
+    boolean replay(int batchSize, ToIntFunction<List<AuditRecord>> sink) throws IOException {
+        seal();
+        for (Path file : sealedFiles()) {
+            Path offsetFile = offsetFile(file);
+            long offset = readOffset(offsetFile);
+            List<AuditRecord> batch = new ArrayList<>(batchSize);
+            // Offset just past each record in the batch
+            long[] ends = new long[batchSize];
+            try (CountingInputStream counted = new CountingInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                counted.skipFully(offset);
+                DataInputStream in = new DataInputStream(counted);
+                while (true) {
+                    AuditRecord record;
+                    try {
+                        record = AuditRecord.readFrom(in);
+                    } catch (EOFException e) {
+                        break; // End of file, or a record cut short by a crash
+                    }
+                    ends[batch.size()] = counted.count;
+                    batch.add(record);
+                    if (batch.size() == batchSize) {
+                        if (!deliver(batch, ends, sink, offsetFile)) {
+                            return false;
+                        }
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty() && !deliver(batch, ends, sink, offsetFile)) {
+                return false;
+            }
+            Files.delete(file);
+            Files.deleteIfExists(offsetFile);
+        }
+        return true;
+    }
+
+    private static boolean deliver(List<AuditRecord> batch, long[] ends, ToIntFunction<List<AuditRecord>> sink,
+                                   Path offsetFile) throws IOException {
+        int accepted = sink.applyAsInt(batch);
+        if (accepted > 0) {
+            writeOffset(offsetFile, ends[accepted - 1]);
+        }
+        return accepted == batch.size();
+    }
+
+    synchronized void close() throws IOException {
+        seal();
+        if (quarantine != null) {
+            quarantine.close();
+            quarantine = null;
+        }
+    }
+
+    private synchronized void seal() throws IOException {
+        if (out == null) {
+            return;
+        }
+        out.close();
+        out = null;
+        String name = current.getFileName().toString();
+        Files.move(current, current.resolveSibling(name.substring(0, name.length() - 5) + SEALED_SUFFIX));
+        current = null;
+    }
+
+    private synchronized List<Path> sealedFiles() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        // Files left open by a crash are picked up as well
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "audit-*")) {
+            for (Path file : stream) {
+                if (!file.equals(current)) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException e) {
+            return files;
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private Path offsetFile(Path file) {
+        return directory.resolve(OFFSET_PREFIX + file.getFileName());
+    }
+
+    private static long readOffset(Path offsetFile) throws IOException {
+        if (!Files.exists(offsetFile)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(offsetFile))) {
+            return in.readLong();
+        } catch (EOFException e) {
+            return 0; // Cut short before the temporary file was moved; cannot happen after
+        }
+    }
+
+    // Written aside and moved over, so a crash leaves the old offset or the new one
+    private static void writeOffset(Path offsetFile, long offset) throws IOException {
+        Path temp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeLong(offset);
+        }
+        Files.move(temp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Bytes consumed by the reader above it, so record boundaries are known
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        void skipFully(long n) throws IOException {
+            while (count < n) {
+                if (skip(n - count) <= 0 && read() < 0) {
+                    throw new EOFException("Spill file shorter than its saved offset");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.tradingplatform.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes audit records to {@code audit_logs} off the request path.
+ *
+ * Records go into a bounded queue that a single background thread drains, inserting a JDBC
+ * batch whenever {@code batch-size} records are waiting or {@code flush-interval-ms} has
+ * passed since the first of them arrived. When the queue is full the overflow policy decides
+ * whether callers wait, the record is dropped, or it is spilled to local disk.
+ *
+ * Each batch is inserted in one transaction. If that fails, its records are inserted one by
+ * one, so one bad record cannot hold back the rest: records the database rejects as invalid
+ * are quarantined, and at the first other failure the remaining records are spilled. Spilled
+ * records are replayed the same way once the queue is idle.
+ */
+@Component
+public class AuditWriter {
+    private static final Logger logger = LoggerFactory.getLogger(AuditWriter.class);
+
+    // Pause between replay attempts after the database has rejected spilled records
+    private static final long REPLAY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final String INSERT_SQL = "INSERT INTO audit_logs "
+            + "(user_id, username, action, details, ip, user_agent, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.audit.async:true}")
+    private boolean async;
+
+    @Value("${app.audit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.audit.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.audit.flush-interval-ms:250}")
+    private long flushIntervalMs;
+
+    @Value("${app.audit.overflow-policy:block}")
+    private String overflowPolicy;
+
+    @Value("${app.audit.spill-dir:data/audit-spill}")
+    private String spillDir;
+
+    private BlockingQueue<AuditRecord> queue;
+    private OverflowPolicy overflow;
+    private AuditSpill spill;
+    private Thread worker;
+    private volatile boolean running;
+    private long nextReplayAt;
+
+    private Timer flushTimer;
+    private Counter writtenCounter;
+    private Counter droppedCounter;
+    private Counter spilledCounter;
+    private Counter quarantinedCounter;
+
+    public AuditWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        overflow = OverflowPolicy.fromString(overflowPolicy);
+        spill = new AuditSpill(Paths.get(spillDir));
+
+        Gauge.builder("audit.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        flushTimer = Timer.builder("audit.flush.latency").register(meterRegistry);
+        writtenCounter = Counter.builder("audit.records.written").register(meterRegistry);
+        droppedCounter = Counter.builder("audit.records.dropped").register(meterRegistry);
+        spilledCounter = Counter.builder("audit.records.spilled").register(meterRegistry);
+        quarantinedCounter = Counter.builder("audit.records.quarantined").register(meterRegistry);
+
+        if (async) {
+            running = true;
+            nextReplayAt = System.nanoTime();
+            worker = new Thread(this::run, "audit-writer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Drains the queue before shutdown; anything still unwritten after that is spilled.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<AuditRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(this::spill);
+        try {
+            spill.close();
+        } catch (IOException e) {
+            logger.error("Could not close audit spill file", e);
+        }
+    }
+
+    /**
+     * Queues a record. Inside a transaction the record is queued only once it commits, so
+     * rolled-back actions leave no audit trail, as when the insert shared the transaction.
+     */
+    public void submit(AuditRecord record) {
+        if (!async) {
+            write(List.of(record)); // Joins the caller's transaction
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(record);
+                }
+            });
+        } else {
+            enqueue(record);
+        }
+    }
+
+    private void enqueue(AuditRecord record) {
+        if (queue.offer(record)) {
+            return;
+        }
+        switch (overflow) {
+            case DROP:
+                droppedCounter.increment();
+                break;
+            case SPILL:
+                spill(record);
+                break;
+            default:
+                try {
+                    queue.put(record);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    spill(record);
+                }
+        }
+    }
+
+    private void run() {
+        List<AuditRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditRecord first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    replaySpill();
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    AuditRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Woken for shutdown; flush what we have and drain the rest
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    private void flush(List<AuditRecord> batch) {
+        int delivered = deliver(batch);
+        if (delivered < batch.size()) {
+            logger.error("Could not write {} audit records; spilling to disk", batch.size() - delivered);
+            batch.subList(delivered, batch.size()).forEach(this::spill);
+        }
+    }
+
+    private void replaySpill() {
+        if (System.nanoTime() - nextReplayAt < 0) {
+            return;
+        }
+        try {
+            if (!spill.replay(batchSize, this::deliver)) {
+                nextReplayAt = System.nanoTime() + REPLAY_BACKOFF_NANOS;
+            }
+        } catch (IOException | RuntimeException e) {
+            nextReplayAt = System.nanoTime() + REPLAY_BACKOFF_NANOS;
+            logger.warn("Could not replay spilled audit records", e);
+        }
+    }
+
+    /**
+     * Inserts a batch in one transaction, or record by record if that fails, quarantining
+     * records the database rejects as invalid.
+     *
+     * @return how many records from the start of the batch were written or quarantined; the
+     *         rest hit a failure that is not theirs alone and should be retried later
+     */
+    private int deliver(List<AuditRecord> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(batch));
+            return batch.size();
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                logger.warn("Audit batch of {} records failed; retrying one by one", batch.size(), e);
+            } else if (!(e instanceof DataIntegrityViolationException)) {
+                logger.warn("Could not write audit record", e);
+                return 0;
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            AuditRecord record = batch.get(i);
+            try {
+                write(List.of(record));
+            } catch (DataIntegrityViolationException e) {
+                quarantine(record, e);
+            } catch (RuntimeException e) {
+                logger.warn("Could not write audit record", e);
+                return i;
+            }
+        }
+        return batch.size();
+    }
+
+    private void write(List<AuditRecord> batch) {
+        long start = System.nanoTime();
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (statement, record) -> {
+            if (record.getUserId() != null) {
+                statement.setLong(1, record.getUserId());
+            } else {
+                statement.setNull(1, Types.BIGINT);
+            }
+            statement.setString(2, record.getUsername());
+            statement.setString(3, record.getAction().name());
+            statement.setString(4, record.getDetails());
+            statement.setString(5, record.getIp());
+            statement.setString(6, record.getUserAgent());
+            statement.setTimestamp(7, Timestamp.valueOf(record.getTimestamp()));
+        });
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        writtenCounter.increment(batch.size());
+    }
+
+    private void quarantine(AuditRecord record, RuntimeException cause) {
+        quarantinedCounter.increment();
+        try {
+            spill.quarantine(record);
+            logger.error("Audit record {} by {} rejected by the database; quarantined", record.getAction(),
+                    record.getUsername(), cause);
+        } catch (IOException e) {
+            droppedCounter.increment();
+            logger.error("Could not quarantine audit record; dropping {} by {}", record.getAction(),
+                    record.getUsername(), e);
+        }
+    }
+
+    private void spill(AuditRecord record) {
+        try {
+            spill.append(record);
+            spilledCounter.increment();
+        } catch (IOException e) {
+            droppedCounter.increment();
+            logger.error("Could not spill audit record; dropping {} by {}", record.getAction(), record.getUsername(), e);
+        }
+    }
+
+    public enum OverflowPolicy {
+        BLOCK, DROP, SPILL;
+
+        public static OverflowPolicy fromString(String policy) {
+            if (policy != null) {
+                switch (policy.trim().toLowerCase()) {
+                    case "drop":
+                        return DROP;
+                    case "spill":
+                    case "spill-to-disk":
+                        return SPILL;
+                    default:
+                        break;
+                }
+            }
+            return BLOCK;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.tradingplatform.bulk;
+
+/**
+ * Outcome of one bulk status change. Trades that were missing, inaccessible or not in a
+ * status the transition starts from are counted as skipped.
+ */
+public class BulkTransitionResult {
+    private final TradeTransition transition;
+    private long requested;
+    private long updated;
+    private long elapsedMillis;
+
+    public BulkTransitionResult(TradeTransition transition) {
+        this.transition = transition;
+    }
+
+    public TradeTransition getTransition() {
+        return transition;
+    }
+
+    public long getRequested() {
+        return requested;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public long getSkipped() {
+        return requested - updated;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    void addRequested(long count) {
+        requested += count;
+    }
+
+    void addUpdated(long count) {
+        updated += count;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+}
@@ -0,0 +1,203 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.security.UserPrincipal;
+import com.tradingplatform.service.AuditLogService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a status transition to many trades with conditional, set-based UPDATEs.
+ *
+ * Trades are processed in chunks of {@code chunk-size} ids, each in its own transaction. The
+ * UPDATE itself checks the starting status and the caller's organization, so trades that
+ * were changed concurrently or are out of reach are skipped rather than failing the batch.
+ * No per-trade {@code TradeEvent} is published; each chunk that updates anything publishes
+ * one {@link PortfolioTradesChangedEvent} for its portfolios, delivered after it commits.
+ */
+@Service
+public class BulkTransitionService {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AuditLogService auditLogService;
+    private final Map<TradeTransition, Counter> updatedCounters = new EnumMap<>(TradeTransition.class);
+
+    @Value("${app.trades.bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    public BulkTransitionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 ApplicationEventPublisher eventPublisher, AuditLogService auditLogService,
+                                 MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.auditLogService = auditLogService;
+        for (TradeTransition transition : TradeTransition.values()) {
+            updatedCounters.put(transition, Counter.builder("trades.bulk.updated")
+                    .tag("transition", transition.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Applies the transition to the given trades. Duplicate ids are counted once.
+     */
+    public BulkTransitionResult transitionByIds(TradeTransition transition, Collection<Long> tradeIds,
+                                                UserPrincipal currentUser) {
+        long start = System.currentTimeMillis();
+        BulkTransitionResult result = new BulkTransitionResult(transition);
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(tradeIds));
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            result.addRequested(chunk.size());
+            result.addUpdated(apply(transition, chunk, currentUser.getOrganizationId()));
+        }
+        return finish(result, start, currentUser, ids.size() + " listed trades");
+    }
+
+    /**
+     * Applies the transition to every trade of the caller's organization that matches the
+     * filter and is in a status the transition starts from. Null arguments do not filter.
+     *
+     * @param from inclusive first trade date
+     * @param to   inclusive last trade date
+     */
+    public BulkTransitionResult transitionByFilter(TradeTransition transition, Long portfolioId, String symbol,
+                                                   LocalDate from, LocalDate to, UserPrincipal currentUser) {
+        long start = System.currentTimeMillis();
+        BulkTransitionResult result = new BulkTransitionResult(transition);
+        Long organizationId = currentUser.getOrganizationId();
+
+        StringBuilder sql = new StringBuilder("SELECT t.id FROM trades t WHERE t.status IN (")
+                .append(placeholders(transition.getFrom().size())).append(")");
+        List<Object> args = new ArrayList<>(statusNames(transition.getFrom()));
+        if (organizationId != null) {
+            sql.append(" AND t.portfolio_id IN (SELECT p.id FROM portfolios p WHERE p.organization_id = ?)");
+            args.add(organizationId);
+        }
+        if (portfolioId != null) {
+            sql.append(" AND t.portfolio_id = ?");
+            args.add(portfolioId);
+        }
+        if (symbol != null) {
+            sql.append(" AND t.symbol = ?");
+            args.add(symbol.toUpperCase());
+        }
+        if (from != null) {
+            sql.append(" AND t.trade_date >= ?");
+            args.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND t.trade_date <= ?");
+            args.add(Date.valueOf(to));
+        }
+        // Keyset over id so each chunk query is bounded however many trades match
+        sql.append(" AND t.id > ? ORDER BY t.id LIMIT ?");
+
+        long afterId = 0;
+        while (true) {
+            List<Object> chunkArgs = new ArrayList<>(args);
+            chunkArgs.add(afterId);
+            chunkArgs.add(chunkSize);
+            List<Long> chunk = jdbcTemplate.queryForList(sql.toString(), Long.class, chunkArgs.toArray());
+            if (chunk.isEmpty()) {
+                break;
+            }
+            result.addRequested(chunk.size());
+            result.addUpdated(apply(transition, chunk, organizationId));
+            afterId = chunk.get(chunk.size() - 1);
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+
+        String description = String.format("trades matching portfolio=%s, symbol=%s, from=%s, to=%s",
+                portfolioId, symbol, from, to);
+        return finish(result, start, currentUser, description);
+    }
+
+    /**
+     * Applies the transition to one chunk of trades in its own transaction.
+     *
+     * @param organizationId restricts the update to this organization's trades when not null
+     * @return the number of trades updated
+     */
+    int apply(TradeTransition transition, List<Long> tradeIds, Long organizationId) {
+        if (tradeIds.isEmpty()) {
+            return 0;
+        }
+        StringBuilder where = new StringBuilder(" WHERE id IN (").append(placeholders(tradeIds.size()))
+                .append(") AND status IN (").append(placeholders(transition.getFrom().size())).append(")");
+        List<Object> whereArgs = new ArrayList<>(tradeIds);
+        whereArgs.addAll(statusNames(transition.getFrom()));
+        if (organizationId != null) {
+            where.append(" AND portfolio_id IN (SELECT id FROM portfolios WHERE organization_id = ?)");
+            whereArgs.add(organizationId);
+        }
+
+        Integer updated = transactionTemplate.execute(status -> {
+            // Earliest trade date per portfolio bounds the position snapshots to repair
+            Map<Long, LocalDate> portfolios = new HashMap<>();
+            jdbcTemplate.query("SELECT portfolio_id, MIN(trade_date) FROM trades" + where + " GROUP BY portfolio_id",
+                    rs -> {
+                        portfolios.put(rs.getLong(1), rs.getDate(2).toLocalDate());
+                    }, whereArgs.toArray());
+            List<Object> args = new ArrayList<>();
+            args.add(transition.getTarget().name());
+            args.add(Timestamp.valueOf(LocalDateTime.now()));
+            args.addAll(whereArgs);
+            int rows = jdbcTemplate.update("UPDATE trades SET status = ?, updated_at = ?" + where, args.toArray());
+            if (rows > 0) {
+                // Canceled trades leave the positions; executed and canceled ones leave PENDING
+                eventPublisher.publishEvent(new PortfolioTradesChangedEvent(portfolios,
+                        transition == TradeTransition.CANCEL, transition.getFrom().contains(TradeStatus.PENDING)));
+            }
+            return rows;
+        });
+
+        int count = updated != null ? updated : 0;
+        updatedCounters.get(transition).increment(count);
+        return count;
+    }
+
+    private BulkTransitionResult finish(BulkTransitionResult result, long start, UserPrincipal currentUser,
+                                        String description) {
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        auditLogService.logUserAction(currentUser, "UPDATE", String.format("Bulk %s of %s: %d updated, %d skipped",
+                result.getTransition().name().toLowerCase(), description, result.getUpdated(), result.getSkipped()));
+        return result;
+    }
+
+    static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static List<String> statusNames(List<TradeStatus> statuses) {
+        List<String> names = new ArrayList<>(statuses.size());
+        for (TradeStatus status : statuses) {
+            names.add(status.name());
+        }
+        return names;
+    }
+}
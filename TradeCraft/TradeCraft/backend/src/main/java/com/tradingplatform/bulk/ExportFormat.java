@@ -0,0 +1,24 @@
+package com.tradingplatform.bulk;
+
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    // DataOutputStream: magic int and record type byte, then each row after a marker byte 1,
+    // ended by a byte 0 (absent if the export failed); see TradeExportService
+    BINARY("application/octet-stream", "bin");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,97 @@
+package com.tradingplatform.bulk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of every external trade reference in the database, loaded on first use and
+ * extended as imports insert trades. A negative answer is definitive; a positive one must be
+ * confirmed against the table. Once more references than {@code expected-refs} are added the
+ * false-positive rate rises, which costs exact checks but never correctness.
+ */
+@Component
+public class ExternalRefFilter {
+    private static final int HASHES = 7;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.import.expected-refs:10000000}")
+    private long expectedRefs;
+
+    private volatile AtomicLongArray bits;
+
+    public ExternalRefFilter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean mightContain(String externalRef) {
+        AtomicLongArray words = load();
+        long bitCount = (long) words.length() * 64;
+        long hash = hash(externalRef);
+        int base = (int) hash;
+        int step = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Integer.toUnsignedLong(base + i * step) % bitCount;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(String externalRef) {
+        add(load(), externalRef);
+    }
+
+    private AtomicLongArray load() {
+        AtomicLongArray words = bits;
+        if (words != null) {
+            return words;
+        }
+        synchronized (this) {
+            if (bits == null) {
+                // About 10 bits per reference for a 1% false-positive rate
+                long bitCount = Math.max(64, Math.min(expectedRefs * 10, 1L << 32));
+                AtomicLongArray loaded = new AtomicLongArray((int) ((bitCount + 63) / 64));
+                jdbcTemplate.query("SELECT external_ref FROM trades WHERE external_ref IS NOT NULL",
+                        rs -> {
+                            add(loaded, rs.getString(1));
+                        });
+                bits = loaded;
+            }
+            return bits;
+        }
+    }
+
+    private static void add(AtomicLongArray words, String externalRef) {
+        long bitCount = (long) words.length() * 64;
+        long hash = hash(externalRef);
+        int base = (int) hash;
+        int step = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Integer.toUnsignedLong(base + i * step) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    // 64-bit FNV-1a followed by a SplitMix64 finalizer
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,120 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.service.AuditLogService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settles executed trades whose settlement date has arrived.
+ *
+ * Each run walks the due trades in id order, {@code batch-size} at a time, and settles each
+ * batch with a conditional UPDATE, so concurrent runs on several instances cannot settle a
+ * trade twice. Meters: {@code trades.settlement.due} (trades still due in the current run),
+ * {@code trades.settlement.settled} and {@code trades.settlement.run}.
+ */
+@Component
+public class SettlementJob {
+    private static final Logger logger = LoggerFactory.getLogger(SettlementJob.class);
+
+    private static final String DUE_SQL = "SELECT id FROM trades WHERE status = 'EXECUTED' "
+            + "AND settlement_date <= ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM trades WHERE status = 'EXECUTED' "
+            + "AND settlement_date <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BulkTransitionService bulkTransitionService;
+    private final AuditLogService auditLogService;
+
+    private final AtomicLong due = new AtomicLong();
+    private final Counter settledCounter;
+    private final Timer runTimer;
+
+    @Value("${app.settlement.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.settlement.batch-size:1000}")
+    private int batchSize;
+
+    // 0 settles everything due in one run
+    @Value("${app.settlement.max-batches-per-run:0}")
+    private int maxBatchesPerRun;
+
+    public SettlementJob(JdbcTemplate jdbcTemplate, BulkTransitionService bulkTransitionService,
+                         AuditLogService auditLogService, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkTransitionService = bulkTransitionService;
+        this.auditLogService = auditLogService;
+        Gauge.builder("trades.settlement.due", due, AtomicLong::get).register(meterRegistry);
+        this.settledCounter = Counter.builder("trades.settlement.settled").register(meterRegistry);
+        this.runTimer = Timer.builder("trades.settlement.run").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.settlement.interval-ms:300000}",
+            initialDelayString = "${app.settlement.initial-delay-ms:60000}")
+    public void scheduledRun() {
+        if (enabled) {
+            try {
+                settleDue(LocalDate.now());
+            } catch (RuntimeException e) {
+                logger.error("Settlement run failed", e);
+            }
+        }
+    }
+
+    /**
+     * Settles every executed trade with a settlement date on or before {@code asOf}.
+     *
+     * @return the number of trades settled
+     */
+    public synchronized long settleDue(LocalDate asOf) {
+        long start = System.nanoTime();
+        Date cutoff = Date.valueOf(asOf);
+        Long pending = jdbcTemplate.queryForObject(COUNT_SQL, Long.class, cutoff);
+        due.set(pending != null ? pending : 0);
+
+        long settled = 0;
+        int batches = 0;
+        long afterId = 0;
+        try {
+            while (maxBatchesPerRun <= 0 || batches < maxBatchesPerRun) {
+                List<Long> batch = jdbcTemplate.queryForList(DUE_SQL, Long.class, cutoff, afterId, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                int count = bulkTransitionService.apply(TradeTransition.SETTLE, batch, null);
+                settled += count;
+                batches++;
+                settledCounter.increment(count);
+                due.addAndGet(-batch.size());
+                afterId = batch.get(batch.size() - 1);
+                logger.debug("Settlement batch {}: {} settled, {} still due", batches, count, due.get());
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (settled > 0) {
+            logger.info("Settled {} trades due by {} in {} batches", settled, asOf, batches);
+            auditLogService.logUserAction(null, "UPDATE",
+                    "Automatic settlement: " + settled + " trades due by " + asOf);
+        }
+        return settled;
+    }
+}
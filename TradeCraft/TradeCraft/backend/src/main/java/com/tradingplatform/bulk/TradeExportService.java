@@ -0,0 +1,331 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.exception.UnauthorizedException;
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.HoldingsMarker;
+import com.tradingplatform.model.Portfolio;
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.repository.PortfolioRepository;
+import com.tradingplatform.security.UserPrincipal;
+import com.tradingplatform.service.AuditLogService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams an organization's trades or holdings to an output stream.
+ *
+ * Trades are read with a single forward-only query inside a read-only transaction, so
+ * drivers that need one (PostgreSQL) fetch {@code fetch-size} rows at a time instead of
+ * materializing the result; each row is written as soon as it is read. Holdings are taken
+ * from the {@link PositionLedger} one portfolio at a time.
+ *
+ * The binary format is a {@link DataOutputStream}: the magic {@code "TCX1"}, a record type
+ * byte (1 trades, 2 holdings), then each row prefixed by the byte 1 and the stream ended by
+ * the byte 0. Strings are modified UTF-8, dates are epoch days and absent values are empty
+ * strings or -1. An export that fails part way gets no end marker and, if gzipped, no gzip
+ * trailer, so readers see it as truncated rather than complete.
+ */
+@Service
+public class TradeExportService {
+    private static final int MAGIC = 0x54435831; // "TCX1"
+    private static final byte TRADES = 1;
+    private static final byte HOLDINGS = 2;
+
+    private static final String TRADE_COLUMNS = "id,portfolioId,portfolioName,symbol,side,quantity,price,commission,"
+            + "totalAmount,status,tradeDate,settlementDate,username,externalRef,notes";
+    private static final String HOLDING_COLUMNS = "portfolioId,portfolioName,symbol,quantity,averageCost,"
+            + "currentPrice,marketValue,profitLoss";
+
+    private static final String TRADE_SQL = "SELECT t.id, t.portfolio_id, p.name AS portfolio_name, t.symbol, t.side, "
+            + "t.quantity, t.price, t.commission, t.total_amount, t.status, t.trade_date, t.settlement_date, "
+            + "u.username, t.external_ref, t.notes FROM trades t "
+            + "JOIN portfolios p ON p.id = t.portfolio_id JOIN users u ON u.id = t.user_id "
+            + "WHERE p.organization_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final PortfolioRepository portfolioRepository;
+    private final PositionLedger positionLedger;
+    private final HoldingsMarker holdingsMarker;
+    private final AuditLogService auditLogService;
+
+    @Value("${app.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public TradeExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              PortfolioRepository portfolioRepository, PositionLedger positionLedger,
+                              HoldingsMarker holdingsMarker, AuditLogService auditLogService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.portfolioRepository = portfolioRepository;
+        this.positionLedger = positionLedger;
+        this.holdingsMarker = holdingsMarker;
+        this.auditLogService = auditLogService;
+    }
+
+    /**
+     * Writes the organization's trades in trade date order. The caller's stream is flushed
+     * but not closed.
+     *
+     * @param status only trades in this status, or {@code null} for all
+     * @param from   inclusive first trade date, or {@code null}
+     * @param to     inclusive last trade date, or {@code null}
+     * @return the number of trades written
+     */
+    public long exportTrades(Long organizationId, TradeStatus status, LocalDate from, LocalDate to,
+                             ExportFormat format, boolean gzip, OutputStream out, UserPrincipal currentUser)
+            throws IOException {
+        checkOrganization(organizationId, currentUser);
+        StringBuilder sql = new StringBuilder(TRADE_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(organizationId);
+        if (status != null) {
+            sql.append(" AND t.status = ?");
+            args.add(status.name());
+        }
+        if (from != null) {
+            sql.append(" AND t.trade_date >= ?");
+            args.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND t.trade_date <= ?");
+            args.add(Date.valueOf(to));
+        }
+        sql.append(" ORDER BY t.trade_date, t.id");
+
+        long[] rows = new long[1];
+        boolean completed = false;
+        try {
+            try (RowSink sink = RowSink.open(out, format, gzip, TRADES, TRADE_COLUMNS)) {
+                readOnlyTransaction.executeWithoutResult(tx -> {
+                    JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+                    streaming.setFetchSize(fetchSize);
+                    streaming.query(sql.toString(), (RowCallbackHandler) rs -> {
+                        writeTrade(sink, rs);
+                        rows[0]++;
+                    }, args.toArray());
+                });
+                sink.complete();
+            }
+            completed = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            auditLogService.logUserAction(currentUser, "EXPORT", String.format(
+                    "%s %d trades for organization %d as %s%s (status=%s, from=%s, to=%s)",
+                    completed ? "Exported" : "Export failed after", rows[0], organizationId, format,
+                    gzip ? "+gzip" : "", status, from, to));
+        }
+        return rows[0];
+    }
+
+    /**
+     * Writes the organization's open holdings, portfolio by portfolio. The caller's stream is
+     * flushed but not closed.
+     *
+     * @return the number of holdings written
+     */
+    public long exportHoldings(Long organizationId, ExportFormat format, boolean gzip, OutputStream out,
+                               UserPrincipal currentUser) throws IOException {
+        checkOrganization(organizationId, currentUser);
+        long rows = 0;
+        boolean completed = false;
+        try {
+            try (RowSink sink = RowSink.open(out, format, gzip, HOLDINGS, HOLDING_COLUMNS)) {
+                for (Portfolio portfolio : portfolioRepository.findByOrganizationId(organizationId)) {
+                    for (Holding holding : holdingsMarker.mark(positionLedger.getHoldings(portfolio.getId()))) {
+                        sink.begin();
+                        sink.writeLong(portfolio.getId());
+                        sink.writeString(portfolio.getName());
+                        sink.writeString(holding.getSymbol());
+                        sink.writeLong(holding.getQuantity());
+                        sink.writeDouble(holding.getAverageCost());
+                        sink.writeDouble(holding.getCurrentPrice());
+                        sink.writeDouble(holding.getMarketValue());
+                        sink.writeDouble(holding.getProfitLoss());
+                        sink.end();
+                        rows++;
+                    }
+                }
+                sink.complete();
+            }
+            completed = true;
+        } finally {
+            auditLogService.logUserAction(currentUser, "EXPORT", String.format(
+                    "%s %d holdings for organization %d as %s%s", completed ? "Exported" : "Export failed after",
+                    rows, organizationId, format, gzip ? "+gzip" : ""));
+        }
+        return rows;
+    }
+
+    private static void checkOrganization(Long organizationId, UserPrincipal currentUser) {
+        // Users without an organization are administrators
+        if (currentUser.getOrganizationId() != null &&
+                !currentUser.getOrganizationId().equals(organizationId)) {
+            throw new UnauthorizedException("You don't have access to this organization");
+        }
+    }
+
+    private static void writeTrade(RowSink sink, ResultSet rs) throws SQLException {
+        try {
+            sink.begin();
+            sink.writeLong(rs.getLong("id"));
+            sink.writeLong(rs.getLong("portfolio_id"));
+            sink.writeString(rs.getString("portfolio_name"));
+            sink.writeString(rs.getString("symbol"));
+            sink.writeString(rs.getString("side"));
+            sink.writeLong(rs.getLong("quantity"));
+            sink.writeDouble(rs.getDouble("price"));
+            sink.writeDouble(rs.getDouble("commission"));
+            sink.writeDouble(rs.getDouble("total_amount"));
+            sink.writeString(rs.getString("status"));
+            sink.writeDate(rs.getDate("trade_date"));
+            sink.writeDate(rs.getDate("settlement_date"));
+            sink.writeString(rs.getString("username"));
+            sink.writeString(rs.getString("external_ref"));
+            sink.writeString(rs.getString("notes"));
+            sink.end();
+        } catch (IOException e) {
+            // Surfaces through the JDBC callback; unwrapped by exportTrades
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes rows field by field as CSV or binary, optionally gzipped.
+     */
+    private static final class RowSink implements AutoCloseable {
+        private final ExportFormat format;
+        private final GZIPOutputStream gzip;
+        private final DataOutputStream out;
+        private boolean firstField;
+        private boolean completed;
+
+        private RowSink(ExportFormat format, GZIPOutputStream gzip, DataOutputStream out) {
+            this.format = format;
+            this.gzip = gzip;
+            this.out = out;
+        }
+
+        static RowSink open(OutputStream target, ExportFormat format, boolean compress, byte recordType,
+                            String csvHeader) throws IOException {
+            GZIPOutputStream gzip = compress ? new GZIPOutputStream(target, 64 * 1024) : null;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    gzip != null ? gzip : target, 64 * 1024));
+            RowSink sink = new RowSink(format, gzip, out);
+            if (format == ExportFormat.BINARY) {
+                out.writeInt(MAGIC);
+                out.writeByte(recordType);
+            } else {
+                out.write((csvHeader + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return sink;
+        }
+
+        void begin() throws IOException {
+            if (format == ExportFormat.BINARY) {
+                out.writeByte(1);
+            }
+            firstField = true;
+        }
+
+        void end() throws IOException {
+            if (format == ExportFormat.CSV) {
+                out.write('\n');
+            }
+        }
+
+        void writeLong(long value) throws IOException {
+            if (format == ExportFormat.BINARY) {
+                out.writeLong(value);
+            } else {
+                csv(Long.toString(value));
+            }
+        }
+
+        void writeDouble(double value) throws IOException {
+            if (format == ExportFormat.BINARY) {
+                out.writeDouble(value);
+            } else {
+                csv(Double.toString(value));
+            }
+        }
+
+        void writeDate(Date value) throws IOException {
+            if (format == ExportFormat.BINARY) {
+                out.writeLong(value != null ? value.toLocalDate().toEpochDay() : -1);
+            } else {
+                csv(value != null ? value.toLocalDate().toString() : "");
+            }
+        }
+
+        void writeString(String value) throws IOException {
+            if (format == ExportFormat.BINARY) {
+                out.writeUTF(value != null ? value : "");
+            } else {
+                csv(escape(value));
+            }
+        }
+
+        private void csv(String field) throws IOException {
+            if (!firstField) {
+                out.write(',');
+            }
+            firstField = false;
+            out.write(field.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Called once every row is written; only then does close() end the stream
+        void complete() {
+            completed = true;
+        }
+
+        // Leaves the caller's stream open so the response can still be completed
+        @Override
+        public void close() throws IOException {
+            if (!completed) {
+                out.flush(); // Whatever was written, without the end marker or gzip trailer
+                return;
+            }
+            if (format == ExportFormat.BINARY) {
+                out.writeByte(0);
+            }
+            out.flush();
+            if (gzip != null) {
+                gzip.finish();
+                gzip.flush();
+            }
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.tradingplatform.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one bulk import job. Row errors are kept up to a limit; the counts always
+ * cover every row.
+ */
+public class TradeImportResult {
+    private long totalRows;
+    private long imported;
+    private long duplicates;
+    private long failed;
+    private boolean errorsTruncated;
+    private final List<RowError> errors = new ArrayList<>();
+    private long elapsedMillis;
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    void addRows(long rows) {
+        totalRows += rows;
+    }
+
+    void addImported(long rows) {
+        imported += rows;
+    }
+
+    void addDuplicate() {
+        duplicates++;
+    }
+
+    void addError(long line, String externalRef, String message, int maxErrors) {
+        failed++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(line, externalRef, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String externalRef;
+        private final String message;
+
+        public RowError(long line, String externalRef, String message) {
+            this.line = line;
+            this.externalRef = externalRef;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getExternalRef() {
+            return externalRef;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
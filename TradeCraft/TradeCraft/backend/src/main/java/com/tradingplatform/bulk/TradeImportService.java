@@ -0,0 +1,499 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.exception.BadRequestException;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.pretrade.PreTradeRiskService;
+import com.tradingplatform.security.UserPrincipal;
+import com.tradingplatform.service.AuditLogService;
+import com.tradingplatform.service.TradeService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming CSV import of trades.
+ *
+ * The file is read in chunks. Rows of a chunk are parsed and validated in parallel; the
+ * portfolios and traders they name are then resolved with one query per chunk and cached for
+ * the job. References are deduplicated against the chunk, the {@link ExternalRefFilter} and,
+ * for filter hits only, the table. Each chunk is inserted with one JDBC batch in its own
+ * transaction, so a failed job keeps the chunks before it and can simply be re-run: rows
+ * already imported are reported as duplicates. The transaction also publishes one
+ * {@link PortfolioTradesChangedEvent} for the portfolios the chunk added trades to.
+ *
+ * PENDING rows are new orders and pass the {@link PreTradeRiskService} checks in the chunk's
+ * transaction, so each is checked with the rows before it reserved; rows over a limit fail.
+ * Executed and settled rows record trades that already happened and are not checked.
+ *
+ * The header names the columns. Required: externalRef, portfolioId, symbol, side, quantity,
+ * price, tradeDate. Optional: commission, notes, username (trader, who must belong to the
+ * portfolio's organization; defaults to the importing user) and status (PENDING, EXECUTED or
+ * SETTLED; defaults to PENDING).
+ */
+@Service
+public class TradeImportService {
+    private static final String[] REQUIRED_COLUMNS =
+            {"externalref", "portfolioid", "symbol", "side", "quantity", "price", "tradedate"};
+
+    private static final String INSERT_SQL = "INSERT INTO trades (portfolio_id, symbol, quantity, price, side, "
+            + "trade_date, settlement_date, status, user_id, commission, total_amount, notes, external_ref, "
+            + "created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Keeps IN lists well inside every database's parameter limit
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExternalRefFilter externalRefFilter;
+    private final PreTradeRiskService preTradeRiskService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AuditLogService auditLogService;
+
+    @Value("${app.import.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${app.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public TradeImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              ExternalRefFilter externalRefFilter, PreTradeRiskService preTradeRiskService,
+                              ApplicationEventPublisher eventPublisher, AuditLogService auditLogService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.externalRefFilter = externalRefFilter;
+        this.preTradeRiskService = preTradeRiskService;
+        this.eventPublisher = eventPublisher;
+        this.auditLogService = auditLogService;
+    }
+
+    public TradeImportResult importTrades(InputStream csv, UserPrincipal currentUser) throws IOException {
+        long start = System.currentTimeMillis();
+        TradeImportResult result = new TradeImportResult();
+        Job job = new Job(currentUser);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new BadRequestException("Import file is empty");
+            }
+            job.columns = parseHeader(header);
+
+            List<String> lines = new ArrayList<>(chunkSize);
+            List<Long> lineNumbers = new ArrayList<>(chunkSize);
+            long lineNumber = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                lines.add(line);
+                lineNumbers.add(lineNumber);
+                if (lines.size() == chunkSize) {
+                    importChunk(lines, lineNumbers, job, result);
+                    lines.clear();
+                    lineNumbers.clear();
+                }
+            }
+            if (!lines.isEmpty()) {
+                importChunk(lines, lineNumbers, job, result);
+            }
+        } finally {
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+            auditLogService.logUserAction(currentUser, "IMPORT", String.format(
+                    "Imported trades: %d of %d rows imported, %d duplicates, %d failed",
+                    result.getImported(), result.getTotalRows(), result.getDuplicates(), result.getFailed()));
+        }
+        return result;
+    }
+
+    private void importChunk(List<String> lines, List<Long> lineNumbers, Job job, TradeImportResult result) {
+        int size = lines.size();
+        result.addRows(size);
+
+        // Parsing and validation are independent per row and touch no database
+        ParsedRow[] parsed = new ParsedRow[size];
+        IntStream.range(0, size).parallel().forEach(i -> parsed[i] = parse(lines.get(i), lineNumbers.get(i), job));
+        resolve(parsed, job);
+
+        List<ParsedRow> candidates = new ArrayList<>(size);
+        Set<String> chunkRefs = new HashSet<>();
+        List<String> possibleDuplicates = new ArrayList<>();
+        for (ParsedRow row : parsed) {
+            if (row.error != null) {
+                result.addError(row.line, row.externalRef, row.error, maxReportedErrors);
+            } else if (!chunkRefs.add(row.externalRef)) {
+                result.addDuplicate();
+            } else {
+                if (externalRefFilter.mightContain(row.externalRef)) {
+                    possibleDuplicates.add(row.externalRef);
+                }
+                candidates.add(row);
+            }
+        }
+
+        Set<String> existing = findExistingRefs(possibleDuplicates);
+        List<ParsedRow> accepted = new ArrayList<>(candidates.size());
+        for (ParsedRow row : candidates) {
+            if (existing.contains(row.externalRef)) {
+                result.addDuplicate();
+            } else {
+                accepted.add(row);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                accepted.removeIf(row -> !passesLimits(row, result));
+                jdbcTemplate.batchUpdate(INSERT_SQL, accepted, accepted.size(), (ps, row) -> bind(ps, row, job.now));
+                publishChanges(accepted);
+            });
+            result.addImported(accepted.size());
+        } catch (DuplicateKeyException e) {
+            // A concurrent import claimed some references; fall back to row-by-row for this chunk
+            accepted.removeIf(row -> !insertOne(row, job.now, result));
+            result.addImported(accepted.size());
+        }
+        for (ParsedRow row : accepted) {
+            externalRefFilter.add(row.externalRef);
+        }
+    }
+
+    // Within the inserting transaction, so listeners run once the rows are committed
+    private void publishChanges(List<ParsedRow> rows) {
+        Map<Long, LocalDate> portfolios = new HashMap<>();
+        boolean pending = false;
+        for (ParsedRow row : rows) {
+            portfolios.merge(row.portfolioId, row.tradeDate, (a, b) -> a.isBefore(b) ? a : b);
+            pending |= row.status == TradeStatus.PENDING;
+        }
+        if (!portfolios.isEmpty()) {
+            eventPublisher.publishEvent(new PortfolioTradesChangedEvent(portfolios, true, pending));
+        }
+    }
+
+    // Sets each valid row's organization and trader, failing rows whose portfolio or trader is
+    // unknown or out of reach
+    private void resolve(ParsedRow[] rows, Job job) {
+        Set<Long> portfolioIds = new HashSet<>();
+        for (ParsedRow row : rows) {
+            if (row.error == null && !job.portfolioOrganizations.containsKey(row.portfolioId)) {
+                portfolioIds.add(row.portfolioId);
+            }
+        }
+        job.loadPortfolios(portfolioIds);
+
+        Map<Long, Set<String>> usernames = new HashMap<>();
+        for (ParsedRow row : rows) {
+            if (row.error != null) {
+                continue;
+            }
+            Long organizationId = job.portfolioOrganizations.get(row.portfolioId).orElse(null);
+            if (organizationId == null) {
+                row.fail("Portfolio not found with id: " + row.portfolioId);
+            } else if (job.currentUser.getOrganizationId() != null
+                    && !job.currentUser.getOrganizationId().equals(organizationId)) {
+                row.fail("You don't have access to portfolio " + row.portfolioId);
+            } else {
+                row.organizationId = organizationId;
+                if (row.username == null) {
+                    row.userId = job.currentUser.getId();
+                } else if (!job.userIds.containsKey(Arrays.asList(organizationId, row.username))) {
+                    usernames.computeIfAbsent(organizationId, id -> new HashSet<>()).add(row.username);
+                }
+            }
+        }
+        usernames.forEach(job::loadUsers);
+
+        for (ParsedRow row : rows) {
+            if (row.error == null && row.username != null) {
+                row.userId = job.userIds.get(Arrays.asList(row.organizationId, row.username)).orElse(null);
+                if (row.userId == null) {
+                    row.fail("User not found with username: " + row.username);
+                }
+            }
+        }
+    }
+
+    private boolean insertOne(ParsedRow row, LocalDateTime now, TradeImportResult result) {
+        try {
+            Boolean inserted = transactionTemplate.execute(status -> {
+                if (!passesLimits(row, result)) {
+                    return false;
+                }
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, row, now));
+                publishChanges(Collections.singletonList(row));
+                return true;
+            });
+            return Boolean.TRUE.equals(inserted);
+        } catch (DuplicateKeyException e) {
+            result.addDuplicate();
+            return false;
+        }
+    }
+
+    // Reserves the row's exposure until the current transaction completes
+    private boolean passesLimits(ParsedRow row, TradeImportResult result) {
+        if (row.status != TradeStatus.PENDING) {
+            return true;
+        }
+        try {
+            preTradeRiskService.check(row.organizationId, row.portfolioId, row.symbol, row.side, row.quantity,
+                    row.price);
+            return true;
+        } catch (BadRequestException e) {
+            result.addError(row.line, row.externalRef, e.getMessage(), maxReportedErrors);
+            return false;
+        }
+    }
+
+    private Set<String> findExistingRefs(List<String> refs) {
+        Set<String> existing = new HashSet<>();
+        for (List<String> batch : batches(refs)) {
+            existing.addAll(jdbcTemplate.queryForList(
+                    "SELECT external_ref FROM trades WHERE external_ref IN (" + placeholders(batch) + ")",
+                    String.class, batch.toArray()));
+        }
+        return existing;
+    }
+
+    private static <T> List<List<T>> batches(Collection<T> values) {
+        List<T> list = new ArrayList<>(values);
+        List<List<T>> batches = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += LOOKUP_BATCH_SIZE) {
+            batches.add(list.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, list.size())));
+        }
+        return batches;
+    }
+
+    private static String placeholders(List<?> batch) {
+        return String.join(",", Collections.nCopies(batch.size(), "?"));
+    }
+
+    private static void bind(PreparedStatement ps, ParsedRow row, LocalDateTime now) throws SQLException {
+        ps.setLong(1, row.portfolioId);
+        ps.setString(2, row.symbol);
+        ps.setInt(3, row.quantity);
+        ps.setDouble(4, row.price);
+        ps.setString(5, row.side.name());
+        ps.setDate(6, Date.valueOf(row.tradeDate));
+        ps.setDate(7, Date.valueOf(row.tradeDate.plusDays(2))); // T+2 settlement
+        ps.setString(8, row.status.name());
+        ps.setLong(9, row.userId);
+        ps.setDouble(10, row.commission);
+        ps.setDouble(11, row.totalAmount);
+        ps.setString(12, row.notes);
+        ps.setString(13, row.externalRef);
+        ps.setTimestamp(14, Timestamp.valueOf(now));
+        ps.setTimestamp(15, Timestamp.valueOf(now));
+    }
+
+    private ParsedRow parse(String line, long lineNumber, Job job) {
+        ParsedRow row = new ParsedRow(lineNumber);
+        try {
+            List<String> fields = splitCsv(line);
+            row.externalRef = job.field(fields, "externalref");
+            if (row.externalRef == null || row.externalRef.length() > 64) {
+                return row.fail("externalRef is required and must be at most 64 characters");
+            }
+
+            String symbol = job.field(fields, "symbol");
+            if (symbol == null || symbol.length() > 20) {
+                return row.fail("symbol is required and must be at most 20 characters");
+            }
+            row.symbol = symbol.toUpperCase();
+
+            String side = job.field(fields, "side");
+            if (!"BUY".equalsIgnoreCase(side) && !"SELL".equalsIgnoreCase(side)) {
+                return row.fail("side must be BUY or SELL");
+            }
+            row.side = TradeSide.valueOf(side.toUpperCase());
+
+            row.quantity = Integer.parseInt(required(job.field(fields, "quantity"), "quantity"));
+            row.price = Double.parseDouble(required(job.field(fields, "price"), "price"));
+            if (row.quantity <= 0 || !(row.price > 0) || Double.isInfinite(row.price)) {
+                return row.fail("quantity and price must be positive");
+            }
+            row.tradeDate = LocalDate.parse(required(job.field(fields, "tradedate"), "tradeDate"));
+
+            String status = job.field(fields, "status");
+            row.status = status != null ? TradeStatus.valueOf(status.toUpperCase()) : TradeStatus.PENDING;
+            if (row.status == TradeStatus.CANCELED) {
+                return row.fail("canceled trades cannot be imported");
+            }
+
+            row.notes = job.field(fields, "notes");
+            if (row.notes != null && row.notes.length() > 500) {
+                return row.fail("notes must be at most 500 characters");
+            }
+
+            String commission = job.field(fields, "commission");
+            row.commission = commission != null ? Double.parseDouble(commission)
+                    : TradeService.calculateCommission(row.quantity, row.price);
+            double totalAmount = row.quantity * row.price;
+            row.totalAmount = row.side == TradeSide.BUY ? totalAmount + row.commission : totalAmount - row.commission;
+
+            row.portfolioId = Long.parseLong(required(job.field(fields, "portfolioid"), "portfolioId"));
+            row.username = job.field(fields, "username");
+            return row;
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return row.fail("Invalid value: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return row.fail(e.getMessage());
+        }
+    }
+
+    private static String required(String value, String column) {
+        if (value == null) {
+            throw new IllegalArgumentException(column + " is required");
+        }
+        return value;
+    }
+
+    private static Map<String, Integer> parseHeader(String header) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsv(header);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase().replace("_", ""), i);
+        }
+        for (String column : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new BadRequestException("Import file header is missing column: " + column);
+            }
+        }
+        return columns;
+    }
+
+    // Splits one CSV line, honouring double-quoted fields with "" escapes
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // State shared by all rows of one import
+    private final class Job {
+        private final UserPrincipal currentUser;
+        private final LocalDateTime now = LocalDateTime.now();
+        private final Map<Long, Optional<Long>> portfolioOrganizations = new HashMap<>();
+        // By organization id and username
+        private final Map<List<Object>, Optional<Long>> userIds = new HashMap<>();
+        private Map<String, Integer> columns;
+
+        private Job(UserPrincipal currentUser) {
+            this.currentUser = currentUser;
+        }
+
+        // Trimmed value of a column, or null if the column is absent or blank
+        private String field(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.size()) {
+                return null;
+            }
+            String value = fields.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private void loadPortfolios(Set<Long> portfolioIds) {
+            for (List<Long> batch : batches(portfolioIds)) {
+                jdbcTemplate.query("SELECT id, organization_id FROM portfolios WHERE id IN ("
+                        + placeholders(batch) + ")", rs -> {
+                            portfolioOrganizations.put(rs.getLong(1), Optional.of(rs.getLong(2)));
+                        }, batch.toArray());
+            }
+            for (Long id : portfolioIds) {
+                portfolioOrganizations.putIfAbsent(id, Optional.empty());
+            }
+        }
+
+        // Only users of the portfolio's organization can be named as the trader
+        private void loadUsers(Long organizationId, Set<String> usernames) {
+            for (List<String> batch : batches(usernames)) {
+                List<Object> args = new ArrayList<>(batch.size() + 1);
+                args.add(organizationId);
+                args.addAll(batch);
+                jdbcTemplate.query("SELECT username, id FROM users WHERE organization_id = ? AND username IN ("
+                        + placeholders(batch) + ")", rs -> {
+                            userIds.put(Arrays.asList(organizationId, rs.getString(1)), Optional.of(rs.getLong(2)));
+                        }, args.toArray());
+            }
+            for (String username : usernames) {
+                userIds.putIfAbsent(Arrays.asList(organizationId, username), Optional.empty());
+            }
+        }
+    }
+
+    private static final class ParsedRow {
+        private final long line;
+        private String error;
+        private String externalRef;
+        private long portfolioId;
+        private Long organizationId;
+        private String symbol;
+        private TradeSide side;
+        private int quantity;
+        private double price;
+        private LocalDate tradeDate;
+        private TradeStatus status;
+        private double commission;
+        private double totalAmount;
+        private String notes;
+        private String username;
+        private Long userId;
+
+        private ParsedRow(long line) {
+            this.line = line;
+        }
+
+        private ParsedRow fail(String message) {
+            this.error = message;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.model.Trade.TradeStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Status changes that can be applied in bulk, with the statuses each may start from.
+ */
+public enum TradeTransition {
+    EXECUTE(TradeStatus.EXECUTED, TradeStatus.PENDING),
+    SETTLE(TradeStatus.SETTLED, TradeStatus.EXECUTED),
+    CANCEL(TradeStatus.CANCELED, TradeStatus.PENDING, TradeStatus.EXECUTED);
+
+    private final TradeStatus target;
+    private final List<TradeStatus> from;
+
+    TradeTransition(TradeStatus target, TradeStatus... from) {
+        this.target = target;
+        this.from = Collections.unmodifiableList(Arrays.asList(from));
+    }
+
+    public TradeStatus getTarget() {
+        return target;
+    }
+
+    public List<TradeStatus> getFrom() {
+        return from;
+    }
+}
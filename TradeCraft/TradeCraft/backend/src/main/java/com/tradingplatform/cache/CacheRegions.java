@@ -0,0 +1,16 @@
+package com.tradingplatform.cache;
+
+/**
+ * Second-level cache region names. Each can be sized with
+ * {@code app.cache.regions.<name>.max-entries} and {@code .ttl-seconds}.
+ */
+public final class CacheRegions {
+    public static final String ORGANIZATIONS = "organizations";
+    public static final String PORTFOLIOS = "portfolios";
+    public static final String ROLES = "roles";
+    // Results of the finder queries over the entities above
+    public static final String REFERENCE_QUERIES = "reference-queries";
+
+    private CacheRegions() {
+    }
+}
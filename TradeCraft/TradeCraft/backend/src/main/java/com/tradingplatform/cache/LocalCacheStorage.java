@@ -0,0 +1,134 @@
+package com.tradingplatform.cache;
+
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage of one cache region: an access-ordered map that drops its least recently used
+ * entry beyond {@code maxEntries} and expires entries {@code ttlMillis} after they were put.
+ * Zero disables either limit. Regions hold small reference data, so one lock per region is
+ * cheaper than anything finer.
+ */
+final class LocalCacheStorage implements DomainDataStorageAccess {
+    private final String name;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    LocalCacheStorage(String name, int maxEntries, long ttlMillis) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+        Object value = lookup(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    @Override
+    public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+        long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        synchronized (entries) {
+            entries.put(key, new Entry(value, expiresAt));
+            if (maxEntries > 0 && entries.size() > maxEntries) {
+                Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        puts.increment();
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return lookup(key) != null;
+    }
+
+    @Override
+    public void evictData() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void evictData(Object key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public void release() {
+        evictData();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long puts() {
+        return puts.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    private Object lookup(Object key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expiresAt;
+
+        private Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.tradingplatform.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.core.env.Environment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process Hibernate second-level cache built on {@link LocalCacheStorage}.
+ *
+ * Region limits come from {@code app.cache.regions.<name>.max-entries} and
+ * {@code .ttl-seconds}, defaulting to {@code app.cache.max-entries} and
+ * {@code app.cache.ttl-seconds}. The update-timestamps region is never bounded or expired,
+ * as Hibernate relies on it to reject stale query results. Every region publishes the
+ * standard {@code cache.*} meters tagged with its name.
+ */
+public class LocalRegionFactory extends RegionFactoryTemplate {
+    // Serializable only through Hibernate's Service interface; instances are never serialized
+    private static final long serialVersionUID = 1L;
+    private static final String PREFIX = "app.cache.";
+
+    private final transient Environment environment;
+    private final transient MeterRegistry meterRegistry;
+    private final transient Map<String, LocalCacheStorage> storages = new ConcurrentHashMap<>();
+
+    public LocalRegionFactory(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Hibernate declares the parameter as a raw Map, so the override has to match it
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected void prepareForUse(SessionFactoryOptions settings, Map configValues) {
+        // Regions are created lazily as Hibernate asks for them
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        storages.values().forEach(LocalCacheStorage::release);
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        return storage(regionConfig.getRegionName(), true);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+                                                                  SessionFactoryImplementor sessionFactory) {
+        return storage(regionName, true);
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+                                                                SessionFactoryImplementor sessionFactory) {
+        return storage(regionName, false);
+    }
+
+    private LocalCacheStorage storage(String regionName, boolean bounded) {
+        return storages.computeIfAbsent(regionName, name -> {
+            int maxEntries = 0;
+            long ttlMillis = 0;
+            if (bounded) {
+                maxEntries = setting(name, "max-entries", 10000);
+                ttlMillis = setting(name, "ttl-seconds", 600) * 1000L;
+            }
+            LocalCacheStorage storage = new LocalCacheStorage(name, maxEntries, ttlMillis);
+            registerMeters(storage);
+            return storage;
+        });
+    }
+
+    private int setting(String region, String key, int defaultValue) {
+        Integer fallback = environment.getProperty(PREFIX + key, Integer.class, defaultValue);
+        return environment.getProperty(PREFIX + "regions." + region + "." + key, Integer.class, fallback);
+    }
+
+    private void registerMeters(LocalCacheStorage storage) {
+        Tags tags = Tags.of("cache", storage.getName(), "cacheManager", "hibernate");
+        Gauge.builder("cache.size", storage, LocalCacheStorage::size).tags(tags).register(meterRegistry);
+        FunctionCounter.builder("cache.gets", storage, LocalCacheStorage::hits)
+                .tags(tags).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", storage, LocalCacheStorage::misses)
+                .tags(tags).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("cache.puts", storage, LocalCacheStorage::puts).tags(tags).register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", storage, LocalCacheStorage::evictions)
+                .tags(tags).register(meterRegistry);
+    }
+}
@@ -0,0 +1,34 @@
+package com.tradingplatform.config;
+
+import com.tradingplatform.cache.LocalRegionFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.persistence.SharedCacheMode;
+
+@Configuration
+public class CacheConfig {
+
+    @Value("${app.cache.enabled:true}")
+    private boolean enabled;
+
+    // Second-level and query cache for the entities and finders marked cacheable
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(Environment environment,
+                                                                    MeterRegistry meterRegistry) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, enabled);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, enabled);
+            if (enabled) {
+                properties.put(AvailableSettings.CACHE_REGION_FACTORY,
+                        new LocalRegionFactory(environment, meterRegistry));
+                properties.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+            }
+        };
+    }
+}
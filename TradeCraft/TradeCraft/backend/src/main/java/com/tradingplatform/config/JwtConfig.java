@@ -18,6 +18,16 @@ public class JwtConfig {
     @Value("${app.jwt.expiration:3600000}")
     private int jwtExpiration;
 
+    // Tokens carrying user id, organization and roles, so requests need no user lookup
+    @Value("${app.jwt.self-contained:false}")
+    private boolean selfContained;
+
+    @Value("${app.jwt.access-expiration:300000}")
+    private int accessExpiration;
+
+    @Value("${app.jwt.refresh-expiration:604800000}")
+    private long refreshExpiration;
+
     public String getJwtSecret() {
         return jwtSecret;
     }
@@ -26,6 +36,18 @@ public class JwtConfig {
         return jwtExpiration;
     }
 
+    public boolean isSelfContained() {
+        return selfContained;
+    }
+
+    public int getAccessExpiration() {
+        return accessExpiration;
+    }
+
+    public long getRefreshExpiration() {
+        return refreshExpiration;
+    }
+
     @Bean
     public OpenAPI customOpenAPI() {
         return new OpenAPI()
@@ -0,0 +1,43 @@
+package com.tradingplatform.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class RiskConfig {
+
+    @Value("${app.risk.parallelism:0}")
+    private int parallelism;
+
+    @Value("${app.risk.max-concurrency-per-request:8}")
+    private int maxConcurrencyPerRequest;
+
+    @Value("${app.risk.parallel-aggregation:true}")
+    private boolean parallelAggregation;
+
+    // Share of average daily volume we assume can be traded without moving the price
+    @Value("${app.risk.liquidity.participation-rate:0.1}")
+    private double participationRate;
+
+    public int getMaxConcurrencyPerRequest() {
+        return maxConcurrencyPerRequest;
+    }
+
+    public boolean isParallelAggregation() {
+        return parallelAggregation;
+    }
+
+    public double getParticipationRate() {
+        return participationRate;
+    }
+
+    // Shared work-stealing pool for risk computations; defaults to one worker per core
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool riskPool() {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(workers);
+    }
+}
@@ -0,0 +1,467 @@
+package com.tradingplatform.crossing;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.event.TradeEvent;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.service.AuditLogService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Crosses opposite PENDING trades on the same symbol between portfolios of one organization.
+ *
+ * Each committed trade event updates the organization's {@link OrderBook} for the symbol,
+ * and a new PENDING trade is matched on arrival. Matches are queued and a single worker
+ * moves them to EXECUTED, up to {@code app.crossing.batch-size} trades per transaction. A
+ * match only executes if every trade in it is still PENDING, with the portfolio, symbol,
+ * side, quantity and price it was crossed on, when the batch locks them; otherwise the
+ * trades still PENDING are put back in the book as they now are. Each fill executes at the
+ * resting trade's price (see {@link Match#executionPrice}); totals are recomputed at that
+ * price with each trade's commission as booked.
+ *
+ * Trades of a queued match are in flight until their batch completes: they are in no book,
+ * and events for them do not put them back, since the batch re-checks them and rebooks the
+ * ones still PENDING if their match does not execute.
+ *
+ * Books are built on startup by replaying PENDING trades in id order. Bulk changes re-sync
+ * the resting trades of the portfolios they touched with the trades table. A batch that
+ * fails puts its trades still PENDING back in the books. Portfolios whose books could not be
+ * brought up to date, by a failed re-sync or rebook, are flagged dirty and re-synced every
+ * {@code app.crossing.resync-interval-ms}. A batch publishes a {@link PortfolioTradesChangedEvent} in its
+ * transaction for the cost of the positions its new prices change; its trades have already
+ * left the books, so it does not report pending changes.
+ */
+@Service
+public class CrossingEngine {
+    private static final Logger logger = LoggerFactory.getLogger(CrossingEngine.class);
+
+    private static final String LOCK_SQL = "SELECT id, portfolio_id, symbol, side, quantity, price, commission, "
+            + "trade_date FROM trades WHERE id IN (%s) AND status = ? FOR UPDATE";
+    private static final String EXECUTE_SQL = "UPDATE trades SET status = ?, price = ?, total_amount = ?, "
+            + "updated_at = ? WHERE id = ? AND status = ?";
+    private static final String PENDING_TRADES_SQL = "SELECT t.id, p.organization_id, t.portfolio_id, t.symbol, "
+            + "t.side, t.quantity, t.price FROM trades t JOIN portfolios p ON p.id = t.portfolio_id "
+            + "WHERE t.status = ? ORDER BY t.id";
+    private static final String PENDING_TRADES_OF_PORTFOLIOS_SQL = "SELECT t.id, p.organization_id, t.portfolio_id, "
+            + "t.symbol, t.side, t.quantity, t.price FROM trades t JOIN portfolios p ON p.id = t.portfolio_id "
+            + "WHERE t.portfolio_id IN (%s) AND t.status = ? ORDER BY t.id";
+    private static final String PENDING_TRADES_BY_ID_SQL = "SELECT t.id, p.organization_id, t.portfolio_id, "
+            + "t.symbol, t.side, t.quantity, t.price FROM trades t JOIN portfolios p ON p.id = t.portfolio_id "
+            + "WHERE t.id IN (%s) AND t.status = ? ORDER BY t.id";
+    private static final String ORGANIZATIONS_SQL = "SELECT DISTINCT organization_id FROM portfolios WHERE id IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditLogService auditLogService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter matchedCounter;
+    private final Counter abortedCounter;
+
+    // Books by organization, then symbol; each book is guarded by itself
+    private final ConcurrentMap<Long, ConcurrentMap<String, OrderBook>> books = new ConcurrentHashMap<>();
+    private final BlockingQueue<Match> matches = new LinkedBlockingQueue<>();
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirtyPortfolios = ConcurrentHashMap.newKeySet();
+    // Held by the worker from taking a batch until it completes, and by replay; fair so
+    // replay is not starved by the polling worker
+    private final ReentrantLock executionLock = new ReentrantLock(true);
+
+    @Value("${app.crossing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.crossing.batch-size:1000}")
+    private int batchSize;
+
+    // Resting trades looked at per arriving trade before it simply rests
+    @Value("${app.crossing.max-scan:1000}")
+    private int maxScan;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public CrossingEngine(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          AuditLogService auditLogService, ApplicationEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditLogService = auditLogService;
+        this.eventPublisher = eventPublisher;
+        this.matchedCounter = Counter.builder("trades.crossing.executed").register(meterRegistry);
+        this.abortedCounter = Counter.builder("trades.crossing.aborted").register(meterRegistry);
+        Gauge.builder("trades.crossing.resting", this, CrossingEngine::restingCount).register(meterRegistry);
+        Gauge.builder("trades.crossing.queued", matches, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "crossing-executor");
+        worker.setDaemon(true);
+        worker.start();
+        replay();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Rebuilds every book from the PENDING trades in the trades table, crossing them in id
+     * order as if they had just arrived. Queued matches are discarded first, as their trades
+     * are replayed with the rest.
+     *
+     * @return the number of trades replayed
+     */
+    public int replay() {
+        executionLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            matches.clear();
+            inFlight.clear();
+            dirtyPortfolios.clear();
+            books.clear();
+            int[] count = new int[1];
+            jdbcTemplate.query(PENDING_TRADES_SQL, rs -> {
+                submit(rs.getLong(2), rs.getLong(1), rs.getLong(3), rs.getString(4),
+                        TradeSide.valueOf(rs.getString(5)) == TradeSide.BUY, rs.getInt(6), rs.getDouble(7));
+                count[0]++;
+            }, TradeStatus.PENDING.name());
+            logger.info("Crossing engine replayed {} pending trades in {} ms, {} resting",
+                    count[0], System.currentTimeMillis() - start, restingCount());
+            return count[0];
+        } finally {
+            executionLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTradeEvent(TradeEvent event) {
+        if (!running || event.getOrganizationId() == null) {
+            return;
+        }
+        switch (event.getType()) {
+            case CREATED:
+                submit(event);
+                break;
+            case UPDATED:
+                remove(event.getOrganizationId(), event.getPreviousSymbol(), event.getTradeId());
+                submit(event);
+                break;
+            default:
+                // Deleted, executed, settled or canceled trades can no longer cross
+                remove(event.getOrganizationId(), event.getSymbol(), event.getTradeId());
+                break;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioTradesChanged(PortfolioTradesChangedEvent event) {
+        if (!running || !event.isPendingChanged()) {
+            return;
+        }
+        try {
+            resync(event.getPortfolioIds());
+        } catch (RuntimeException e) {
+            logger.error("Could not re-sync the books of {} portfolios; retrying on the next re-sync",
+                    event.getPortfolioIds().size(), e);
+            dirtyPortfolios.addAll(event.getPortfolioIds());
+        }
+    }
+
+    // Re-syncs the resting trades of the given portfolios with the trades table
+    private void resync(Set<Long> portfolioIdSet) {
+        List<Long> portfolioIds = new ArrayList<>(portfolioIdSet);
+        String in = placeholders(portfolioIds.size());
+        List<Object[]> pending = new ArrayList<>();
+        Set<Long> pendingIds = new HashSet<>();
+        jdbcTemplate.query(String.format(PENDING_TRADES_OF_PORTFOLIOS_SQL, in), rs -> {
+            pending.add(new Object[]{rs.getLong(2), rs.getLong(1), rs.getLong(3), rs.getString(4),
+                    TradeSide.valueOf(rs.getString(5)) == TradeSide.BUY, rs.getInt(6), rs.getDouble(7)});
+            pendingIds.add(rs.getLong(1));
+        }, args(portfolioIds, TradeStatus.PENDING.name()));
+
+        // Trades that left PENDING leave the books; new ones join them in id order
+        Set<Long> portfolios = new HashSet<>(portfolioIds);
+        for (Long organizationId : jdbcTemplate.queryForList(String.format(ORGANIZATIONS_SQL, in), Long.class,
+                portfolioIds.toArray())) {
+            Map<String, OrderBook> symbols = organizationId != null ? books.get(organizationId) : null;
+            if (symbols == null) {
+                continue;
+            }
+            for (OrderBook book : symbols.values()) {
+                synchronized (book) {
+                    book.retain(portfolios, pendingIds);
+                }
+            }
+        }
+        for (Object[] row : pending) {
+            submit((Long) row[0], (Long) row[1], (Long) row[2], (String) row[3], (Boolean) row[4],
+                    (Integer) row[5], (Double) row[6]);
+        }
+    }
+
+    private void submit(TradeEvent event) {
+        if (event.getStatus() == TradeStatus.PENDING) {
+            submit(event.getOrganizationId(), event.getTradeId(), event.getPortfolioId(), event.getSymbol(),
+                    event.getSide() == TradeSide.BUY, event.getQuantity(), event.getPrice());
+        }
+    }
+
+    private void submit(Long organizationId, long tradeId, long portfolioId, String symbol, boolean buy,
+                        int quantity, double price) {
+        OrderBook book = books.computeIfAbsent(organizationId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(symbol, OrderBook::new);
+        Match matched;
+        synchronized (book) {
+            if (inFlight.contains(tradeId)) {
+                return; // Its batch rebooks it if it is still PENDING
+            }
+            matched = book.submit(tradeId, portfolioId, buy, quantity, price, maxScan);
+            if (matched != null) {
+                for (long id : matched.tradeIds) {
+                    inFlight.add(id);
+                }
+            }
+        }
+        if (matched != null) {
+            matches.add(matched);
+        }
+    }
+
+    private void remove(Long organizationId, String symbol, long tradeId) {
+        Map<String, OrderBook> symbols = books.get(organizationId);
+        OrderBook book = symbols != null ? symbols.get(symbol) : null;
+        if (book != null) {
+            synchronized (book) {
+                book.remove(tradeId);
+            }
+        }
+    }
+
+    private void run() {
+        List<Match> batch = new ArrayList<>();
+        while (running) {
+            executionLock.lock();
+            try {
+                Match first = matches.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int trades = first.size();
+                Match more;
+                while (trades < batchSize && (more = matches.poll()) != null) {
+                    batch.add(more);
+                    trades += more.size();
+                }
+                execute(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Could not execute {} crossed matches; rebooking their pending trades", batch.size(), e);
+                rebook(batch);
+            } finally {
+                batch.clear();
+                executionLock.unlock();
+            }
+        }
+    }
+
+    private void execute(List<Match> batch) {
+        List<Long> ids = tradeIds(batch);
+        List<Match> aborted = new ArrayList<>();
+        try {
+            execute(batch, ids, aborted);
+        } finally {
+            inFlight.removeAll(ids);
+        }
+        if (!aborted.isEmpty()) {
+            abortedCounter.increment(aborted.size());
+            resubmit(aborted);
+        }
+    }
+
+    private void execute(List<Match> batch, List<Long> ids, List<Match> aborted) {
+        Integer executed = transactionTemplate.execute(status -> {
+            Map<Long, Object[]> pending = new HashMap<>();
+            jdbcTemplate.query(String.format(LOCK_SQL, placeholders(ids.size())), rs -> {
+                pending.put(rs.getLong(1), new Object[]{rs.getLong(2), rs.getString(3),
+                        TradeSide.valueOf(rs.getString(4)) == TradeSide.BUY, rs.getInt(5), rs.getDouble(6),
+                        rs.getDouble(7), rs.getDate(8).toLocalDate()});
+            }, args(ids, TradeStatus.PENDING.name()));
+            List<Object[]> updates = new ArrayList<>(ids.size());
+            Map<Long, LocalDate> portfolios = new HashMap<>();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            Set<Long> taken = new HashSet<>();
+            for (Match match : batch) {
+                // A trade can execute in only one match, however the batch came about
+                if (overlaps(match, taken) || !unchanged(match, pending)) {
+                    aborted.add(match);
+                    continue;
+                }
+                for (int i = 0; i < match.size(); i++) {
+                    Object[] row = pending.get(match.tradeIds[i]);
+                    double price = match.executionPrice(i);
+                    double commission = (Double) row[5];
+                    double total = match.quantities[i] * price + (match.buys[i] ? commission : -commission);
+                    updates.add(new Object[]{TradeStatus.EXECUTED.name(), price, total, now, match.tradeIds[i],
+                            TradeStatus.PENDING.name()});
+                    portfolios.merge((Long) row[0], (LocalDate) row[6], (a, b) -> a.isBefore(b) ? a : b);
+                }
+            }
+            if (updates.isEmpty()) {
+                return 0;
+            }
+            jdbcTemplate.batchUpdate(EXECUTE_SQL, updates);
+            // Positions' cost moves with the execution prices
+            eventPublisher.publishEvent(new PortfolioTradesChangedEvent(portfolios, true, false));
+            return updates.size();
+        });
+
+        int count = executed != null ? executed : 0;
+        matchedCounter.increment(count);
+        if (count > 0) {
+            auditLogService.logUserAction(null, "UPDATE", String.format("Internal crossing executed %d trades in %d matches",
+                    count, batch.size() - aborted.size()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.crossing.resync-interval-ms:300000}",
+            initialDelayString = "${app.crossing.resync-interval-ms:300000}")
+    public void resyncDirty() {
+        if (!running || dirtyPortfolios.isEmpty()) {
+            return;
+        }
+        Set<Long> portfolioIds = new HashSet<>(dirtyPortfolios);
+        dirtyPortfolios.removeAll(portfolioIds);
+        try {
+            resync(portfolioIds);
+            logger.info("Crossing engine re-synced the books of {} portfolios", portfolioIds.size());
+        } catch (RuntimeException e) {
+            logger.error("Could not re-sync the books of {} portfolios", portfolioIds.size(), e);
+            dirtyPortfolios.addAll(portfolioIds);
+        }
+    }
+
+    private void rebook(List<Match> batch) {
+        try {
+            resubmit(batch);
+        } catch (RuntimeException e) {
+            logger.error("Could not rebook {} crossed matches; their trades rejoin the books on the next re-sync",
+                    batch.size(), e);
+            for (Match match : batch) {
+                for (long portfolioId : match.portfolioIds) {
+                    dirtyPortfolios.add(portfolioId);
+                }
+            }
+        }
+    }
+
+    // Trades of a broken match that are still PENDING go back in the book, oldest first
+    private void resubmit(List<Match> aborted) {
+        List<Long> ids = tradeIds(aborted);
+        Collections.sort(ids);
+        jdbcTemplate.query(String.format(PENDING_TRADES_BY_ID_SQL, placeholders(ids.size())), rs -> {
+            submit(rs.getLong(2), rs.getLong(1), rs.getLong(3), rs.getString(4),
+                    TradeSide.valueOf(rs.getString(5)) == TradeSide.BUY, rs.getInt(6), rs.getDouble(7));
+        }, args(ids, TradeStatus.PENDING.name()));
+    }
+
+    private int restingCount() {
+        int resting = 0;
+        for (Map<String, OrderBook> symbols : books.values()) {
+            for (OrderBook book : symbols.values()) {
+                synchronized (book) {
+                    resting += book.size();
+                }
+            }
+        }
+        return resting;
+    }
+
+    // Claims the match's trades unless an earlier match in the batch has any of them
+    private static boolean overlaps(Match match, Set<Long> taken) {
+        for (long id : match.tradeIds) {
+            if (taken.contains(id)) {
+                return true;
+            }
+        }
+        for (long id : match.tradeIds) {
+            taken.add(id);
+        }
+        return false;
+    }
+
+    // Every trade still PENDING on the terms it was crossed on
+    private static boolean unchanged(Match match, Map<Long, Object[]> pending) {
+        for (int i = 0; i < match.size(); i++) {
+            Object[] row = pending.get(match.tradeIds[i]);
+            if (row == null || !match.unchanged(i, (Long) row[0], (String) row[1], (Boolean) row[2],
+                    (Integer) row[3], (Double) row[4])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Long> tradeIds(List<Match> batch) {
+        List<Long> ids = new ArrayList<>();
+        for (Match match : batch) {
+            for (long id : match.tradeIds) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static Object[] args(List<Long> ids, Object last) {
+        Object[] args = ids.toArray(new Object[ids.size() + 1]);
+        args[ids.size()] = last;
+        return args;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+}
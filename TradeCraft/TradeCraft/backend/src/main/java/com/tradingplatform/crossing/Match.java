@@ -0,0 +1,60 @@
+package com.tradingplatform.crossing;
+
+/**
+ * Trades crossed by an {@link OrderBook}, with the terms each was crossed on: the arriving
+ * trade first, then the resting trades it took. A match may only execute if every trade
+ * still has these terms.
+ */
+final class Match {
+    final String symbol;
+    final long[] tradeIds;
+    final long[] portfolioIds;
+    final boolean[] buys;
+    final int[] quantities;
+    final double[] prices;
+
+    Match(String symbol, int size) {
+        this.symbol = symbol;
+        this.tradeIds = new long[size];
+        this.portfolioIds = new long[size];
+        this.buys = new boolean[size];
+        this.quantities = new int[size];
+        this.prices = new double[size];
+    }
+
+    int size() {
+        return tradeIds.length;
+    }
+
+    void set(int i, long tradeId, long portfolioId, boolean buy, int quantity, double price) {
+        tradeIds[i] = tradeId;
+        portfolioIds[i] = portfolioId;
+        buys[i] = buy;
+        quantities[i] = quantity;
+        prices[i] = price;
+    }
+
+    /**
+     * Price trade {@code i} executes at. A resting trade executes at its own price and the
+     * arriving trade at the quantity-weighted price of the resting trades it took, so both
+     * legs of every fill are at the resting price.
+     */
+    double executionPrice(int i) {
+        if (i > 0) {
+            return prices[i];
+        }
+        double notional = 0;
+        for (int j = 1; j < tradeIds.length; j++) {
+            notional += quantities[j] * prices[j];
+        }
+        return notional / quantities[0];
+    }
+
+    /**
+     * Whether trade {@code i} still has the terms it was crossed on.
+     */
+    boolean unchanged(int i, long portfolioId, String symbol, boolean buy, int quantity, double price) {
+        return portfolioIds[i] == portfolioId && this.symbol.equals(symbol) && buys[i] == buy
+                && quantities[i] == quantity && Double.compare(prices[i], price) == 0;
+    }
+}
@@ -0,0 +1,283 @@
+package com.tradingplatform.crossing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Price-time priority book of resting PENDING trades for one symbol of one organization.
+ *
+ * Orders live in a pool of parallel primitive arrays; each price level is an intrusive
+ * doubly linked FIFO threaded through the pool, and unused slots form a free list through
+ * the same links, so resting an order allocates nothing once the pool has grown. Levels are
+ * kept sorted worst first, so the best level is always the last one. Not thread-safe.
+ *
+ * Trades cannot be partially executed, so crossing is all-or-none: an arriving trade takes
+ * resting trades in priority order that still fit its remaining quantity, and matches only
+ * if they add up to exactly its quantity. Trades of the same portfolio never cross.
+ */
+final class OrderBook {
+    private static final int NONE = -1;
+
+    private final String symbol;
+
+    // Order pool, indexed by slot
+    private long[] tradeIds;
+    private long[] portfolioIds;
+    private int[] quantities;
+    private double[] prices;
+    private boolean[] buys;
+    private int[] next;
+    private int[] prev;
+    private int freeHead = NONE;
+    private int used;
+
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+    private int[] scratch = new int[16];
+
+    OrderBook(String symbol) {
+        this(symbol, 16);
+    }
+
+    OrderBook(String symbol, int capacity) {
+        this.symbol = symbol;
+        tradeIds = new long[capacity];
+        portfolioIds = new long[capacity];
+        quantities = new int[capacity];
+        prices = new double[capacity];
+        buys = new boolean[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    boolean contains(long tradeId) {
+        return slots.containsKey(tradeId);
+    }
+
+    /**
+     * Crosses an arriving trade against the book, or rests it if it does not fully match.
+     *
+     * @param maxScan resting trades to look at before giving up on a match
+     * @return the arriving trade followed by the resting trades it crossed with, which have
+     *         left the book; {@code null} if the trade now rests in the book
+     */
+    Match submit(long tradeId, long portfolioId, boolean buy, int quantity, double price, int maxScan) {
+        if (slots.containsKey(tradeId)) {
+            return null;
+        }
+        Side opposite = buy ? asks : bids;
+        int remaining = quantity;
+        int matched = 0;
+        int scanned = 0;
+        levels:
+        for (int level = opposite.count - 1; level >= 0; level--) {
+            if (!crosses(buy, price, opposite.levelPrices[level])) {
+                break;
+            }
+            for (int slot = opposite.heads[level]; slot != NONE; slot = next[slot]) {
+                if (++scanned > maxScan) {
+                    break levels;
+                }
+                if (portfolioIds[slot] == portfolioId || quantities[slot] > remaining) {
+                    continue;
+                }
+                if (matched == scratch.length) {
+                    scratch = Arrays.copyOf(scratch, matched * 2);
+                }
+                scratch[matched++] = slot;
+                remaining -= quantities[slot];
+                if (remaining == 0) {
+                    break levels;
+                }
+            }
+        }
+
+        if (remaining == 0) {
+            Match match = new Match(symbol, matched + 1);
+            match.set(0, tradeId, portfolioId, buy, quantity, price);
+            for (int i = 0; i < matched; i++) {
+                int slot = scratch[i];
+                match.set(i + 1, tradeIds[slot], portfolioIds[slot], buys[slot], quantities[slot], prices[slot]);
+                release(slot);
+            }
+            return match;
+        }
+        rest(tradeId, portfolioId, buy, quantity, price);
+        return null;
+    }
+
+    /**
+     * Takes a trade out of the book if it rests there.
+     */
+    boolean remove(long tradeId) {
+        Integer slot = slots.get(tradeId);
+        if (slot == null) {
+            return false;
+        }
+        release(slot);
+        return true;
+    }
+
+    /**
+     * Takes out the resting trades of the given portfolios that are not in {@code keep}.
+     *
+     * @return the number of trades taken out
+     */
+    int retain(Set<Long> portfolios, Set<Long> keep) {
+        List<Integer> gone = new ArrayList<>();
+        for (int slot : slots.values()) {
+            if (portfolios.contains(portfolioIds[slot]) && !keep.contains(tradeIds[slot])) {
+                gone.add(slot);
+            }
+        }
+        for (int slot : gone) {
+            release(slot);
+        }
+        return gone.size();
+    }
+
+    private void rest(long tradeId, long portfolioId, boolean buy, int quantity, double price) {
+        int slot = allocate();
+        tradeIds[slot] = tradeId;
+        portfolioIds[slot] = portfolioId;
+        quantities[slot] = quantity;
+        prices[slot] = price;
+        buys[slot] = buy;
+        slots.put(tradeId, slot);
+        (buy ? bids : asks).append(slot);
+    }
+
+    private void release(int slot) {
+        slots.remove(tradeIds[slot]);
+        (buys[slot] ? bids : asks).unlink(slot);
+        next[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    private int allocate() {
+        if (freeHead != NONE) {
+            int slot = freeHead;
+            freeHead = next[slot];
+            return slot;
+        }
+        if (used == tradeIds.length) {
+            int capacity = used * 2;
+            tradeIds = Arrays.copyOf(tradeIds, capacity);
+            portfolioIds = Arrays.copyOf(portfolioIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            buys = Arrays.copyOf(buys, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+        return used++;
+    }
+
+    private static boolean crosses(boolean buy, double price, double restingPrice) {
+        return buy ? restingPrice <= price : restingPrice >= price;
+    }
+
+    // Price levels of one side, sorted worst first; each holds the head and tail of its FIFO
+    private final class Side {
+        private final boolean buy;
+        private double[] levelPrices = new double[8];
+        private int[] heads = new int[8];
+        private int[] tails = new int[8];
+        private int count;
+
+        private Side(boolean buy) {
+            this.buy = buy;
+        }
+
+        private void append(int slot) {
+            double price = OrderBook.this.prices[slot];
+            int level = find(price);
+            if (level < 0) {
+                level = insertLevel(-level - 1, price);
+            }
+            int tail = tails[level];
+            prev[slot] = tail;
+            next[slot] = NONE;
+            if (tail == NONE) {
+                heads[level] = slot;
+            } else {
+                next[tail] = slot;
+            }
+            tails[level] = slot;
+        }
+
+        private void unlink(int slot) {
+            int level = find(OrderBook.this.prices[slot]);
+            int before = prev[slot];
+            int after = next[slot];
+            if (before == NONE) {
+                heads[level] = after;
+            } else {
+                next[before] = after;
+            }
+            if (after == NONE) {
+                tails[level] = before;
+            } else {
+                prev[after] = before;
+            }
+            if (heads[level] == NONE) {
+                removeLevel(level);
+            }
+        }
+
+        // Binary search; best levels (highest bid, lowest ask) sort last
+        private int find(double price) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(levelPrices[mid], price);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private int compare(double a, double b) {
+            return buy ? Double.compare(a, b) : Double.compare(b, a);
+        }
+
+        private int insertLevel(int index, double price) {
+            if (count == levelPrices.length) {
+                levelPrices = Arrays.copyOf(levelPrices, count * 2);
+                heads = Arrays.copyOf(heads, count * 2);
+                tails = Arrays.copyOf(tails, count * 2);
+            }
+            // New prices usually arrive near the top of the book, so shifts are short
+            System.arraycopy(levelPrices, index, levelPrices, index + 1, count - index);
+            System.arraycopy(heads, index, heads, index + 1, count - index);
+            System.arraycopy(tails, index, tails, index + 1, count - index);
+            levelPrices[index] = price;
+            heads[index] = NONE;
+            tails[index] = NONE;
+            count++;
+            return index;
+        }
+
+        private void removeLevel(int index) {
+            System.arraycopy(levelPrices, index + 1, levelPrices, index, count - index - 1);
+            System.arraycopy(heads, index + 1, heads, index, count - index - 1);
+            System.arraycopy(tails, index + 1, tails, index, count - index - 1);
+            count--;
+        }
+    }
+}
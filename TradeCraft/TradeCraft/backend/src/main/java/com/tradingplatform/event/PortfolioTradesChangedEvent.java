@@ -0,0 +1,46 @@
+package com.tradingplatform.event;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trades of some portfolios changed in bulk, without a {@link TradeEvent} per trade.
+ * Published by the set-based JDBC paths (import, bulk transitions, settlement) and
+ * delivered to listeners once the surrounding transaction commits.
+ */
+public class PortfolioTradesChangedEvent {
+    // Earliest trade date changed, per portfolio
+    private final Map<Long, LocalDate> earliestTradeDates;
+    private final boolean positionsChanged;
+    private final boolean pendingChanged;
+
+    /**
+     * @param positionsChanged trades were added or canceled, so holdings may differ
+     * @param pendingChanged   trades were added or left PENDING, so crossable trades may differ
+     */
+    public PortfolioTradesChangedEvent(Map<Long, LocalDate> earliestTradeDates, boolean positionsChanged,
+                                       boolean pendingChanged) {
+        this.earliestTradeDates = Collections.unmodifiableMap(new HashMap<>(earliestTradeDates));
+        this.positionsChanged = positionsChanged;
+        this.pendingChanged = pendingChanged;
+    }
+
+    public Set<Long> getPortfolioIds() {
+        return earliestTradeDates.keySet();
+    }
+
+    public Map<Long, LocalDate> getEarliestTradeDates() {
+        return earliestTradeDates;
+    }
+
+    public boolean isPositionsChanged() {
+        return positionsChanged;
+    }
+
+    public boolean isPendingChanged() {
+        return pendingChanged;
+    }
+}
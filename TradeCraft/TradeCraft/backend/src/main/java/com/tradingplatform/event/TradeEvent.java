@@ -0,0 +1,124 @@
+package com.tradingplatform.event;
+
+import com.tradingplatform.model.Trade;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+
+import java.time.LocalDate;
+
+/**
+ * Immutable snapshot of a trade mutation, published by {@code TradeService} and
+ * delivered to listeners once the surrounding transaction commits.
+ */
+public class TradeEvent {
+    private final Type type;
+    private final Long tradeId;
+    private final Long portfolioId;
+    private final Long organizationId;
+    private final String symbol;
+    private final TradeSide side;
+    private final int quantity;
+    private final double price;
+    private final double commission;
+    private final LocalDate tradeDate;
+    private final TradeStatus status;
+
+    // Values before an update; equal to the current values for every other type
+    private final Long previousPortfolioId;
+    private final String previousSymbol;
+    private final LocalDate previousTradeDate;
+
+    private TradeEvent(Type type, Trade trade, Long organizationId, Long previousPortfolioId, String previousSymbol,
+                       LocalDate previousTradeDate) {
+        this.type = type;
+        this.tradeId = trade.getId();
+        this.portfolioId = trade.getPortfolio().getId();
+        this.organizationId = organizationId;
+        this.symbol = trade.getSymbol();
+        this.side = trade.getSide();
+        this.quantity = trade.getQuantity();
+        this.price = trade.getPrice();
+        this.commission = trade.getCommission() != null ? trade.getCommission() : 0.0;
+        this.tradeDate = trade.getTradeDate();
+        this.status = trade.getStatus();
+        this.previousPortfolioId = previousPortfolioId;
+        this.previousSymbol = previousSymbol;
+        this.previousTradeDate = previousTradeDate;
+    }
+
+    public static TradeEvent of(Type type, Trade trade) {
+        return of(type, trade, trade.getPortfolio().getOrganization().getId());
+    }
+
+    // For callers that already know the organization, so a lazy portfolio is not initialized
+    public static TradeEvent of(Type type, Trade trade, Long organizationId) {
+        return new TradeEvent(type, trade, organizationId, trade.getPortfolio().getId(), trade.getSymbol(),
+                trade.getTradeDate());
+    }
+
+    public static TradeEvent updated(Trade trade, Long organizationId, Long previousPortfolioId,
+                                     String previousSymbol, LocalDate previousTradeDate) {
+        return new TradeEvent(Type.UPDATED, trade, organizationId, previousPortfolioId, previousSymbol,
+                previousTradeDate);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getTradeId() {
+        return tradeId;
+    }
+
+    public Long getPortfolioId() {
+        return portfolioId;
+    }
+
+    public Long getOrganizationId() {
+        return organizationId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public TradeSide getSide() {
+        return side;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getCommission() {
+        return commission;
+    }
+
+    public LocalDate getTradeDate() {
+        return tradeDate;
+    }
+
+    public TradeStatus getStatus() {
+        return status;
+    }
+
+    public Long getPreviousPortfolioId() {
+        return previousPortfolioId;
+    }
+
+    public String getPreviousSymbol() {
+        return previousSymbol;
+    }
+
+    public LocalDate getPreviousTradeDate() {
+        return previousTradeDate;
+    }
+
+    public enum Type {
+        CREATED, UPDATED, DELETED, EXECUTED, SETTLED, CANCELED
+    }
+}
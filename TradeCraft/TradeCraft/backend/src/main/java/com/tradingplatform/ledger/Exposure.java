@@ -0,0 +1,30 @@
+package com.tradingplatform.ledger;
+
+/**
+ * A portfolio's position in one symbol together with its gross exposure, both at last
+ * trade prices.
+ */
+public final class Exposure {
+    private final long quantity;
+    private final double lastPrice;
+    private final double grossExposure;
+
+    Exposure(long quantity, double lastPrice, double grossExposure) {
+        this.quantity = quantity;
+        this.lastPrice = lastPrice;
+        this.grossExposure = grossExposure;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    // NaN if the portfolio never traded the symbol
+    public double getLastPrice() {
+        return lastPrice;
+    }
+
+    public double getGrossExposure() {
+        return grossExposure;
+    }
+}
@@ -0,0 +1,107 @@
+package com.tradingplatform.ledger;
+
+import com.tradingplatform.model.Trade.TradeSide;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running position in one symbol. Cost basis uses the average-cost method and the
+ * market price is the price of the most recently applied trade, unless the holding
+ * has since been marked to a market price.
+ */
+public class Holding {
+    private final String symbol;
+    private long quantity;
+    private double totalCost;
+    private double currentPrice;
+
+    public Holding(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * A holding in a previously recorded state, e.g. from a position snapshot.
+     */
+    public static Holding restore(String symbol, long quantity, double totalCost, double currentPrice) {
+        Holding holding = new Holding(symbol);
+        holding.quantity = quantity;
+        holding.totalCost = totalCost;
+        holding.currentPrice = currentPrice;
+        return holding;
+    }
+
+    public void apply(TradeSide side, long tradeQuantity, double price, double commission) {
+        if (side == TradeSide.BUY) {
+            totalCost += price * tradeQuantity + commission;
+            quantity += tradeQuantity;
+        } else { // SELL
+            double costBasisPerShare = quantity > 0 ? totalCost / quantity : 0;
+            totalCost -= costBasisPerShare * tradeQuantity;
+            quantity -= tradeQuantity;
+        }
+        currentPrice = price;
+    }
+
+    public void markTo(double price) {
+        currentPrice = price;
+    }
+
+    public Holding copy() {
+        Holding copy = new Holding(symbol);
+        copy.quantity = quantity;
+        copy.totalCost = totalCost;
+        copy.currentPrice = currentPrice;
+        return copy;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public double getCurrentPrice() {
+        return currentPrice;
+    }
+
+    public double getAverageCost() {
+        return quantity > 0 ? totalCost / quantity : 0;
+    }
+
+    public double getMarketValue() {
+        return currentPrice * quantity;
+    }
+
+    public double getProfitLoss() {
+        return getMarketValue() - totalCost;
+    }
+
+    public double getProfitLossPercent() {
+        return totalCost > 0 ? (getProfitLoss() / totalCost) * 100 : 0;
+    }
+
+    public boolean isOpen() {
+        return quantity != 0;
+    }
+
+    // Same keys as the holdings entries the API has always returned
+    public Map<String, Object> toMap() {
+        Map<String, Object> holding = new HashMap<>();
+        holding.put("symbol", symbol);
+        holding.put("quantity", quantity);
+        holding.put("totalCost", totalCost);
+        holding.put("averageCost", getAverageCost());
+        holding.put("currentPrice", currentPrice);
+        holding.put("marketValue", getMarketValue());
+        holding.put("profitLoss", getProfitLoss());
+        holding.put("profitLossPercent", getProfitLossPercent());
+        return holding;
+    }
+}
@@ -0,0 +1,205 @@
+package com.tradingplatform.ledger;
+
+import com.tradingplatform.model.Trade;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Symbol-keyed open-addressing table of {@link Holding}s.
+ *
+ * Uses linear probing over a power-of-two array with the symbol stored in the holding
+ * itself, so applying a trade to an existing position allocates nothing. Not thread-safe.
+ */
+public class HoldingsTable {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Holding[] slots;
+    private int size;
+
+    public HoldingsTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HoldingsTable(int expectedSymbols) {
+        slots = new Holding[tableSizeFor(expectedSymbols)];
+    }
+
+    public static HoldingsTable of(List<Trade> trades) {
+        HoldingsTable table = new HoldingsTable();
+        for (Trade trade : trades) {
+            table.apply(trade);
+        }
+        return table;
+    }
+
+    /**
+     * Applies a trade; canceled trades never affect positions.
+     */
+    public void apply(Trade trade) {
+        if (trade.getStatus() == TradeStatus.CANCELED) {
+            return;
+        }
+        apply(trade.getSymbol(), trade.getSide(), trade.getQuantity(), trade.getPrice(),
+                trade.getCommission() != null ? trade.getCommission() : 0.0);
+    }
+
+    public void apply(String symbol, TradeSide side, long quantity, double price, double commission) {
+        getOrCreate(symbol).apply(side, quantity, price, commission);
+    }
+
+    public Holding get(String symbol) {
+        Holding[] tab = slots;
+        int mask = tab.length - 1;
+        for (int i = indexFor(symbol, mask); ; i = (i + 1) & mask) {
+            Holding holding = tab[i];
+            if (holding == null) {
+                return null;
+            }
+            if (holding.getSymbol().equals(symbol)) {
+                return holding;
+            }
+        }
+    }
+
+    public Holding getOrCreate(String symbol) {
+        Holding[] tab = slots;
+        int mask = tab.length - 1;
+        int i = indexFor(symbol, mask);
+        for (Holding holding; (holding = tab[i]) != null; i = (i + 1) & mask) {
+            if (holding.getSymbol().equals(symbol)) {
+                return holding;
+            }
+        }
+        Holding created = new Holding(symbol);
+        tab[i] = created;
+        if (++size * 2 > tab.length) {
+            resize();
+        }
+        return created;
+    }
+
+    /**
+     * Inserts or replaces the holding for its symbol.
+     */
+    public void put(Holding holding) {
+        Holding[] tab = slots;
+        int mask = tab.length - 1;
+        int i = indexFor(holding.getSymbol(), mask);
+        for (Holding existing; (existing = tab[i]) != null; i = (i + 1) & mask) {
+            if (existing.getSymbol().equals(holding.getSymbol())) {
+                tab[i] = holding;
+                return;
+            }
+        }
+        tab[i] = holding;
+        if (++size * 2 > tab.length) {
+            resize();
+        }
+    }
+
+    public void remove(String symbol) {
+        Holding[] tab = slots;
+        int mask = tab.length - 1;
+        int i = indexFor(symbol, mask);
+        for (Holding holding; (holding = tab[i]) != null; i = (i + 1) & mask) {
+            if (holding.getSymbol().equals(symbol)) {
+                deleteSlot(i);
+                size--;
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Consumer<Holding> action) {
+        for (Holding holding : slots) {
+            if (holding != null) {
+                action.accept(holding);
+            }
+        }
+    }
+
+    /**
+     * Copies of the positions with a non-zero quantity.
+     */
+    public List<Holding> openHoldings() {
+        List<Holding> open = new ArrayList<>(size);
+        for (Holding holding : slots) {
+            if (holding != null && holding.isOpen()) {
+                open.add(holding.copy());
+            }
+        }
+        return open;
+    }
+
+    public double totalMarketValue() {
+        double total = 0;
+        for (Holding holding : slots) {
+            if (holding != null && holding.isOpen()) {
+                total += holding.getMarketValue();
+            }
+        }
+        return total;
+    }
+
+    // Sum of absolute position sizes at the holdings' current prices
+    public double grossExposure() {
+        double total = 0;
+        for (Holding holding : slots) {
+            if (holding != null && holding.isOpen()) {
+                total += Math.abs(holding.getMarketValue());
+            }
+        }
+        return total;
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones
+    private void deleteSlot(int hole) {
+        Holding[] tab = slots;
+        int mask = tab.length - 1;
+        tab[hole] = null;
+        for (int i = (hole + 1) & mask; tab[i] != null; i = (i + 1) & mask) {
+            int home = indexFor(tab[i].getSymbol(), mask);
+            // Move the entry into the hole unless its home slot lies cyclically in (hole, i]
+            boolean homeBetween = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (!homeBetween) {
+                tab[hole] = tab[i];
+                tab[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    private void resize() {
+        Holding[] old = slots;
+        Holding[] tab = new Holding[old.length << 1];
+        int mask = tab.length - 1;
+        for (Holding holding : old) {
+            if (holding != null) {
+                int i = indexFor(holding.getSymbol(), mask);
+                while (tab[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                tab[i] = holding;
+            }
+        }
+        slots = tab;
+    }
+
+    private static int indexFor(String symbol, int mask) {
+        int h = symbol.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int expected) {
+        int n = Integer.highestOneBit(Math.max(expected * 2 - 1, DEFAULT_CAPACITY - 1)) << 1;
+        return Math.max(n, DEFAULT_CAPACITY);
+    }
+}
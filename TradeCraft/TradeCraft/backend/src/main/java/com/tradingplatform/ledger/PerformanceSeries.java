@@ -0,0 +1,135 @@
+package com.tradingplatform.ledger;
+
+import com.tradingplatform.model.Trade;
+import com.tradingplatform.model.Trade.TradeStatus;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Daily portfolio market values over a date range, built in a single forward sweep.
+ *
+ * Trades are sorted once by trade date and applied to one {@link HoldingsTable} as the
+ * sweep passes their date, with the running market value adjusted per trade, so the cost
+ * is O(trades + days) rather than a replay per day.
+ */
+public class PerformanceSeries {
+    private final List<LocalDate> dates;
+    private final List<Double> values;
+
+    private PerformanceSeries(List<LocalDate> dates, List<Double> values) {
+        this.dates = dates;
+        this.values = values;
+    }
+
+    /**
+     * @param trades every trade of the portfolio up to {@code endDate}; trades before
+     *               {@code startDate} seed the opening positions
+     */
+    public static PerformanceSeries compute(List<Trade> trades, LocalDate startDate, LocalDate endDate,
+                                            Sampling sampling) {
+        return compute(trades, startDate, endDate, sampling, null);
+    }
+
+    /**
+     * As above, but each emitted date values positions at {@code marks} where a mark is
+     * known, falling back to the last trade price.
+     */
+    public static PerformanceSeries compute(List<Trade> trades, LocalDate startDate, LocalDate endDate,
+                                            Sampling sampling, Marks marks) {
+        List<Trade> sorted = new ArrayList<>(trades);
+        sorted.sort(Comparator.comparing(Trade::getTradeDate).thenComparing(Trade::getId));
+
+        HoldingsTable holdings = new HoldingsTable();
+        double marketValue = 0;
+        int next = 0;
+
+        List<LocalDate> dates = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            while (next < sorted.size() && !sorted.get(next).getTradeDate().isAfter(date)) {
+                marketValue += apply(holdings, sorted.get(next++));
+            }
+            if (sampling.emits(date, endDate)) {
+                dates.add(date);
+                values.add(marks != null ? markedValue(holdings, date, marks) : marketValue);
+            }
+        }
+        return new PerformanceSeries(dates, values);
+    }
+
+    // Applies a trade and returns the resulting change in total market value
+    private static double apply(HoldingsTable holdings, Trade trade) {
+        if (trade.getStatus() == TradeStatus.CANCELED) {
+            return 0;
+        }
+        Holding holding = holdings.getOrCreate(trade.getSymbol());
+        double before = holding.getMarketValue();
+        holding.apply(trade.getSide(), trade.getQuantity(), trade.getPrice(),
+                trade.getCommission() != null ? trade.getCommission() : 0.0);
+        return holding.getMarketValue() - before;
+    }
+
+    private static double markedValue(HoldingsTable holdings, LocalDate date, Marks marks) {
+        double[] total = new double[1];
+        holdings.forEach(holding -> {
+            if (holding.isOpen()) {
+                double close = marks.close(holding.getSymbol(), date);
+                total[0] += holding.getQuantity() * (Double.isNaN(close) ? holding.getCurrentPrice() : close);
+            }
+        });
+        return total[0];
+    }
+
+    public List<LocalDate> getDates() {
+        return dates;
+    }
+
+    public List<Double> getValues() {
+        return values;
+    }
+
+    /**
+     * Market price of a symbol as of the close of a day, or {@code NaN} if none is known.
+     */
+    @FunctionalInterface
+    public interface Marks {
+        double close(String symbol, LocalDate date);
+    }
+
+    public enum Sampling {
+        DAILY,
+        // Last day of each week (Sunday) or month, plus the final date of the range
+        WEEKLY,
+        MONTHLY;
+
+        public static Sampling fromString(String interval) {
+            if (interval == null) {
+                return DAILY;
+            }
+            switch (interval.toLowerCase()) {
+                case "1w":
+                case "weekly":
+                    return WEEKLY;
+                case "1mo":
+                case "monthly":
+                    return MONTHLY;
+                default:
+                    return DAILY;
+            }
+        }
+
+        boolean emits(LocalDate date, LocalDate endDate) {
+            if (this == DAILY || date.equals(endDate)) {
+                return true;
+            }
+            if (this == WEEKLY) {
+                return date.getDayOfWeek() == DayOfWeek.SUNDAY;
+            }
+            return date.getDayOfMonth() == date.lengthOfMonth();
+        }
+    }
+}
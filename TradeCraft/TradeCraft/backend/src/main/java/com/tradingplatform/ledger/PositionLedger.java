@@ -0,0 +1,303 @@
+package com.tradingplatform.ledger;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.event.TradeEvent;
+import com.tradingplatform.model.Portfolio;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.repository.PortfolioRepository;
+import com.tradingplatform.repository.TradeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-portfolio positions kept current from committed trade events.
+ *
+ * A portfolio's book is built from the trade table the first time it is read (or on
+ * startup / {@link #rebuild(Long)}), after which holdings are served in O(symbols).
+ * New trades are applied incrementally. Updates, deletions and cancellations can land
+ * anywhere in the history, and average cost is order dependent, so those rebuild only
+ * the affected symbol from the trade table. Bulk changes rebuild the whole book.
+ */
+@Component
+public class PositionLedger {
+    private static final Logger logger = LoggerFactory.getLogger(PositionLedger.class);
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private final TradeRepository tradeRepository;
+    private final PortfolioRepository portfolioRepository;
+    private final ConcurrentMap<Long, Book> books = new ConcurrentHashMap<>();
+    // Shared by all books, so a rebuilt or evicted book never repeats an earlier version
+    private final AtomicLong versions = new AtomicLong();
+
+    @Value("${app.ledger.warm-on-startup:false}")
+    private boolean warmOnStartup;
+
+    public PositionLedger(TradeRepository tradeRepository, PortfolioRepository portfolioRepository) {
+        this.tradeRepository = tradeRepository;
+        this.portfolioRepository = portfolioRepository;
+    }
+
+    /**
+     * Returns a copy of the open positions of a portfolio.
+     */
+    public List<Holding> getHoldings(Long portfolioId) {
+        Book book = loadedBook(portfolioId);
+        synchronized (book) {
+            return book.holdings.openHoldings();
+        }
+    }
+
+    /**
+     * Returns open positions for several portfolios, building any books that are not
+     * loaded yet with one trade query per {@value #LOAD_BATCH_SIZE} portfolios.
+     */
+    public Map<Long, List<Holding>> getHoldings(Collection<Long> portfolioIds) {
+        List<Long> missing = new ArrayList<>();
+        for (Long portfolioId : portfolioIds) {
+            Book book = books.computeIfAbsent(portfolioId, id -> new Book());
+            synchronized (book) {
+                if (!book.loaded) {
+                    missing.add(portfolioId);
+                }
+            }
+        }
+        for (int from = 0; from < missing.size(); from += LOAD_BATCH_SIZE) {
+            loadAll(missing.subList(from, Math.min(from + LOAD_BATCH_SIZE, missing.size())));
+        }
+
+        Map<Long, List<Holding>> result = new LinkedHashMap<>();
+        for (Long portfolioId : portfolioIds) {
+            result.put(portfolioId, getHoldings(portfolioId));
+        }
+        return result;
+    }
+
+    /**
+     * Position in one symbol and gross exposure of the whole portfolio, read under the book
+     * lock without copying holdings.
+     */
+    public Exposure getExposure(Long portfolioId, String symbol) {
+        Book book = loadedBook(portfolioId);
+        synchronized (book) {
+            Holding holding = book.holdings.get(symbol);
+            return holding != null
+                    ? new Exposure(holding.getQuantity(), holding.getCurrentPrice(), book.holdings.grossExposure())
+                    : new Exposure(0, Double.NaN, book.holdings.grossExposure());
+        }
+    }
+
+    /**
+     * Monotonic counter bumped on every change to a portfolio's positions. Versions are
+     * never reused, even after the book is evicted and loaded again.
+     */
+    public long getVersion(Long portfolioId) {
+        Book book = loadedBook(portfolioId);
+        synchronized (book) {
+            return book.version;
+        }
+    }
+
+    public void rebuild(Long portfolioId) {
+        Book book = books.computeIfAbsent(portfolioId, id -> new Book());
+        synchronized (book) {
+            load(portfolioId, book);
+        }
+    }
+
+    public void rebuildAll() {
+        for (Portfolio portfolio : portfolioRepository.findAll()) {
+            rebuild(portfolio.getId());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (warmOnStartup) {
+            long start = System.currentTimeMillis();
+            rebuildAll();
+            logger.info("Position ledger loaded {} portfolios in {} ms", books.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTradeEvent(TradeEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+                applyCreated(event);
+                break;
+            case UPDATED:
+                refreshSymbol(event.getPreviousPortfolioId(), event.getPreviousSymbol());
+                refreshSymbol(event.getPortfolioId(), event.getSymbol());
+                break;
+            case DELETED:
+            case CANCELED:
+                refreshSymbol(event.getPortfolioId(), event.getSymbol());
+                break;
+            default:
+                // Status changes other than cancellation do not move positions
+                break;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioTradesChanged(PortfolioTradesChangedEvent event) {
+        if (!event.isPositionsChanged()) {
+            return;
+        }
+        for (Long portfolioId : event.getPortfolioIds()) {
+            Book book = books.get(portfolioId);
+            if (book == null) {
+                continue;
+            }
+            synchronized (book) {
+                if (book.loaded) {
+                    load(portfolioId, book);
+                } else {
+                    book.stale = true;
+                }
+            }
+        }
+    }
+
+    private void applyCreated(TradeEvent event) {
+        Book book = books.get(event.getPortfolioId());
+        if (book == null) {
+            return; // Not loaded yet; the trade is picked up when the book is built
+        }
+        synchronized (book) {
+            if (!book.loaded) {
+                book.stale = true;
+                return;
+            }
+            if (event.getTradeId() > book.lastTradeId) {
+                book.holdings.apply(event.getSymbol(), event.getSide(), event.getQuantity(),
+                        event.getPrice(), event.getCommission());
+                book.lastTradeId = event.getTradeId();
+                book.version = versions.incrementAndGet();
+            } else {
+                // Committed out of id order or already seen by a concurrent load; replay the symbol
+                reloadSymbol(event.getPortfolioId(), event.getSymbol(), book);
+            }
+        }
+    }
+
+    private void refreshSymbol(Long portfolioId, String symbol) {
+        Book book = books.get(portfolioId);
+        if (book == null) {
+            return;
+        }
+        synchronized (book) {
+            if (book.loaded) {
+                reloadSymbol(portfolioId, symbol, book);
+            } else {
+                book.stale = true;
+            }
+        }
+    }
+
+    private Book loadedBook(Long portfolioId) {
+        Book book = books.computeIfAbsent(portfolioId, id -> new Book());
+        synchronized (book) {
+            if (!book.loaded) {
+                load(portfolioId, book);
+            }
+        }
+        return book;
+    }
+
+    private void load(Long portfolioId, Book book) {
+        HoldingsTable holdings = new HoldingsTable();
+        long lastTradeId = 0;
+        for (Object[] row : tradeRepository.findPositionRowsByPortfolioId(portfolioId, TradeStatus.CANCELED)) {
+            lastTradeId = Math.max(lastTradeId, applyRow(holdings, row, 0));
+        }
+        install(book, holdings, lastTradeId);
+    }
+
+    private void loadAll(List<Long> portfolioIds) {
+        Map<Long, HoldingsTable> tables = new HashMap<>();
+        Map<Long, Long> lastTradeIds = new HashMap<>();
+        for (Object[] row : tradeRepository.findPositionRowsByPortfolioIdIn(portfolioIds, TradeStatus.CANCELED)) {
+            Long portfolioId = (Long) row[0];
+            long tradeId = applyRow(tables.computeIfAbsent(portfolioId, id -> new HoldingsTable()), row, 1);
+            lastTradeIds.merge(portfolioId, tradeId, Math::max);
+        }
+
+        for (Long portfolioId : portfolioIds) {
+            Book book = books.computeIfAbsent(portfolioId, id -> new Book());
+            synchronized (book) {
+                if (book.loaded) {
+                    continue;
+                }
+                if (book.stale) {
+                    // A trade committed while the batch was reading; our rows may predate it
+                    load(portfolioId, book);
+                } else {
+                    install(book, tables.getOrDefault(portfolioId, new HoldingsTable()),
+                            lastTradeIds.getOrDefault(portfolioId, 0L));
+                }
+            }
+        }
+    }
+
+    private void install(Book book, HoldingsTable holdings, long lastTradeId) {
+        book.holdings = holdings;
+        book.lastTradeId = lastTradeId;
+        book.loaded = true;
+        book.stale = false;
+        book.version = versions.incrementAndGet();
+    }
+
+    private void reloadSymbol(Long portfolioId, String symbol, Book book) {
+        HoldingsTable holdings = new HoldingsTable(1);
+        long lastTradeId = book.lastTradeId;
+        for (Object[] row : tradeRepository.findPositionRowsByPortfolioIdAndSymbol(portfolioId, symbol, TradeStatus.CANCELED)) {
+            lastTradeId = Math.max(lastTradeId, applyRow(holdings, row, 0));
+        }
+        Holding holding = holdings.get(symbol);
+        if (holding != null) {
+            book.holdings.put(holding);
+        } else {
+            book.holdings.remove(symbol);
+        }
+        book.lastTradeId = lastTradeId;
+        book.version = versions.incrementAndGet();
+    }
+
+    // Row layout matches TradeRepository.findPositionRowsByPortfolioId, starting at offset
+    private long applyRow(HoldingsTable holdings, Object[] row, int offset) {
+        long tradeId = (Long) row[offset];
+        String symbol = (String) row[offset + 1];
+        TradeSide side = (TradeSide) row[offset + 2];
+        int quantity = (Integer) row[offset + 3];
+        double price = (Double) row[offset + 4];
+        double commission = row[offset + 5] != null ? (Double) row[offset + 5] : 0.0;
+        holdings.apply(symbol, side, quantity, price, commission);
+        return tradeId;
+    }
+
+    private static final class Book {
+        private HoldingsTable holdings = new HoldingsTable();
+        private long lastTradeId;
+        private long version;
+        private boolean loaded;
+        // Set when an event arrives before the book is loaded
+        private boolean stale;
+    }
+}
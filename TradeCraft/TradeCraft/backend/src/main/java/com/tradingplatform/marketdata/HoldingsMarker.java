@@ -0,0 +1,56 @@
+package com.tradingplatform.marketdata;
+
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.PerformanceSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * Marks ledger holdings to live quotes from the {@link LivePriceTable}, which is only filled
+ * when a tick source is configured, and otherwise to prices from the {@link PriceStore}.
+ * Marking to stored prices is disabled by default, in which case holdings keep the last
+ * trade price; symbols with neither always do.
+ */
+@Component
+public class HoldingsMarker {
+    private final PriceStore priceStore;
+    private final LivePriceTable livePriceTable;
+
+    @Value("${app.marketdata.mark-to-market:false}")
+    private boolean markToMarket;
+
+    public HoldingsMarker(PriceStore priceStore, LivePriceTable livePriceTable) {
+        this.priceStore = priceStore;
+        this.livePriceTable = livePriceTable;
+    }
+
+    /**
+     * Marks holdings in place to the live quote or latest stored price. The ledger hands out
+     * copies, so the lists passed here are safe to modify.
+     */
+    public List<Holding> mark(List<Holding> holdings) {
+        for (Holding holding : holdings) {
+            OptionalDouble price = livePriceTable.markPrice(holding.getSymbol());
+            if (!price.isPresent() && markToMarket) {
+                price = priceStore.latestPrice(holding.getSymbol());
+            }
+            if (price.isPresent()) {
+                holding.markTo(price.getAsDouble());
+            }
+        }
+        return holdings;
+    }
+
+    /**
+     * Daily closes for performance valuation, or {@code null} to value at last trade price.
+     */
+    public PerformanceSeries.Marks dailyMarks() {
+        if (!markToMarket) {
+            return null;
+        }
+        return (symbol, date) -> priceStore.closeOn(symbol, date).orElse(Double.NaN);
+    }
+}
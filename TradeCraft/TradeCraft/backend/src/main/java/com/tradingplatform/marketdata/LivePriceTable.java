@@ -0,0 +1,184 @@
+package com.tradingplatform.marketdata;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.OptionalDouble;
+
+/**
+ * Latest bid, ask and last price per symbol, for marking positions in real time.
+ *
+ * Quotes live in one flat {@code long[]} indexed by {@link SymbolDictionary} id, a cache
+ * line per symbol so neighbouring symbols do not contend. There is a single writer (the
+ * {@link TickFeed} thread) and any number of readers, none of which lock: each slot is a
+ * seqlock whose version is odd while the writer is inside it, and readers retry until they
+ * see the same even version before and after reading.
+ */
+@Component
+public class LivePriceTable {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Longs per symbol: version, bid, ask, last, timestamp, padding up to 64 bytes
+    private static final int STRIDE = 8;
+    private static final int VERSION = 0;
+    private static final int BID = 1;
+    private static final int ASK = 2;
+    private static final int LAST = 3;
+    private static final int TIMESTAMP = 4;
+
+    private final SymbolDictionary dictionary = new SymbolDictionary();
+    private volatile long[] slots = new long[256 * STRIDE];
+
+    public LivePriceTable(MeterRegistry meterRegistry) {
+        Gauge.builder("marketdata.live.symbols", dictionary, SymbolDictionary::size).register(meterRegistry);
+    }
+
+    public SymbolDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Id to pass to {@link #update(int, double, double, double, long)} for an upper-case symbol.
+     */
+    public int idFor(String symbol) {
+        return dictionary.intern(symbol);
+    }
+
+    /**
+     * Replaces the quote of a symbol; {@code NaN} marks a side as absent. Must only be
+     * called from one thread at a time.
+     */
+    public void update(int id, double bid, double ask, double last, long timestamp) {
+        long[] table = slots;
+        int base = id * STRIDE;
+        if (base >= table.length) {
+            table = grow(base);
+        }
+        long version = (long) SLOTS.getOpaque(table, base + VERSION);
+        SLOTS.setOpaque(table, base + VERSION, version + 1);
+        VarHandle.storeStoreFence();
+        SLOTS.setOpaque(table, base + BID, Double.doubleToRawLongBits(bid));
+        SLOTS.setOpaque(table, base + ASK, Double.doubleToRawLongBits(ask));
+        SLOTS.setOpaque(table, base + LAST, Double.doubleToRawLongBits(last));
+        SLOTS.setOpaque(table, base + TIMESTAMP, timestamp);
+        SLOTS.setRelease(table, base + VERSION, version + 2);
+    }
+
+    /**
+     * Price to mark a position at: the last trade, else the bid/ask mid, if the feed has
+     * quoted the symbol.
+     */
+    public OptionalDouble markPrice(String symbol) {
+        int id = dictionary.idOf(symbol);
+        if (id < 0) {
+            return OptionalDouble.empty();
+        }
+        Quote quote = read(id);
+        if (quote == null) {
+            return OptionalDouble.empty();
+        }
+        double mark = quote.markPrice();
+        return Double.isNaN(mark) ? OptionalDouble.empty() : OptionalDouble.of(mark);
+    }
+
+    /**
+     * Latest quote of a symbol, or {@code null} if the feed has not quoted it.
+     */
+    public Quote quote(String symbol) {
+        int id = dictionary.idOf(symbol);
+        return id < 0 ? null : read(id);
+    }
+
+    /**
+     * Changes on every update of the symbol; lets a reader tell which quotes moved.
+     */
+    public long version(int id) {
+        long[] table = slots;
+        int base = id * STRIDE;
+        return base < table.length ? (long) SLOTS.getAcquire(table, base + VERSION) : 0;
+    }
+
+    private Quote read(int id) {
+        while (true) {
+            long[] table = slots;
+            int base = id * STRIDE;
+            if (base >= table.length) {
+                return null;
+            }
+            long before = (long) SLOTS.getAcquire(table, base + VERSION);
+            if (before == 0) {
+                return null;
+            }
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long bid = (long) SLOTS.getOpaque(table, base + BID);
+            long ask = (long) SLOTS.getOpaque(table, base + ASK);
+            long last = (long) SLOTS.getOpaque(table, base + LAST);
+            long timestamp = (long) SLOTS.getOpaque(table, base + TIMESTAMP);
+            VarHandle.loadLoadFence();
+            if ((long) SLOTS.getOpaque(table, base + VERSION) == before) {
+                return new Quote(Double.longBitsToDouble(bid), Double.longBitsToDouble(ask),
+                        Double.longBitsToDouble(last), timestamp);
+            }
+        }
+    }
+
+    // Only the writer grows the table; readers still holding the old one see slightly stale quotes
+    private long[] grow(int base) {
+        long[] current = slots;
+        int length = current.length;
+        while (length <= base) {
+            length *= 2;
+        }
+        long[] grown = Arrays.copyOf(current, length);
+        slots = grown;
+        return grown;
+    }
+
+    public static final class Quote {
+        private final double bid;
+        private final double ask;
+        private final double last;
+        private final long timestamp;
+
+        private Quote(double bid, double ask, double last, long timestamp) {
+            this.bid = bid;
+            this.ask = ask;
+            this.last = last;
+            this.timestamp = timestamp;
+        }
+
+        public double getBid() {
+            return bid;
+        }
+
+        public double getAsk() {
+            return ask;
+        }
+
+        public double getLast() {
+            return last;
+        }
+
+        // Epoch millis of the tick
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        double markPrice() {
+            if (last > 0) {
+                return last;
+            }
+            if (bid > 0 && ask > 0) {
+                return (bid + ask) / 2;
+            }
+            return Double.NaN;
+        }
+    }
+}
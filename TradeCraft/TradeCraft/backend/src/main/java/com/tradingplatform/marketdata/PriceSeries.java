@@ -0,0 +1,41 @@
+package com.tradingplatform.marketdata;
+
+/**
+ * Zero-copy view over a contiguous range of one symbol's stored prices.
+ */
+public final class PriceSeries {
+    static final PriceSeries EMPTY = new PriceSeries(null, 0, 0);
+
+    private final SymbolPriceFile.Snapshot snapshot;
+    private final int from;
+    private final int size;
+
+    PriceSeries(SymbolPriceFile.Snapshot snapshot, int from, int size) {
+        this.snapshot = snapshot;
+        this.from = from;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timestampMillis(int index) {
+        return snapshot.timestamp(from + checkIndex(index));
+    }
+
+    public double price(int index) {
+        return snapshot.price(from + checkIndex(index));
+    }
+
+    public long volume(int index) {
+        return snapshot.volume(from + checkIndex(index));
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,326 @@
+package com.tradingplatform.marketdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Local store of end-of-day and intraday prices, one memory-mapped file per symbol.
+ *
+ * CSV files dropped into the inbox directory are ingested on a schedule and then moved to
+ * {@code processed/} (or {@code failed/}). Each line is {@code symbol,timestamp,price[,volume]};
+ * the timestamp is an ISO date-time with an offset, a UTC local date-time, or a date, which is
+ * taken as that day's close. Malformed lines are skipped and counted. Files are mapped on first
+ * use, so nothing is loaded on startup.
+ */
+@Component
+public class PriceStore {
+    private static final Logger logger = LoggerFactory.getLogger(PriceStore.class);
+
+    private static final String FILE_SUFFIX = ".px";
+    // Bounds the negative lookup cache; symbols come from user input
+    private static final int MAX_MISSING = 10_000;
+
+    private final ConcurrentMap<String, SymbolPriceFile> files = new ConcurrentHashMap<>();
+    // Symbols known to have no file, so lookups do not hit the file system each time
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.marketdata.store-dir:data/prices}")
+    private String storeDir;
+
+    @Value("${app.marketdata.inbox-dir:data/prices/inbox}")
+    private String inboxDir;
+
+    private Path storePath;
+    private Path inboxPath;
+
+    public PriceStore(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        storePath = Files.createDirectories(Paths.get(storeDir));
+        inboxPath = Files.createDirectories(Paths.get(inboxDir));
+    }
+
+    @Scheduled(fixedDelayString = "${app.marketdata.poll-interval-ms:60000}")
+    public void pollInbox() {
+        List<Path> pending = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(inboxPath, "*.csv")) {
+            stream.forEach(pending::add);
+        } catch (IOException e) {
+            logger.error("Could not list price inbox {}", inboxPath, e);
+            return;
+        }
+        pending.sort(null); // Oldest first when files are named by date
+
+        for (Path file : pending) {
+            String outcome = "processed";
+            try {
+                int records = ingest(file);
+                logger.info("Ingested {} prices from {}", records, file.getFileName());
+            } catch (IOException | RuntimeException e) {
+                outcome = "failed";
+                logger.error("Could not ingest price file {}", file.getFileName(), e);
+            }
+            try {
+                Path target = Files.createDirectories(inboxPath.resolve(outcome));
+                Files.move(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                logger.error("Could not move price file {}", file.getFileName(), e);
+            }
+        }
+    }
+
+    /**
+     * Ingests one CSV file. Lines that cannot be parsed are skipped and logged.
+     *
+     * @return number of price records written
+     */
+    public int ingest(Path csv) throws IOException {
+        Map<String, Batch> batches = new HashMap<>();
+        int skipped = 0;
+        String firstError = null;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (lineNumber == 1 && fields[0].trim().equalsIgnoreCase("symbol")) {
+                    continue; // Header
+                }
+                if (fields.length < 3) {
+                    if (skipped++ == 0) {
+                        firstError = "line " + lineNumber + ": expected symbol,timestamp,price[,volume]";
+                    }
+                    continue;
+                }
+                try {
+                    String symbol = normalize(fields[0]);
+                    long timestamp = parseTimestamp(fields[1].trim());
+                    double price = Double.parseDouble(fields[2].trim());
+                    long volume = fields.length > 3 && !fields[3].trim().isEmpty()
+                            ? Long.parseLong(fields[3].trim()) : 0;
+                    batches.computeIfAbsent(symbol, s -> new Batch()).add(timestamp, price, volume);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    if (skipped++ == 0) {
+                        firstError = "line " + lineNumber + ": " + e.getMessage();
+                    }
+                }
+            }
+        }
+        if (skipped > 0) {
+            logger.warn("Skipped {} malformed lines in {}, first at {}", skipped, csv.getFileName(), firstError);
+        }
+
+        int written = 0;
+        missing.removeAll(batches.keySet());
+        for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+            Batch batch = entry.getValue();
+            batch.sort();
+            file(entry.getKey()).write(batch.timestamps, batch.prices, batch.volumes, batch.size);
+            written += batch.size;
+        }
+        if (!batches.isEmpty()) {
+            eventPublisher.publishEvent(new PriceUpdateEvent(new HashSet<>(batches.keySet())));
+        }
+        return written;
+    }
+
+    public boolean hasSymbol(String symbol) {
+        SymbolPriceFile file = existing(symbol);
+        return file != null && file.snapshot().count > 0;
+    }
+
+    public OptionalDouble latestPrice(String symbol) {
+        return priceAt(symbol, Long.MAX_VALUE);
+    }
+
+    /**
+     * Price in effect at an instant: the last record at or before it.
+     */
+    public OptionalDouble priceAt(String symbol, Instant at) {
+        return priceAt(symbol, at.toEpochMilli());
+    }
+
+    /**
+     * Last price recorded on or before the given day, UTC.
+     */
+    public OptionalDouble closeOn(String symbol, LocalDate date) {
+        return priceAt(symbol, endOfDay(date));
+    }
+
+    /**
+     * Records with timestamps in {@code [from, to]}, as a view over the mapped file.
+     */
+    public PriceSeries range(String symbol, Instant from, Instant to) {
+        SymbolPriceFile file = existing(symbol);
+        if (file == null) {
+            return PriceSeries.EMPTY;
+        }
+        SymbolPriceFile.Snapshot snapshot = file.snapshot();
+        int first = snapshot.floorIndex(from.toEpochMilli() - 1) + 1;
+        int last = snapshot.floorIndex(to.toEpochMilli());
+        return last < first ? PriceSeries.EMPTY : new PriceSeries(snapshot, first, last - first + 1);
+    }
+
+    private OptionalDouble priceAt(String symbol, long epochMillis) {
+        SymbolPriceFile file = existing(symbol);
+        if (file == null) {
+            return OptionalDouble.empty();
+        }
+        SymbolPriceFile.Snapshot snapshot = file.snapshot();
+        int index = snapshot.floorIndex(epochMillis);
+        return index < 0 ? OptionalDouble.empty() : OptionalDouble.of(snapshot.price(index));
+    }
+
+    // Maps the symbol's file if one exists; never creates one
+    private SymbolPriceFile existing(String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        String key;
+        try {
+            key = normalize(symbol);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        SymbolPriceFile file = files.get(key);
+        if (file != null || missing.contains(key)) {
+            return file;
+        }
+        if (!Files.exists(pathFor(key))) {
+            if (missing.size() >= MAX_MISSING) {
+                missing.clear();
+            }
+            missing.add(key);
+            return null;
+        }
+        return file(key);
+    }
+
+    private SymbolPriceFile file(String key) {
+        return files.computeIfAbsent(key, k -> {
+            try {
+                return SymbolPriceFile.open(pathFor(k));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path pathFor(String key) {
+        return storePath.resolve(key + FILE_SUFFIX);
+    }
+
+    // Symbols become file names, so only a conservative character set is accepted
+    private static String normalize(String symbol) {
+        String key = symbol.trim().toUpperCase();
+        if (key.isEmpty() || !key.matches("[A-Z0-9._-]+") || key.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid symbol: " + symbol);
+        }
+        return key;
+    }
+
+    private static long parseTimestamp(String value) {
+        if (value.length() == 10) {
+            return endOfDay(LocalDate.parse(value));
+        }
+        TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parse(value);
+        if (parsed.isSupported(ChronoField.OFFSET_SECONDS)) {
+            return Instant.from(parsed).toEpochMilli();
+        }
+        return LocalDateTime.from(parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    // Closes are stamped at the last millisecond of the day so intraday prices sort before them
+    static long endOfDay(LocalDate date) {
+        return date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() - 1;
+    }
+
+    // Parsed records for one symbol within a single file
+    private static final class Batch {
+        private long[] timestamps = new long[16];
+        private double[] prices = new double[16];
+        private long[] volumes = new long[16];
+        private int size;
+
+        private void add(long timestamp, double price, long volume) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+                volumes = Arrays.copyOf(volumes, size * 2);
+            }
+            timestamps[size] = timestamp;
+            prices[size] = price;
+            volumes[size] = volume;
+            size++;
+        }
+
+        // Stable sort by timestamp; for duplicate timestamps the last line in the file wins
+        private void sort() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            long[] sortedTimestamps = new long[size];
+            double[] sortedPrices = new double[size];
+            long[] sortedVolumes = new long[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int source = order[i];
+                if (count > 0 && sortedTimestamps[count - 1] == timestamps[source]) {
+                    count--;
+                }
+                sortedTimestamps[count] = timestamps[source];
+                sortedPrices[count] = prices[source];
+                sortedVolumes[count] = volumes[source];
+                count++;
+            }
+            timestamps = sortedTimestamps;
+            prices = sortedPrices;
+            volumes = sortedVolumes;
+            size = count;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.tradingplatform.marketdata;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Published after new prices for some symbols become visible in the {@link PriceStore}.
+ */
+public class PriceUpdateEvent {
+    private final Set<String> symbols;
+
+    public PriceUpdateEvent(Set<String> symbols) {
+        this.symbols = Collections.unmodifiableSet(symbols);
+    }
+
+    // Upper-case symbols, as stored
+    public Set<String> getSymbols() {
+        return symbols;
+    }
+}
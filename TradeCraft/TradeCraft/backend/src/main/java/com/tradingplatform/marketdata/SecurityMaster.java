@@ -0,0 +1,131 @@
+package com.tradingplatform.marketdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference data per symbol: sector, industry, currency, lot size and average daily volume.
+ *
+ * Loaded from a CSV file with the header
+ * {@code symbol,sector,industry,currency,lotSize,averageDailyVolume}. The file is re-read when
+ * its modification time changes and the new snapshot replaces the old one in a single write,
+ * so readers always see one complete version. A file that fails to parse leaves the current
+ * snapshot in place.
+ */
+@Component
+public class SecurityMaster {
+    private static final Logger logger = LoggerFactory.getLogger(SecurityMaster.class);
+
+    public static final String UNKNOWN_SECTOR = "Other";
+
+    @Value("${app.security-master.file:data/securities.csv}")
+    private String file;
+
+    private volatile SecuritySnapshot snapshot = defaults();
+    private long loadedModifiedTime = -1;
+
+    @PostConstruct
+    public void init() {
+        reloadIfChanged();
+    }
+
+    public SecuritySnapshot snapshot() {
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${app.security-master.reload-interval-ms:60000}")
+    public synchronized void reloadIfChanged() {
+        Path path = Paths.get(file);
+        try {
+            if (!Files.exists(path)) {
+                if (loadedModifiedTime == -1) {
+                    logger.warn("Security master file {} not found; using {} built-in securities", path, snapshot.size());
+                    loadedModifiedTime = 0;
+                }
+                return;
+            }
+            long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+            if (modifiedTime == loadedModifiedTime) {
+                return;
+            }
+            snapshot = load(path);
+            loadedModifiedTime = modifiedTime;
+            logger.info("Loaded {} securities from {}", snapshot.size(), path);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not load security master from {}; keeping {} securities", path, snapshot.size(), e);
+        }
+    }
+
+    static SecuritySnapshot load(Path path) throws IOException {
+        // Later lines for the same symbol replace earlier ones
+        Map<String, SecuritySnapshot.Row> rows = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (lineNumber == 1 && fields[0].trim().equalsIgnoreCase("symbol")) {
+                    continue; // Header
+                }
+                if (fields.length < 6) {
+                    throw new IOException("Line " + lineNumber
+                            + ": expected symbol,sector,industry,currency,lotSize,averageDailyVolume");
+                }
+                try {
+                    String symbol = fields[0].trim().toUpperCase();
+                    rows.put(symbol, new SecuritySnapshot.Row(
+                            symbol,
+                            orDefault(fields[1], UNKNOWN_SECTOR),
+                            orDefault(fields[2], UNKNOWN_SECTOR),
+                            orDefault(fields[3], "USD").toUpperCase(),
+                            fields[4].trim().isEmpty() ? 1 : Integer.parseInt(fields[4].trim()),
+                            fields[5].trim().isEmpty() ? 0 : Long.parseLong(fields[5].trim())));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return new SecuritySnapshot(new ArrayList<>(rows.values()), System.currentTimeMillis());
+    }
+
+    // Sectors and liquidity tiers the risk endpoints have always used, for installs without a
+    // master file. Volumes only place each symbol in its old tier (High from 10M, Medium from
+    // 1M); symbols that had no tier have no volume.
+    private static SecuritySnapshot defaults() {
+        String[][] securities = {
+                {"AAPL", "Technology", "60000000"}, {"MSFT", "Technology", "25000000"},
+                {"GOOGL", "Technology", "25000000"}, {"AMZN", "Consumer", "40000000"},
+                {"TSLA", "Automotive", "5000000"}, {"JPM", "Financial", "0"}, {"BAC", "Financial", "0"},
+                {"PFE", "Healthcare", "0"}, {"JNJ", "Healthcare", "0"}, {"XOM", "Energy", "0"}};
+        List<SecuritySnapshot.Row> rows = new ArrayList<>(securities.length);
+        for (String[] entry : securities) {
+            rows.add(new SecuritySnapshot.Row(entry[0], entry[1], entry[1], "USD", 1, Long.parseLong(entry[2])));
+        }
+        return new SecuritySnapshot(rows, 0);
+    }
+
+    private static String orDefault(String value, String defaultValue) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? defaultValue : trimmed;
+    }
+}
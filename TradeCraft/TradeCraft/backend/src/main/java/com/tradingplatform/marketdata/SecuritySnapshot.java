@@ -0,0 +1,104 @@
+package com.tradingplatform.marketdata;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable symbol-indexed view of the security master. Attributes are held in parallel
+ * arrays; {@link #indexOf} resolves a symbol once and the accessors are plain array reads.
+ */
+public final class SecuritySnapshot {
+    private final Map<String, Integer> index;
+    private final String[] symbols;
+    private final String[] sectors;
+    private final String[] industries;
+    private final String[] currencies;
+    private final int[] lotSizes;
+    private final long[] averageDailyVolumes;
+    private final long loadedAt;
+
+    SecuritySnapshot(List<Row> rows, long loadedAt) {
+        int size = rows.size();
+        this.index = new HashMap<>(size * 2);
+        this.symbols = new String[size];
+        this.sectors = new String[size];
+        this.industries = new String[size];
+        this.currencies = new String[size];
+        this.lotSizes = new int[size];
+        this.averageDailyVolumes = new long[size];
+        this.loadedAt = loadedAt;
+        for (int i = 0; i < size; i++) {
+            Row row = rows.get(i);
+            index.put(row.symbol, i);
+            symbols[i] = row.symbol;
+            sectors[i] = row.sector;
+            industries[i] = row.industry;
+            currencies[i] = row.currency;
+            lotSizes[i] = row.lotSize;
+            averageDailyVolumes[i] = row.averageDailyVolume;
+        }
+    }
+
+    /**
+     * @return the symbol's index in this snapshot, or -1 if it is not in the master
+     */
+    public int indexOf(String symbol) {
+        Integer i = symbol != null ? index.get(symbol.toUpperCase()) : null;
+        return i != null ? i : -1;
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public String symbol(int i) {
+        return symbols[i];
+    }
+
+    public String sector(int i) {
+        return sectors[i];
+    }
+
+    public String industry(int i) {
+        return industries[i];
+    }
+
+    public String currency(int i) {
+        return currencies[i];
+    }
+
+    public int lotSize(int i) {
+        return lotSizes[i];
+    }
+
+    /**
+     * @return average daily volume in shares, or 0 if unknown
+     */
+    public long averageDailyVolume(int i) {
+        return averageDailyVolumes[i];
+    }
+
+    // One parsed line of the security master file
+    static final class Row {
+        final String symbol;
+        final String sector;
+        final String industry;
+        final String currency;
+        final int lotSize;
+        final long averageDailyVolume;
+
+        Row(String symbol, String sector, String industry, String currency, int lotSize, long averageDailyVolume) {
+            this.symbol = symbol;
+            this.sector = sector;
+            this.industry = industry;
+            this.currency = currency;
+            this.lotSize = lotSize;
+            this.averageDailyVolume = averageDailyVolume;
+        }
+    }
+}
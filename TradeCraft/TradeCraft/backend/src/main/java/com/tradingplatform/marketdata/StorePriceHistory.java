@@ -0,0 +1,58 @@
+package com.tradingplatform.marketdata;
+
+import com.tradingplatform.risk.PriceHistory;
+import com.tradingplatform.risk.TradePriceHistory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * Daily closes from the {@link PriceStore}, falling back to trade-derived closes for symbols
+ * the store has never seen.
+ */
+@Primary
+@Component
+public class StorePriceHistory implements PriceHistory {
+    private final PriceStore priceStore;
+    private final TradePriceHistory tradePriceHistory;
+
+    public StorePriceHistory(PriceStore priceStore, TradePriceHistory tradePriceHistory) {
+        this.priceStore = priceStore;
+        this.tradePriceHistory = tradePriceHistory;
+    }
+
+    @Override
+    public double[] dailyCloses(List<String> symbols, List<LocalDate> days) {
+        int width = symbols.size();
+        List<Integer> fallback = new ArrayList<>();
+        List<String> fallbackSymbols = new ArrayList<>();
+        double[] closes = new double[days.size() * width];
+        for (int s = 0; s < width; s++) {
+            String symbol = symbols.get(s);
+            if (!priceStore.hasSymbol(symbol)) {
+                fallback.add(s);
+                fallbackSymbols.add(symbol);
+                continue;
+            }
+            for (int d = 0; d < days.size(); d++) {
+                OptionalDouble close = priceStore.closeOn(symbol, days.get(d));
+                closes[d * width + s] = close.isPresent() ? close.getAsDouble() : Double.NaN;
+            }
+        }
+
+        if (!fallback.isEmpty()) {
+            double[] traded = tradePriceHistory.dailyCloses(fallbackSymbols, days);
+            int fallbackWidth = fallback.size();
+            for (int d = 0; d < days.size(); d++) {
+                for (int f = 0; f < fallbackWidth; f++) {
+                    closes[d * width + fallback.get(f)] = traded[d * fallbackWidth + f];
+                }
+            }
+        }
+        return closes;
+    }
+}
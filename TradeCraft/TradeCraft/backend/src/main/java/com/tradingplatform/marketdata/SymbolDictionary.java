@@ -0,0 +1,61 @@
+package com.tradingplatform.marketdata;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dense int ids for symbols, assigned in order of first use and never reused, so they can
+ * index flat arrays. Lookups are lock-free; assigning a new id takes a lock.
+ */
+public final class SymbolDictionary {
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[256];
+    private volatile int size;
+
+    /**
+     * Id of an upper-case symbol, or -1 if it was never interned.
+     */
+    public int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Id of an upper-case symbol, assigning the next one if it is new.
+     */
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            String[] current = symbols;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, next * 2);
+            }
+            current[next] = symbol;
+            symbols = current;
+            size = next + 1;
+            // Published last, so whoever sees the id also sees the symbol
+            ids.put(symbol, next);
+            return next;
+        }
+    }
+
+    public String symbolOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown symbol id: " + id);
+        }
+        return symbols[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,163 @@
+package com.tradingplatform.marketdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-mostly file of fixed-width price records for one symbol, read through a memory map.
+ *
+ * Layout: a 16-byte header (magic, record size, reserved) followed by 24-byte records of
+ * epoch millis, price and volume in ascending timestamp order. Readers work on an immutable
+ * snapshot of the mapping; writers are serialized and publish a new snapshot when done.
+ */
+final class SymbolPriceFile {
+    static final int MAGIC = 0x50585331; // "PXS1"
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+
+    private final Path path;
+    private volatile Snapshot snapshot;
+
+    private SymbolPriceFile(Path path, Snapshot snapshot) {
+        this.path = path;
+        this.snapshot = snapshot;
+    }
+
+    static SymbolPriceFile open(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(RECORD_SIZE).putLong(0).flip();
+                channel.write(header);
+            }
+        }
+        return new SymbolPriceFile(path, map(path));
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Adds records sorted by timestamp. Records newer than the last stored one are appended
+     * in place; otherwise the file is merged and rewritten, with new records replacing
+     * stored ones that have the same timestamp.
+     */
+    synchronized void write(long[] timestamps, double[] prices, long[] volumes, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        Snapshot current = snapshot;
+        if (current.count == 0 || timestamps[0] > current.timestamp(current.count - 1)) {
+            append(current, timestamps, prices, volumes, count);
+        } else {
+            rewrite(current, timestamps, prices, volumes, count);
+        }
+        snapshot = map(path);
+    }
+
+    // Writes after the last whole record, over any partial one left by a crash
+    private void append(Snapshot current, long[] timestamps, double[] prices, long[] volumes, int count)
+            throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(count * RECORD_SIZE);
+        for (int i = 0; i < count; i++) {
+            records.putLong(timestamps[i]).putDouble(prices[i]).putLong(volumes[i]);
+        }
+        records.flip();
+        long position = HEADER_SIZE + (long) current.count * RECORD_SIZE;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                position += channel.write(records, position);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void rewrite(Snapshot current, long[] timestamps, double[] prices, long[] volumes, int count)
+            throws IOException {
+        ByteBuffer merged = ByteBuffer.allocate(HEADER_SIZE + (current.count + count) * RECORD_SIZE);
+        merged.putInt(MAGIC).putInt(RECORD_SIZE).putLong(0);
+        int i = 0;
+        int j = 0;
+        while (i < current.count || j < count) {
+            if (j >= count || (i < current.count && current.timestamp(i) < timestamps[j])) {
+                merged.putLong(current.timestamp(i)).putDouble(current.price(i)).putLong(current.volume(i));
+                i++;
+            } else {
+                if (i < current.count && current.timestamp(i) == timestamps[j]) {
+                    i++; // Replaced by the incoming record
+                }
+                merged.putLong(timestamps[j]).putDouble(prices[j]).putLong(volumes[j]);
+                j++;
+            }
+        }
+        merged.flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (merged.hasRemaining()) {
+                channel.write(merged);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Snapshot map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != RECORD_SIZE) {
+                throw new IOException("Not a price store file: " + path);
+            }
+            return new Snapshot(buffer, (int) ((size - HEADER_SIZE) / RECORD_SIZE));
+        }
+    }
+
+    /**
+     * Immutable view of the records mapped at one point in time.
+     */
+    static final class Snapshot {
+        private final ByteBuffer buffer;
+        final int count;
+
+        private Snapshot(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        long timestamp(int index) {
+            return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+        }
+
+        double price(int index) {
+            return buffer.getDouble(HEADER_SIZE + index * RECORD_SIZE + 8);
+        }
+
+        long volume(int index) {
+            return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + 16);
+        }
+
+        // Index of the last record at or before the timestamp, or -1
+        int floorIndex(long timestamp) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (timestamp(mid) <= timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.tradingplatform.marketdata;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Feeds the {@link LivePriceTable} from a tick source on one dedicated thread.
+ *
+ * {@code app.marketdata.ticks.source} is either a file path, replayed once, or
+ * {@code tcp://host:port}, read until closed and then reconnected. Each line is
+ * {@code symbol,bid,ask,last[,timestamp]}; empty prices are absent and the timestamp (epoch
+ * millis) defaults to arrival time. Ticks are not published one by one: every
+ * {@code publish-interval-ms} a {@link PriceUpdateEvent} names the symbols that moved.
+ */
+@Component
+public class TickFeed {
+    private static final Logger logger = LoggerFactory.getLogger(TickFeed.class);
+    private static final String TCP_PREFIX = "tcp://";
+
+    private final LivePriceTable priceTable;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter ticksCounter;
+    private final Counter rejectedCounter;
+
+    @Value("${app.marketdata.ticks.source:}")
+    private String source;
+
+    @Value("${app.marketdata.ticks.reconnect-ms:5000}")
+    private long reconnectMs;
+
+    private volatile boolean running;
+    private volatile Closeable input;
+    private Thread worker;
+    // Quote versions as of the last published event, by symbol id; scheduler thread only
+    private long[] published = new long[0];
+
+    public TickFeed(LivePriceTable priceTable, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.priceTable = priceTable;
+        this.eventPublisher = eventPublisher;
+        this.ticksCounter = Counter.builder("marketdata.ticks").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("marketdata.ticks.rejected").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (source == null || source.trim().isEmpty()) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "tick-feed");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            closeInput();
+            worker.interrupt();
+            worker.join(5000);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.marketdata.ticks.publish-interval-ms:250}")
+    public void publishChanges() {
+        SymbolDictionary dictionary = priceTable.getDictionary();
+        int size = dictionary.size();
+        if (published.length < size) {
+            published = Arrays.copyOf(published, size);
+        }
+        Set<String> moved = null;
+        for (int id = 0; id < size; id++) {
+            long version = priceTable.version(id);
+            if (version != published[id]) {
+                published[id] = version;
+                if (moved == null) {
+                    moved = new HashSet<>();
+                }
+                moved.add(dictionary.symbolOf(id));
+            }
+        }
+        if (moved != null) {
+            eventPublisher.publishEvent(new PriceUpdateEvent(moved));
+        }
+    }
+
+    private void run() {
+        String target = source.trim();
+        boolean tcp = target.startsWith(TCP_PREFIX);
+        while (running) {
+            try {
+                long applied = tcp ? readSocket(target.substring(TCP_PREFIX.length())) : readFile(target);
+                logger.info("Tick source {} ended after {} ticks", target, applied);
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    logger.error("Tick source {} failed", target, e);
+                }
+            }
+            if (!tcp) {
+                return;
+            }
+            try {
+                Thread.sleep(reconnectMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private long readFile(String path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            input = reader;
+            return consume(reader);
+        } finally {
+            input = null;
+        }
+    }
+
+    private long readSocket(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Tick source must be tcp://host:port");
+        }
+        String host = address.substring(0, colon);
+        int port = Integer.parseInt(address.substring(colon + 1));
+        try (Socket socket = new Socket(host, port);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            input = socket;
+            logger.info("Connected to tick source {}:{}", host, port);
+            return consume(reader);
+        } finally {
+            input = null;
+        }
+    }
+
+    private long consume(BufferedReader reader) throws IOException {
+        long total = 0;
+        long applied = 0;
+        long rejected = 0;
+        String line;
+        while (running && (line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            if (apply(line)) {
+                applied++;
+                total++;
+            } else {
+                rejected++;
+            }
+            // Counters are updated in batches to keep them off the per-tick path
+            if (((applied + rejected) & 0xFFF) == 0) {
+                flushCounters(applied, rejected);
+                applied = 0;
+                rejected = 0;
+            }
+        }
+        flushCounters(applied, rejected);
+        return total;
+    }
+
+    private boolean apply(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 4 || fields[0].trim().equalsIgnoreCase("symbol")) {
+            return false;
+        }
+        try {
+            String symbol = fields[0].trim().toUpperCase();
+            if (symbol.isEmpty()) {
+                return false;
+            }
+            double bid = price(fields[1]);
+            double ask = price(fields[2]);
+            double last = price(fields[3]);
+            long timestamp = fields.length > 4 && !fields[4].trim().isEmpty()
+                    ? Long.parseLong(fields[4].trim()) : System.currentTimeMillis();
+            priceTable.update(priceTable.idFor(symbol), bid, ask, last, timestamp);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static double price(String field) {
+        String value = field.trim();
+        return value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+    }
+
+    private void flushCounters(long applied, long rejected) {
+        ticksCounter.increment(applied);
+        rejectedCounter.increment(rejected);
+    }
+
+    private void closeInput() {
+        Closeable current = input;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.debug("Could not close tick source", e);
+            }
+        }
+    }
+}
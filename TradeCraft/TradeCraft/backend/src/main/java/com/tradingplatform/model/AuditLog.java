@@ -7,7 +7,10 @@ import javax.validation.constraints.Size;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "audit_logs")
+@Table(name = "audit_logs", indexes = {
+        // Keyset listing seeks on (timestamp, id)
+        @Index(name = "idx_audit_logs_timestamp_id", columnList = "timestamp, id")
+})
 public class AuditLog {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
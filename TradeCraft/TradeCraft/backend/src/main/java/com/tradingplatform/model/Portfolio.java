@@ -1,6 +1,9 @@
 package com.tradingplatform.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tradingplatform.cache.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -12,6 +15,8 @@ import java.util.Set;
 
 @Entity
 @Table(name = "portfolios")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.PORTFOLIOS)
 public class Portfolio {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
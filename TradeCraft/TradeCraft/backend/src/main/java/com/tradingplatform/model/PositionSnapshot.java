@@ -0,0 +1,99 @@
+package com.tradingplatform.model;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.time.LocalDate;
+
+/**
+ * One symbol of a portfolio's positions at the end of a day. Written and read in bulk over
+ * JDBC by {@code PositionSnapshotService}; mapped here for the schema.
+ */
+@Entity
+@Table(name = "position_snapshots", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_position_snapshots_portfolio_date_symbol",
+                columnNames = {"portfolio_id", "snapshot_date", "symbol"})
+})
+public class PositionSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @NotNull
+    @Column(name = "snapshot_date", nullable = false)
+    private LocalDate snapshotDate;
+
+    @NotBlank
+    @Size(max = 20)
+    private String symbol;
+
+    private long quantity;
+
+    @Column(name = "total_cost")
+    private double totalCost;
+
+    // Price of the last trade applied, as the ledger values positions
+    @Column(name = "last_price")
+    private double lastPrice;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getPortfolioId() {
+        return portfolioId;
+    }
+
+    public void setPortfolioId(Long portfolioId) {
+        this.portfolioId = portfolioId;
+    }
+
+    public LocalDate getSnapshotDate() {
+        return snapshotDate;
+    }
+
+    public void setSnapshotDate(LocalDate snapshotDate) {
+        this.snapshotDate = snapshotDate;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public void setTotalCost(double totalCost) {
+        this.totalCost = totalCost;
+    }
+
+    public double getLastPrice() {
+        return lastPrice;
+    }
+
+    public void setLastPrice(double lastPrice) {
+        this.lastPrice = lastPrice;
+    }
+}
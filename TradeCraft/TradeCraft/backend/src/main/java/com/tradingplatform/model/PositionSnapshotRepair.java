@@ -0,0 +1,52 @@
+package com.tradingplatform.model;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDate;
+
+/**
+ * Marks a portfolio's position snapshots from a date on as stale. Written over JDBC in the
+ * transaction of the trade change and deleted by {@code PositionSnapshotService} once the
+ * snapshots are rewritten; mapped here for the schema.
+ */
+@Entity
+@Table(name = "position_snapshot_repairs", indexes = {
+        @Index(name = "idx_position_snapshot_repairs_portfolio", columnList = "portfolio_id")
+})
+public class PositionSnapshotRepair {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @NotNull
+    @Column(name = "from_date", nullable = false)
+    private LocalDate fromDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getPortfolioId() {
+        return portfolioId;
+    }
+
+    public void setPortfolioId(Long portfolioId) {
+        this.portfolioId = portfolioId;
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    public void setFromDate(LocalDate fromDate) {
+        this.fromDate = fromDate;
+    }
+}
@@ -0,0 +1,34 @@
+package com.tradingplatform.model;
+
+import javax.persistence.*;
+
+/**
+ * A user whose tokens issued up to {@code revokedAt} (epoch millis) are rejected. Written and
+ * read over JDBC by {@code TokenRevocationList}; mapped here for the schema.
+ */
+@Entity
+@Table(name = "revoked_users")
+public class RevokedUser {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "revoked_at", nullable = false)
+    private long revokedAt;
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public long getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(long revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+}
@@ -1,9 +1,15 @@
 package com.tradingplatform.model;
 
+import com.tradingplatform.cache.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 
 @Entity
 @Table(name = "roles")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.ROLES)
 public class Role {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -9,7 +9,14 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "trades")
+@Table(name = "trades", indexes = {
+        // Due-trade scan of the settlement job
+        @Index(name = "idx_trades_status_settlement", columnList = "status, settlement_date"),
+        // Keyset listings seek on (trade_date, id) within each scope
+        @Index(name = "idx_trades_date_id", columnList = "trade_date, id"),
+        @Index(name = "idx_trades_portfolio_date_id", columnList = "portfolio_id, trade_date, id"),
+        @Index(name = "idx_trades_user_date_id", columnList = "user_id, trade_date, id")
+})
 public class Trade {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -61,6 +68,11 @@ public class Trade {
     @Size(max = 500)
     private String notes;
 
+    // Identifier from the booking system a trade was imported from, unique when present
+    @Size(max = 64)
+    @Column(name = "external_ref", unique = true)
+    private String externalRef;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -198,6 +210,14 @@ public class Trade {
         this.notes = notes;
     }
 
+    public String getExternalRef() {
+        return externalRef;
+    }
+
+    public void setExternalRef(String externalRef) {
+        this.externalRef = externalRef;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,36 @@
+package com.tradingplatform.model;
+
+import javax.persistence.*;
+
+/**
+ * Id of a refresh token already exchanged, kept until the token expires at {@code expiresAt}
+ * (epoch millis). Written over JDBC by {@code TokenRevocationList}; mapped here for the schema.
+ */
+@Entity
+@Table(name = "used_refresh_tokens", indexes = {
+        @Index(name = "idx_used_refresh_tokens_expires_at", columnList = "expires_at")
+})
+public class UsedRefreshToken {
+    @Id
+    @Column(name = "token_id", length = 64)
+    private String tokenId;
+
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt;
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public void setTokenId(String tokenId) {
+        this.tokenId = tokenId;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,60 @@
+package com.tradingplatform.paging;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset listing. There is no total count; {@code nextCursor} is null on the
+ * last page.
+ */
+public class CursorPage<T> {
+    public static final int MAX_SIZE = 1000;
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public CursorPage(List<T> content, String nextCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Limit to request for a page of {@code size} rows: one extra row tells whether another
+     * page follows without a count query.
+     */
+    public static Pageable probe(int size) {
+        return PageRequest.of(0, clamp(size) + 1);
+    }
+
+    /**
+     * Builds the page from rows fetched with {@link #probe(int)}.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        int limit = clamp(size);
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, limit);
+        return new CursorPage<>(content, cursorOf.apply(content.get(limit - 1)));
+    }
+
+    private static int clamp(int size) {
+        return Math.max(1, Math.min(size, MAX_SIZE));
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasNext() {
+        return nextCursor != null;
+    }
+}
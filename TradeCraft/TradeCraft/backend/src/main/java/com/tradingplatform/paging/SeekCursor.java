@@ -0,0 +1,75 @@
+package com.tradingplatform.paging;
+
+import com.tradingplatform.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a keyset listing: the sort key and id of the last row returned.
+ *
+ * Tokens are URL-safe Base64 of {@code kind|key|id}. The kind keeps a token from one listing
+ * from being replayed against another; clients should treat the token as opaque.
+ */
+public final class SeekCursor {
+    public static final String TRADES = "T";
+    public static final String AUDIT_LOGS = "A";
+
+    private final String key;
+    private final long id;
+
+    private SeekCursor(String key, long id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    public static String encode(String kind, Object key, long id) {
+        String raw = kind + "|" + key + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token from {@link #encode}, or returns {@code null} for a missing token, which
+     * starts at the first page.
+     *
+     * @throws BadRequestException if the token is malformed or belongs to another listing
+     */
+    public static SeekCursor decode(String kind, String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[0].equals(kind)) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            return new SeekCursor(parts[1], Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public LocalDate getDateKey() {
+        try {
+            return LocalDate.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public LocalDateTime getDateTimeKey() {
+        try {
+            return LocalDateTime.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,137 @@
+package com.tradingplatform.pretrade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Pre-trade limits by organization and portfolio, reloaded whenever the limits file changes.
+ *
+ * The file holds properties such as {@code default.max-notional=1000000},
+ * {@code organization.7.max-gross-exposure=5e7} or {@code portfolio.42.price-band-percent=5}.
+ * Each limit is resolved portfolio first, then organization, then {@code default.*}, then
+ * the {@code app.pretrade.*} settings. A file that fails to parse leaves the previous limits
+ * in force.
+ */
+@Component
+public class PreTradeLimits {
+    private static final Logger logger = LoggerFactory.getLogger(PreTradeLimits.class);
+
+    @Value("${app.pretrade.limits-file:config/pretrade-limits.properties}")
+    private String limitsFile;
+
+    @Value("${app.pretrade.max-notional:0}")
+    private double maxNotional;
+
+    @Value("${app.pretrade.max-position:0}")
+    private double maxPosition;
+
+    @Value("${app.pretrade.max-gross-exposure:0}")
+    private double maxGrossExposure;
+
+    @Value("${app.pretrade.price-band-percent:0}")
+    private double priceBandPercent;
+
+    private Path path;
+    private long loadedModified = -1;
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        path = Paths.get(limitsFile);
+        snapshot = new Snapshot(configured(), Collections.emptyMap(), Collections.emptyMap());
+        reloadIfChanged();
+    }
+
+    public RiskLimits limitsFor(Long organizationId, Long portfolioId) {
+        Snapshot current = snapshot;
+        RiskLimits limits = current.defaults;
+        RiskLimits organization = current.organizations.get(organizationId);
+        if (organization != null) {
+            limits = organization.orElse(limits);
+        }
+        RiskLimits portfolio = current.portfolios.get(portfolioId);
+        if (portfolio != null) {
+            limits = portfolio.orElse(limits);
+        }
+        return limits;
+    }
+
+    @Scheduled(fixedDelayString = "${app.pretrade.reload-interval-ms:10000}")
+    public synchronized void reloadIfChanged() {
+        long modified;
+        try {
+            modified = Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : 0;
+        } catch (IOException e) {
+            logger.error("Could not read pre-trade limits file {}", path, e);
+            return;
+        }
+        if (modified == loadedModified) {
+            return;
+        }
+        try {
+            snapshot = modified == 0 ? new Snapshot(configured(), Collections.emptyMap(), Collections.emptyMap())
+                    : parse(path);
+            loadedModified = modified;
+            logger.info("Loaded pre-trade limits from {}", modified == 0 ? "settings" : path);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Could not load pre-trade limits from {}; keeping previous limits", path, e);
+        }
+    }
+
+    private RiskLimits configured() {
+        return new RiskLimits(maxNotional, maxPosition, maxGrossExposure, priceBandPercent);
+    }
+
+    private Snapshot parse(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        RiskLimits defaults = RiskLimits.UNSET;
+        Map<Long, RiskLimits> organizations = new HashMap<>();
+        Map<Long, RiskLimits> portfolios = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            double value = Double.parseDouble(properties.getProperty(name).trim());
+            String[] parts = name.trim().split("\\.");
+            if (parts.length == 2 && parts[0].equals("default")) {
+                defaults = defaults.with(parts[1], value);
+            } else if (parts.length == 3 && parts[0].equals("organization")) {
+                organizations.merge(Long.valueOf(parts[1]), RiskLimits.UNSET.with(parts[2], value),
+                        (a, b) -> a.with(parts[2], value));
+            } else if (parts.length == 3 && parts[0].equals("portfolio")) {
+                portfolios.merge(Long.valueOf(parts[1]), RiskLimits.UNSET.with(parts[2], value),
+                        (a, b) -> a.with(parts[2], value));
+            } else {
+                throw new IllegalArgumentException("Unknown pre-trade limit: " + name);
+            }
+        }
+        return new Snapshot(defaults.orElse(configured()), organizations, portfolios);
+    }
+
+    private static final class Snapshot {
+        private final RiskLimits defaults;
+        private final Map<Long, RiskLimits> organizations;
+        private final Map<Long, RiskLimits> portfolios;
+
+        private Snapshot(RiskLimits defaults, Map<Long, RiskLimits> organizations, Map<Long, RiskLimits> portfolios) {
+            this.defaults = defaults;
+            this.organizations = organizations;
+            this.portfolios = portfolios;
+        }
+    }
+}
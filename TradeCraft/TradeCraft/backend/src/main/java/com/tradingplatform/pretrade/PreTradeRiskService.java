@@ -0,0 +1,248 @@
+package com.tradingplatform.pretrade;
+
+import com.tradingplatform.exception.BadRequestException;
+import com.tradingplatform.ledger.Exposure;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.LivePriceTable;
+import com.tradingplatform.marketdata.PriceStore;
+import com.tradingplatform.model.Trade;
+import com.tradingplatform.model.Trade.TradeSide;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-trade controls for new trades: notional per trade, net position per symbol, gross
+ * exposure per portfolio and a fat-finger band around the reference price.
+ *
+ * Positions come from the in-memory {@link PositionLedger}, which already counts pending
+ * trades, so no trade query is made once a book is loaded. Trades that passed but are not
+ * committed yet are held as reservations until their transaction completes, so concurrent
+ * orders cannot each slip under a limit. By then a committed trade is in the ledger.
+ *
+ * An update of a pending trade is checked as a replacement: the old trade is released
+ * (held as a negative reservation until the transaction completes) and the new terms are
+ * checked against positions without it.
+ */
+@Service
+public class PreTradeRiskService {
+    private final PreTradeLimits limits;
+    private final PositionLedger positionLedger;
+    private final LivePriceTable livePriceTable;
+    private final PriceStore priceStore;
+    private final Map<Check, Counter> rejectedCounters = new EnumMap<>(Check.class);
+    private final Timer checkTimer;
+    private final ConcurrentMap<Long, Reservations> reservations = new ConcurrentHashMap<>();
+
+    @Value("${app.pretrade.enabled:true}")
+    private boolean enabled;
+
+    public PreTradeRiskService(PreTradeLimits limits, PositionLedger positionLedger, LivePriceTable livePriceTable,
+                               PriceStore priceStore, MeterRegistry meterRegistry) {
+        this.limits = limits;
+        this.positionLedger = positionLedger;
+        this.livePriceTable = livePriceTable;
+        this.priceStore = priceStore;
+        for (Check check : Check.values()) {
+            rejectedCounters.put(check, Counter.builder("trades.pretrade.rejected")
+                    .tag("check", check.tag).register(meterRegistry));
+        }
+        this.checkTimer = Timer.builder("trades.pretrade.check").register(meterRegistry);
+    }
+
+    /**
+     * Checks a new trade against the limits of its portfolio and, if it passes, reserves
+     * its exposure until the current transaction completes.
+     *
+     * @throws BadRequestException if any limit would be breached
+     */
+    public void check(Long organizationId, Long portfolioId, String symbol, TradeSide side, int quantity,
+                      double price) {
+        check(organizationId, portfolioId, symbol, side, quantity, price, null);
+    }
+
+    /**
+     * Checks new terms for a pending trade, which must not be modified yet. Only a change
+     * that increases a position or the gross exposure can breach those limits.
+     *
+     * @throws BadRequestException if any limit would be breached
+     */
+    public void checkUpdate(Long organizationId, Trade previous, Long portfolioId, String symbol, TradeSide side,
+                            int quantity, double price) {
+        check(organizationId, portfolioId, symbol, side, quantity, price, previous);
+    }
+
+    private void check(Long organizationId, Long portfolioId, String symbol, TradeSide side, int quantity,
+                       double price, Trade previous) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            RiskLimits applicable = limits.limitsFor(organizationId, portfolioId);
+            double notional = quantity * price;
+            if (RiskLimits.isActive(applicable.getMaxNotional()) && notional > applicable.getMaxNotional()) {
+                reject(Check.NOTIONAL, String.format("Trade notional %.2f exceeds the limit of %.2f",
+                        notional, applicable.getMaxNotional()));
+            }
+            boolean samePortfolio = previous != null && previous.getPortfolio().getId().equals(portfolioId);
+            boolean positionLimits = RiskLimits.isActive(applicable.getMaxPosition())
+                    || RiskLimits.isActive(applicable.getMaxGrossExposure());
+            if (!positionLimits) {
+                checkPriceBand(applicable, symbol, price, null);
+                if (previous != null && !samePortfolio) {
+                    release(previous);
+                }
+                return;
+            }
+
+            Reservations pending = reservations.computeIfAbsent(portfolioId, id -> new Reservations());
+            synchronized (pending) {
+                // Read under the reservation lock so a commit is counted either in the ledger or here
+                Exposure exposure = positionLedger.getExposure(portfolioId, symbol);
+                checkPriceBand(applicable, symbol, price, exposure);
+
+                long current = exposure.getQuantity() + pending.quantity(symbol);
+                long after = current + signed(side, quantity);
+                double grossChange = 0;
+                long released = samePortfolio ? -signed(previous.getSide(), previous.getQuantity()) : 0;
+                boolean otherSymbol = samePortfolio && !previous.getSymbol().equals(symbol);
+                if (otherSymbol) {
+                    long held = positionLedger.getExposure(portfolioId, previous.getSymbol()).getQuantity()
+                            + pending.quantity(previous.getSymbol());
+                    grossChange += (Math.abs(held + released) - Math.abs(held)) * previous.getPrice();
+                } else {
+                    after += released;
+                }
+                boolean increasing = Math.abs(after) > Math.abs(current);
+                if (increasing && RiskLimits.isActive(applicable.getMaxPosition())
+                        && Math.abs(after) > applicable.getMaxPosition()) {
+                    reject(Check.POSITION, String.format("Position in %s would reach %d, above the limit of %.0f",
+                            symbol, after, applicable.getMaxPosition()));
+                }
+                grossChange += (Math.abs(after) - Math.abs(current)) * price;
+                double grossIncrease = Math.max(0, grossChange);
+                double gross = exposure.getGrossExposure() + pending.grossExposure + grossIncrease;
+                if (grossIncrease > 0 && RiskLimits.isActive(applicable.getMaxGrossExposure())
+                        && gross > applicable.getMaxGrossExposure()) {
+                    reject(Check.GROSS_EXPOSURE, String.format("Gross exposure would reach %.2f, above the limit of %.2f",
+                            gross, applicable.getMaxGrossExposure()));
+                }
+                reserve(pending, symbol, after - current, grossIncrease);
+                if (otherSymbol) {
+                    reserve(pending, previous.getSymbol(), released, 0);
+                }
+            }
+            if (previous != null && !samePortfolio) {
+                release(previous);
+            }
+        } finally {
+            checkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // The old trade stays in the ledger until the update commits; offset it meanwhile
+    private void release(Trade previous) {
+        Long portfolioId = previous.getPortfolio().getId();
+        Reservations pending = reservations.computeIfAbsent(portfolioId, id -> new Reservations());
+        synchronized (pending) {
+            reserve(pending, previous.getSymbol(), -signed(previous.getSide(), previous.getQuantity()), 0);
+        }
+    }
+
+    private static long signed(TradeSide side, int quantity) {
+        return side == TradeSide.BUY ? quantity : -quantity;
+    }
+
+    private void checkPriceBand(RiskLimits applicable, String symbol, double price, Exposure exposure) {
+        if (!RiskLimits.isActive(applicable.getPriceBandPercent())) {
+            return;
+        }
+        double reference = referencePrice(symbol, exposure);
+        if (Double.isNaN(reference) || reference <= 0) {
+            return; // Nothing to compare a first trade in an unquoted symbol against
+        }
+        double deviation = Math.abs(price - reference) / reference * 100;
+        if (deviation > applicable.getPriceBandPercent()) {
+            reject(Check.PRICE_BAND, String.format("Price %.4f is %.1f%% away from the reference price %.4f",
+                    price, deviation, reference));
+        }
+    }
+
+    // Live quote, else latest stored price, else the portfolio's last trade price
+    private double referencePrice(String symbol, Exposure exposure) {
+        OptionalDouble price = livePriceTable.markPrice(symbol);
+        if (!price.isPresent()) {
+            price = priceStore.latestPrice(symbol);
+        }
+        if (price.isPresent()) {
+            return price.getAsDouble();
+        }
+        return exposure != null ? exposure.getLastPrice() : Double.NaN;
+    }
+
+    private void reserve(Reservations pending, String symbol, long quantity, double grossExposure) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return; // Nothing to wait for; the trade is already visible or was never saved
+        }
+        pending.add(symbol, quantity, grossExposure);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (pending) {
+                    pending.add(symbol, -quantity, -grossExposure);
+                }
+            }
+        });
+    }
+
+    private void reject(Check check, String message) {
+        rejectedCounters.get(check).increment();
+        throw new BadRequestException(message);
+    }
+
+    private enum Check {
+        NOTIONAL("notional"),
+        POSITION("position"),
+        GROSS_EXPOSURE("gross_exposure"),
+        PRICE_BAND("price_band");
+
+        private final String tag;
+
+        Check(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    // Exposure of trades that passed but are not committed yet; guarded by the instance
+    private static final class Reservations {
+        private final Map<String, long[]> quantities = new HashMap<>();
+        private double grossExposure;
+
+        private long quantity(String symbol) {
+            long[] reserved = quantities.get(symbol);
+            return reserved != null ? reserved[0] : 0;
+        }
+
+        private void add(String symbol, long quantity, double gross) {
+            long[] reserved = quantities.computeIfAbsent(symbol, s -> new long[1]);
+            reserved[0] += quantity;
+            if (reserved[0] == 0) {
+                quantities.remove(symbol);
+            }
+            grossExposure = Math.max(0, grossExposure + gross);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.tradingplatform.pretrade;
+
+/**
+ * Pre-trade limits that apply to one portfolio. {@code NaN} leaves a limit to the next
+ * level (portfolio, then organization, then default); zero or less switches it off.
+ */
+public final class RiskLimits {
+    static final RiskLimits UNSET = new RiskLimits(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+
+    // Quantity times price of a single trade
+    private final double maxNotional;
+    // Absolute net quantity per symbol after the trade
+    private final double maxPosition;
+    // Sum of absolute position values at last trade prices
+    private final double maxGrossExposure;
+    // Allowed distance of the trade price from the reference price, in percent
+    private final double priceBandPercent;
+
+    RiskLimits(double maxNotional, double maxPosition, double maxGrossExposure, double priceBandPercent) {
+        this.maxNotional = maxNotional;
+        this.maxPosition = maxPosition;
+        this.maxGrossExposure = maxGrossExposure;
+        this.priceBandPercent = priceBandPercent;
+    }
+
+    /**
+     * These limits with unset ones taken from {@code fallback}.
+     */
+    RiskLimits orElse(RiskLimits fallback) {
+        return new RiskLimits(
+                pick(maxNotional, fallback.maxNotional),
+                pick(maxPosition, fallback.maxPosition),
+                pick(maxGrossExposure, fallback.maxGrossExposure),
+                pick(priceBandPercent, fallback.priceBandPercent));
+    }
+
+    RiskLimits with(String key, double value) {
+        switch (key) {
+            case "max-notional":
+                return new RiskLimits(value, maxPosition, maxGrossExposure, priceBandPercent);
+            case "max-position":
+                return new RiskLimits(maxNotional, value, maxGrossExposure, priceBandPercent);
+            case "max-gross-exposure":
+                return new RiskLimits(maxNotional, maxPosition, value, priceBandPercent);
+            case "price-band-percent":
+                return new RiskLimits(maxNotional, maxPosition, maxGrossExposure, value);
+            default:
+                throw new IllegalArgumentException("Unknown limit: " + key);
+        }
+    }
+
+    public double getMaxNotional() {
+        return maxNotional;
+    }
+
+    public double getMaxPosition() {
+        return maxPosition;
+    }
+
+    public double getMaxGrossExposure() {
+        return maxGrossExposure;
+    }
+
+    public double getPriceBandPercent() {
+        return priceBandPercent;
+    }
+
+    static boolean isActive(double limit) {
+        return limit > 0;
+    }
+
+    private static double pick(double own, double fallback) {
+        return Double.isNaN(own) ? fallback : own;
+    }
+}
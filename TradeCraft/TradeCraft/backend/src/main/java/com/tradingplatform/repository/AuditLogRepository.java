@@ -5,6 +5,7 @@ import com.tradingplatform.model.AuditLog.AuditAction;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -27,4 +28,13 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     Page<AuditLog> findByUserIdAndAction(Long userId, AuditAction action, Pageable pageable);
     
     Page<AuditLog> findByUserIdAndTimestampBetween(Long userId, LocalDateTime startTime, LocalDateTime endTime, Pageable pageable);
+    
+    // Keyset pages, newest first; the Pageable only limits the rows, so no count query is run
+    @Query("SELECT a FROM AuditLog a ORDER BY a.timestamp DESC, a.id DESC")
+    List<AuditLog> findKeysetFirst(Pageable limit);
+    
+    // The redundant timestamp <= bound gives the planner a plain range to seek on
+    @Query("SELECT a FROM AuditLog a WHERE a.timestamp <= ?1 AND (a.timestamp < ?1 OR (a.timestamp = ?1 AND a.id < ?2)) " +
+            "ORDER BY a.timestamp DESC, a.id DESC")
+    List<AuditLog> findKeysetAfter(LocalDateTime timestamp, Long id, Pageable limit);
 }
@@ -1,15 +1,20 @@
 package com.tradingplatform.repository;
 
+import com.tradingplatform.cache.CacheRegions;
 import com.tradingplatform.model.Organization;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 @Repository
 public interface OrganizationRepository extends JpaRepository<Organization, Long> {
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = CacheRegions.REFERENCE_QUERIES)})
     List<Organization> findByActive(boolean active);
     
     Page<Organization> findByActive(boolean active, Pageable pageable);
@@ -1,16 +1,39 @@
 package com.tradingplatform.repository;
 
+import com.tradingplatform.cache.CacheRegions;
 import com.tradingplatform.model.Portfolio;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PortfolioRepository extends JpaRepository<Portfolio, Long> {
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = CacheRegions.REFERENCE_QUERIES)})
     List<Portfolio> findByOrganizationId(Long organizationId);
     
     Page<Portfolio> findByOrganizationId(Long organizationId, Pageable pageable);
+    
+    // Id-only projections for access checks and aggregation; no entities are hydrated
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = CacheRegions.REFERENCE_QUERIES)})
+    @Query("SELECT p.organization.id FROM Portfolio p WHERE p.id = ?1")
+    Optional<Long> findOrganizationIdById(Long id);
+    
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = CacheRegions.REFERENCE_QUERIES)})
+    @Query("SELECT p.id FROM Portfolio p WHERE p.organization.id = ?1 ORDER BY p.id")
+    List<Long> findIdsByOrganizationId(Long organizationId);
+    
+    // Scalar rows (id, name, organizationId) for valuation reports
+    @Query("SELECT p.id, p.name, p.organization.id FROM Portfolio p WHERE p.id IN ?1")
+    List<Object[]> findValuationRowsByIdIn(Collection<Long> ids);
 }
@@ -1,13 +1,18 @@
 package com.tradingplatform.repository;
 
+import com.tradingplatform.cache.CacheRegions;
 import com.tradingplatform.model.Role;
 import com.tradingplatform.model.Role.RoleName;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.Optional;
 
 @Repository
 public interface RoleRepository extends JpaRepository<Role, Long> {
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = CacheRegions.REFERENCE_QUERIES)})
     Optional<Role> findByName(RoleName name);
 }
@@ -5,16 +5,25 @@ import com.tradingplatform.model.Trade.TradeStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface TradeRepository extends JpaRepository<Trade, Long> {
     List<Trade> findByPortfolioId(Long portfolioId);
     
+    boolean existsByPortfolioId(Long portfolioId);
+    
+    // Deletes by id only while the trade still has the given status; returns the rows removed
+    @Modifying
+    @Query("DELETE FROM Trade t WHERE t.id = ?1 AND t.status = ?2")
+    int deleteByIdAndStatus(Long id, TradeStatus status);
+    
     Page<Trade> findByPortfolioId(Long portfolioId, Pageable pageable);
     
     List<Trade> findByUserId(Long userId);
@@ -31,9 +40,62 @@ public interface TradeRepository extends JpaRepository<Trade, Long> {
     @Query("SELECT t FROM Trade t WHERE t.portfolio.id = ?1 AND t.tradeDate BETWEEN ?2 AND ?3")
     Page<Trade> findByPortfolioIdAndTradeDateBetween(Long portfolioId, LocalDate startDate, LocalDate endDate, Pageable pageable);
     
+    @Query("SELECT t FROM Trade t WHERE t.portfolio.id = ?1 AND t.tradeDate <= ?2 ORDER BY t.tradeDate, t.id")
+    List<Trade> findByPortfolioIdUpToTradeDate(Long portfolioId, LocalDate endDate);
+    
+    // (symbol, tradeDate, price) across all portfolios, in date and id order
+    @Query("SELECT t.symbol, t.tradeDate, t.price FROM Trade t " +
+            "WHERE t.symbol IN ?1 AND t.tradeDate BETWEEN ?2 AND ?3 AND t.status <> ?4 ORDER BY t.tradeDate, t.id")
+    List<Object[]> findPriceRowsBySymbolIn(Collection<String> symbols, LocalDate startDate, LocalDate endDate,
+                                           TradeStatus excludedStatus);
+    
     @Query("SELECT t FROM Trade t WHERE t.portfolio.organization.id = ?1")
     List<Trade> findByOrganizationId(Long organizationId);
     
     @Query("SELECT t FROM Trade t WHERE t.portfolio.organization.id = ?1")
     Page<Trade> findByOrganizationId(Long organizationId, Pageable pageable);
+    
+    // Keyset pages, newest first; the Pageable only limits the rows, so no count query is run
+    @Query("SELECT t FROM Trade t ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetFirst(Pageable limit);
+    
+    // The redundant tradeDate <= bound gives the planner a plain range to seek on
+    @Query("SELECT t FROM Trade t WHERE t.tradeDate <= ?1 AND (t.tradeDate < ?1 OR (t.tradeDate = ?1 AND t.id < ?2)) " +
+            "ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetAfter(LocalDate tradeDate, Long id, Pageable limit);
+    
+    @Query("SELECT t FROM Trade t WHERE t.portfolio.organization.id = ?1 ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetFirstByOrganizationId(Long organizationId, Pageable limit);
+    
+    @Query("SELECT t FROM Trade t WHERE t.portfolio.organization.id = ?1 AND t.tradeDate <= ?2 " +
+            "AND (t.tradeDate < ?2 OR (t.tradeDate = ?2 AND t.id < ?3)) ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetAfterByOrganizationId(Long organizationId, LocalDate tradeDate, Long id, Pageable limit);
+    
+    @Query("SELECT t FROM Trade t WHERE t.portfolio.id = ?1 ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetFirstByPortfolioId(Long portfolioId, Pageable limit);
+    
+    @Query("SELECT t FROM Trade t WHERE t.portfolio.id = ?1 AND t.tradeDate <= ?2 " +
+            "AND (t.tradeDate < ?2 OR (t.tradeDate = ?2 AND t.id < ?3)) ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetAfterByPortfolioId(Long portfolioId, LocalDate tradeDate, Long id, Pageable limit);
+    
+    @Query("SELECT t FROM Trade t WHERE t.user.id = ?1 ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetFirstByUserId(Long userId, Pageable limit);
+    
+    @Query("SELECT t FROM Trade t WHERE t.user.id = ?1 AND t.tradeDate <= ?2 " +
+            "AND (t.tradeDate < ?2 OR (t.tradeDate = ?2 AND t.id < ?3)) ORDER BY t.tradeDate DESC, t.id DESC")
+    List<Trade> findKeysetAfterByUserId(Long userId, LocalDate tradeDate, Long id, Pageable limit);
+    
+    // Scalar rows (id, symbol, side, quantity, price, commission) in replay order, for position ledger rebuilds
+    @Query("SELECT t.id, t.symbol, t.side, t.quantity, t.price, t.commission FROM Trade t " +
+            "WHERE t.portfolio.id = ?1 AND t.status <> ?2 ORDER BY t.id")
+    List<Object[]> findPositionRowsByPortfolioId(Long portfolioId, TradeStatus excludedStatus);
+    
+    @Query("SELECT t.id, t.symbol, t.side, t.quantity, t.price, t.commission FROM Trade t " +
+            "WHERE t.portfolio.id = ?1 AND t.symbol = ?2 AND t.status <> ?3 ORDER BY t.id")
+    List<Object[]> findPositionRowsByPortfolioIdAndSymbol(Long portfolioId, String symbol, TradeStatus excludedStatus);
+    
+    // Same rows prefixed with the portfolio id, grouped by portfolio
+    @Query("SELECT t.portfolio.id, t.id, t.symbol, t.side, t.quantity, t.price, t.commission FROM Trade t " +
+            "WHERE t.portfolio.id IN ?1 AND t.status <> ?2 ORDER BY t.portfolio.id, t.id")
+    List<Object[]> findPositionRowsByPortfolioIdIn(Collection<Long> portfolioIds, TradeStatus excludedStatus);
 }
@@ -0,0 +1,185 @@
+package com.tradingplatform.risk;
+
+import com.tradingplatform.ledger.Holding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Historical-simulation Value at Risk and Expected Shortfall.
+ *
+ * Current exposures are revalued under each day of a lookback window of observed returns.
+ * Multi-day horizons use overlapping sums of daily scenario P&L. The loss quantile is found
+ * with a selection pass rather than a full sort. Results are fractions of portfolio value.
+ */
+@Component
+public class HistoricalVarEngine {
+    static final String[] HORIZON_NAMES = {"daily", "weekly", "monthly"};
+    static final int[] HORIZON_DAYS = {1, 5, 21};
+
+    // Fewer scenarios than this cannot support a meaningful tail estimate
+    private static final int MIN_SCENARIOS = 30;
+
+    private final PriceHistory priceHistory;
+
+    @Value("${app.risk.var.lookback-days:250}")
+    private int lookbackDays;
+
+    public HistoricalVarEngine(PriceHistory priceHistory) {
+        this.priceHistory = priceHistory;
+    }
+
+    /**
+     * @param confidenceLevel e.g. 95 or 0.95
+     * @return VaR under the horizon names and Expected Shortfall under
+     *         {@code <horizon>ExpectedShortfall}, or empty when history or value is insufficient
+     */
+    public Optional<Map<String, Double>> calculate(List<Holding> holdings, double confidenceLevel) {
+        double confidence = confidenceLevel > 1 ? confidenceLevel / 100 : confidenceLevel;
+        if (holdings.isEmpty() || confidence <= 0 || confidence >= 1) {
+            return Optional.empty();
+        }
+
+        List<String> symbols = new ArrayList<>(holdings.size());
+        double[] exposures = new double[holdings.size()];
+        double portfolioValue = 0;
+        for (int s = 0; s < holdings.size(); s++) {
+            Holding holding = holdings.get(s);
+            symbols.add(holding.getSymbol());
+            exposures[s] = holding.getMarketValue();
+            portfolioValue += exposures[s];
+        }
+        if (portfolioValue <= 0) {
+            return Optional.empty();
+        }
+
+        List<LocalDate> days = tradingDays(LocalDate.now(), lookbackDays + 1);
+        ReturnMatrix matrix = ReturnMatrix.fromCloses(symbols, days.size(), priceHistory.dailyCloses(symbols, days));
+        double[] dailyPnl = matrix.scenarioPnl(exposures);
+        if (isFlat(dailyPnl)) {
+            return Optional.empty(); // No observed price moves for any holding
+        }
+
+        Map<String, Double> result = new HashMap<>();
+        for (int h = 0; h < HORIZON_DAYS.length; h++) {
+            double[] pnl = horizonPnl(dailyPnl, HORIZON_DAYS[h]);
+            if (pnl.length < MIN_SCENARIOS) {
+                return Optional.empty();
+            }
+            double[] tail = tailLoss(pnl, confidence);
+            result.put(HORIZON_NAMES[h], tail[0] / portfolioValue);
+            result.put(HORIZON_NAMES[h] + "ExpectedShortfall", tail[1] / portfolioValue);
+        }
+        return Optional.of(result);
+    }
+
+    private static boolean isFlat(double[] pnl) {
+        for (double value : pnl) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Overlapping {@code horizon}-day sums of daily P&L.
+     */
+    static double[] horizonPnl(double[] daily, int horizon) {
+        if (horizon <= 1) {
+            return daily;
+        }
+        int scenarios = daily.length - horizon + 1;
+        if (scenarios <= 0) {
+            return new double[0];
+        }
+        double[] pnl = new double[scenarios];
+        double window = 0;
+        for (int d = 0; d < horizon; d++) {
+            window += daily[d];
+        }
+        pnl[0] = window;
+        for (int d = 1; d < scenarios; d++) {
+            window += daily[d + horizon - 1] - daily[d - 1];
+            pnl[d] = window;
+        }
+        return pnl;
+    }
+
+    /**
+     * Returns {VaR, Expected Shortfall} as positive loss amounts at the given confidence.
+     */
+    static double[] tailLoss(double[] pnl, double confidence) {
+        return tailLossInPlace(pnl.clone(), confidence);
+    }
+
+    /**
+     * As {@link #tailLoss}, but reorders {@code scenarios} instead of copying it.
+     */
+    static double[] tailLossInPlace(double[] scenarios, double confidence) {
+        int k = Math.min((int) Math.floor((1 - confidence) * scenarios.length), scenarios.length - 1);
+        select(scenarios, k);
+
+        // After selection the k + 1 worst outcomes occupy [0, k]
+        double tailSum = 0;
+        for (int i = 0; i <= k; i++) {
+            tailSum += scenarios[i];
+        }
+        double valueAtRisk = Math.max(-scenarios[k], 0);
+        double expectedShortfall = Math.max(-tailSum / (k + 1), 0);
+        return new double[]{valueAtRisk, expectedShortfall};
+    }
+
+    // Quickselect: partially orders values so that values[k] is the k-th smallest
+    private static void select(double[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // The most recent count weekdays up to and including endDate, oldest first
+    static List<LocalDate> tradingDays(LocalDate endDate, int count) {
+        List<LocalDate> days = new ArrayList<>(count);
+        for (LocalDate date = endDate; days.size() < count; date = date.minusDays(1)) {
+            if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                days.add(date);
+            }
+        }
+        Collections.reverse(days);
+        return days;
+    }
+}
@@ -0,0 +1,365 @@
+package com.tradingplatform.risk;
+
+import com.tradingplatform.ledger.Holding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Monte Carlo Value at Risk with correlated normal or Student-t shocks.
+ *
+ * The covariance of the lookback returns is Cholesky factored once per request. Paths are
+ * cut into fixed-size chunks, each with its own {@link SplittableRandom} split from the seed
+ * in chunk order, so a seed gives the same answer whatever the pool size or scheduling.
+ * Longer horizons scale the one-day distribution by the square root of time.
+ */
+@Component
+public class MonteCarloVarEngine {
+    public static final int MIN_PATHS = 1_000;
+    public static final int MAX_PATHS = 5_000_000;
+
+    private static final int CHUNK_SIZE = 16_384;
+    // Independent path batches used for the standard error of the VaR estimate
+    private static final int ERROR_BATCHES = 10;
+
+    private final PriceHistory priceHistory;
+    private final ForkJoinPool riskPool;
+
+    @Value("${app.risk.var.lookback-days:250}")
+    private int lookbackDays;
+
+    @Value("${app.risk.mc.degrees-of-freedom:5}")
+    private int degreesOfFreedom;
+
+    public MonteCarloVarEngine(PriceHistory priceHistory, ForkJoinPool riskPool) {
+        this.priceHistory = priceHistory;
+        this.riskPool = riskPool;
+    }
+
+    /**
+     * @return VaR and Expected Shortfall per horizon as fractions of portfolio value, plus
+     *         {@code paths}, {@code dailyStandardError}, {@code dailyRelativeError} and
+     *         {@code computeMillis}, the duration of the run that computed them (results are
+     *         cached, so not of the request serving them); empty when value or history is insufficient
+     */
+    public Optional<Map<String, Double>> calculate(List<Holding> holdings, double confidenceLevel, int paths,
+                                                   long seed, Distribution distribution) {
+        long start = System.nanoTime();
+        double confidence = confidenceLevel > 1 ? confidenceLevel / 100 : confidenceLevel;
+        if (holdings.isEmpty() || confidence <= 0 || confidence >= 1) {
+            return Optional.empty();
+        }
+
+        int width = holdings.size();
+        List<String> symbols = new ArrayList<>(width);
+        double[] exposures = new double[width];
+        double portfolioValue = 0;
+        for (int s = 0; s < width; s++) {
+            symbols.add(holdings.get(s).getSymbol());
+            exposures[s] = holdings.get(s).getMarketValue();
+            portfolioValue += exposures[s];
+        }
+        if (portfolioValue <= 0) {
+            return Optional.empty();
+        }
+
+        List<LocalDate> days = HistoricalVarEngine.tradingDays(LocalDate.now(), lookbackDays + 1);
+        ReturnMatrix matrix = ReturnMatrix.fromCloses(symbols, days.size(), priceHistory.dailyCloses(symbols, days));
+        double[] cholesky = cholesky(matrix.covariance(), width);
+
+        // Positions are linear in returns, so a path's P&L is e·(L z) = (Lᵀe)·z
+        double[] loadings = new double[width];
+        boolean flat = true;
+        for (int j = 0; j < width; j++) {
+            double sum = 0;
+            for (int i = j; i < width; i++) {
+                sum += cholesky[i * width + j] * exposures[i];
+            }
+            loadings[j] = sum;
+            flat &= sum == 0;
+        }
+        if (flat) {
+            return Optional.empty(); // No observed price moves for any holding
+        }
+
+        Tails tails = simulate(loadings, paths, confidence, seed, distribution);
+        double standardError = batchStandardError(tails.batches) / portfolioValue;
+
+        Map<String, Double> result = new HashMap<>();
+        double[] tail = tails.full.tailLoss();
+        for (int h = 0; h < HistoricalVarEngine.HORIZON_DAYS.length; h++) {
+            double scale = Math.sqrt(HistoricalVarEngine.HORIZON_DAYS[h]);
+            result.put(HistoricalVarEngine.HORIZON_NAMES[h], tail[0] * scale / portfolioValue);
+            result.put(HistoricalVarEngine.HORIZON_NAMES[h] + "ExpectedShortfall", tail[1] * scale / portfolioValue);
+        }
+
+        double dailyVaR = tail[0] / portfolioValue;
+        result.put("dailyStandardError", standardError);
+        result.put("dailyRelativeError", dailyVaR > 0 ? standardError / dailyVaR : 0.0);
+        result.put("paths", (double) paths);
+        result.put("computeMillis", (System.nanoTime() - start) / 1_000_000.0);
+        return Optional.of(result);
+    }
+
+    /*
+     * One task per pool worker pulls chunks in any order; the worker reuses one chunk buffer
+     * and folds each chunk into its own bounded tails, which are merged once at the end.
+     * Only the worst outcomes are ever kept, so memory does not grow with the path count.
+     */
+    private Tails simulate(double[] loadings, int paths, double confidence, long seed, Distribution distribution) {
+        int chunks = (paths + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        // Streams are split in chunk order before any work starts
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            randoms[chunk] = root.split();
+        }
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        int workers = Math.min(riskPool.getParallelism(), chunks);
+        List<ForkJoinTask<Tails>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(riskPool.submit(() -> {
+                Tails tails = new Tails(paths, confidence);
+                double[] buffer = new double[Math.min(CHUNK_SIZE, paths)];
+                GaussianSource gaussian = new GaussianSource();
+                for (int chunk = nextChunk.getAndIncrement(); chunk < chunks; chunk = nextChunk.getAndIncrement()) {
+                    int from = chunk * CHUNK_SIZE;
+                    int length = Math.min(CHUNK_SIZE, paths - from);
+                    gaussian.reset(randoms[chunk]);
+                    simulateChunk(loadings, gaussian, distribution, buffer, length);
+                    tails.offer(buffer, from, length);
+                }
+                return tails;
+            }));
+        }
+
+        Tails merged = new Tails(paths, confidence);
+        for (ForkJoinTask<Tails> task : tasks) {
+            merged.merge(task.join());
+        }
+        return merged;
+    }
+
+    private void simulateChunk(double[] loadings, GaussianSource gaussian, Distribution distribution,
+                               double[] pnl, int length) {
+        int width = loadings.length;
+        // Student-t with unit variance: z * sqrt((nu - 2) / chi2(nu))
+        int nu = Math.max(degreesOfFreedom, 3);
+        for (int path = 0; path < length; path++) {
+            double value = 0;
+            for (int j = 0; j < width; j++) {
+                value += loadings[j] * gaussian.next();
+            }
+            if (distribution == Distribution.STUDENT_T) {
+                double chiSquared = 0;
+                for (int k = 0; k < nu; k++) {
+                    double g = gaussian.next();
+                    chiSquared += g * g;
+                }
+                value *= Math.sqrt((nu - 2) / chiSquared);
+            }
+            pnl[path] = value;
+        }
+    }
+
+    private static double batchStandardError(Tail[] batches) {
+        if (batches.length < 2) {
+            return 0;
+        }
+        double[] estimates = new double[batches.length];
+        double mean = 0;
+        for (int b = 0; b < batches.length; b++) {
+            estimates[b] = batches[b].tailLoss()[0];
+            mean += estimates[b];
+        }
+        mean /= batches.length;
+        double variance = 0;
+        for (double estimate : estimates) {
+            variance += (estimate - mean) * (estimate - mean);
+        }
+        variance /= batches.length - 1;
+        // Each batch has 1/B of the paths, so the full-run error is sd / sqrt(B) of the batch spread
+        return Math.sqrt(variance / batches.length);
+    }
+
+    /**
+     * Lower-triangular Cholesky factor of a row-major covariance matrix. Directions with no
+     * variance (symbols without history, or exact collinearity) get a zero column.
+     */
+    static double[] cholesky(double[] covariance, int width) {
+        double[] lower = new double[width * width];
+        for (int j = 0; j < width; j++) {
+            double diagonal = covariance[j * width + j];
+            for (int k = 0; k < j; k++) {
+                diagonal -= lower[j * width + k] * lower[j * width + k];
+            }
+            if (diagonal <= 1e-18) {
+                continue;
+            }
+            double pivot = Math.sqrt(diagonal);
+            lower[j * width + j] = pivot;
+            for (int i = j + 1; i < width; i++) {
+                double sum = covariance[i * width + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= lower[i * width + k] * lower[j * width + k];
+                }
+                lower[i * width + j] = sum / pivot;
+            }
+        }
+        return lower;
+    }
+
+    // Marsaglia polar method, keeping the second variate; SplittableRandom has no Gaussian source on Java 11
+    private static final class GaussianSource {
+        private SplittableRandom random;
+        private double spare;
+        private boolean hasSpare;
+
+        private void reset(SplittableRandom random) {
+            this.random = random;
+            this.hasSpare = false;
+        }
+
+        private double next() {
+            if (hasSpare) {
+                hasSpare = false;
+                return spare;
+            }
+            double u;
+            double v;
+            double s;
+            do {
+                u = random.nextDouble() * 2 - 1;
+                v = random.nextDouble() * 2 - 1;
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+            double factor = Math.sqrt(-2 * Math.log(s) / s);
+            spare = v * factor;
+            hasSpare = true;
+            return u * factor;
+        }
+    }
+
+    // The full run's tail plus one per error batch; path i belongs to batch i % ERROR_BATCHES
+    private static final class Tails {
+        private final Tail full;
+        private final Tail[] batches;
+
+        private Tails(int paths, double confidence) {
+            full = new Tail(paths, confidence);
+            int count = paths >= ERROR_BATCHES ? ERROR_BATCHES : 0;
+            batches = new Tail[count];
+            for (int b = 0; b < count; b++) {
+                batches[b] = new Tail(paths / count + (b < paths % count ? 1 : 0), confidence);
+            }
+        }
+
+        private void offer(double[] pnl, int firstPath, int length) {
+            int batch = batches.length > 0 ? firstPath % batches.length : 0;
+            for (int i = 0; i < length; i++) {
+                full.offer(pnl[i]);
+                if (batches.length > 0) {
+                    batches[batch].offer(pnl[i]);
+                    if (++batch == batches.length) {
+                        batch = 0;
+                    }
+                }
+            }
+        }
+
+        private void merge(Tails other) {
+            full.merge(other.full);
+            for (int b = 0; b < batches.length; b++) {
+                batches[b].merge(other.batches[b]);
+            }
+        }
+    }
+
+    /*
+     * The k + 1 worst outcomes of a run of known size, held in a max-heap so the best of them
+     * is replaced first; k is the index {@link HistoricalVarEngine#tailLossInPlace} would use
+     * on the full run, so both give the same VaR and Expected Shortfall.
+     */
+    private static final class Tail {
+        private final double[] heap;
+        private int size;
+
+        private Tail(int scenarios, double confidence) {
+            int k = Math.min((int) Math.floor((1 - confidence) * scenarios), scenarios - 1);
+            heap = new double[Math.max(k, 0) + 1];
+        }
+
+        private void offer(double value) {
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0 && heap[(i - 1) >>> 1] < value) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = value;
+            } else if (value < heap[0]) {
+                siftDown(value);
+            }
+        }
+
+        private void siftDown(double value) {
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (heap[child] <= value) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = value;
+        }
+
+        private void merge(Tail other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.heap[i]);
+            }
+        }
+
+        // Sorted first, so the sum does not depend on which worker saw which path
+        private double[] tailLoss() {
+            double[] worst = Arrays.copyOf(heap, size);
+            Arrays.sort(worst);
+            double tailSum = 0;
+            for (double value : worst) {
+                tailSum += value;
+            }
+            double valueAtRisk = Math.max(-worst[worst.length - 1], 0);
+            double expectedShortfall = Math.max(-tailSum / worst.length, 0);
+            return new double[]{valueAtRisk, expectedShortfall};
+        }
+    }
+
+    public enum Distribution {
+        NORMAL, STUDENT_T;
+
+        public static Distribution fromString(String distribution) {
+            if (distribution != null && distribution.toLowerCase().replace("-", "_").startsWith("student")) {
+                return STUDENT_T;
+            }
+            return NORMAL;
+        }
+    }
+}
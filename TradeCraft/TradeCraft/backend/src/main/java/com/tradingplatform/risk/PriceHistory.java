@@ -0,0 +1,16 @@
+package com.tradingplatform.risk;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Source of end-of-day closes for risk calculations.
+ */
+public interface PriceHistory {
+
+    /**
+     * Returns a column-major closes matrix, {@code closes[day * symbols.size() + s]}, with
+     * {@code NaN} where no close is known for that symbol and day.
+     */
+    double[] dailyCloses(List<String> symbols, List<LocalDate> days);
+}
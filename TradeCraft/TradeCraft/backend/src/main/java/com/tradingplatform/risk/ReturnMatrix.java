@@ -0,0 +1,108 @@
+package com.tradingplatform.risk;
+
+import java.util.List;
+
+/**
+ * Dense symbols × days matrix of simple daily returns, stored column-major so that all
+ * symbols' returns for one day are contiguous.
+ */
+public final class ReturnMatrix {
+    private final List<String> symbols;
+    private final int days;
+    private final double[] returns;
+
+    private ReturnMatrix(List<String> symbols, int days, double[] returns) {
+        this.symbols = symbols;
+        this.days = days;
+        this.returns = returns;
+    }
+
+    /**
+     * Builds returns from a column-major closes matrix ({@code closes[day * symbols + s]}),
+     * where {@code NaN} marks a day without a price. Missing closes are carried forward and
+     * a symbol's return is zero until its first observed price.
+     */
+    public static ReturnMatrix fromCloses(List<String> symbols, int closeDays, double[] closes) {
+        int width = symbols.size();
+        int days = Math.max(closeDays - 1, 0);
+        double[] returns = new double[days * width];
+        double[] last = new double[width];
+        for (int s = 0; s < width; s++) {
+            last[s] = Double.NaN;
+        }
+        for (int d = 0; d < closeDays; d++) {
+            int base = d * width;
+            for (int s = 0; s < width; s++) {
+                double close = closes[base + s];
+                if (Double.isNaN(close) || close <= 0) {
+                    close = last[s];
+                }
+                if (d > 0 && !Double.isNaN(close) && !Double.isNaN(last[s])) {
+                    returns[(d - 1) * width + s] = close / last[s] - 1;
+                }
+                last[s] = close;
+            }
+        }
+        return new ReturnMatrix(symbols, days, returns);
+    }
+
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public double get(int symbol, int day) {
+        return returns[day * symbols.size() + symbol];
+    }
+
+    /**
+     * Sample covariance of daily returns about a zero mean, as a dense row-major
+     * symbols × symbols matrix.
+     */
+    public double[] covariance() {
+        int width = symbols.size();
+        double[] covariance = new double[width * width];
+        if (days == 0) {
+            return covariance;
+        }
+        for (int d = 0; d < days; d++) {
+            int base = d * width;
+            for (int i = 0; i < width; i++) {
+                double ri = returns[base + i];
+                for (int j = 0; j <= i; j++) {
+                    covariance[i * width + j] += ri * returns[base + j];
+                }
+            }
+        }
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j <= i; j++) {
+                double value = covariance[i * width + j] / days;
+                covariance[i * width + j] = value;
+                covariance[j * width + i] = value;
+            }
+        }
+        return covariance;
+    }
+
+    /**
+     * Daily scenario P&L of a position vector: one weight-vector dot product per day column.
+     *
+     * @param exposures market value per symbol, in {@link #getSymbols()} order
+     */
+    public double[] scenarioPnl(double[] exposures) {
+        int width = symbols.size();
+        double[] pnl = new double[days];
+        for (int d = 0; d < days; d++) {
+            int base = d * width;
+            double sum = 0;
+            for (int s = 0; s < width; s++) {
+                sum += exposures[s] * returns[base + s];
+            }
+            pnl[d] = sum;
+        }
+        return pnl;
+    }
+}
@@ -0,0 +1,79 @@
+package com.tradingplatform.risk;
+
+import com.tradingplatform.dto.RiskDataDto;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Partial aggregation of portfolio risk metrics.
+ *
+ * Holds only sums, so {@link #merge} is associative and commutative and partial results
+ * can be combined in any grouping. Ratios are value weighted (equal weighted when every
+ * portfolio is flat) and the diversification benefit is applied once, in {@link #toRiskData()},
+ * when more than one portfolio contributed.
+ */
+public final class RiskAggregate {
+    // Simplified diversification benefit applied to summed VaR
+    private static final double DIVERSIFICATION_FACTOR = 0.9;
+
+    public static final RiskAggregate EMPTY = new RiskAggregate(0, 0, 0, 0, 0, 0, new TreeMap<>());
+
+    private final int count;
+    private final double totalValue;
+    private final double sharpeSum;
+    private final double betaSum;
+    private final double weightedSharpe;
+    private final double weightedBeta;
+    private final TreeMap<String, Double> valueAtRiskSum;
+
+    private RiskAggregate(int count, double totalValue, double sharpeSum, double betaSum,
+                          double weightedSharpe, double weightedBeta, TreeMap<String, Double> valueAtRiskSum) {
+        this.count = count;
+        this.totalValue = totalValue;
+        this.sharpeSum = sharpeSum;
+        this.betaSum = betaSum;
+        this.weightedSharpe = weightedSharpe;
+        this.weightedBeta = weightedBeta;
+        this.valueAtRiskSum = valueAtRiskSum;
+    }
+
+    public static RiskAggregate of(RiskDataDto riskData, double marketValue) {
+        TreeMap<String, Double> valueAtRisk = new TreeMap<>();
+        if (riskData.getValueAtRisk() != null) {
+            valueAtRisk.putAll(riskData.getValueAtRisk());
+        }
+        return new RiskAggregate(1, marketValue, riskData.getSharpeRatio(), riskData.getBeta(),
+                riskData.getSharpeRatio() * marketValue, riskData.getBeta() * marketValue, valueAtRisk);
+    }
+
+    public RiskAggregate merge(RiskAggregate other) {
+        TreeMap<String, Double> valueAtRisk = new TreeMap<>(valueAtRiskSum);
+        other.valueAtRiskSum.forEach((timeframe, value) -> valueAtRisk.merge(timeframe, value, Double::sum));
+        return new RiskAggregate(count + other.count, totalValue + other.totalValue,
+                sharpeSum + other.sharpeSum, betaSum + other.betaSum,
+                weightedSharpe + other.weightedSharpe, weightedBeta + other.weightedBeta, valueAtRisk);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public RiskDataDto toRiskData() {
+        RiskDataDto riskData = new RiskDataDto();
+        if (count == 0) {
+            return riskData;
+        }
+
+        boolean valueWeighted = totalValue > 0;
+        riskData.setSharpeRatio(valueWeighted ? weightedSharpe / totalValue : sharpeSum / count);
+        riskData.setBeta(valueWeighted ? weightedBeta / totalValue : betaSum / count);
+
+        double diversification = count > 1 ? DIVERSIFICATION_FACTOR : 1.0;
+        Map<String, Double> valueAtRisk = new HashMap<>();
+        valueAtRiskSum.forEach((timeframe, value) -> valueAtRisk.put(timeframe, value * diversification));
+        riskData.setValueAtRisk(valueAtRisk);
+        return riskData;
+    }
+}
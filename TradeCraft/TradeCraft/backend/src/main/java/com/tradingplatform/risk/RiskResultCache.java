@@ -0,0 +1,208 @@
+package com.tradingplatform.risk;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.event.TradeEvent;
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.HoldingsMarker;
+import com.tradingplatform.marketdata.PriceUpdateEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Per-portfolio risk results, valid for one {@link PositionLedger} version.
+ *
+ * Each portfolio has one slot holding its marked holdings and every result computed from
+ * them, keyed by metric and parameters. A slot is replaced as soon as the ledger reports a
+ * newer version, is dropped when a trade event or a price update touches the portfolio,
+ * and expires after {@code app.risk.cache.ttl-ms} so reference data and unpublished price
+ * changes are picked up. Concurrent requests for the same result share one computation;
+ * the first caller runs it and the others wait for its result.
+ *
+ * Results are shared between callers and must not be modified.
+ */
+@Component
+public class RiskResultCache {
+    private static final String HOLDINGS = "holdings";
+
+    private final PositionLedger positionLedger;
+    private final HoldingsMarker holdingsMarker;
+    private final ConcurrentMap<Long, Slot> slots = new ConcurrentHashMap<>();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter waitCounter;
+
+    @Value("${app.risk.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.risk.cache.ttl-ms:30000}")
+    private long ttlMillis;
+
+    public RiskResultCache(PositionLedger positionLedger, HoldingsMarker holdingsMarker, MeterRegistry meterRegistry) {
+        this.positionLedger = positionLedger;
+        this.holdingsMarker = holdingsMarker;
+        this.hitCounter = Counter.builder("risk.cache.lookups").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("risk.cache.lookups").tag("result", "miss").register(meterRegistry);
+        this.waitCounter = Counter.builder("risk.cache.lookups").tag("result", "wait").register(meterRegistry);
+        Gauge.builder("risk.cache.portfolios", slots, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached result for {@code key}, computing it from the portfolio's marked
+     * holdings if there is none for the current ledger version.
+     *
+     * @param key metric name and every parameter the result depends on
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long portfolioId, String key, Function<List<Holding>, T> calculation) {
+        if (!enabled) {
+            return calculation.apply(markedHoldings(portfolioId));
+        }
+        // Read before the holdings, so a result is never filed under a newer version than its data
+        long version = positionLedger.getVersion(portfolioId);
+        Slot slot = slot(portfolioId, version);
+        return (T) compute(slot, key, () -> calculation.apply(holdings(portfolioId, slot)));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTradeEvent(TradeEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+            case DELETED:
+            case CANCELED:
+                slots.remove(event.getPortfolioId());
+                break;
+            case UPDATED:
+                slots.remove(event.getPortfolioId());
+                if (event.getPreviousPortfolioId() != null) {
+                    slots.remove(event.getPreviousPortfolioId());
+                }
+                break;
+            default:
+                // Execution and settlement do not move positions
+                break;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioTradesChanged(PortfolioTradesChangedEvent event) {
+        if (event.isPositionsChanged()) {
+            slots.keySet().removeAll(event.getPortfolioIds());
+        }
+    }
+
+    @EventListener
+    public void onPriceUpdate(PriceUpdateEvent event) {
+        for (Map.Entry<Long, Slot> entry : slots.entrySet()) {
+            Set<String> symbols = entry.getValue().symbols;
+            // Holdings still being marked may have read the old prices
+            if (symbols == null || intersects(symbols, event.getSymbols())) {
+                slots.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.risk.cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        slots.values().removeIf(slot -> now - slot.created >= ttlMillis);
+    }
+
+    private Slot slot(Long portfolioId, long version) {
+        long now = System.currentTimeMillis();
+        return slots.compute(portfolioId, (id, existing) ->
+                existing != null && existing.version >= version && now - existing.created < ttlMillis
+                        ? existing : new Slot(version, now));
+    }
+
+    // Marked once per slot and shared by every metric computed from it
+    @SuppressWarnings("unchecked")
+    private List<Holding> holdings(Long portfolioId, Slot slot) {
+        return (List<Holding>) compute(slot, HOLDINGS, () -> {
+            List<Holding> holdings = markedHoldings(portfolioId);
+            Set<String> symbols = new HashSet<>();
+            for (Holding holding : holdings) {
+                symbols.add(holding.getSymbol());
+            }
+            slot.symbols = symbols;
+            return holdings;
+        });
+    }
+
+    private List<Holding> markedHoldings(Long portfolioId) {
+        return holdingsMarker.mark(positionLedger.getHoldings(portfolioId));
+    }
+
+    private Object compute(Slot slot, String key, Supplier<Object> calculation) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = slot.results.putIfAbsent(key, mine);
+        if (existing != null) {
+            (existing.isDone() ? hitCounter : waitCounter).increment();
+            return join(existing);
+        }
+        missCounter.increment();
+        try {
+            Object result = calculation.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            // Waiters see the same failure; the next request tries again
+            slot.results.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean intersects(Set<String> held, Set<String> moved) {
+        for (String symbol : moved) {
+            if (held.contains(symbol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Slot {
+        private final long version;
+        private final long created;
+        private final ConcurrentMap<String, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+        // Symbols held, known once the holdings are marked
+        private volatile Set<String> symbols;
+
+        private Slot(long version, long created) {
+            this.version = version;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.tradingplatform.risk;
+
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.repository.TradeRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Derives daily closes from our own trades: the last traded price of a symbol on a day,
+ * across all portfolios, is taken as that day's close.
+ */
+@Component
+public class TradePriceHistory implements PriceHistory {
+    private final TradeRepository tradeRepository;
+
+    public TradePriceHistory(TradeRepository tradeRepository) {
+        this.tradeRepository = tradeRepository;
+    }
+
+    @Override
+    public double[] dailyCloses(List<String> symbols, List<LocalDate> days) {
+        int width = symbols.size();
+        double[] closes = new double[days.size() * width];
+        Arrays.fill(closes, Double.NaN);
+        if (symbols.isEmpty() || days.isEmpty()) {
+            return closes;
+        }
+
+        Map<String, Integer> symbolIndex = new HashMap<>();
+        for (int s = 0; s < width; s++) {
+            symbolIndex.put(symbols.get(s), s);
+        }
+        Map<LocalDate, Integer> dayIndex = new HashMap<>();
+        for (int d = 0; d < days.size(); d++) {
+            dayIndex.put(days.get(d), d);
+        }
+
+        // Rows are ordered by date and id, so later trades on a day overwrite earlier ones
+        for (Object[] row : tradeRepository.findPriceRowsBySymbolIn(symbols, days.get(0),
+                days.get(days.size() - 1), TradeStatus.CANCELED)) {
+            Integer d = dayIndex.get((LocalDate) row[1]);
+            if (d != null) {
+                closes[d * width + symbolIndex.get((String) row[0])] = (Double) row[2];
+            }
+        }
+        return closes;
+    }
+}
@@ -1,5 +1,6 @@
 package com.tradingplatform.security;
 
+import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -22,10 +23,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
     private final JwtTokenProvider tokenProvider;
     private final UserDetailsServiceImpl userDetailsService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationList revocationList;
 
-    public JwtAuthenticationFilter(JwtTokenProvider tokenProvider, UserDetailsServiceImpl userDetailsService) {
+    public JwtAuthenticationFilter(JwtTokenProvider tokenProvider, UserDetailsServiceImpl userDetailsService,
+                                   PrincipalCache principalCache, TokenRevocationList revocationList) {
         this.tokenProvider = tokenProvider;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
+        this.revocationList = revocationList;
     }
 
     @Override
@@ -36,10 +42,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            UserDetails userDetails = StringUtils.hasText(jwt) ? authenticate(jwt) : null;
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -53,6 +57,36 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // Verifies the token once and builds the principal from its claims, the principal cache or the database
+    private UserDetails authenticate(String jwt) {
+        String tokenHash = principalCache.isEnabled() ? PrincipalCache.hash(jwt) : null;
+        if (tokenHash != null) {
+            UserPrincipal cached = principalCache.get(tokenHash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Claims claims = tokenProvider.parseClaims(jwt);
+        if (claims == null || tokenProvider.isRefreshToken(claims)) {
+            return null;
+        }
+
+        // Self-contained tokens carry everything the principal needs
+        UserPrincipal selfContained = tokenProvider.getPrincipalFromClaims(claims);
+        if (selfContained != null) {
+            return revocationList.isRevoked(selfContained.getId(), claims.getIssuedAt()) ? null : selfContained;
+        }
+
+        // Read before loading, so a change committed during the load invalidates the entry
+        long generation = principalCache.generation(claims.getSubject());
+        UserPrincipal principal = (UserPrincipal) userDetailsService.loadUserByUsername(claims.getSubject());
+        if (tokenHash != null && claims.getExpiration() != null) {
+            principalCache.put(tokenHash, principal, generation, claims.getExpiration().getTime());
+        }
+        return principal;
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
@@ -5,14 +5,27 @@ import io.jsonwebtoken.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 @Component
 public class JwtTokenProvider {
     private static final Logger logger = LoggerFactory.getLogger(JwtTokenProvider.class);
 
+    // Claims of self-contained tokens
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ORGANIZATION_CLAIM = "org";
+    private static final String ROLES_CLAIM = "roles";
+    private static final String TYPE_CLAIM = "typ";
+    private static final String ACCESS_TYPE = "access";
+    private static final String REFRESH_TYPE = "refresh";
+
     private final JwtConfig jwtConfig;
 
     public JwtTokenProvider(JwtConfig jwtConfig) {
@@ -21,6 +34,9 @@ public class JwtTokenProvider {
 
     public String generateToken(Authentication authentication) {
         UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+        if (jwtConfig.isSelfContained()) {
+            return generateAccessToken(userPrincipal);
+        }
 
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtConfig.getJwtExpiration());
@@ -33,6 +49,46 @@ public class JwtTokenProvider {
                 .compact();
     }
 
+    /**
+     * Short-lived token from which {@link #getPrincipalFromClaims} rebuilds the principal.
+     */
+    public String generateAccessToken(UserPrincipal userPrincipal) {
+        Date now = new Date();
+        List<String> roles = new ArrayList<>();
+        for (GrantedAuthority authority : userPrincipal.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+
+        JwtBuilder builder = Jwts.builder()
+                .setSubject(userPrincipal.getUsername())
+                .claim(TYPE_CLAIM, ACCESS_TYPE)
+                .claim(USER_ID_CLAIM, userPrincipal.getId())
+                .claim(ROLES_CLAIM, roles)
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtConfig.getAccessExpiration()));
+        if (userPrincipal.getOrganizationId() != null) {
+            builder.claim(ORGANIZATION_CLAIM, userPrincipal.getOrganizationId());
+        }
+        return builder.signWith(SignatureAlgorithm.HS512, jwtConfig.getJwtSecret()).compact();
+    }
+
+    /**
+     * Long-lived token that can only be exchanged for a new access token. Each carries a
+     * random id so it can be used exactly once.
+     */
+    public String generateRefreshToken(UserPrincipal userPrincipal) {
+        Date now = new Date();
+        return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(userPrincipal.getUsername())
+                .claim(TYPE_CLAIM, REFRESH_TYPE)
+                .claim(USER_ID_CLAIM, userPrincipal.getId())
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtConfig.getRefreshExpiration()))
+                .signWith(SignatureAlgorithm.HS512, jwtConfig.getJwtSecret())
+                .compact();
+    }
+
     public String getUsernameFromToken(String token) {
         Claims claims = Jwts.parser()
                 .setSigningKey(jwtConfig.getJwtSecret())
@@ -43,9 +99,15 @@ public class JwtTokenProvider {
     }
 
     public boolean validateToken(String authToken) {
+        return parseClaims(authToken) != null;
+    }
+
+    /**
+     * Verifies the token and returns its claims, or {@code null} if it is not valid.
+     */
+    public Claims parseClaims(String authToken) {
         try {
-            Jwts.parser().setSigningKey(jwtConfig.getJwtSecret()).parseClaimsJws(authToken);
-            return true;
+            return Jwts.parser().setSigningKey(jwtConfig.getJwtSecret()).parseClaimsJws(authToken).getBody();
         } catch (SignatureException ex) {
             logger.error("Invalid JWT signature");
         } catch (MalformedJwtException ex) {
@@ -57,6 +119,39 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex) {
             logger.error("JWT claims string is empty");
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Whether the claims are those of a refresh token. Tokens without an id predate rotation
+     * and cannot be used exactly once, so they do not count.
+     */
+    public boolean isRefreshToken(Claims claims) {
+        return REFRESH_TYPE.equals(claims.get(TYPE_CLAIM, String.class)) && claims.getId() != null;
+    }
+
+    public Long getUserIdFromClaims(Claims claims) {
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        return userId != null ? userId.longValue() : null;
+    }
+
+    /**
+     * Builds the principal of a self-contained access token, or returns {@code null} for
+     * tokens that only carry a subject. Email and password are not part of the token.
+     */
+    public UserPrincipal getPrincipalFromClaims(Claims claims) {
+        if (!ACCESS_TYPE.equals(claims.get(TYPE_CLAIM, String.class))) {
+            return null;
+        }
+        Number organizationId = claims.get(ORGANIZATION_CLAIM, Number.class);
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        if (roles != null) {
+            for (Object role : roles) {
+                authorities.add(new SimpleGrantedAuthority(role.toString()));
+            }
+        }
+        return new UserPrincipal(getUserIdFromClaims(claims), claims.getSubject(), null, null,
+                organizationId != null ? organizationId.longValue() : null, authorities);
     }
 }
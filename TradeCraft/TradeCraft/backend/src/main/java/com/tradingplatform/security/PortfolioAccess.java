@@ -0,0 +1,111 @@
+package com.tradingplatform.security;
+
+import com.tradingplatform.exception.ResourceNotFoundException;
+import com.tradingplatform.exception.UnauthorizedException;
+import com.tradingplatform.model.Trade;
+import com.tradingplatform.repository.PortfolioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Organization checks for portfolios and trades that never load entities.
+ *
+ * The owning organization of a portfolio is read with an id-only query and cached; trades
+ * are checked through their portfolio id. Portfolios rarely move, so a move or delete bumps
+ * a single generation that retires every cached entry. Entries remember the generation read
+ * before their query, so a load that races with a move is never served after it commits.
+ */
+@Component
+public class PortfolioAccess {
+    private final PortfolioRepository portfolioRepository;
+
+    private final ConcurrentMap<Long, Entry> organizations = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    @Value("${app.security.portfolio-access.max-entries:100000}")
+    private int maxEntries;
+
+    public PortfolioAccess(PortfolioRepository portfolioRepository) {
+        this.portfolioRepository = portfolioRepository;
+    }
+
+    /**
+     * @throws ResourceNotFoundException if the portfolio does not exist
+     */
+    public Long organizationOf(Long portfolioId) {
+        long current = generation.get();
+        Entry entry = organizations.get(portfolioId);
+        if (entry != null && entry.generation == current) {
+            return entry.organizationId;
+        }
+        Long organizationId = portfolioRepository.findOrganizationIdById(portfolioId)
+                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
+        if (organizations.size() >= maxEntries) {
+            organizations.clear();
+        }
+        organizations.put(portfolioId, new Entry(organizationId, current));
+        return organizationId;
+    }
+
+    /**
+     * @return the portfolio's organization id
+     * @throws ResourceNotFoundException if the portfolio does not exist
+     * @throws UnauthorizedException     if it belongs to another organization
+     */
+    public Long checkPortfolio(Long portfolioId, UserPrincipal currentUser) {
+        Long organizationId = organizationOf(portfolioId);
+        // Check if user has access to this portfolio (same organization)
+        if (currentUser.getOrganizationId() != null && !currentUser.getOrganizationId().equals(organizationId)) {
+            throw new UnauthorizedException("You don't have access to this portfolio");
+        }
+        return organizationId;
+    }
+
+    /**
+     * Checks a loaded trade through its portfolio id, which a lazy portfolio proxy returns
+     * without being initialized.
+     *
+     * @return the trade's organization id
+     * @throws UnauthorizedException if it belongs to another organization
+     */
+    public Long checkTrade(Trade trade, UserPrincipal currentUser) {
+        Long organizationId = organizationOf(trade.getPortfolio().getId());
+        // Check if user has access to this trade (same organization)
+        if (currentUser.getOrganizationId() != null && !currentUser.getOrganizationId().equals(organizationId)) {
+            throw new UnauthorizedException("You don't have access to this trade");
+        }
+        return organizationId;
+    }
+
+    /**
+     * Retires cached organizations now and again after the current transaction completes.
+     * Call whenever a portfolio changes organization or is deleted.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private static final class Entry {
+        private final Long organizationId;
+        private final long generation;
+
+        private Entry(Long organizationId, long generation) {
+            this.organizationId = organizationId;
+            this.generation = generation;
+        }
+    }
+}
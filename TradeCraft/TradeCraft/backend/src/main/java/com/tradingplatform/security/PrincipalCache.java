@@ -0,0 +1,199 @@
+package com.tradingplatform.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Principals built for verified tokens, keyed by a SHA-256 hash of the token and kept until
+ * the token expires, or until the least recently used entry gives way beyond
+ * {@code max-entries}.
+ *
+ * Each username has a generation number that is bumped whenever that user changes. Entries
+ * remember the generation read before the user was loaded and are ignored once it moves
+ * on, so a load that races with a change can never be served after the change commits.
+ * Generations are only kept for users with cached entries; everyone else shares a floor that
+ * is raised past any generation dropped, so a user's generation never goes backwards.
+ */
+@Component
+public class PrincipalCache {
+    // Access-ordered; guards users and floor too
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, UserState> users = new HashMap<>();
+    private long floor;
+
+    @Value("${app.security.principal-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.security.principal-cache.max-entries:100000}")
+    private int maxEntries;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the cached principal, or {@code null} if absent, expired or invalidated
+     */
+    public UserPrincipal get(String tokenHash) {
+        synchronized (entries) {
+            Entry entry = entries.get(tokenHash);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()
+                    || entry.generation != generationLocked(entry.principal.getUsername())) {
+                remove(tokenHash);
+                return null;
+            }
+            return entry.principal;
+        }
+    }
+
+    /**
+     * @param generation the user's {@link #generation} read before the principal was loaded
+     */
+    public void put(String tokenHash, UserPrincipal principal, long generation, long expiresAt) {
+        if (!enabled) {
+            return;
+        }
+        String username = principal.getUsername();
+        synchronized (entries) {
+            if (generation != generationLocked(username)) {
+                return; // The user changed while loading
+            }
+            users.computeIfAbsent(username, name -> new UserState(generation)).entries++;
+            Entry previous = entries.put(tokenHash, new Entry(principal, generation, expiresAt));
+            if (previous != null) {
+                release(previous.principal.getUsername());
+            }
+            if (entries.size() > maxEntries) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                remove(eldest.next());
+            }
+        }
+    }
+
+    public long generation(String username) {
+        synchronized (entries) {
+            return generationLocked(username);
+        }
+    }
+
+    /**
+     * Drops cached principals of a user now and again after the current transaction commits,
+     * so requests that loaded the old state in between are not cached either.
+     */
+    public void invalidateUser(String username) {
+        bump(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    bump(username);
+                }
+            });
+        }
+    }
+
+    public static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.expiresAt <= now) {
+                    it.remove();
+                    release(entry.principal.getUsername());
+                }
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Number of users whose generation is tracked individually
+    int trackedUsers() {
+        synchronized (entries) {
+            return users.size();
+        }
+    }
+
+    private long generationLocked(String username) {
+        UserState user = users.get(username);
+        return user != null ? user.generation : floor;
+    }
+
+    // Users without entries have nothing to retire; raising the floor covers their in-flight loads
+    private void bump(String username) {
+        synchronized (entries) {
+            UserState user = users.get(username);
+            if (user != null) {
+                user.generation++;
+            } else {
+                floor++;
+            }
+        }
+    }
+
+    private void remove(String tokenHash) {
+        Entry entry = entries.remove(tokenHash);
+        if (entry != null) {
+            release(entry.principal.getUsername());
+        }
+    }
+
+    private void release(String username) {
+        UserState user = users.get(username);
+        if (user != null && --user.entries == 0) {
+            users.remove(username);
+            floor = Math.max(floor, user.generation);
+        }
+    }
+
+    private static final class Entry {
+        private final UserPrincipal principal;
+        private final long generation;
+        private final long expiresAt;
+
+        private Entry(UserPrincipal principal, long generation, long expiresAt) {
+            this.principal = principal;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class UserState {
+        private long generation;
+        private int entries;
+
+        private UserState(long generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.tradingplatform.security;
+
+import com.tradingplatform.config.JwtConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Users whose tokens must no longer be accepted, such as deleted users. Any token of a
+ * revoked user issued before the revocation is rejected; entries are dropped once every
+ * such token would have expired anyway.
+ *
+ * Also records the ids of refresh tokens already exchanged, until they expire, so each
+ * refresh token is accepted only once.
+ *
+ * Both are kept in tables shared by every instance. A token id is claimed by inserting it, so
+ * a refresh token is accepted once across instances. Revocations are checked on every request
+ * and so are served from memory, reloaded from the table every
+ * {@code app.security.revocation-sync-ms}: a revocation made on another instance applies here
+ * within that interval.
+ */
+@Component
+public class TokenRevocationList {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private final ConcurrentMap<Long, Long> revokedAt = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final JwtConfig jwtConfig;
+
+    public TokenRevocationList(JdbcTemplate jdbcTemplate, JwtConfig jwtConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jwtConfig = jwtConfig;
+    }
+
+    public void revokeUser(Long userId) {
+        long now = System.currentTimeMillis();
+        revokedAt.merge(userId, now, Math::max);
+        if (jdbcTemplate.update("UPDATE revoked_users SET revoked_at = ? WHERE user_id = ?", now, userId) == 0) {
+            try {
+                jdbcTemplate.update("INSERT INTO revoked_users (user_id, revoked_at) VALUES (?, ?)", userId, now);
+            } catch (DuplicateKeyException e) {
+                // Revoked concurrently by another instance
+                jdbcTemplate.update("UPDATE revoked_users SET revoked_at = ? WHERE user_id = ? AND revoked_at < ?",
+                        now, userId, now);
+            }
+        }
+    }
+
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        Long revoked = userId != null ? revokedAt.get(userId) : null;
+        // Token timestamps have second precision, so a token from the same second is rejected too
+        return revoked != null && (issuedAt == null || issuedAt.getTime() <= revoked);
+    }
+
+    /**
+     * Marks a token id as used.
+     *
+     * @return {@code false} if it was used before
+     */
+    public boolean useToken(String tokenId, Date expiresAt) {
+        try {
+            jdbcTemplate.update("INSERT INTO used_refresh_tokens (token_id, expires_at) VALUES (?, ?)",
+                    tokenId, expiresAt.getTime());
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.security.revocation-sync-ms:5000}")
+    public void syncRevocations() {
+        try {
+            jdbcTemplate.query("SELECT user_id, revoked_at FROM revoked_users", rs -> {
+                revokedAt.merge(rs.getLong(1), rs.getLong(2), Math::max);
+            });
+        } catch (DataAccessException e) {
+            logger.error("Could not load token revocations; keeping those already loaded", e);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        long horizon = now - Math.max(jwtConfig.getRefreshExpiration(), jwtConfig.getJwtExpiration());
+        revokedAt.values().removeIf(revoked -> revoked < horizon);
+        jdbcTemplate.update("DELETE FROM revoked_users WHERE revoked_at < ?", horizon);
+        jdbcTemplate.update("DELETE FROM used_refresh_tokens WHERE expires_at < ?", now);
+    }
+}
@@ -0,0 +1,71 @@
+package com.tradingplatform.security;
+
+import com.tradingplatform.config.JwtConfig;
+import com.tradingplatform.exception.UnauthorizedException;
+import io.jsonwebtoken.Claims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Issues and refreshes self-contained access tokens. Access tokens are short-lived; the
+ * refresh exchange reloads the user, so role and organization changes reach the token
+ * within one access-token lifetime.
+ *
+ * Refresh tokens rotate: each exchange returns a new one and retires the old. Presenting a
+ * retired refresh token again means it leaked, so every token of that user is revoked.
+ */
+@Service
+public class TokenService {
+    private static final Logger logger = LoggerFactory.getLogger(TokenService.class);
+
+    private final JwtTokenProvider tokenProvider;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final TokenRevocationList revocationList;
+    private final JwtConfig jwtConfig;
+
+    public TokenService(JwtTokenProvider tokenProvider, UserDetailsServiceImpl userDetailsService,
+                        TokenRevocationList revocationList, JwtConfig jwtConfig) {
+        this.tokenProvider = tokenProvider;
+        this.userDetailsService = userDetailsService;
+        this.revocationList = revocationList;
+        this.jwtConfig = jwtConfig;
+    }
+
+    public Map<String, Object> issueTokens(UserPrincipal userPrincipal) {
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("accessToken", tokenProvider.generateAccessToken(userPrincipal));
+        tokens.put("refreshToken", tokenProvider.generateRefreshToken(userPrincipal));
+        tokens.put("tokenType", "Bearer");
+        tokens.put("expiresIn", jwtConfig.getAccessExpiration() / 1000);
+        return tokens;
+    }
+
+    public Map<String, Object> refreshTokens(String refreshToken) {
+        Claims claims = tokenProvider.parseClaims(refreshToken);
+        if (claims == null || !tokenProvider.isRefreshToken(claims)) {
+            throw new UnauthorizedException("Invalid refresh token");
+        }
+        Long userId = tokenProvider.getUserIdFromClaims(claims);
+        if (userId == null || revocationList.isRevoked(userId, claims.getIssuedAt())) {
+            throw new UnauthorizedException("Refresh token has been revoked");
+        }
+        if (!revocationList.useToken(claims.getId(), claims.getExpiration())) {
+            logger.warn("Refresh token reused for user {}; revoking the user's tokens", userId);
+            revocationList.revokeUser(userId);
+            throw new UnauthorizedException("Refresh token has been revoked");
+        }
+
+        UserPrincipal userPrincipal;
+        try {
+            userPrincipal = (UserPrincipal) userDetailsService.loadUserById(userId);
+        } catch (UsernameNotFoundException e) {
+            throw new UnauthorizedException("Refresh token has been revoked");
+        }
+        return issueTokens(userPrincipal);
+    }
+}
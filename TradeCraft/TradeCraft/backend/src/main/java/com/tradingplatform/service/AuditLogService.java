@@ -1,38 +1,58 @@
 package com.tradingplatform.service;
 
+import com.tradingplatform.audit.AuditArchive;
+import com.tradingplatform.audit.AuditRecord;
+import com.tradingplatform.audit.AuditWriter;
 import com.tradingplatform.model.AuditLog;
 import com.tradingplatform.model.AuditLog.AuditAction;
-import com.tradingplatform.model.User;
+import com.tradingplatform.paging.CursorPage;
+import com.tradingplatform.paging.SeekCursor;
 import com.tradingplatform.repository.AuditLogRepository;
-import com.tradingplatform.repository.UserRepository;
 import com.tradingplatform.security.UserPrincipal;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.List;
 
 @Service
 public class AuditLogService {
     private final AuditLogRepository auditLogRepository;
-    private final UserRepository userRepository;
+    private final AuditWriter auditWriter;
+    private final AuditArchive auditArchive;
 
-    public AuditLogService(AuditLogRepository auditLogRepository, UserRepository userRepository) {
+    public AuditLogService(AuditLogRepository auditLogRepository, AuditWriter auditWriter,
+                           AuditArchive auditArchive) {
         this.auditLogRepository = auditLogRepository;
-        this.userRepository = userRepository;
+        this.auditWriter = auditWriter;
+        this.auditArchive = auditArchive;
     }
 
     public Page<AuditLog> getAllAuditLogs(Pageable pageable) {
         return auditLogRepository.findAll(pageable);
     }
 
+    /**
+     * Keyset listing of the audit table, newest first, without count queries.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or {@code null} for the first page
+     */
+    public CursorPage<AuditLog> scrollAuditLogs(String cursor, int size) {
+        SeekCursor after = SeekCursor.decode(SeekCursor.AUDIT_LOGS, cursor);
+        List<AuditLog> rows = after == null
+                ? auditLogRepository.findKeysetFirst(CursorPage.probe(size))
+                : auditLogRepository.findKeysetAfter(after.getDateTimeKey(), after.getId(), CursorPage.probe(size));
+        return CursorPage.of(rows, size,
+                log -> SeekCursor.encode(SeekCursor.AUDIT_LOGS, log.getTimestamp(), log.getId()));
+    }
+
     public Page<AuditLog> getAuditLogsByUser(Long userId, Pageable pageable) {
-        return auditLogRepository.findByUserId(userId, pageable);
+        return auditArchive.withArchived(page -> auditLogRepository.findByUserId(userId, page), pageable,
+                null, null, userId);
     }
 
     public Page<AuditLog> getAuditLogsByAction(AuditAction action, Pageable pageable) {
@@ -40,10 +60,14 @@ public class AuditLogService {
     }
 
     public Page<AuditLog> getAuditLogsByDateRange(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
-        return auditLogRepository.findByTimestampBetween(startDate, endDate, pageable);
+        return auditArchive.withArchived(page -> auditLogRepository.findByTimestampBetween(startDate, endDate, page),
+                pageable, startDate, endDate, null);
     }
 
-    @Transactional
+    /**
+     * Captures the action on the calling thread and hands it to the {@link AuditWriter}, which
+     * inserts it in a later batch unless {@code app.audit.async} is off.
+     */
     public void logUserAction(UserPrincipal userPrincipal, String actionStr, String details) {
         AuditAction action;
         try {
@@ -53,14 +77,7 @@ public class AuditLogService {
             action = AuditAction.UPDATE;
         }
         
-        User user = null;
-        if (userPrincipal != null) {
-            Optional<User> userOpt = userRepository.findById(userPrincipal.getId());
-            if (userOpt.isPresent()) {
-                user = userOpt.get();
-            }
-        }
-        
+        Long userId = userPrincipal != null ? userPrincipal.getId() : null;
         String username = userPrincipal != null ? userPrincipal.getUsername() : "system";
         
         // Get IP address and user agent from request
@@ -78,8 +95,8 @@ public class AuditLogService {
             // Ignore if we can't get request info
         }
         
-        AuditLog auditLog = new AuditLog(user, username, action, details, ipAddress, userAgent);
-        auditLogRepository.save(auditLog);
+        auditWriter.submit(new AuditRecord(userId, username, action, details, ipAddress, userAgent,
+                LocalDateTime.now()));
     }
 
     // Helper method to get client IP address
@@ -7,6 +7,8 @@ import com.tradingplatform.model.Organization;
 import com.tradingplatform.model.User;
 import com.tradingplatform.repository.OrganizationRepository;
 import com.tradingplatform.repository.UserRepository;
+import com.tradingplatform.security.PortfolioAccess;
+import com.tradingplatform.security.PrincipalCache;
 import com.tradingplatform.security.UserPrincipal;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -20,13 +22,19 @@ public class OrganizationService {
     private final OrganizationRepository organizationRepository;
     private final UserRepository userRepository;
     private final AuditLogService auditLogService;
+    private final PrincipalCache principalCache;
+    private final PortfolioAccess portfolioAccess;
 
     public OrganizationService(OrganizationRepository organizationRepository, 
                               UserRepository userRepository,
-                              AuditLogService auditLogService) {
+                              AuditLogService auditLogService,
+                              PrincipalCache principalCache,
+                              PortfolioAccess portfolioAccess) {
         this.organizationRepository = organizationRepository;
         this.userRepository = userRepository;
         this.auditLogService = auditLogService;
+        this.principalCache = principalCache;
+        this.portfolioAccess = portfolioAccess;
     }
 
     public Page<Organization> getAllOrganizations(Pageable pageable) {
@@ -102,6 +110,8 @@ public class OrganizationService {
                 "Deleted organization: " + organization.getName());
         
         organizationRepository.delete(organization);
+        // The organization's portfolios are deleted with it
+        portfolioAccess.invalidate();
     }
 
     @Transactional
@@ -114,6 +124,7 @@ public class OrganizationService {
         
         user.setOrganization(organization);
         User updatedUser = userRepository.save(user);
+        principalCache.invalidateUser(updatedUser.getUsername());
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
@@ -136,6 +147,7 @@ public class OrganizationService {
         
         user.setOrganization(null);
         User updatedUser = userRepository.save(user);
+        principalCache.invalidateUser(updatedUser.getUsername());
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
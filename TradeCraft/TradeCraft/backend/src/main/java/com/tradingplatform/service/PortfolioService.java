@@ -5,13 +5,20 @@ import com.tradingplatform.dto.PortfolioPerformanceDto;
 import com.tradingplatform.exception.BadRequestException;
 import com.tradingplatform.exception.ResourceNotFoundException;
 import com.tradingplatform.exception.UnauthorizedException;
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.PerformanceSeries;
+import com.tradingplatform.ledger.PerformanceSeries.Sampling;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.HoldingsMarker;
 import com.tradingplatform.model.Organization;
 import com.tradingplatform.model.Portfolio;
 import com.tradingplatform.model.Trade;
 import com.tradingplatform.repository.OrganizationRepository;
 import com.tradingplatform.repository.PortfolioRepository;
 import com.tradingplatform.repository.TradeRepository;
+import com.tradingplatform.security.PortfolioAccess;
 import com.tradingplatform.security.UserPrincipal;
+import com.tradingplatform.snapshot.PositionSnapshotService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -19,7 +26,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class PortfolioService {
@@ -27,36 +33,44 @@ public class PortfolioService {
     private final OrganizationRepository organizationRepository;
     private final TradeRepository tradeRepository;
     private final AuditLogService auditLogService;
+    private final PositionLedger positionLedger;
+    private final HoldingsMarker holdingsMarker;
+    private final PortfolioAccess portfolioAccess;
+    private final PositionSnapshotService positionSnapshotService;
 
     public PortfolioService(PortfolioRepository portfolioRepository,
                            OrganizationRepository organizationRepository,
                            TradeRepository tradeRepository,
-                           AuditLogService auditLogService) {
+                           AuditLogService auditLogService,
+                           PositionLedger positionLedger,
+                           HoldingsMarker holdingsMarker,
+                           PortfolioAccess portfolioAccess,
+                           PositionSnapshotService positionSnapshotService) {
         this.portfolioRepository = portfolioRepository;
         this.organizationRepository = organizationRepository;
         this.tradeRepository = tradeRepository;
         this.auditLogService = auditLogService;
+        this.positionLedger = positionLedger;
+        this.holdingsMarker = holdingsMarker;
+        this.portfolioAccess = portfolioAccess;
+        this.positionSnapshotService = positionSnapshotService;
     }
 
     public Page<Portfolio> getAllPortfolios(Pageable pageable, UserPrincipal currentUser) {
         Page<Portfolio> portfolios = portfolioRepository.findAll(pageable);
         
         // Calculate portfolio values
-        portfolios.forEach(this::calculatePortfolioValues);
+        calculatePortfolioValues(portfolios.getContent());
         
         return portfolios;
     }
 
     public Portfolio getPortfolioById(Long id, UserPrincipal currentUser) {
+        // Check if user has access to this portfolio (same organization) before loading it
+        portfolioAccess.checkPortfolio(id, currentUser);
         Portfolio portfolio = portfolioRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + id));
         
-        // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
         // Calculate portfolio values
         calculatePortfolioValues(portfolio);
         
@@ -89,15 +103,11 @@ public class PortfolioService {
 
     @Transactional
     public Portfolio updatePortfolio(Long id, PortfolioDto portfolioDto, UserPrincipal currentUser) {
+        // Check if user has access to this portfolio (same organization) before loading it
+        portfolioAccess.checkPortfolio(id, currentUser);
         Portfolio portfolio = portfolioRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + id));
         
-        // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
         // Check if organization changed and exists
         if (!portfolio.getOrganization().getId().equals(portfolioDto.getOrganizationId())) {
             Organization organization = organizationRepository.findById(portfolioDto.getOrganizationId())
@@ -110,6 +120,7 @@ public class PortfolioService {
             }
             
             portfolio.setOrganization(organization);
+            portfolioAccess.invalidate();
         }
         
         portfolio.setName(portfolioDto.getName());
@@ -129,18 +140,13 @@ public class PortfolioService {
 
     @Transactional
     public void deletePortfolio(Long id, UserPrincipal currentUser) {
+        // Check if user has access to this portfolio (same organization) before loading it
+        portfolioAccess.checkPortfolio(id, currentUser);
         Portfolio portfolio = portfolioRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + id));
         
-        // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
         // Check if portfolio has trades
-        List<Trade> trades = tradeRepository.findByPortfolioId(id);
-        if (!trades.isEmpty()) {
+        if (tradeRepository.existsByPortfolioId(id)) {
             throw new BadRequestException("Cannot delete portfolio as it has associated trades");
         }
         
@@ -149,6 +155,7 @@ public class PortfolioService {
                 "Deleted portfolio: " + portfolio.getName());
         
         portfolioRepository.delete(portfolio);
+        portfolioAccess.invalidate();
     }
 
     public List<Portfolio> getPortfoliosByOrganization(Long organizationId, UserPrincipal currentUser) {
@@ -166,7 +173,7 @@ public class PortfolioService {
         List<Portfolio> portfolios = portfolioRepository.findByOrganizationId(organizationId);
         
         // Calculate portfolio values
-        portfolios.forEach(this::calculatePortfolioValues);
+        calculatePortfolioValues(portfolios);
         
         return portfolios;
     }
@@ -186,21 +193,49 @@ public class PortfolioService {
         Page<Portfolio> portfolios = portfolioRepository.findByOrganizationId(organizationId, pageable);
         
         // Calculate portfolio values
-        portfolios.forEach(this::calculatePortfolioValues);
+        calculatePortfolioValues(portfolios.getContent());
         
         return portfolios;
     }
 
-    public PortfolioPerformanceDto getPortfolioPerformance(Long id, String period, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + id));
+    public List<Portfolio> getPortfolioValues(List<Long> portfolioIds, UserPrincipal currentUser) {
+        Map<Long, Portfolio> found = new HashMap<>();
+        for (Object[] row : portfolioRepository.findValuationRowsByIdIn(portfolioIds)) {
+            Long organizationId = (Long) row[2];
+            // Portfolios of other organizations are reported as missing, like unknown ids
+            if (currentUser.getOrganizationId() != null && !currentUser.getOrganizationId().equals(organizationId)) {
+                continue;
+            }
+            Portfolio portfolio = new Portfolio();
+            portfolio.setId((Long) row[0]);
+            portfolio.setName((String) row[1]);
+            portfolio.setOrganization(organizationRepository.getReferenceById(organizationId));
+            found.put(portfolio.getId(), portfolio);
+        }
         
-        // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
+        List<Portfolio> portfolios = new ArrayList<>(portfolioIds.size());
+        for (Long id : new LinkedHashSet<>(portfolioIds)) {
+            Portfolio portfolio = found.get(id);
+            if (portfolio == null) {
+                throw new ResourceNotFoundException("Portfolio not found with id: " + id);
+            }
+            portfolios.add(portfolio);
         }
         
+        // Calculate portfolio values
+        calculatePortfolioValues(portfolios);
+        
+        return portfolios;
+    }
+
+    public PortfolioPerformanceDto getPortfolioPerformance(Long id, String period, UserPrincipal currentUser) {
+        return getPortfolioPerformance(id, period, Sampling.DAILY.name(), currentUser);
+    }
+
+    public PortfolioPerformanceDto getPortfolioPerformance(Long id, String period, String interval, UserPrincipal currentUser) {
+        // Check if user has access to this portfolio (same organization)
+        portfolioAccess.checkPortfolio(id, currentUser);
+        
         LocalDate endDate = LocalDate.now();
         LocalDate startDate;
         
@@ -224,66 +259,73 @@ public class PortfolioService {
                 startDate = endDate.minusMonths(1); // Default to 1 month
         }
         
-        // Get trades for the period
-        List<Trade> trades = tradeRepository.findByPortfolioIdAndTradeDateBetween(id, startDate, endDate);
-        
-        // Generate performance data (simplified implementation)
-        // In a real-world scenario, this would likely involve more complex calculations
-        // and potentially use market data from external sources
-        Map<LocalDate, Double> dailyValues = new LinkedHashMap<>();
+        // Trades before the period seed the opening positions
+        List<Trade> trades = tradeRepository.findByPortfolioIdUpToTradeDate(id, endDate);
         
-        // Generate a series of dates from start to end
-        LocalDate currentDate = startDate;
-        while (!currentDate.isAfter(endDate)) {
-            dailyValues.put(currentDate, calculatePortfolioValueAtDate(portfolio, trades, currentDate));
-            currentDate = currentDate.plusDays(1);
-        }
+        // Generate performance data in one sweep over the trades, marked to stored closes when enabled
+        PerformanceSeries series = PerformanceSeries.compute(trades, startDate, endDate,
+                Sampling.fromString(interval), holdingsMarker.dailyMarks());
         
         PortfolioPerformanceDto performanceDto = new PortfolioPerformanceDto();
         performanceDto.setPortfolioId(id);
         performanceDto.setPeriod(period);
-        performanceDto.setDates(new ArrayList<>(dailyValues.keySet()));
-        performanceDto.setValues(new ArrayList<>(dailyValues.values()));
+        performanceDto.setDates(series.getDates());
+        performanceDto.setValues(series.getValues());
         
         // Calculate benchmark data (simplified)
         // In a real application, this would pull from a market index or other benchmark
-        List<Double> benchmarkValues = calculateBenchmarkValues(dailyValues.keySet());
+        List<Double> benchmarkValues = calculateBenchmarkValues(series.getDates().size());
         performanceDto.setBenchmarkValues(benchmarkValues);
         
         return performanceDto;
     }
 
     public Map<String, Object> getPortfolioHoldings(Long id, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + id));
-        
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
-        List<Trade> trades = tradeRepository.findByPortfolioId(id);
+        portfolioAccess.checkPortfolio(id, currentUser);
         
-        // Calculate holdings
-        Map<String, Map<String, Object>> holdingsMap = calculateHoldings(trades);
+        // Current positions from the ledger
+        List<Holding> holdings = holdingsMarker.mark(positionLedger.getHoldings(id));
         
-        // Convert to list for API response
-        List<Map<String, Object>> holdingsList = holdingsMap.values().stream()
-                .collect(Collectors.toList());
-        
-        // Calculate totals
-        double totalMarketValue = holdingsList.stream()
-                .mapToDouble(h -> (double) h.get("marketValue"))
-                .sum();
-        
-        double totalCost = holdingsList.stream()
-                .mapToDouble(h -> (double) h.get("totalCost"))
-                .sum();
+        return holdingsResult(holdings);
+    }
+
+    /**
+     * Holdings at the end of a past day, from the nearest position snapshot plus the trades
+     * after it. Marked to stored closes of that day when mark-to-market is enabled.
+     */
+    public Map<String, Object> getPortfolioHoldingsAsOf(Long id, LocalDate date, UserPrincipal currentUser) {
+        // Check if user has access to this portfolio (same organization)
+        portfolioAccess.checkPortfolio(id, currentUser);
+        
+        List<Holding> holdings = positionSnapshotService.holdingsAsOf(id, date);
+        PerformanceSeries.Marks marks = holdingsMarker.dailyMarks();
+        if (marks != null) {
+            for (Holding holding : holdings) {
+                double close = marks.close(holding.getSymbol(), date);
+                if (!Double.isNaN(close)) {
+                    holding.markTo(close);
+                }
+            }
+        }
         
-        double totalProfitLoss = holdingsList.stream()
-                .mapToDouble(h -> (double) h.get("profitLoss"))
-                .sum();
+        Map<String, Object> result = holdingsResult(holdings);
+        result.put("asOf", date);
+        return result;
+    }
+
+    private Map<String, Object> holdingsResult(List<Holding> holdings) {
+        // Convert to list for API response and calculate totals
+        List<Map<String, Object>> holdingsList = new ArrayList<>(holdings.size());
+        double totalMarketValue = 0;
+        double totalCost = 0;
+        double totalProfitLoss = 0;
+        for (Holding holding : holdings) {
+            holdingsList.add(holding.toMap());
+            totalMarketValue += holding.getMarketValue();
+            totalCost += holding.getTotalCost();
+            totalProfitLoss += holding.getProfitLoss();
+        }
         
         Map<String, Object> result = new HashMap<>();
         result.put("holdings", holdingsList);
@@ -297,17 +339,29 @@ public class PortfolioService {
 
     // Helper methods
     private void calculatePortfolioValues(Portfolio portfolio) {
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolio.getId());
-        
-        Map<String, Map<String, Object>> holdings = calculateHoldings(trades);
-        
-        double totalValue = holdings.values().stream()
-                .mapToDouble(h -> (double) h.get("marketValue"))
-                .sum();
+        setPortfolioValues(portfolio, holdingsMarker.mark(positionLedger.getHoldings(portfolio.getId())));
+    }
+
+    private void calculatePortfolioValues(List<Portfolio> portfolios) {
+        List<Long> portfolioIds = new ArrayList<>(portfolios.size());
+        for (Portfolio portfolio : portfolios) {
+            portfolioIds.add(portfolio.getId());
+        }
         
-        double totalCost = holdings.values().stream()
-                .mapToDouble(h -> (double) h.get("totalCost"))
-                .sum();
+        // Positions for the whole batch come from one ledger lookup
+        Map<Long, List<Holding>> holdings = positionLedger.getHoldings(portfolioIds);
+        for (Portfolio portfolio : portfolios) {
+            setPortfolioValues(portfolio, holdingsMarker.mark(holdings.get(portfolio.getId())));
+        }
+    }
+
+    private void setPortfolioValues(Portfolio portfolio, List<Holding> holdings) {
+        double totalValue = 0;
+        double totalCost = 0;
+        for (Holding holding : holdings) {
+            totalValue += holding.getMarketValue();
+            totalCost += holding.getTotalCost();
+        }
         
         double profitLoss = totalValue - totalCost;
         
@@ -316,92 +370,14 @@ public class PortfolioService {
         portfolio.setProfitLoss(profitLoss);
     }
 
-    private Map<String, Map<String, Object>> calculateHoldings(List<Trade> trades) {
-        Map<String, Map<String, Object>> holdings = new HashMap<>();
-        
-        for (Trade trade : trades) {
-            String symbol = trade.getSymbol();
-            
-            if (!holdings.containsKey(symbol)) {
-                Map<String, Object> holding = new HashMap<>();
-                holding.put("symbol", symbol);
-                holding.put("quantity", 0);
-                holding.put("totalCost", 0.0);
-                holdings.put(symbol, holding);
-            }
-            
-            Map<String, Object> holding = holdings.get(symbol);
-            int currentQuantity = (int) holding.get("quantity");
-            double currentTotalCost = (double) holding.get("totalCost");
-            
-            if (trade.getSide() == Trade.TradeSide.BUY) {
-                int newQuantity = currentQuantity + trade.getQuantity();
-                double additionalCost = trade.getPrice() * trade.getQuantity();
-                
-                if (trade.getCommission() != null) {
-                    additionalCost += trade.getCommission();
-                }
-                
-                holding.put("quantity", newQuantity);
-                holding.put("totalCost", currentTotalCost + additionalCost);
-            } else { // SELL
-                int newQuantity = currentQuantity - trade.getQuantity();
-                
-                // Assume FIFO (First In, First Out) for cost basis calculation
-                // In a real application, you might have different cost basis methods
-                double costBasisPerShare = currentQuantity > 0 ? currentTotalCost / currentQuantity : 0;
-                double costBasisSold = costBasisPerShare * trade.getQuantity();
-                
-                holding.put("quantity", newQuantity);
-                holding.put("totalCost", currentTotalCost - costBasisSold);
-            }
-            
-            // Calculate current market value and profit/loss
-            // In a real application, you would get current prices from market data
-            // For this example, we'll use the latest trade price as an approximation
-            double currentPrice = trade.getPrice();
-            int quantity = (int) holding.get("quantity");
-            double totalCost = (double) holding.get("totalCost");
-            
-            double marketValue = currentPrice * quantity;
-            double profitLoss = marketValue - totalCost;
-            double profitLossPercent = totalCost > 0 ? (profitLoss / totalCost) * 100 : 0;
-            
-            holding.put("averageCost", quantity > 0 ? totalCost / quantity : 0);
-            holding.put("currentPrice", currentPrice);
-            holding.put("marketValue", marketValue);
-            holding.put("profitLoss", profitLoss);
-            holding.put("profitLossPercent", profitLossPercent);
-        }
-        
-        // Remove holdings with zero quantity
-        holdings.entrySet().removeIf(entry -> (int) entry.getValue().get("quantity") == 0);
-        
-        return holdings;
-    }
-
-    private double calculatePortfolioValueAtDate(Portfolio portfolio, List<Trade> trades, LocalDate date) {
-        // Filter trades up to the given date
-        List<Trade> tradesUpToDate = trades.stream()
-                .filter(trade -> !trade.getTradeDate().isAfter(date))
-                .collect(Collectors.toList());
-        
-        Map<String, Map<String, Object>> holdings = calculateHoldings(tradesUpToDate);
-        
-        // Sum up market values
-        return holdings.values().stream()
-                .mapToDouble(h -> (double) h.get("marketValue"))
-                .sum();
-    }
-
-    private List<Double> calculateBenchmarkValues(Set<LocalDate> dates) {
+    private List<Double> calculateBenchmarkValues(int points) {
         // In a real application, this would fetch benchmark data from a market data source
         // For this example, we'll generate some synthetic benchmark values
         List<Double> benchmarkValues = new ArrayList<>();
         double baseValue = 100.0;
         double dailyChangePercent = 0.0005; // 0.05% daily change on average
         
-        for (int i = 0; i < dates.size(); i++) {
+        for (int i = 0; i < points; i++) {
             // Add some random variation
             double randomFactor = 1.0 + (Math.random() * 0.002 - 0.001); // ±0.1%
             baseValue *= (1 + dailyChangePercent * randomFactor);
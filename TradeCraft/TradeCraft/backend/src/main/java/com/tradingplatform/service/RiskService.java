@@ -1,176 +1,200 @@
 package com.tradingplatform.service;
 
+import com.tradingplatform.config.RiskConfig;
 import com.tradingplatform.dto.RiskDataDto;
+import com.tradingplatform.exception.BadRequestException;
 import com.tradingplatform.exception.ResourceNotFoundException;
 import com.tradingplatform.exception.UnauthorizedException;
-import com.tradingplatform.model.Portfolio;
-import com.tradingplatform.model.Trade;
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.HoldingsMarker;
+import com.tradingplatform.marketdata.SecurityMaster;
+import com.tradingplatform.marketdata.SecuritySnapshot;
 import com.tradingplatform.repository.PortfolioRepository;
-import com.tradingplatform.repository.TradeRepository;
+import com.tradingplatform.risk.HistoricalVarEngine;
+import com.tradingplatform.risk.MonteCarloVarEngine;
+import com.tradingplatform.risk.MonteCarloVarEngine.Distribution;
+import com.tradingplatform.risk.RiskAggregate;
+import com.tradingplatform.risk.RiskResultCache;
+import com.tradingplatform.security.PortfolioAccess;
 import com.tradingplatform.security.UserPrincipal;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 @Service
 public class RiskService {
     private final PortfolioRepository portfolioRepository;
-    private final TradeRepository tradeRepository;
+    private final PositionLedger positionLedger;
+    private final RiskConfig riskConfig;
+    private final ForkJoinPool riskPool;
+    private final HistoricalVarEngine historicalVarEngine;
+    private final MonteCarloVarEngine monteCarloVarEngine;
+    private final HoldingsMarker holdingsMarker;
+    private final SecurityMaster securityMaster;
+    private final PortfolioAccess portfolioAccess;
+    private final RiskResultCache riskResultCache;
 
-    public RiskService(PortfolioRepository portfolioRepository, TradeRepository tradeRepository) {
+    public RiskService(PortfolioRepository portfolioRepository, PositionLedger positionLedger,
+                       RiskConfig riskConfig, ForkJoinPool riskPool,
+                       HistoricalVarEngine historicalVarEngine,
+                       MonteCarloVarEngine monteCarloVarEngine,
+                       HoldingsMarker holdingsMarker,
+                       SecurityMaster securityMaster,
+                       PortfolioAccess portfolioAccess,
+                       RiskResultCache riskResultCache) {
         this.portfolioRepository = portfolioRepository;
-        this.tradeRepository = tradeRepository;
+        this.positionLedger = positionLedger;
+        this.riskConfig = riskConfig;
+        this.riskPool = riskPool;
+        this.historicalVarEngine = historicalVarEngine;
+        this.monteCarloVarEngine = monteCarloVarEngine;
+        this.holdingsMarker = holdingsMarker;
+        this.securityMaster = securityMaster;
+        this.portfolioAccess = portfolioAccess;
+        this.riskResultCache = riskResultCache;
     }
 
     public RiskDataDto getPortfolioRisk(Long portfolioId, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
-        
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolioId);
-        
-        // Calculate risk metrics
-        RiskDataDto riskData = calculateRiskMetrics(portfolio, trades);
+        // Calculate risk metrics, once per ledger version
+        RiskDataDto riskData = riskResultCache.get(portfolioId, "risk",
+                holdings -> calculateRiskMetrics(portfolioId, holdings));
         
         return riskData;
     }
 
     public Map<String, Double> getValueAtRisk(Long portfolioId, double confidenceLevel, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
-        
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolioId);
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
         // Calculate VaR at different time horizons
-        Map<String, Double> varData = calculateValueAtRisk(portfolio, trades, confidenceLevel);
+        Map<String, Double> varData = riskResultCache.get(portfolioId, "var:" + confidenceLevel,
+                holdings -> calculateValueAtRisk(portfolioId, holdings, confidenceLevel));
         
         return varData;
     }
 
-    public List<Map<String, Object>> getSectorExposure(Long portfolioId, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
+    public Map<String, Double> getValueAtRisk(Long portfolioId, double confidenceLevel, int paths, long seed,
+                                              String distribution, UserPrincipal currentUser) {
+        if (paths < MonteCarloVarEngine.MIN_PATHS || paths > MonteCarloVarEngine.MAX_PATHS) {
+            throw new BadRequestException("Path count must be between " + MonteCarloVarEngine.MIN_PATHS + 
+                    " and " + MonteCarloVarEngine.MAX_PATHS);
+        }
         
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolioId);
+        // Monte Carlo VaR with correlated shocks; falls back like the historical mode without price history
+        Distribution shocks = Distribution.fromString(distribution);
+        return riskResultCache.get(portfolioId, "mc:" + confidenceLevel + ":" + paths + ":" + seed + ":" + shocks,
+                holdings -> monteCarloVarEngine.calculate(holdings, confidenceLevel, paths, seed, shocks)
+                        .orElseGet(() -> calculateValueAtRisk(portfolioId, holdings, confidenceLevel)));
+    }
+
+    public List<Map<String, Object>> getSectorExposure(Long portfolioId, UserPrincipal currentUser) {
+        // Check if user has access to this portfolio (same organization)
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
         // Calculate sector exposure
-        List<Map<String, Object>> sectorExposure = calculateSectorExposure(portfolio, trades);
+        List<Map<String, Object>> sectorExposure = riskResultCache.get(portfolioId, "sector",
+                holdings -> calculateSectorExposure(portfolioId, holdings));
         
         return sectorExposure;
     }
 
     public List<Map<String, Object>> getConcentrationRisk(Long portfolioId, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
-        
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolioId);
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
         // Calculate concentration risk
-        List<Map<String, Object>> concentrationRisk = calculateConcentrationRisk(portfolio, trades);
+        List<Map<String, Object>> concentrationRisk = riskResultCache.get(portfolioId, "concentration",
+                holdings -> calculateConcentrationRisk(portfolioId, holdings));
         
         return concentrationRisk;
     }
 
     public Map<String, Object> getMarketRisk(Long portfolioId, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
-        
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolioId);
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
         // Calculate market risk
-        Map<String, Object> marketRisk = calculateMarketRisk(portfolio, trades);
+        Map<String, Object> marketRisk = riskResultCache.get(portfolioId, "market",
+                holdings -> calculateMarketRisk(portfolioId, holdings));
         
         return marketRisk;
     }
 
     public Map<String, Object> getLiquidityRisk(Long portfolioId, UserPrincipal currentUser) {
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
-        
         // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
-        List<Trade> trades = tradeRepository.findByPortfolioId(portfolioId);
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         
         // Calculate liquidity risk
-        Map<String, Object> liquidityRisk = calculateLiquidityRisk(portfolio, trades);
+        Map<String, Object> liquidityRisk = riskResultCache.get(portfolioId, "liquidity",
+                holdings -> calculateLiquidityRisk(portfolioId, holdings));
         
         return liquidityRisk;
     }
 
     public RiskDataDto getOrganizationRisk(Long organizationId, UserPrincipal currentUser) {
+        return getOrganizationRisk(organizationId, riskConfig.isParallelAggregation(), currentUser);
+    }
+
+    public RiskDataDto getOrganizationRisk(Long organizationId, boolean parallel, UserPrincipal currentUser) {
         // Check if user has access to this organization
         if (currentUser.getOrganizationId() != null && 
                 !currentUser.getOrganizationId().equals(organizationId)) {
             throw new UnauthorizedException("You don't have access to this organization");
         }
         
-        List<Portfolio> portfolios = portfolioRepository.findByOrganizationId(organizationId);
+        // Ids only, in a fixed order so the result never depends on task scheduling
+        List<Long> ordered = portfolioRepository.findIdsByOrganizationId(organizationId);
         
-        if (portfolios.isEmpty()) {
+        if (ordered.isEmpty()) {
             throw new ResourceNotFoundException("No portfolios found for organization with id: " + organizationId);
         }
         
-        // Aggregate risk data across all portfolios
-        RiskDataDto aggregatedRiskData = new RiskDataDto();
+        RiskAggregate[] partials = new RiskAggregate[ordered.size()];
+        if (parallel && ordered.size() > 1) {
+            // At most maxConcurrencyPerRequest tasks per request, each over a contiguous slice
+            int chunks = Math.min(riskConfig.getMaxConcurrencyPerRequest(), ordered.size());
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int from = (int) ((long) ordered.size() * chunk / chunks);
+                int to = (int) ((long) ordered.size() * (chunk + 1) / chunks);
+                tasks.add(riskPool.submit(() -> calculatePortfolioAggregates(ordered, from, to, partials)));
+            }
+            tasks.forEach(ForkJoinTask::join);
+        } else {
+            calculatePortfolioAggregates(ordered, 0, ordered.size(), partials);
+        }
         
-        for (Portfolio portfolio : portfolios) {
-            List<Trade> trades = tradeRepository.findByPortfolioId(portfolio.getId());
-            RiskDataDto portfolioRiskData = calculateRiskMetrics(portfolio, trades);
-            
-            // Aggregate risk metrics (weighted by portfolio value)
-            // In a real application, this would involve more sophisticated calculations
-            aggregateRiskMetrics(aggregatedRiskData, portfolioRiskData, portfolio);
+        // Aggregate risk metrics (weighted by portfolio value) in portfolio order
+        // In a real application, this would involve more sophisticated calculations
+        RiskAggregate aggregate = RiskAggregate.EMPTY;
+        for (RiskAggregate partial : partials) {
+            aggregate = aggregate.merge(partial);
         }
         
-        return aggregatedRiskData;
+        return aggregate.toRiskData();
     }
 
     // Helper methods for risk calculations
-    private RiskDataDto calculateRiskMetrics(Portfolio portfolio, List<Trade> trades) {
+    private RiskDataDto calculateRiskMetrics(Long portfolioId, List<Holding> holdings) {
         // In a real application, these calculations would be much more sophisticated
         // and would likely involve market data, statistical models, etc.
         
         RiskDataDto riskData = new RiskDataDto();
         
         // Set portfolio ID
-        riskData.setPortfolioId(portfolio.getId());
+        riskData.setPortfolioId(portfolioId);
         
         // Calculate Value at Risk (VaR)
-        Map<String, Double> varData = calculateValueAtRisk(portfolio, trades, 95.0); // 95% confidence level
+        Map<String, Double> varData = calculateValueAtRisk(portfolioId, holdings, 95.0); // 95% confidence level
         riskData.setValueAtRisk(varData);
         
         // Calculate Sharpe Ratio (example)
@@ -208,14 +232,14 @@ public class RiskService {
         return riskData;
     }
 
-    private Map<String, Double> calculateValueAtRisk(Portfolio portfolio, List<Trade> trades, double confidenceLevel) {
-        // In a real application, VaR calculation would involve:
-        // 1. Historical return data
-        // 2. Volatility calculations
-        // 3. Statistical distributions
-        // 4. Monte Carlo simulations
-        
-        // Example VaR calculations (simplified)
+    private Map<String, Double> calculateValueAtRisk(Long portfolioId, List<Holding> holdings, double confidenceLevel) {
+        // Historical simulation over the lookback window of daily returns (1, 5 and 21 day horizons)
+        Optional<Map<String, Double>> historicalVaR = historicalVarEngine.calculate(holdings, confidenceLevel);
+        if (historicalVaR.isPresent()) {
+            return historicalVaR.get();
+        }
+        
+        // Not enough price history yet: fall back to a static estimate
         double dailyVaR = 0.032; // 3.2% daily VaR at 95% confidence
         double weeklyVaR = dailyVaR * Math.sqrt(5); // Assuming 5 trading days
         double monthlyVaR = dailyVaR * Math.sqrt(21); // Assuming 21 trading days
@@ -234,34 +258,20 @@ public class RiskService {
         return varData;
     }
 
-    private List<Map<String, Object>> calculateSectorExposure(Portfolio portfolio, List<Trade> trades) {
-        // In a real application, sector information would come from a market data provider
-        // For this example, we'll use a static mapping of symbols to sectors
-        Map<String, String> symbolSectorMap = new HashMap<>();
-        symbolSectorMap.put("AAPL", "Technology");
-        symbolSectorMap.put("MSFT", "Technology");
-        symbolSectorMap.put("GOOGL", "Technology");
-        symbolSectorMap.put("AMZN", "Consumer");
-        symbolSectorMap.put("TSLA", "Automotive");
-        symbolSectorMap.put("JPM", "Financial");
-        symbolSectorMap.put("BAC", "Financial");
-        symbolSectorMap.put("PFE", "Healthcare");
-        symbolSectorMap.put("JNJ", "Healthcare");
-        symbolSectorMap.put("XOM", "Energy");
-        
-        // Calculate holdings
-        Map<String, Map<String, Object>> holdings = calculateHoldings(trades);
+    private List<Map<String, Object>> calculateSectorExposure(Long portfolioId, List<Holding> holdings) {
+        // Sectors come from the security master; one snapshot serves the whole calculation
+        SecuritySnapshot securities = securityMaster.snapshot();
         
         // Group by sector
         Map<String, Double> sectorExposure = new HashMap<>();
         double totalMarketValue = 0.0;
         
-        for (Map<String, Object> holding : holdings.values()) {
-            String symbol = (String) holding.get("symbol");
-            double marketValue = (double) holding.get("marketValue");
+        for (Holding holding : holdings) {
+            double marketValue = holding.getMarketValue();
             totalMarketValue += marketValue;
             
-            String sector = symbolSectorMap.getOrDefault(symbol, "Other");
+            int security = securities.indexOf(holding.getSymbol());
+            String sector = security >= 0 ? securities.sector(security) : SecurityMaster.UNKNOWN_SECTOR;
             sectorExposure.put(sector, sectorExposure.getOrDefault(sector, 0.0) + marketValue);
         }
         
@@ -280,21 +290,19 @@ public class RiskService {
         return result;
     }
 
-    private List<Map<String, Object>> calculateConcentrationRisk(Portfolio portfolio, List<Trade> trades) {
-        // Calculate holdings
-        Map<String, Map<String, Object>> holdings = calculateHoldings(trades);
-        
+    private List<Map<String, Object>> calculateConcentrationRisk(Long portfolioId, List<Holding> holdings) {
         // Calculate total market value
-        double totalMarketValue = holdings.values().stream()
-                .mapToDouble(h -> (double) h.get("marketValue"))
-                .sum();
+        double totalMarketValue = 0.0;
+        for (Holding holding : holdings) {
+            totalMarketValue += holding.getMarketValue();
+        }
         
         // Calculate concentration percentages
         List<Map<String, Object>> result = new ArrayList<>();
-        for (Map<String, Object> holding : holdings.values()) {
+        for (Holding holding : holdings) {
             Map<String, Object> concentrationData = new HashMap<>();
-            concentrationData.put("symbol", holding.get("symbol"));
-            double weight = ((double) holding.get("marketValue") / totalMarketValue) * 100;
+            concentrationData.put("symbol", holding.getSymbol());
+            double weight = (holding.getMarketValue() / totalMarketValue) * 100;
             concentrationData.put("weight", weight);
             
             // Example risk contribution calculation
@@ -311,7 +319,7 @@ public class RiskService {
         return result;
     }
 
-    private Map<String, Object> calculateMarketRisk(Portfolio portfolio, List<Trade> trades) {
+    private Map<String, Object> calculateMarketRisk(Long portfolioId, List<Holding> holdings) {
         // In a real application, market risk would involve:
         // 1. Beta calculations for each holding
         // 2. Market factor exposure
@@ -328,7 +336,7 @@ public class RiskService {
         return marketRisk;
     }
 
-    private Map<String, Object> calculateLiquidityRisk(Portfolio portfolio, List<Trade> trades) {
+    private Map<String, Object> calculateLiquidityRisk(Long portfolioId, List<Holding> holdings) {
         // In a real application, liquidity risk would involve:
         // 1. Trading volumes for each holding
         // 2. Bid-ask spreads
@@ -336,120 +344,57 @@ public class RiskService {
         
         Map<String, Object> liquidityRisk = new HashMap<>();
         
-        // Example liquidity risk metrics
-        liquidityRisk.put("overallRisk", "Low");
-        liquidityRisk.put("daysToLiquidate", 2.5);
-        liquidityRisk.put("liquidationCost", 0.8); // percentage cost to liquidate entire portfolio
-        
+        // Days to exit each position trading a fixed share of its average daily volume;
+        // symbols without volume data in the security master are left out
+        SecuritySnapshot securities = securityMaster.snapshot();
+        double participationRate = riskConfig.getParticipationRate();
         Map<String, String> symbolLiquidityMap = new HashMap<>();
-        symbolLiquidityMap.put("AAPL", "High");
-        symbolLiquidityMap.put("MSFT", "High");
-        symbolLiquidityMap.put("GOOGL", "High");
-        symbolLiquidityMap.put("AMZN", "High");
-        symbolLiquidityMap.put("TSLA", "Medium");
-        
-        liquidityRisk.put("symbolLiquidity", symbolLiquidityMap);
-        
-        return liquidityRisk;
-    }
-
-    private void aggregateRiskMetrics(RiskDataDto aggregated, RiskDataDto portfolio, Portfolio portfolioEntity) {
-        // This is a simplified aggregation approach
-        // In a real application, risk aggregation would be more sophisticated
-        
-        // For numeric values, use weighted averages
-        double weight = 1.0 / portfolioEntity.getTotalValue(); // Simplified weighting
-        
-        // Weighted average for Sharpe ratio, beta, etc.
-        if (aggregated.getSharpeRatio() == 0) {
-            aggregated.setSharpeRatio(portfolio.getSharpeRatio());
-        } else {
-            aggregated.setSharpeRatio((aggregated.getSharpeRatio() + portfolio.getSharpeRatio()) / 2);
+        double daysToLiquidate = 0.0;
+        boolean anyVolume = false;
+        
+        for (Holding holding : holdings) {
+            int security = securities.indexOf(holding.getSymbol());
+            long averageDailyVolume = security >= 0 ? securities.averageDailyVolume(security) : 0;
+            if (averageDailyVolume <= 0) {
+                continue;
+            }
+            anyVolume = true;
+            daysToLiquidate = Math.max(daysToLiquidate,
+                    Math.abs(holding.getQuantity()) / (participationRate * averageDailyVolume));
+            symbolLiquidityMap.put(holding.getSymbol(), averageDailyVolume >= 10_000_000 ? "High"
+                    : averageDailyVolume >= 1_000_000 ? "Medium" : "Low");
         }
         
-        if (aggregated.getBeta() == 0) {
-            aggregated.setBeta(portfolio.getBeta());
+        String overallRisk;
+        if (anyVolume) {
+            overallRisk = daysToLiquidate <= 1 ? "Low" : daysToLiquidate <= 5 ? "Medium" : "High";
         } else {
-            aggregated.setBeta((aggregated.getBeta() + portfolio.getBeta()) / 2);
+            // Previous fixed estimate when nothing is known
+            daysToLiquidate = 2.5;
+            overallRisk = "Low";
         }
         
-        // For VaR, use sum approach with diversification benefit
-        if (aggregated.getValueAtRisk() == null) {
-            aggregated.setValueAtRisk(portfolio.getValueAtRisk());
-        } else {
-            Map<String, Double> aggregatedVaR = aggregated.getValueAtRisk();
-            Map<String, Double> portfolioVaR = portfolio.getValueAtRisk();
-            
-            // Apply a diversification benefit (simplified)
-            double diversificationFactor = 0.9; // 10% diversification benefit
-            
-            for (String timeframe : portfolioVaR.keySet()) {
-                double combined = aggregatedVaR.getOrDefault(timeframe, 0.0) + 
-                                 portfolioVaR.getOrDefault(timeframe, 0.0);
-                aggregatedVaR.put(timeframe, combined * diversificationFactor);
-            }
-        }
+        liquidityRisk.put("overallRisk", overallRisk);
+        liquidityRisk.put("daysToLiquidate", daysToLiquidate);
+        liquidityRisk.put("liquidationCost", 0.8); // percentage cost to liquidate entire portfolio
+        
+        liquidityRisk.put("symbolLiquidity", symbolLiquidityMap);
+        
+        return liquidityRisk;
     }
 
-    private Map<String, Map<String, Object>> calculateHoldings(List<Trade> trades) {
-        Map<String, Map<String, Object>> holdings = new HashMap<>();
-        
-        for (Trade trade : trades) {
-            String symbol = trade.getSymbol();
-            
-            if (!holdings.containsKey(symbol)) {
-                Map<String, Object> holding = new HashMap<>();
-                holding.put("symbol", symbol);
-                holding.put("quantity", 0);
-                holding.put("totalCost", 0.0);
-                holdings.put(symbol, holding);
-            }
-            
-            Map<String, Object> holding = holdings.get(symbol);
-            int currentQuantity = (int) holding.get("quantity");
-            double currentTotalCost = (double) holding.get("totalCost");
+    private void calculatePortfolioAggregates(List<Long> portfolioIds, int from, int to, RiskAggregate[] partials) {
+        Map<Long, List<Holding>> holdingsByPortfolio = positionLedger.getHoldings(portfolioIds.subList(from, to));
+        for (int i = from; i < to; i++) {
+            Long portfolioId = portfolioIds.get(i);
+            List<Holding> holdings = holdingsMarker.mark(holdingsByPortfolio.get(portfolioId));
             
-            if (trade.getSide() == Trade.TradeSide.BUY) {
-                int newQuantity = currentQuantity + trade.getQuantity();
-                double additionalCost = trade.getPrice() * trade.getQuantity();
-                
-                if (trade.getCommission() != null) {
-                    additionalCost += trade.getCommission();
-                }
-                
-                holding.put("quantity", newQuantity);
-                holding.put("totalCost", currentTotalCost + additionalCost);
-            } else { // SELL
-                int newQuantity = currentQuantity - trade.getQuantity();
-                
-                // Assume FIFO (First In, First Out) for cost basis calculation
-                double costBasisPerShare = currentQuantity > 0 ? currentTotalCost / currentQuantity : 0;
-                double costBasisSold = costBasisPerShare * trade.getQuantity();
-                
-                holding.put("quantity", newQuantity);
-                holding.put("totalCost", currentTotalCost - costBasisSold);
+            double marketValue = 0.0;
+            for (Holding holding : holdings) {
+                marketValue += holding.getMarketValue();
             }
             
-            // Calculate current market value and profit/loss
-            // Using the most recent trade price as an approximation
-            double currentPrice = trade.getPrice();
-            int quantity = (int) holding.get("quantity");
-            double totalCost = (double) holding.get("totalCost");
-            
-            double marketValue = currentPrice * quantity;
-            double profitLoss = marketValue - totalCost;
-            double profitLossPercent = totalCost > 0 ? (profitLoss / totalCost) * 100 : 0;
-            
-            holding.put("averageCost", quantity > 0 ? totalCost / quantity : 0);
-            holding.put("currentPrice", currentPrice);
-            holding.put("marketValue", marketValue);
-            holding.put("profitLoss", profitLoss);
-            holding.put("profitLossPercent", profitLossPercent);
+            partials[i] = RiskAggregate.of(calculateRiskMetrics(portfolioId, holdings), marketValue);
         }
-        
-        // Remove holdings with zero quantity
-        holdings.entrySet().removeIf(entry -> (int) entry.getValue().get("quantity") == 0);
-        
-        return holdings;
     }
 }
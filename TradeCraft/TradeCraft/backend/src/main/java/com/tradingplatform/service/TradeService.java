@@ -1,6 +1,7 @@
 package com.tradingplatform.service;
 
 import com.tradingplatform.dto.TradeDto;
+import com.tradingplatform.event.TradeEvent;
 import com.tradingplatform.exception.BadRequestException;
 import com.tradingplatform.exception.ResourceNotFoundException;
 import com.tradingplatform.exception.UnauthorizedException;
@@ -8,10 +9,15 @@ import com.tradingplatform.model.Portfolio;
 import com.tradingplatform.model.Trade;
 import com.tradingplatform.model.Trade.TradeStatus;
 import com.tradingplatform.model.User;
+import com.tradingplatform.paging.CursorPage;
+import com.tradingplatform.paging.SeekCursor;
+import com.tradingplatform.pretrade.PreTradeRiskService;
 import com.tradingplatform.repository.PortfolioRepository;
 import com.tradingplatform.repository.TradeRepository;
 import com.tradingplatform.repository.UserRepository;
+import com.tradingplatform.security.PortfolioAccess;
 import com.tradingplatform.security.UserPrincipal;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -26,46 +32,77 @@ public class TradeService {
     private final PortfolioRepository portfolioRepository;
     private final UserRepository userRepository;
     private final AuditLogService auditLogService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PortfolioAccess portfolioAccess;
+    private final PreTradeRiskService preTradeRiskService;
 
     public TradeService(TradeRepository tradeRepository, 
                        PortfolioRepository portfolioRepository,
                        UserRepository userRepository,
-                       AuditLogService auditLogService) {
+                       AuditLogService auditLogService,
+                       ApplicationEventPublisher eventPublisher,
+                       PortfolioAccess portfolioAccess,
+                       PreTradeRiskService preTradeRiskService) {
         this.tradeRepository = tradeRepository;
         this.portfolioRepository = portfolioRepository;
         this.userRepository = userRepository;
         this.auditLogService = auditLogService;
+        this.eventPublisher = eventPublisher;
+        this.portfolioAccess = portfolioAccess;
+        this.preTradeRiskService = preTradeRiskService;
     }
 
     public Page<Trade> getAllTrades(Pageable pageable, UserPrincipal currentUser) {
         return tradeRepository.findAll(pageable);
     }
 
+    /**
+     * Keyset listing of all trades visible to the user, newest trade date first: the user's
+     * organization, or every trade for users without one. Unlike {@link #getAllTrades} each
+     * page is a single index seek with no count, so deep pages cost the same as the first.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or {@code null} for the first page
+     */
+    public CursorPage<Trade> scrollAllTrades(String cursor, int size, UserPrincipal currentUser) {
+        SeekCursor after = SeekCursor.decode(SeekCursor.TRADES, cursor);
+        Long organizationId = currentUser.getOrganizationId();
+        List<Trade> rows;
+        if (organizationId == null) {
+            rows = after == null
+                    ? tradeRepository.findKeysetFirst(CursorPage.probe(size))
+                    : tradeRepository.findKeysetAfter(after.getDateKey(), after.getId(), CursorPage.probe(size));
+        } else {
+            rows = after == null
+                    ? tradeRepository.findKeysetFirstByOrganizationId(organizationId, CursorPage.probe(size))
+                    : tradeRepository.findKeysetAfterByOrganizationId(organizationId, after.getDateKey(),
+                            after.getId(), CursorPage.probe(size));
+        }
+        return CursorPage.of(rows, size, TradeService::cursorOf);
+    }
+
     public Trade getTradeById(Long id, UserPrincipal currentUser) {
         Trade trade = tradeRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Trade not found with id: " + id));
         
         // Check if user has access to this trade (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(trade.getPortfolio().getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this trade");
-        }
+        portfolioAccess.checkTrade(trade, currentUser);
         
         return trade;
     }
 
     @Transactional
     public Trade createTrade(TradeDto tradeDto, UserPrincipal currentUser) {
-        // Check if portfolio exists
+        // Check if user has access to this portfolio (same organization) before loading it
+        Long organizationId = portfolioAccess.checkPortfolio(tradeDto.getPortfolioId(), currentUser);
+
+        // Pre-trade limits, against in-memory positions
+        Trade.TradeSide side = Trade.TradeSide.valueOf(tradeDto.getSide());
+        preTradeRiskService.check(organizationId, tradeDto.getPortfolioId(), tradeDto.getSymbol().toUpperCase(),
+                side, tradeDto.getQuantity(), tradeDto.getPrice());
+
         Portfolio portfolio = portfolioRepository.findById(tradeDto.getPortfolioId())
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + tradeDto.getPortfolioId()));
         
-        // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
         // Get user
         User user = userRepository.findById(currentUser.getId())
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
@@ -76,7 +113,7 @@ public class TradeService {
         trade.setSymbol(tradeDto.getSymbol().toUpperCase());
         trade.setQuantity(tradeDto.getQuantity());
         trade.setPrice(tradeDto.getPrice());
-        trade.setSide(Trade.TradeSide.valueOf(tradeDto.getSide()));
+        trade.setSide(side);
         trade.setTradeDate(tradeDto.getTradeDate());
         trade.setSettlementDate(tradeDto.getTradeDate().plusDays(2)); // T+2 settlement
         trade.setStatus(TradeStatus.PENDING);
@@ -96,6 +133,7 @@ public class TradeService {
         trade.setTotalAmount(totalAmount);
         
         Trade savedTrade = tradeRepository.save(trade);
+        eventPublisher.publishEvent(TradeEvent.of(TradeEvent.Type.CREATED, savedTrade, organizationId));
         
         // Audit log
         auditLogService.logUserAction(currentUser, "CREATE", 
@@ -111,27 +149,31 @@ public class TradeService {
                 .orElseThrow(() -> new ResourceNotFoundException("Trade not found with id: " + id));
         
         // Check if user has access to this trade (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(trade.getPortfolio().getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this trade");
-        }
+        Long organizationId = portfolioAccess.checkTrade(trade, currentUser);
         
         // Check if trade can be updated
         if (trade.getStatus() != TradeStatus.PENDING) {
             throw new BadRequestException("Only pending trades can be updated");
         }
         
+        Long previousPortfolioId = trade.getPortfolio().getId();
+        String previousSymbol = trade.getSymbol();
+        LocalDate previousTradeDate = trade.getTradeDate();
+        
         // Check if portfolio changed and exists
+        Portfolio portfolio = null;
         if (!trade.getPortfolio().getId().equals(tradeDto.getPortfolioId())) {
-            Portfolio portfolio = portfolioRepository.findById(tradeDto.getPortfolioId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + tradeDto.getPortfolioId()));
-            
             // Check if user has access to the new portfolio
-            if (currentUser.getOrganizationId() != null && 
-                    !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-                throw new UnauthorizedException("You don't have access to this portfolio");
-            }
-            
+            organizationId = portfolioAccess.checkPortfolio(tradeDto.getPortfolioId(), currentUser);
+            portfolio = portfolioRepository.findById(tradeDto.getPortfolioId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + tradeDto.getPortfolioId()));
+        }
+
+        // Pre-trade limits on the new terms, with the old trade released; before it is modified
+        preTradeRiskService.checkUpdate(organizationId, trade, tradeDto.getPortfolioId(),
+                tradeDto.getSymbol().toUpperCase(), Trade.TradeSide.valueOf(tradeDto.getSide()),
+                tradeDto.getQuantity(), tradeDto.getPrice());
+        if (portfolio != null) {
             trade.setPortfolio(portfolio);
         }
         
@@ -156,6 +198,7 @@ public class TradeService {
         trade.setTotalAmount(totalAmount);
         
         Trade updatedTrade = tradeRepository.save(trade);
+        eventPublisher.publishEvent(TradeEvent.updated(updatedTrade, organizationId, previousPortfolioId, previousSymbol, previousTradeDate));
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
@@ -171,13 +214,11 @@ public class TradeService {
                 .orElseThrow(() -> new ResourceNotFoundException("Trade not found with id: " + id));
         
         // Check if user has access to this trade (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(trade.getPortfolio().getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this trade");
-        }
+        Long organizationId = portfolioAccess.checkTrade(trade, currentUser);
         
-        // Check if trade can be deleted
-        if (trade.getStatus() != TradeStatus.PENDING) {
+        // Check if trade can be deleted; the status is checked again by the delete itself
+        if (trade.getStatus() != TradeStatus.PENDING
+                || tradeRepository.deleteByIdAndStatus(id, TradeStatus.PENDING) == 0) {
             throw new BadRequestException("Only pending trades can be deleted");
         }
         
@@ -186,31 +227,50 @@ public class TradeService {
                 "Deleted trade: " + trade.getSide() + " " + 
                         trade.getQuantity() + " " + trade.getSymbol());
         
-        tradeRepository.delete(trade);
+        eventPublisher.publishEvent(TradeEvent.of(TradeEvent.Type.DELETED, trade, organizationId));
     }
 
     public Page<Trade> getTradesByPortfolio(Long portfolioId, Pageable pageable, UserPrincipal currentUser) {
-        // Check if portfolio exists
-        Portfolio portfolio = portfolioRepository.findById(portfolioId)
-                .orElseThrow(() -> new ResourceNotFoundException("Portfolio not found with id: " + portfolioId));
-        
-        // Check if user has access to this portfolio (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(portfolio.getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this portfolio");
-        }
-        
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
         return tradeRepository.findByPortfolioId(portfolioId, pageable);
     }
 
+    public CursorPage<Trade> scrollTradesByPortfolio(Long portfolioId, String cursor, int size,
+                                                     UserPrincipal currentUser) {
+        SeekCursor after = SeekCursor.decode(SeekCursor.TRADES, cursor);
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
+        List<Trade> rows = after == null
+                ? tradeRepository.findKeysetFirstByPortfolioId(portfolioId, CursorPage.probe(size))
+                : tradeRepository.findKeysetAfterByPortfolioId(portfolioId, after.getDateKey(), after.getId(),
+                        CursorPage.probe(size));
+        return CursorPage.of(rows, size, TradeService::cursorOf);
+    }
+
     public Page<Trade> getTradesByUser(Long userId, Pageable pageable, UserPrincipal currentUser) {
+        checkUserTradesAccess(userId, currentUser);
+        return tradeRepository.findByUserId(userId, pageable);
+    }
+
+    public CursorPage<Trade> scrollTradesByUser(Long userId, String cursor, int size, UserPrincipal currentUser) {
+        SeekCursor after = SeekCursor.decode(SeekCursor.TRADES, cursor);
+        checkUserTradesAccess(userId, currentUser);
+        List<Trade> rows = after == null
+                ? tradeRepository.findKeysetFirstByUserId(userId, CursorPage.probe(size))
+                : tradeRepository.findKeysetAfterByUserId(userId, after.getDateKey(), after.getId(),
+                        CursorPage.probe(size));
+        return CursorPage.of(rows, size, TradeService::cursorOf);
+    }
+
+    private void checkUserTradesAccess(Long userId, UserPrincipal currentUser) {
         // Only admins or the user themselves can see their trades
         if (!currentUser.getId().equals(userId) && 
                 !currentUser.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"))) {
             throw new UnauthorizedException("You don't have permission to view these trades");
         }
-        
-        return tradeRepository.findByUserId(userId, pageable);
+    }
+
+    private static String cursorOf(Trade trade) {
+        return SeekCursor.encode(SeekCursor.TRADES, trade.getTradeDate(), trade.getId());
     }
 
     @Transactional
@@ -219,10 +279,7 @@ public class TradeService {
                 .orElseThrow(() -> new ResourceNotFoundException("Trade not found with id: " + id));
         
         // Check if user has access to this trade (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(trade.getPortfolio().getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this trade");
-        }
+        Long organizationId = portfolioAccess.checkTrade(trade, currentUser);
         
         // Check if trade can be executed
         if (trade.getStatus() != TradeStatus.PENDING) {
@@ -231,6 +288,7 @@ public class TradeService {
         
         trade.setStatus(TradeStatus.EXECUTED);
         Trade executedTrade = tradeRepository.save(trade);
+        eventPublisher.publishEvent(TradeEvent.of(TradeEvent.Type.EXECUTED, executedTrade, organizationId));
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
@@ -246,10 +304,7 @@ public class TradeService {
                 .orElseThrow(() -> new ResourceNotFoundException("Trade not found with id: " + id));
         
         // Check if user has access to this trade (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(trade.getPortfolio().getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this trade");
-        }
+        Long organizationId = portfolioAccess.checkTrade(trade, currentUser);
         
         // Check if trade can be settled
         if (trade.getStatus() != TradeStatus.EXECUTED) {
@@ -258,6 +313,7 @@ public class TradeService {
         
         trade.setStatus(TradeStatus.SETTLED);
         Trade settledTrade = tradeRepository.save(trade);
+        eventPublisher.publishEvent(TradeEvent.of(TradeEvent.Type.SETTLED, settledTrade, organizationId));
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
@@ -273,10 +329,7 @@ public class TradeService {
                 .orElseThrow(() -> new ResourceNotFoundException("Trade not found with id: " + id));
         
         // Check if user has access to this trade (same organization)
-        if (currentUser.getOrganizationId() != null && 
-                !currentUser.getOrganizationId().equals(trade.getPortfolio().getOrganization().getId())) {
-            throw new UnauthorizedException("You don't have access to this trade");
-        }
+        Long organizationId = portfolioAccess.checkTrade(trade, currentUser);
         
         // Check if trade can be canceled
         if (trade.getStatus() == TradeStatus.SETTLED) {
@@ -285,6 +338,7 @@ public class TradeService {
         
         trade.setStatus(TradeStatus.CANCELED);
         Trade canceledTrade = tradeRepository.save(trade);
+        eventPublisher.publishEvent(TradeEvent.of(TradeEvent.Type.CANCELED, canceledTrade, organizationId));
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
@@ -294,8 +348,8 @@ public class TradeService {
         return canceledTrade;
     }
 
-    // Helper method to calculate commission
-    private double calculateCommission(int quantity, double price) {
+    // Helper method to calculate commission; also used for imported trades without one
+    public static double calculateCommission(int quantity, double price) {
         // Example commission calculation: 0.5% of trade value with min $1.00
         double commission = quantity * price * 0.005;
         return Math.max(1.00, commission);
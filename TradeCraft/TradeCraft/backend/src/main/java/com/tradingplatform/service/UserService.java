@@ -10,6 +10,8 @@ import com.tradingplatform.model.User;
 import com.tradingplatform.repository.OrganizationRepository;
 import com.tradingplatform.repository.RoleRepository;
 import com.tradingplatform.repository.UserRepository;
+import com.tradingplatform.security.PrincipalCache;
+import com.tradingplatform.security.TokenRevocationList;
 import com.tradingplatform.security.UserPrincipal;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -29,15 +31,20 @@ public class UserService {
     private final OrganizationRepository organizationRepository;
     private final PasswordEncoder passwordEncoder;
     private final AuditLogService auditLogService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationList tokenRevocationList;
 
     public UserService(UserRepository userRepository, RoleRepository roleRepository,
                       OrganizationRepository organizationRepository,
-                      PasswordEncoder passwordEncoder, AuditLogService auditLogService) {
+                      PasswordEncoder passwordEncoder, AuditLogService auditLogService,
+                      PrincipalCache principalCache, TokenRevocationList tokenRevocationList) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.organizationRepository = organizationRepository;
         this.passwordEncoder = passwordEncoder;
         this.auditLogService = auditLogService;
+        this.principalCache = principalCache;
+        this.tokenRevocationList = tokenRevocationList;
     }
 
     public Page<User> getAllUsers(Pageable pageable) {
@@ -119,6 +126,10 @@ public class UserService {
                 userRepository.existsByUsername(userDto.getUsername())) {
             throw new BadRequestException("Username is already taken");
         }
+        
+        // Tokens are issued per username, so both the old and the new name are invalidated
+        principalCache.invalidateUser(user.getUsername());
+        principalCache.invalidateUser(userDto.getUsername());
 
         if (!user.getEmail().equals(userDto.getEmail()) &&
                 userRepository.existsByEmail(userDto.getEmail())) {
@@ -182,6 +193,8 @@ public class UserService {
                 "Deleted user: " + user.getUsername());
         
         userRepository.delete(user);
+        principalCache.invalidateUser(user.getUsername());
+        tokenRevocationList.revokeUser(user.getId());
     }
 
     @Transactional
@@ -230,6 +243,7 @@ public class UserService {
         user.setRoles(roles);
         
         User updatedUser = userRepository.save(user);
+        principalCache.invalidateUser(updatedUser.getUsername());
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
@@ -255,6 +269,7 @@ public class UserService {
         
         user.setRoles(roles);
         User updatedUser = userRepository.save(user);
+        principalCache.invalidateUser(updatedUser.getUsername());
         
         // Audit log
         auditLogService.logUserAction(currentUser, "UPDATE", 
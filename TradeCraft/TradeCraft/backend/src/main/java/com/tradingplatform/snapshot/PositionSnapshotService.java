@@ -0,0 +1,350 @@
+package com.tradingplatform.snapshot;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.event.TradeEvent;
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.HoldingsTable;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * End-of-day position snapshots and point-in-time holdings.
+ *
+ * A nightly job writes, for every portfolio with trades since its last snapshot, one row per
+ * symbol of its positions at the end of the previous day. Holdings as of a date are then the
+ * nearest snapshot on or before it plus only the trades dated after that snapshot, applied
+ * in trade date order. Portfolios without new trades get no new snapshot, so the table
+ * grows with activity rather than with days.
+ *
+ * A trade created, changed, deleted or canceled with a trade date on or before the latest
+ * snapshot makes that portfolio's snapshots from that date stale. They are ignored by
+ * as-of queries at once and rewritten by the repair job shortly after. The change also
+ * writes a {@code position_snapshot_repairs} row in its own transaction, so stale
+ * snapshots are still repaired after a restart or by another instance.
+ */
+@Service
+public class PositionSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(PositionSnapshotService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO position_snapshots "
+            + "(portfolio_id, snapshot_date, symbol, quantity, total_cost, last_price) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String TRADES_SQL = "SELECT symbol, side, quantity, price, commission FROM trades "
+            + "WHERE portfolio_id = ? AND status <> ? AND trade_date > ? AND trade_date <= ? ORDER BY trade_date, id";
+    private static final String MARK_SQL = "INSERT INTO position_snapshot_repairs (portfolio_id, from_date) VALUES (?, ?)";
+    // Stands in for "no snapshot yet": every trade is dated after it
+    private static final LocalDate EPOCH = LocalDate.of(1900, 1, 1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // Earliest stale snapshot date per portfolio, until the repair job rewrites it
+    private final ConcurrentMap<Long, LocalDate> repairs = new ConcurrentHashMap<>();
+    private volatile LocalDate latestSnapshotDate;
+    private volatile boolean latestKnown;
+
+    @Value("${app.snapshots.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.snapshots.batch-size:500}")
+    private int batchSize;
+
+    public PositionSnapshotService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${app.snapshots.cron:0 15 0 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            repairPending();
+            takeSnapshots(LocalDate.now().minusDays(1));
+        }
+    }
+
+    /**
+     * Snapshots every portfolio whose positions changed since its last snapshot, as of the
+     * end of {@code date}.
+     *
+     * @return the number of portfolios snapshotted
+     */
+    public synchronized int takeSnapshots(LocalDate date) {
+        long start = System.currentTimeMillis();
+        // Raised first, so trades committed while this runs are queued for repair
+        LocalDate latest = latestSnapshotDate();
+        if (latest == null || date.isAfter(latest)) {
+            latestSnapshotDate = date;
+        }
+        int taken = 0;
+        long afterId = 0;
+        while (true) {
+            List<Long> portfolioIds = jdbcTemplate.queryForList(
+                    "SELECT id FROM portfolios WHERE id > ? ORDER BY id LIMIT ?", Long.class, afterId, batchSize);
+            if (portfolioIds.isEmpty()) {
+                break;
+            }
+            Integer chunk = transactionTemplate.execute(status -> {
+                int written = 0;
+                for (Long portfolioId : portfolioIds) {
+                    if (snapshot(portfolioId, date)) {
+                        written++;
+                    }
+                }
+                return written;
+            });
+            taken += chunk != null ? chunk : 0;
+            afterId = portfolioIds.get(portfolioIds.size() - 1);
+        }
+        logger.info("Snapshotted positions of {} portfolios as of {} in {} ms",
+                taken, date, System.currentTimeMillis() - start);
+        return taken;
+    }
+
+    /**
+     * Open positions of a portfolio at the end of {@code date}, valued at last trade prices.
+     */
+    public List<Holding> holdingsAsOf(Long portfolioId, LocalDate date) {
+        LocalDate stale = repairs.get(portfolioId);
+        LocalDate base = latestSnapshot(portfolioId, date, stale);
+        return compute(portfolioId, base, date).openHoldings();
+    }
+
+    // Persisted in the trade's transaction, so the marker commits or rolls back with the change
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void markTradeEvent(TradeEvent event) {
+        changes(event, this::mark);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void markPortfolioTradesChanged(PortfolioTradesChangedEvent event) {
+        if (event.isPositionsChanged()) {
+            event.getEarliestTradeDates().forEach(this::mark);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTradeEvent(TradeEvent event) {
+        changes(event, this::invalidate);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioTradesChanged(PortfolioTradesChangedEvent event) {
+        if (event.isPositionsChanged()) {
+            event.getEarliestTradeDates().forEach(this::invalidate);
+        }
+    }
+
+    // Stale snapshots left by a previous run are ignored by as-of queries before the first repair
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadMarkers() {
+        markers().forEach((portfolioId, marker) -> invalidate(portfolioId, marker.from));
+    }
+
+    /**
+     * Rewrites stale snapshots, one portfolio per transaction. Portfolios marked in the
+     * table and those queued in memory are both repaired.
+     */
+    @Scheduled(fixedDelayString = "${app.snapshots.repair-interval-ms:5000}")
+    public synchronized void repairPending() {
+        // Read before the trades, so every marker read is covered by the rewrite
+        Map<Long, Marker> markers = markers();
+        Map<Long, LocalDate> queued = new HashMap<>(repairs);
+        Map<Long, LocalDate> pending = new HashMap<>(queued);
+        markers.forEach((portfolioId, marker) -> pending.merge(portfolioId, marker.from, PositionSnapshotService::earlier));
+
+        for (Map.Entry<Long, LocalDate> entry : pending.entrySet()) {
+            Long portfolioId = entry.getKey();
+            LocalDate from = entry.getValue();
+            Marker marker = markers.get(portfolioId);
+            try {
+                int rewritten = repair(portfolioId, from, marker != null ? marker.ids : Collections.emptyList());
+                // A trade dated even earlier may have arrived meanwhile; it stays queued
+                LocalDate queuedFrom = queued.get(portfolioId);
+                if (queuedFrom != null) {
+                    repairs.remove(portfolioId, queuedFrom);
+                }
+                logger.debug("Rewrote {} snapshots of portfolio {} from {}", rewritten, portfolioId, from);
+            } catch (RuntimeException e) {
+                logger.error("Could not repair snapshots of portfolio {} from {}", portfolioId, from, e);
+            }
+        }
+    }
+
+    private static void changes(TradeEvent event, BiConsumer<Long, LocalDate> action) {
+        switch (event.getType()) {
+            case CREATED:
+            case DELETED:
+            case CANCELED:
+                action.accept(event.getPortfolioId(), event.getTradeDate());
+                break;
+            case UPDATED:
+                action.accept(event.getPreviousPortfolioId(), event.getPreviousTradeDate());
+                action.accept(event.getPortfolioId(), event.getTradeDate());
+                break;
+            default:
+                // Execution and settlement do not move positions
+                break;
+        }
+    }
+
+    private void mark(Long portfolioId, LocalDate tradeDate) {
+        if (stale(portfolioId, tradeDate)) {
+            jdbcTemplate.update(MARK_SQL, portfolioId, Date.valueOf(tradeDate));
+        }
+    }
+
+    // Marks a portfolio's snapshots from tradeDate on as stale
+    private void invalidate(Long portfolioId, LocalDate tradeDate) {
+        if (stale(portfolioId, tradeDate)) {
+            repairs.merge(portfolioId, tradeDate, PositionSnapshotService::earlier);
+        }
+    }
+
+    private boolean stale(Long portfolioId, LocalDate tradeDate) {
+        if (portfolioId == null || tradeDate == null) {
+            return false;
+        }
+        LocalDate latest = latestSnapshotDate();
+        // Otherwise only the next snapshot can include it
+        return latest != null && !tradeDate.isAfter(latest);
+    }
+
+    private Map<Long, Marker> markers() {
+        Map<Long, Marker> markers = new HashMap<>();
+        jdbcTemplate.query("SELECT id, portfolio_id, from_date FROM position_snapshot_repairs", rs -> {
+            Marker marker = markers.computeIfAbsent(rs.getLong(2), id -> new Marker());
+            marker.ids.add(rs.getLong(1));
+            LocalDate from = rs.getDate(3).toLocalDate();
+            marker.from = marker.from == null ? from : earlier(marker.from, from);
+        });
+        return markers;
+    }
+
+    private static LocalDate earlier(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    // Deletes the given markers with the rewrite; markers written since are repaired next time
+    private int repair(Long portfolioId, LocalDate from, List<Long> markerIds) {
+        Integer rewritten = transactionTemplate.execute(status -> {
+            for (int i = 0; i < markerIds.size(); i += batchSize) {
+                List<Long> ids = markerIds.subList(i, Math.min(i + batchSize, markerIds.size()));
+                jdbcTemplate.update("DELETE FROM position_snapshot_repairs WHERE id IN ("
+                        + String.join(",", Collections.nCopies(ids.size(), "?")) + ")", ids.toArray());
+            }
+            List<LocalDate> dates = jdbcTemplate.queryForList("SELECT DISTINCT snapshot_date FROM position_snapshots "
+                    + "WHERE portfolio_id = ? AND snapshot_date >= ? ORDER BY snapshot_date", LocalDate.class,
+                    portfolioId, Date.valueOf(from));
+            jdbcTemplate.update("DELETE FROM position_snapshots WHERE portfolio_id = ? AND snapshot_date >= ?",
+                    portfolioId, Date.valueOf(from));
+            LocalDate base = latestSnapshot(portfolioId, from, null);
+            HoldingsTable holdings = compute(portfolioId, base, from.minusDays(1));
+            LocalDate applied = from.minusDays(1);
+            for (LocalDate date : dates) {
+                applyTrades(holdings, portfolioId, applied, date);
+                write(portfolioId, date, holdings);
+                applied = date;
+            }
+            return dates.size();
+        });
+        return rewritten != null ? rewritten : 0;
+    }
+
+    // Writes a snapshot if anything moved since the last one; false if none was needed
+    private boolean snapshot(Long portfolioId, LocalDate date) {
+        LocalDate base = latestSnapshot(portfolioId, date, repairs.get(portfolioId));
+        if (date.equals(base)) {
+            return false;
+        }
+        Integer changes = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trades WHERE portfolio_id = ? "
+                        + "AND status <> ? AND trade_date > ? AND trade_date <= ?", Integer.class,
+                portfolioId, TradeStatus.CANCELED.name(), Date.valueOf(base != null ? base : EPOCH), Date.valueOf(date));
+        if (changes == null || changes == 0) {
+            return false;
+        }
+        write(portfolioId, date, compute(portfolioId, base, date));
+        return true;
+    }
+
+    // Latest snapshot on or before date, and before the first stale date if there is one
+    private LocalDate latestSnapshot(Long portfolioId, LocalDate date, LocalDate stale) {
+        LocalDate limit = stale != null && !stale.isAfter(date) ? stale.minusDays(1) : date;
+        return jdbcTemplate.queryForObject("SELECT MAX(snapshot_date) FROM position_snapshots "
+                + "WHERE portfolio_id = ? AND snapshot_date <= ?", LocalDate.class, portfolioId, Date.valueOf(limit));
+    }
+
+    private HoldingsTable compute(Long portfolioId, LocalDate base, LocalDate date) {
+        HoldingsTable holdings = new HoldingsTable();
+        if (base != null) {
+            jdbcTemplate.query("SELECT symbol, quantity, total_cost, last_price FROM position_snapshots "
+                    + "WHERE portfolio_id = ? AND snapshot_date = ?", rs -> {
+                holdings.put(Holding.restore(rs.getString(1), rs.getLong(2), rs.getDouble(3), rs.getDouble(4)));
+            }, portfolioId, Date.valueOf(base));
+        }
+        applyTrades(holdings, portfolioId, base != null ? base : EPOCH, date);
+        return holdings;
+    }
+
+    // Trades dated in (after, upTo], in trade date order
+    private void applyTrades(HoldingsTable holdings, Long portfolioId, LocalDate after, LocalDate upTo) {
+        if (!upTo.isAfter(after)) {
+            return;
+        }
+        jdbcTemplate.query(TRADES_SQL, rs -> {
+            double commission = rs.getDouble(5);
+            holdings.apply(rs.getString(1), TradeSide.valueOf(rs.getString(2)), rs.getInt(3), rs.getDouble(4),
+                    rs.wasNull() ? 0.0 : commission);
+        }, portfolioId, TradeStatus.CANCELED.name(), Date.valueOf(after), Date.valueOf(upTo));
+    }
+
+    private void write(Long portfolioId, LocalDate date, HoldingsTable holdings) {
+        List<Object[]> rows = new ArrayList<>(holdings.size());
+        holdings.forEach(holding -> {
+            // Closed positions with no cost left carry nothing forward
+            if (holding.getQuantity() != 0 || holding.getTotalCost() != 0) {
+                rows.add(new Object[]{portfolioId, Date.valueOf(date), holding.getSymbol(), holding.getQuantity(),
+                        holding.getTotalCost(), holding.getCurrentPrice()});
+            }
+        });
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        }
+    }
+
+    private LocalDate latestSnapshotDate() {
+        if (!latestKnown) {
+            latestSnapshotDate = jdbcTemplate.queryForObject("SELECT MAX(snapshot_date) FROM position_snapshots",
+                    LocalDate.class);
+            latestKnown = true;
+        }
+        return latestSnapshotDate;
+    }
+
+    // Persisted stale marks of one portfolio
+    private static final class Marker {
+        private final List<Long> ids = new ArrayList<>();
+        private LocalDate from;
+    }
+}
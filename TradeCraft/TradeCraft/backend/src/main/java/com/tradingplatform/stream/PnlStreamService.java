@@ -0,0 +1,377 @@
+package com.tradingplatform.stream;
+
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.event.TradeEvent;
+import com.tradingplatform.exception.BadRequestException;
+import com.tradingplatform.exception.ResourceNotFoundException;
+import com.tradingplatform.exception.UnauthorizedException;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.HoldingsMarker;
+import com.tradingplatform.marketdata.PriceUpdateEvent;
+import com.tradingplatform.repository.PortfolioRepository;
+import com.tradingplatform.security.PortfolioAccess;
+import com.tradingplatform.security.UserPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes live P&L of portfolios to Server-Sent Event subscribers.
+ *
+ * Trade events and price updates only mark portfolios dirty. Every
+ * {@code app.stream.conflation-ms} the dirty portfolios are re-marked once each, diffed
+ * against what was last published, and each subscriber gets at most one "pnl" event
+ * holding the changed holdings of every portfolio it follows. Deltas not yet sent to a
+ * slow subscriber are merged rather than queued. The conflation tick has its own thread;
+ * sends run on a fixed pool of {@code app.stream.threads}, so the thread count does not grow
+ * with subscribers. A send still running after {@code app.stream.send-timeout-ms} is
+ * cancelled and its subscriber dropped, so a stalled client cannot hold a send thread.
+ *
+ * Bulk JDBC paths (import, set-based transitions, settlement) publish one
+ * {@link PortfolioTradesChangedEvent} per chunk instead of trade events. Every followed
+ * portfolio is also re-marked each {@code app.stream.full-refresh-ms}, which catches changes
+ * no event announces.
+ */
+@Component
+public class PnlStreamService {
+    private static final Logger logger = LoggerFactory.getLogger(PnlStreamService.class);
+
+    private final PositionLedger positionLedger;
+    private final HoldingsMarker holdingsMarker;
+    private final PortfolioAccess portfolioAccess;
+    private final PortfolioRepository portfolioRepository;
+
+    private final ConcurrentMap<Long, Set<Subscriber>> byPortfolio = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<Subscriber>> byOrganization = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    // Last published view of every followed portfolio
+    private final ConcurrentMap<Long, PortfolioView> views = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.stream.conflation-ms:1000}")
+    private long conflationMs;
+
+    @Value("${app.stream.threads:2}")
+    private int threads;
+
+    // EventSource clients reconnect by themselves once this elapses
+    @Value("${app.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${app.stream.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${app.stream.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.stream.full-refresh-ms:30000}")
+    private long fullRefreshMs;
+
+    private ScheduledExecutorService ticker;
+    private ExecutorService senders;
+    private long lastFullRefresh;
+
+    public PnlStreamService(PositionLedger positionLedger, HoldingsMarker holdingsMarker,
+                            PortfolioAccess portfolioAccess, PortfolioRepository portfolioRepository) {
+        this.positionLedger = positionLedger;
+        this.holdingsMarker = holdingsMarker;
+        this.portfolioAccess = portfolioAccess;
+        this.portfolioRepository = portfolioRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "pnl-stream-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastFullRefresh = System.currentTimeMillis();
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pnl-stream-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, conflationMs, conflationMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        for (Set<Subscriber> subscribers : allSubscribers()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    /**
+     * Streams the P&L of one portfolio, starting with a "snapshot" event of all holdings.
+     */
+    public SseEmitter subscribePortfolio(Long portfolioId, UserPrincipal currentUser) {
+        portfolioAccess.checkPortfolio(portfolioId, currentUser);
+        Subscriber subscriber = register(byPortfolio, portfolioId);
+        sendSnapshot(subscriber, Collections.singletonList(portfolioId));
+        return subscriber.emitter;
+    }
+
+    /**
+     * Streams the P&L of every portfolio of an organization, including ones created later.
+     */
+    public SseEmitter subscribeOrganization(Long organizationId, UserPrincipal currentUser) {
+        // Users without an organization are administrators
+        if (currentUser.getOrganizationId() != null && !currentUser.getOrganizationId().equals(organizationId)) {
+            throw new UnauthorizedException("You don't have access to this organization");
+        }
+        Subscriber subscriber = register(byOrganization, organizationId);
+        sendSnapshot(subscriber, portfolioRepository.findIdsByOrganizationId(organizationId));
+        return subscriber.emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTradeEvent(TradeEvent event) {
+        if (subscriberCount.get() == 0) {
+            return;
+        }
+        dirty.add(event.getPortfolioId());
+        if (event.getPreviousPortfolioId() != null) {
+            dirty.add(event.getPreviousPortfolioId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioTradesChanged(PortfolioTradesChangedEvent event) {
+        if (subscriberCount.get() > 0 && event.isPositionsChanged()) {
+            dirty.addAll(event.getPortfolioIds());
+        }
+    }
+
+    @EventListener
+    public void onPriceUpdate(PriceUpdateEvent event) {
+        for (Map.Entry<Long, PortfolioView> entry : views.entrySet()) {
+            for (String symbol : event.getSymbols()) {
+                if (entry.getValue().holds(symbol)) {
+                    dirty.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    private Subscriber register(ConcurrentMap<Long, Set<Subscriber>> index, Long key) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new BadRequestException("Too many live subscriptions, try again later");
+        }
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMs), index, key);
+        // Added inside compute so a concurrent close cannot drop the set being added to
+        index.compute(key, (k, subscribers) -> {
+            Set<Subscriber> set = subscribers != null ? subscribers : ConcurrentHashMap.<Subscriber>newKeySet();
+            set.add(subscriber);
+            return set;
+        });
+        subscriber.emitter.onCompletion(subscriber::close);
+        subscriber.emitter.onTimeout(subscriber.emitter::complete);
+        subscriber.emitter.onError(e -> subscriber.close());
+        return subscriber;
+    }
+
+    private void sendSnapshot(Subscriber subscriber, Collection<Long> portfolioIds) {
+        List<Map<String, Object>> portfolios = new ArrayList<>(portfolioIds.size());
+        for (Long portfolioId : portfolioIds) {
+            PortfolioView view = currentView(portfolioId);
+            // Keep the published view so others still get the pending delta against it
+            views.putIfAbsent(portfolioId, view);
+            portfolios.add(view.snapshot());
+        }
+        try {
+            subscriber.emitter.send(SseEmitter.event().name("snapshot").data(portfolios, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private void tick() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("P&L stream flush failed", e);
+        }
+    }
+
+    private void flush() {
+        long now = System.currentTimeMillis();
+        Set<Long> changed = new HashSet<>();
+        for (Iterator<Long> it = dirty.iterator(); it.hasNext(); ) {
+            changed.add(it.next());
+            it.remove();
+        }
+        if (fullRefreshMs > 0 && now - lastFullRefresh >= fullRefreshMs) {
+            changed.addAll(views.keySet());
+            lastFullRefresh = now;
+        }
+
+        for (Long portfolioId : changed) {
+            List<Subscriber> targets = subscribersOf(portfolioId);
+            if (targets.isEmpty()) {
+                views.remove(portfolioId);
+                continue;
+            }
+            PortfolioView view = currentView(portfolioId);
+            Map<String, Object> delta = view.deltaFrom(views.put(portfolioId, view));
+            if (delta != null) {
+                for (Subscriber subscriber : targets) {
+                    subscriber.offer(portfolioId, delta);
+                }
+            }
+        }
+
+        for (Set<Subscriber> subscribers : allSubscribers()) {
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.stalled(now)) {
+                    subscriber.abort();
+                } else if (subscriber.due(now)) {
+                    subscriber.task = senders.submit(subscriber::send);
+                }
+            }
+        }
+    }
+
+    private PortfolioView currentView(Long portfolioId) {
+        return new PortfolioView(portfolioId, holdingsMarker.mark(positionLedger.getHoldings(portfolioId)));
+    }
+
+    private List<Subscriber> subscribersOf(Long portfolioId) {
+        List<Subscriber> targets = new ArrayList<>();
+        Set<Subscriber> direct = byPortfolio.get(portfolioId);
+        if (direct != null) {
+            targets.addAll(direct);
+        }
+        if (!byOrganization.isEmpty()) {
+            try {
+                Set<Subscriber> viaOrganization = byOrganization.get(portfolioAccess.organizationOf(portfolioId));
+                if (viaOrganization != null) {
+                    targets.addAll(viaOrganization);
+                }
+            } catch (ResourceNotFoundException e) {
+                // Portfolio was deleted; only direct subscribers still hear about it
+            }
+        }
+        return targets;
+    }
+
+    private List<Set<Subscriber>> allSubscribers() {
+        List<Set<Subscriber>> all = new ArrayList<>(byPortfolio.values());
+        all.addAll(byOrganization.values());
+        return all;
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final ConcurrentMap<Long, Set<Subscriber>> index;
+        private final Long key;
+        // Unsent message per portfolio, guarded by this
+        private final Map<Long, Map<String, Object>> pending = new LinkedHashMap<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long lastSentAt;
+        // Start of the send in progress, or 0
+        private volatile long sendStartedAt;
+        private volatile Future<?> task;
+
+        private Subscriber(SseEmitter emitter, ConcurrentMap<Long, Set<Subscriber>> index, Long key) {
+            this.emitter = emitter;
+            this.index = index;
+            this.key = key;
+        }
+
+        private synchronized void offer(Long portfolioId, Map<String, Object> delta) {
+            Map<String, Object> older = pending.get(portfolioId);
+            pending.put(portfolioId, older == null ? delta : PortfolioView.merge(older, delta));
+        }
+
+        private boolean due(long now) {
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return false;
+                }
+            }
+            return now - lastSentAt >= conflationMs && sending.compareAndSet(false, true);
+        }
+
+        private boolean stalled(long now) {
+            long started = sendStartedAt;
+            return started > 0 && now - started > sendTimeoutMs;
+        }
+
+        private void abort() {
+            logger.debug("Dropping P&L subscriber: send blocked for over {} ms", sendTimeoutMs);
+            close();
+            Future<?> running = task;
+            if (running != null) {
+                running.cancel(true);
+            }
+            emitter.completeWithError(new TimeoutException("P&L send timed out"));
+        }
+
+        private void send() {
+            sendStartedAt = System.currentTimeMillis();
+            List<Map<String, Object>> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            try {
+                emitter.send(SseEmitter.event().name("pnl").data(batch, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping P&L subscriber: {}", e.getMessage());
+                close();
+            } finally {
+                sendStartedAt = 0;
+                lastSentAt = System.currentTimeMillis();
+                sending.set(false);
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            index.computeIfPresent(key, (k, subscribers) -> {
+                subscribers.remove(this);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+            subscriberCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tradingplatform.stream;
+
+import com.tradingplatform.ledger.Holding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marked holdings of one portfolio as last published, and the deltas between two of them.
+ * Deltas carry absolute values, so applying one twice or out of turn leaves a client with
+ * the same state.
+ */
+final class PortfolioView {
+    private final Long portfolioId;
+    private final Map<String, Holding> holdings;
+    private final double totalMarketValue;
+    private final double totalCost;
+
+    PortfolioView(Long portfolioId, List<Holding> marked) {
+        this.portfolioId = portfolioId;
+        this.holdings = new LinkedHashMap<>();
+        double marketValue = 0;
+        double cost = 0;
+        for (Holding holding : marked) {
+            holdings.put(holding.getSymbol(), holding);
+            marketValue += holding.getMarketValue();
+            cost += holding.getTotalCost();
+        }
+        this.totalMarketValue = marketValue;
+        this.totalCost = cost;
+    }
+
+    boolean holds(String symbol) {
+        return holdings.containsKey(symbol);
+    }
+
+    /**
+     * Every holding, for a client that has nothing yet.
+     */
+    Map<String, Object> snapshot() {
+        return message(new ArrayList<>(holdings.values()), new ArrayList<>());
+    }
+
+    /**
+     * Holdings that changed since {@code previous} and symbols no longer held, or
+     * {@code null} if nothing changed.
+     */
+    Map<String, Object> deltaFrom(PortfolioView previous) {
+        if (previous == null) {
+            return snapshot();
+        }
+        List<Holding> changed = new ArrayList<>();
+        for (Holding holding : holdings.values()) {
+            Holding before = previous.holdings.get(holding.getSymbol());
+            if (before == null || before.getQuantity() != holding.getQuantity()
+                    || Double.compare(before.getTotalCost(), holding.getTotalCost()) != 0
+                    || Double.compare(before.getCurrentPrice(), holding.getCurrentPrice()) != 0) {
+                changed.add(holding);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String symbol : previous.holdings.keySet()) {
+            if (!holdings.containsKey(symbol)) {
+                removed.add(symbol);
+            }
+        }
+        return changed.isEmpty() && removed.isEmpty() ? null : message(changed, removed);
+    }
+
+    /**
+     * Combines two messages for the same portfolio into one with the effect of both, for a
+     * subscriber that has not been sent the older one yet.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> merge(Map<String, Object> older, Map<String, Object> newer) {
+        Map<String, Map<String, Object>> holdings = new LinkedHashMap<>();
+        for (Map<String, Object> holding : (List<Map<String, Object>>) older.get("holdings")) {
+            holdings.put((String) holding.get("symbol"), holding);
+        }
+        for (Map<String, Object> holding : (List<Map<String, Object>>) newer.get("holdings")) {
+            holdings.put((String) holding.get("symbol"), holding);
+        }
+        Set<String> removed = new LinkedHashSet<>((List<String>) older.get("removed"));
+        removed.removeAll(holdings.keySet());
+        for (String symbol : (List<String>) newer.get("removed")) {
+            holdings.remove(symbol);
+            removed.add(symbol);
+        }
+
+        Map<String, Object> merged = new HashMap<>(newer);
+        merged.put("holdings", new ArrayList<>(holdings.values()));
+        merged.put("removed", new ArrayList<>(removed));
+        return merged;
+    }
+
+    private Map<String, Object> message(List<Holding> changed, List<String> removed) {
+        List<Map<String, Object>> changedMaps = new ArrayList<>(changed.size());
+        for (Holding holding : changed) {
+            changedMaps.add(holding.toMap());
+        }
+        double totalProfitLoss = totalMarketValue - totalCost;
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("portfolioId", portfolioId);
+        message.put("holdings", changedMaps);
+        message.put("removed", removed);
+        message.put("totalMarketValue", totalMarketValue);
+        message.put("totalCost", totalCost);
+        message.put("totalProfitLoss", totalProfitLoss);
+        message.put("profitLossPercent", totalCost > 0 ? (totalProfitLoss / totalCost) * 100 : 0);
+        return message;
+    }
+}
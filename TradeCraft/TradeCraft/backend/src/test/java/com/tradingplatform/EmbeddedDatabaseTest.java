@@ -0,0 +1,86 @@
+package com.tradingplatform;
+
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Base for tests of services that talk JDBC: an embedded H2 database with the schema Hibernate
+ * generates from the entities. Tests run outside a transaction, as the services commit their
+ * own, and every table is emptied after each test.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public abstract class EmbeddedDatabaseTest {
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void clearTables() {
+        jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY FALSE");
+        for (String table : jdbcTemplate.queryForList(
+                "SELECT table_name FROM information_schema.tables WHERE table_schema = 'PUBLIC'", String.class)) {
+            jdbcTemplate.execute("TRUNCATE TABLE " + table + " RESTART IDENTITY");
+        }
+        jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY TRUE");
+    }
+
+    protected long insertOrganization(String name) {
+        return insert("INSERT INTO organizations (name, active, created_at, updated_at) VALUES (?, TRUE, ?, ?)",
+                name, now(), now());
+    }
+
+    protected long insertUser(String username, Long organizationId) {
+        return insert("INSERT INTO users (username, email, password, organization_id, created_at, updated_at) "
+                + "VALUES (?, ?, 'x', ?, ?, ?)", username, username + "@example.com", organizationId, now(), now());
+    }
+
+    protected long insertPortfolio(String name, long organizationId) {
+        return insert("INSERT INTO portfolios (name, organization_id, created_at, updated_at) VALUES (?, ?, ?, ?)",
+                name, organizationId, now(), now());
+    }
+
+    protected long insertTrade(long portfolioId, long userId, String symbol, TradeSide side, int quantity,
+                               double price, LocalDate tradeDate, TradeStatus status, String externalRef) {
+        return insert("INSERT INTO trades (portfolio_id, user_id, symbol, side, quantity, price, trade_date, "
+                + "settlement_date, status, commission, total_amount, external_ref, created_at, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?, ?, ?)", portfolioId, userId, symbol, side.name(),
+                quantity, price, Date.valueOf(tradeDate), Date.valueOf(tradeDate.plusDays(2)), status.name(),
+                quantity * price, externalRef, now(), now());
+    }
+
+    private long insert(String sql, Object... args) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        }, keys);
+        return keys.getKey().longValue();
+    }
+
+    private static Timestamp now() {
+        return Timestamp.valueOf(LocalDateTime.now());
+    }
+}
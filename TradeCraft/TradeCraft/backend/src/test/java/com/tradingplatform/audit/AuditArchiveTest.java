@@ -0,0 +1,223 @@
+package com.tradingplatform.audit;
+
+import com.tradingplatform.EmbeddedDatabaseTest;
+import com.tradingplatform.exception.BadRequestException;
+import com.tradingplatform.model.AuditLog;
+import com.tradingplatform.model.AuditLog.AuditAction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+class AuditArchiveTest extends EmbeddedDatabaseTest {
+
+    @TempDir
+    Path dir;
+
+    // Deletes can be made to fail to stand in for a crash between moving a segment into place and
+    // deleting its rows
+    private JdbcTemplate jdbc;
+    private boolean failDeletes;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = spy(jdbcTemplate);
+        doAnswer(invocation -> {
+            if (failDeletes) {
+                throw new IllegalStateException("Simulated crash");
+            }
+            return invocation.callRealMethod();
+        }).when(jdbc).batchUpdate(startsWith("DELETE"), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+
+        long[] users = new long[3];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = insertUser("user" + i, null);
+        }
+        LocalDateTime old = LocalDateTime.now().minusDays(30);
+        for (int i = 1; i <= 10; i++) {
+            insertAudit(users[i % 3], "user" + i % 3, AuditAction.UPDATE, "row " + i, old.plusMinutes(i));
+        }
+    }
+
+    private void insertAudit(long userId, String username, AuditAction action, String details,
+                             LocalDateTime timestamp) {
+        jdbcTemplate.update("INSERT INTO audit_logs (user_id, username, action, details, ip, timestamp) "
+                + "VALUES (?, ?, ?, ?, '127.0.0.1', ?)", userId, username, action.name(), details,
+                Timestamp.valueOf(timestamp));
+    }
+
+    private List<String> tableRows() {
+        return jdbcTemplate.queryForList("SELECT details FROM audit_logs ORDER BY id", String.class);
+    }
+
+    private AuditArchive start() throws IOException {
+        AuditArchive archive = new AuditArchive(jdbc);
+        ReflectionTestUtils.setField(archive, "archiveDir", dir.toString());
+        ReflectionTestUtils.setField(archive, "afterDays", 7);
+        ReflectionTestUtils.setField(archive, "segmentRows", 4);
+        ReflectionTestUtils.setField(archive, "blockRows", 2);
+        archive.init();
+        return archive;
+    }
+
+    // Archived rows served, with the table standing empty
+    private static long archived(AuditArchive archive) {
+        Page<AuditLog> page = archive.withArchived(pageable -> new PageImpl<>(Collections.emptyList()),
+                Pageable.unpaged(), null, null, null);
+        return page.getTotalElements();
+    }
+
+    private List<String> files(String glob) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            stream.forEach(file -> names.add(file.getFileName().toString()));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    void movesOldRowsIntoSegmentsAndDeletesThem() throws IOException {
+        AuditArchive archive = start();
+
+        archive.archiveAndPurge();
+
+        assertTrue(tableRows().isEmpty());
+        assertEquals(3, files("*.seg").size());
+        assertTrue(files("*.pending").isEmpty());
+        assertTrue(files("*.tmp").isEmpty());
+        assertEquals(10, archived(archive));
+    }
+
+    @Test
+    void unsortedRequestsReadTheTableNewestFirst() throws IOException {
+        AuditArchive archive = start();
+        archive.archiveAndPurge();
+        List<Pageable> requests = new ArrayList<>();
+
+        archive.withArchived(pageable -> {
+            requests.add(pageable);
+            return new PageImpl<>(Collections.emptyList());
+        }, PageRequest.of(0, 5), null, null, null);
+
+        assertEquals(Sort.by(Sort.Direction.DESC, "timestamp", "id"), requests.get(0).getSort());
+    }
+
+    @Test
+    void rejectsSortsMixingDirections() throws IOException {
+        AuditArchive archive = start();
+        archive.archiveAndPurge();
+
+        assertThrows(BadRequestException.class, () -> archive.withArchived(
+                pageable -> new PageImpl<>(Collections.emptyList()),
+                PageRequest.of(0, 5, Sort.by(Sort.Order.desc("timestamp"), Sort.Order.asc("id"))),
+                null, null, null));
+    }
+
+    @Test
+    void keepsRecentRowsInTheTable() throws IOException {
+        insertAudit(jdbcTemplate.queryForObject("SELECT MIN(id) FROM users", Long.class), "user0",
+                AuditAction.LOGIN, "recent", LocalDateTime.now());
+        AuditArchive archive = start();
+
+        archive.archiveAndPurge();
+
+        assertEquals(Collections.singletonList("recent"), tableRows());
+        assertEquals(10, archived(archive));
+    }
+
+    @Test
+    void segmentWhoseDeletesFailedIsNotServedUntilTheyFinish() throws IOException {
+        AuditArchive archive = start();
+        failDeletes = true;
+
+        archive.archiveAndPurge();
+
+        // Moved into place with its marker, rows still in the table
+        assertEquals(1, files("*.seg").size());
+        assertEquals(1, files("*.pending").size());
+        assertEquals(10, tableRows().size());
+        assertEquals(0, archived(archive));
+
+        // A restart does not serve it either, as its rows would be counted twice
+        AuditArchive restarted = start();
+        assertEquals(0, archived(restarted));
+        assertEquals(1, files("*.pending").size());
+
+        failDeletes = false;
+        restarted.archiveAndPurge();
+
+        assertTrue(tableRows().isEmpty());
+        assertTrue(files("*.pending").isEmpty());
+        assertEquals(10, archived(restarted));
+    }
+
+    @Test
+    void finishesDeletesLeftHalfDoneByACrash() throws IOException {
+        AuditArchive archive = start();
+        failDeletes = true;
+        archive.archiveAndPurge();
+        failDeletes = false;
+        // Part of the batch went through before the crash
+        jdbcTemplate.update("DELETE FROM audit_logs WHERE details = 'row 1'");
+
+        AuditArchive restarted = start();
+        restarted.archiveAndPurge();
+
+        assertTrue(tableRows().isEmpty());
+        assertEquals(10, archived(restarted));
+    }
+
+    @Test
+    void dropsFilesOfAWriteThatNeverFinished() throws IOException {
+        Files.createFile(dir.resolve("audit-000000000000001-0000000000000000001.seg.tmp"));
+        Files.createFile(dir.resolve("audit-000000000000002-0000000000000000002.seg.tmp"));
+        Files.createFile(dir.resolve("audit-000000000000002-0000000000000000002.pending"));
+
+        AuditArchive archive = start();
+
+        assertTrue(files("*").isEmpty());
+        assertEquals(0, archived(archive));
+        assertEquals(10, tableRows().size());
+    }
+
+    @Test
+    void skipsUnreadableSegmentsOnStartup() throws IOException {
+        Files.write(dir.resolve("audit-000000000000001-0000000000000000001.seg"), new byte[]{1, 2, 3});
+        AuditArchive archive = start();
+
+        archive.archiveAndPurge();
+
+        assertEquals(10, archived(archive));
+        assertFalse(files("*.seg").isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package com.tradingplatform.audit;
+
+import com.tradingplatform.model.AuditLog.AuditAction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditSpillTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 15, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    private static AuditRecord record(String details) {
+        return new AuditRecord(1L, "alice", AuditAction.UPDATE, details, "127.0.0.1", null, NOW);
+    }
+
+    private static void append(AuditSpill spill, String... details) throws IOException {
+        for (String detail : details) {
+            spill.append(record(detail));
+        }
+    }
+
+    // Accepts up to acceptLimit records in all, remembering what it was given
+    private static final class Sink {
+        private final List<String> accepted = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private int acceptLimit = Integer.MAX_VALUE;
+
+        private int accept(List<AuditRecord> batch) {
+            batchSizes.add(batch.size());
+            int n = Math.min(batch.size(), acceptLimit);
+            for (int i = 0; i < n; i++) {
+                accepted.add(batch.get(i).getDetails());
+            }
+            acceptLimit -= n;
+            return n;
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    @Test
+    void replaysEveryRecordInBatchesAndDeletesTheFile() throws IOException {
+        AuditSpill spill = new AuditSpill(dir);
+        append(spill, "a", "b", "c", "d", "e");
+        Sink sink = new Sink();
+
+        assertTrue(spill.replay(2, sink::accept));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), sink.accepted);
+        assertEquals(Arrays.asList(2, 2, 1), sink.batchSizes);
+        assertTrue(files().isEmpty());
+    }
+
+    @Test
+    void resumesAfterTheLastAcceptedRecord() throws IOException {
+        AuditSpill spill = new AuditSpill(dir);
+        append(spill, "a", "b", "c", "d", "e");
+        Sink sink = new Sink();
+        sink.acceptLimit = 3; // Takes a, b, then only c of the second batch
+
+        assertFalse(spill.replay(2, sink::accept));
+        assertEquals(Arrays.asList("a", "b", "c"), sink.accepted);
+
+        sink.acceptLimit = Integer.MAX_VALUE;
+        assertTrue(spill.replay(2, sink::accept));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), sink.accepted);
+        assertTrue(files().isEmpty());
+    }
+
+    @Test
+    void replayAfterARestartResumesFromTheSavedOffset() throws IOException {
+        AuditSpill spill = new AuditSpill(dir);
+        append(spill, "a", "b", "c");
+        Sink sink = new Sink();
+        sink.acceptLimit = 1;
+        spill.replay(1, sink::accept);
+
+        sink.acceptLimit = Integer.MAX_VALUE;
+        assertTrue(new AuditSpill(dir).replay(1, sink::accept));
+
+        assertEquals(Arrays.asList("a", "b", "c"), sink.accepted);
+    }
+
+    @Test
+    void picksUpAFileLeftOpenByACrash() throws IOException {
+        AuditSpill crashed = new AuditSpill(dir);
+        append(crashed, "a", "b"); // Never sealed
+        Sink sink = new Sink();
+
+        assertTrue(new AuditSpill(dir).replay(10, sink::accept));
+
+        assertEquals(Arrays.asList("a", "b"), sink.accepted);
+    }
+
+    @Test
+    void dropsARecordCutShortByACrash() throws IOException {
+        AuditSpill crashed = new AuditSpill(dir);
+        append(crashed, "a", "b");
+        Path file = files().get(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        Sink sink = new Sink();
+
+        assertTrue(new AuditSpill(dir).replay(10, sink::accept));
+
+        assertEquals(Collections.singletonList("a"), sink.accepted);
+    }
+
+    @Test
+    void appendsAfterAReplayGoToANewFile() throws IOException {
+        AuditSpill spill = new AuditSpill(dir);
+        append(spill, "a");
+        Sink sink = new Sink();
+        spill.replay(10, sink::accept);
+
+        append(spill, "b");
+        assertTrue(spill.replay(10, sink::accept));
+
+        assertEquals(Arrays.asList("a", "b"), sink.accepted);
+    }
+
+    @Test
+    void quarantinedRecordsAreNotReplayed() throws IOException {
+        AuditSpill spill = new AuditSpill(dir);
+        append(spill, "a");
+        spill.quarantine(record("poison"));
+        Sink sink = new Sink();
+
+        assertTrue(spill.replay(10, sink::accept));
+        spill.close();
+
+        assertEquals(Collections.singletonList("a"), sink.accepted);
+        assertEquals(1, files().size());
+        assertTrue(files().get(0).getFileName().toString().startsWith("quarantine-"));
+    }
+}
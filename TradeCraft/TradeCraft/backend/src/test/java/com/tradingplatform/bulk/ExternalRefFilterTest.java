@@ -0,0 +1,109 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.EmbeddedDatabaseTest;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ExternalRefFilterTest extends EmbeddedDatabaseTest {
+
+    private void insertTrades(String... refs) {
+        long organization = insertOrganization("Acme");
+        long portfolio = insertPortfolio("Main", organization);
+        long user = insertUser("trader", organization);
+        for (String ref : refs) {
+            insertTrade(portfolio, user, "AAPL", TradeSide.BUY, 1, 1.0, LocalDate.of(2024, 1, 2),
+                    TradeStatus.EXECUTED, ref);
+        }
+    }
+
+    private static ExternalRefFilter filter(JdbcTemplate jdbc, long expectedRefs) {
+        ExternalRefFilter filter = new ExternalRefFilter(jdbc);
+        ReflectionTestUtils.setField(filter, "expectedRefs", expectedRefs);
+        return filter;
+    }
+
+    @Test
+    void containsEveryReferenceInTheTableAndEveryAddedOne() {
+        insertTrades("EXT-1", "EXT-2");
+        ExternalRefFilter filter = filter(jdbcTemplate, 1000);
+
+        filter.add("EXT-3");
+
+        assertTrue(filter.mightContain("EXT-1"));
+        assertTrue(filter.mightContain("EXT-2"));
+        assertTrue(filter.mightContain("EXT-3"));
+    }
+
+    @Test
+    void loadsTheTableOnceOnFirstUse() {
+        insertTrades("EXT-1");
+        JdbcTemplate jdbc = spy(jdbcTemplate);
+        ExternalRefFilter filter = filter(jdbc, 1000);
+        verify(jdbc, never()).query(anyString(), any(RowCallbackHandler.class));
+
+        filter.mightContain("EXT-1");
+        filter.add("EXT-2");
+        filter.mightContain("EXT-3");
+
+        verify(jdbc, times(1)).query(anyString(), any(RowCallbackHandler.class));
+        assertTrue(filter.mightContain("EXT-1"));
+    }
+
+    @Test
+    void falsePositivesStayNearOnePercentAtCapacity() {
+        int capacity = 100_000;
+        ExternalRefFilter filter = filter(jdbcTemplate, capacity);
+        for (int i = 0; i < capacity; i++) {
+            filter.add("IN-" + i);
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("OUT-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < probes * 0.02, "false positives: " + falsePositives);
+    }
+
+    // Adds racing with each other must not lose bits
+    @Test
+    void concurrentAddsAreAllVisible() throws InterruptedException {
+        ExternalRefFilter filter = filter(jdbcTemplate, 10_000);
+        int threads = 4;
+        int perThread = 5_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    filter.add("REF-" + (offset + i));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (int i = 0; i < threads * perThread; i++) {
+            assertTrue(filter.mightContain("REF-" + i), "lost REF-" + i);
+        }
+    }
+}
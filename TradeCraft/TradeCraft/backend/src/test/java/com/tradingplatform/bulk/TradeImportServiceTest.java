@@ -0,0 +1,193 @@
+package com.tradingplatform.bulk;
+
+import com.tradingplatform.EmbeddedDatabaseTest;
+import com.tradingplatform.event.PortfolioTradesChangedEvent;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import com.tradingplatform.pretrade.PreTradeRiskService;
+import com.tradingplatform.security.UserPrincipal;
+import com.tradingplatform.service.AuditLogService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class TradeImportServiceTest extends EmbeddedDatabaseTest {
+    private static final String HEADER = "externalRef,portfolioId,symbol,side,quantity,price,tradeDate,status";
+
+    private JdbcTemplate jdbc;
+    private long portfolio;
+    private UserPrincipal importer;
+    private ExternalRefFilter filter;
+    private PreTradeRiskService preTradeRiskService;
+    private ApplicationEventPublisher eventPublisher;
+    private TradeImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        long organization = insertOrganization("Acme");
+        portfolio = insertPortfolio("Main", organization);
+        importer = new UserPrincipal(insertUser("importer", organization), "importer", "importer@example.com", "",
+                organization, Collections.emptyList());
+
+        jdbc = spy(jdbcTemplate);
+        filter = new ExternalRefFilter(jdbc);
+        ReflectionTestUtils.setField(filter, "expectedRefs", 1000L);
+        preTradeRiskService = mock(PreTradeRiskService.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        importService = new TradeImportService(jdbc, transactionManager, filter, preTradeRiskService,
+                eventPublisher, mock(AuditLogService.class));
+        ReflectionTestUtils.setField(importService, "chunkSize", 100);
+        ReflectionTestUtils.setField(importService, "maxReportedErrors", 100);
+    }
+
+    private TradeImportResult importRows(String... rows) throws IOException {
+        String csv = HEADER + "\n" + String.join("\n", rows) + "\n";
+        return importService.importTrades(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), importer);
+    }
+
+    private String row(String ref) {
+        return row(ref, "EXECUTED");
+    }
+
+    private String row(String ref, String status) {
+        return ref + "," + portfolio + ",AAPL,BUY,100,150.25,2024-01-02," + status;
+    }
+
+    private Set<String> tableRefs() {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT external_ref FROM trades", String.class));
+    }
+
+    @Test
+    void importsNewRowsAndCountsRepeatsWithinTheFile() throws IOException {
+        TradeImportResult result = importRows(row("A"), row("B"), row("A"));
+
+        assertEquals(3, result.getTotalRows());
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getDuplicates());
+        assertTrue(filter.mightContain("A") && filter.mightContain("B"));
+        verify(eventPublisher, times(1)).publishEvent(any(PortfolioTradesChangedEvent.class));
+    }
+
+    @Test
+    void publishesWithinTheChunkTransaction() throws IOException {
+        boolean[] inTransaction = new boolean[1];
+        doAnswer(invocation -> inTransaction[0] = TransactionSynchronizationManager.isActualTransactionActive())
+                .when(eventPublisher).publishEvent(any(PortfolioTradesChangedEvent.class));
+
+        importRows(row("A"));
+
+        assertTrue(inTransaction[0]);
+    }
+
+    @Test
+    void tradersAreResolvedWithinThePortfolioOrganization() throws IOException {
+        long other = insertOrganization("Other");
+        insertUser("outsider", other);
+        insertUser("colleague", importer.getOrganizationId());
+        String header = HEADER + ",username";
+
+        String csv = header + "\n" + row("A") + ",colleague\n" + row("B") + ",outsider\n";
+        TradeImportResult result = importService.importTrades(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), importer);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals(Collections.singleton("A"), tableRefs());
+    }
+
+    @Test
+    void onlyFilterHitsAreCheckedAgainstTheTable() throws IOException {
+        importRows(row("A"), row("B"));
+        clearInvocations(jdbc);
+
+        TradeImportResult result = importRows(row("A"), row("B"), row("C"));
+
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getDuplicates());
+        // C misses the filter, so only A and B are looked up
+        verify(jdbc, times(1)).queryForList(startsWith("SELECT external_ref FROM trades WHERE"), eq(String.class),
+                eq("A"), eq("B"));
+    }
+
+    @Test
+    void rerunningAnImportedFileInsertsNothing() throws IOException {
+        importRows(row("A"), row("B"));
+        clearInvocations(jdbc);
+
+        TradeImportResult result = importRows(row("A"), row("B"));
+
+        assertEquals(0, result.getImported());
+        assertEquals(2, result.getDuplicates());
+        verify(jdbc, never()).batchUpdate(startsWith("INSERT"), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void filterFalsePositivesAreStillImported() throws IOException {
+        filter.add("A"); // In the filter but not in the table
+
+        TradeImportResult result = importRows(row("A"));
+
+        assertEquals(1, result.getImported());
+        assertEquals(Collections.singleton("A"), tableRefs());
+    }
+
+    @Test
+    void fallsBackToSingleRowsWhenAConcurrentImportClaimsAReference() throws IOException {
+        filter.mightContain("B"); // Loaded before the other import inserts B
+        insertTrade(portfolio, importer.getId(), "AAPL", TradeSide.BUY, 1, 1.0, LocalDate.of(2024, 1, 2),
+                TradeStatus.EXECUTED, "B");
+
+        TradeImportResult result = importRows(row("A"), row("B"), row("C"));
+
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getDuplicates());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B", "C")), tableRefs());
+    }
+
+    @Test
+    void checksLimitsForPendingRowsOnly() throws IOException {
+        importRows(row("A"), row("P", "PENDING"));
+
+        verify(preTradeRiskService, times(1)).check(any(), any(), any(), any(), any(int.class), any(double.class));
+    }
+
+    @Test
+    void invalidRowsFailWithoutStoppingTheImport() throws IOException {
+        TradeImportResult result = importRows(row("A"), "B," + portfolio + ",AAPL,HOLD,100,150.25,2024-01-02,EXECUTED");
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertFalse(tableRefs().contains("B"));
+        verify(preTradeRiskService, never()).check(any(), any(), any(), any(), any(int.class), any(double.class));
+    }
+}
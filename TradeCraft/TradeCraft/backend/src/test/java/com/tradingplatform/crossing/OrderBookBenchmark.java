@@ -0,0 +1,74 @@
+package com.tradingplatform.crossing;
+
+import java.util.Random;
+
+/**
+ * Throughput of {@link OrderBook#submit} against a deep book, single-threaded as the
+ * crossing engine uses each book. Not a test; run it by hand on an otherwise idle machine,
+ * from the compiled test classes:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *     com.tradingplatform.crossing.OrderBookBenchmark [resting] [orders] [maxScan]
+ * </pre>
+ *
+ * The book is seeded with {@code resting} orders on both sides around 100.00, then each
+ * round submits {@code orders} random orders, half of them priced into the other side, and
+ * prints orders/s; the first rounds are warm-up. Orders that rest are cancelled again and
+ * the resting orders a match takes are put back on the same terms, so the book keeps its
+ * shape; both count towards the time.
+ */
+public final class OrderBookBenchmark {
+    private OrderBookBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int resting = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int maxScan = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Random random = new Random(42);
+        OrderBook book = new OrderBook("BENCH", resting * 2);
+        long nextId = 1;
+        for (int i = 0; i < resting; i++) {
+            seed(book, nextId++, (i & 1) == 0, random, maxScan);
+        }
+        System.out.printf("%d resting, %d orders per round, max scan %d%n", book.size(), orders, maxScan);
+
+        for (int round = 1; round <= 5; round++) {
+            long matches = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < orders; i++) {
+                boolean buy = random.nextBoolean();
+                // Half the orders reach into the other side by up to 0.50
+                double offset = random.nextInt(100) / 100.0 - 0.49;
+                double price = buy ? 100.0 + offset : 100.0 - offset;
+                long id = nextId++;
+                Match match = book.submit(id, random.nextInt(1000), buy, quantity(random), price, maxScan);
+                if (match == null) {
+                    book.remove(id);
+                } else {
+                    matches++;
+                    for (int taken = 1; taken < match.size(); taken++) {
+                        book.submit(nextId++, match.portfolioIds[taken], match.buys[taken],
+                                match.quantities[taken], match.prices[taken], maxScan);
+                    }
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("round %d: %.0fk orders/s, %d matches, %d resting%n",
+                    round, orders / elapsed / 1e3, matches, book.size());
+        }
+    }
+
+    // Bids below 100, asks above, so seeded orders never cross
+    private static void seed(OrderBook book, long id, boolean buy, Random random, int maxScan) {
+        double price = buy ? 99.99 - random.nextInt(100) / 100.0 : 100.01 + random.nextInt(100) / 100.0;
+        book.submit(id, random.nextInt(1000), buy, quantity(random), price, maxScan);
+    }
+
+    // Round lots, so all-or-none fills are common
+    private static int quantity(Random random) {
+        return (1 + random.nextInt(5)) * 100;
+    }
+}
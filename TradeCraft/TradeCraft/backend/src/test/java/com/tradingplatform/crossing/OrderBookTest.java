@@ -0,0 +1,196 @@
+package com.tradingplatform.crossing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderBookTest {
+    private static final int SCAN = 1000;
+
+    @Test
+    void restsWhenNothingCrosses() {
+        OrderBook book = new OrderBook("AAPL");
+
+        assertNull(book.submit(1, 10, true, 100, 99.0, SCAN));
+        assertNull(book.submit(2, 20, false, 100, 100.0, SCAN));
+
+        assertEquals(2, book.size());
+        assertTrue(book.contains(1));
+        assertTrue(book.contains(2));
+    }
+
+    @Test
+    void crossesAnExactFillWithTheTermsOfEveryTrade() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 100, 100.0, SCAN);
+
+        Match match = book.submit(2, 20, true, 100, 101.0, SCAN);
+
+        assertNotNull(match);
+        assertEquals("AAPL", match.symbol);
+        assertArrayEquals(new long[]{2, 1}, match.tradeIds);
+        assertArrayEquals(new long[]{20, 10}, match.portfolioIds);
+        assertArrayEquals(new boolean[]{true, false}, match.buys);
+        assertArrayEquals(new int[]{100, 100}, match.quantities);
+        assertArrayEquals(new double[]{101.0, 100.0}, match.prices, 0.0);
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    void fillsExecuteAtTheRestingPrices() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 50, 100.0, SCAN);
+        book.submit(2, 11, false, 150, 100.4, SCAN);
+
+        Match match = book.submit(3, 20, true, 200, 101.0, SCAN);
+
+        assertNotNull(match);
+        assertEquals(100.3, match.executionPrice(0), 1e-9); // (50 * 100.0 + 150 * 100.4) / 200
+        assertEquals(100.0, match.executionPrice(1), 0.0);
+        assertEquals(100.4, match.executionPrice(2), 0.0);
+    }
+
+    @Test
+    void takesBestPriceFirstThenTimePriority() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 50, 100.5, SCAN);
+        book.submit(2, 11, false, 50, 100.0, SCAN);
+        book.submit(3, 12, false, 50, 100.0, SCAN);
+
+        Match match = book.submit(4, 20, true, 100, 101.0, SCAN);
+
+        assertNotNull(match);
+        assertArrayEquals(new long[]{4, 2, 3}, match.tradeIds);
+        assertTrue(book.contains(1));
+        assertEquals(1, book.size());
+    }
+
+    @Test
+    void isAllOrNone() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 60, 100.0, SCAN);
+
+        // 60 cannot make up 100, so the buy rests and the sell is untouched
+        assertNull(book.submit(2, 20, true, 100, 100.0, SCAN));
+        assertEquals(2, book.size());
+
+        // Trades larger than what is left are skipped, later ones can still complete the fill
+        book.submit(3, 11, false, 80, 100.0, SCAN);
+        book.submit(4, 12, false, 40, 100.0, SCAN);
+        Match match = book.submit(5, 21, true, 100, 100.0, SCAN);
+        assertNotNull(match);
+        assertArrayEquals(new long[]{5, 1, 4}, match.tradeIds);
+        assertTrue(book.contains(3));
+    }
+
+    @Test
+    void neverCrossesTradesOfOnePortfolio() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 100, 100.0, SCAN);
+
+        assertNull(book.submit(2, 10, true, 100, 100.0, SCAN));
+        assertEquals(2, book.size());
+    }
+
+    @Test
+    void doesNotCrossAtWorsePrices() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, true, 100, 99.0, SCAN);
+
+        assertNull(book.submit(2, 20, false, 100, 99.5, SCAN));
+        assertNotNull(book.submit(3, 30, false, 100, 98.0, SCAN));
+    }
+
+    @Test
+    void removedTradesNoLongerCross() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 100, 100.0, SCAN);
+        book.submit(2, 11, false, 100, 100.0, SCAN);
+
+        assertTrue(book.remove(1));
+        assertFalse(book.remove(1));
+        Match match = book.submit(3, 20, true, 100, 100.0, SCAN);
+
+        assertNotNull(match);
+        assertArrayEquals(new long[]{3, 2}, match.tradeIds);
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    void removingTheOnlyTradeOfALevelDropsTheLevel() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 100, 99.0, SCAN);
+        book.submit(2, 11, false, 100, 100.0, SCAN);
+
+        book.remove(1);
+
+        // Best ask is now 100, which a 99.5 bid does not reach
+        assertNull(book.submit(3, 20, true, 100, 99.5, SCAN));
+        assertNotNull(book.submit(4, 21, true, 100, 100.0, SCAN));
+    }
+
+    @Test
+    void ignoresATradeAlreadyResting() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 100, 100.0, SCAN);
+
+        assertNull(book.submit(1, 10, false, 100, 100.0, SCAN));
+        assertEquals(1, book.size());
+    }
+
+    @Test
+    void givesUpAfterMaxScan() {
+        OrderBook book = new OrderBook("AAPL");
+        for (int i = 1; i <= 5; i++) {
+            book.submit(i, 10 + i, false, 10, 100.0, SCAN);
+        }
+
+        assertNull(book.submit(100, 99, true, 50, 100.0, 4));
+        assertNotNull(book.submit(101, 98, true, 40, 100.0, 4));
+    }
+
+    @Test
+    void retainKeepsOnlyListedTradesOfThePortfolios() {
+        OrderBook book = new OrderBook("AAPL");
+        book.submit(1, 10, false, 100, 100.0, SCAN);
+        book.submit(2, 10, false, 100, 101.0, SCAN);
+        book.submit(3, 11, false, 100, 102.0, SCAN);
+
+        int removed = book.retain(Collections.singleton(10L), new HashSet<>(Arrays.asList(2L)));
+
+        assertEquals(1, removed);
+        assertFalse(book.contains(1));
+        assertTrue(book.contains(2));
+        assertTrue(book.contains(3));
+    }
+
+    @Test
+    void reusesAndGrowsThePool() {
+        OrderBook book = new OrderBook("AAPL", 1);
+        for (int i = 0; i < 100; i++) {
+            book.submit(i, i, true, 10, 90.0 + i % 7, SCAN);
+        }
+        assertEquals(100, book.size());
+        for (int i = 0; i < 100; i += 2) {
+            book.remove(i);
+        }
+        for (int i = 100; i < 150; i++) {
+            book.submit(i, i, true, 10, 80.0, SCAN);
+        }
+        assertEquals(100, book.size());
+
+        // Best bid is 96 (from an odd id); a matching sell takes it first
+        Match match = book.submit(1000, 1000, false, 10, 96.0, SCAN);
+        assertNotNull(match);
+        assertEquals(13, match.tradeIds[1]);
+    }
+}
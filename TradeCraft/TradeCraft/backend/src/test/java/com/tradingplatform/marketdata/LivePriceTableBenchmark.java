@@ -0,0 +1,97 @@
+package com.tradingplatform.marketdata;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of {@link LivePriceTable}: one writer updating quotes while reader threads mark
+ * prices, as the tick feed and the valuation paths do. Not a test; run it by hand on an
+ * otherwise idle machine, from the compiled test classes:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;micrometer-core.jar&gt; \
+ *     com.tradingplatform.marketdata.LivePriceTableBenchmark [symbols] [readers] [seconds]
+ * </pre>
+ *
+ * Each round prints writer updates/s and reader quotes/s; the first rounds are warm-up.
+ */
+public final class LivePriceTableBenchmark {
+    private LivePriceTableBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int symbols = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        LivePriceTable table = new LivePriceTable(new SimpleMeterRegistry());
+        int[] ids = new int[symbols];
+        String[] names = new String[symbols];
+        for (int i = 0; i < symbols; i++) {
+            names[i] = "SYM" + i;
+            ids[i] = table.idFor(names[i]);
+            table.update(ids[i], 100, 100.1, 100.05, 0);
+        }
+        System.out.printf("%d symbols, 1 writer, %d readers, %d s rounds%n", symbols, readers, seconds);
+        for (int round = 1; round <= 5; round++) {
+            run(table, ids, names, readers, seconds, round);
+        }
+    }
+
+    private static void run(LivePriceTable table, int[] ids, String[] names, int readers, int seconds, int round)
+            throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder reads = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int seed = r;
+            Thread reader = new Thread(() -> {
+                long count = 0;
+                double sink = 0;
+                int i = seed;
+                while (!stop.get()) {
+                    sink += table.markPrice(names[i]).orElse(0);
+                    i = (i + 7) % names.length;
+                    count++;
+                }
+                reads.add(count);
+                if (sink == 42) {
+                    System.out.print(""); // Keeps the reads from being optimized away
+                }
+            }, "reader-" + r);
+            threads.add(reader);
+            reader.start();
+        }
+
+        long[] updates = new long[1];
+        Thread writer = new Thread(() -> {
+            long count = 0;
+            int i = 0;
+            double price = 100;
+            while (!stop.get()) {
+                price += 0.01;
+                table.update(ids[i], price, price + 0.1, price + 0.05, count);
+                if (++i == ids.length) {
+                    i = 0;
+                }
+                count++;
+            }
+            updates[0] = count;
+        }, "writer");
+        long start = System.nanoTime();
+        writer.start();
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        writer.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("round %d: %.1fM updates/s, %.1fM reads/s%n",
+                round, updates[0] / elapsed / 1e6, reads.sum() / elapsed / 1e6);
+    }
+}
@@ -0,0 +1,119 @@
+package com.tradingplatform.marketdata;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LivePriceTableTest {
+
+    @Test
+    void unquotedSymbolsHaveNoPrice() {
+        LivePriceTable table = new LivePriceTable(new SimpleMeterRegistry());
+        table.idFor("AAPL");
+
+        assertFalse(table.markPrice("AAPL").isPresent());
+        assertFalse(table.markPrice("MSFT").isPresent());
+        assertNull(table.quote("MSFT"));
+    }
+
+    @Test
+    void marksAtLastTradeElseMid() {
+        LivePriceTable table = new LivePriceTable(new SimpleMeterRegistry());
+        int id = table.idFor("AAPL");
+
+        table.update(id, 99.0, 101.0, Double.NaN, 1L);
+        assertEquals(OptionalDouble.of(100.0), table.markPrice("AAPL"));
+
+        table.update(id, 99.0, 101.0, 100.5, 2L);
+        assertEquals(OptionalDouble.of(100.5), table.markPrice("AAPL"));
+        assertEquals(2L, table.quote("AAPL").getTimestamp());
+    }
+
+    @Test
+    void versionChangesOnEveryUpdate() {
+        LivePriceTable table = new LivePriceTable(new SimpleMeterRegistry());
+        int id = table.idFor("AAPL");
+        long before = table.version(id);
+
+        table.update(id, 1.0, 2.0, 1.5, 1L);
+        long after = table.version(id);
+
+        assertTrue(after > before);
+        assertEquals(0, after & 1);
+    }
+
+    @Test
+    void growsPastTheInitialCapacity() {
+        LivePriceTable table = new LivePriceTable(new SimpleMeterRegistry());
+        for (int i = 0; i < 1000; i++) {
+            table.update(table.idFor("S" + i), i, i + 1, i + 0.5, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(OptionalDouble.of(i + 0.5), table.markPrice("S" + i));
+        }
+    }
+
+    // Every quote the writer publishes is internally consistent; a torn read would mix two
+    @Test
+    void readersNeverSeeTornQuotes() throws Exception {
+        LivePriceTable table = new LivePriceTable(new SimpleMeterRegistry());
+        int symbols = 4;
+        int[] ids = new int[symbols];
+        for (int i = 0; i < symbols; i++) {
+            ids[i] = table.idFor("S" + i);
+            table.update(ids[i], 1, 2, 3, 1);
+        }
+
+        int readers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService pool = Executors.newFixedThreadPool(readers + 1);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            List<Future<Long>> reads = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                reads.add(pool.submit(() -> {
+                    long count = 0;
+                    long[] lastSeen = new long[symbols];
+                    while (!done.get()) {
+                        for (int i = 0; i < symbols; i++) {
+                            LivePriceTable.Quote quote = table.quote("S" + i);
+                            long n = quote.getTimestamp();
+                            assertEquals((double) n, quote.getBid(), 0.0);
+                            assertEquals(n + 1.0, quote.getAsk(), 0.0);
+                            assertEquals(n + 2.0, quote.getLast(), 0.0);
+                            assertTrue(n >= lastSeen[i], "quotes went back in time");
+                            lastSeen[i] = n;
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            Future<?> writer = pool.submit(() -> {
+                for (long n = 2; n < 2_000_000; n++) {
+                    table.update(ids[(int) (n % symbols)], n, n + 1, n + 2, n);
+                }
+            });
+            writer.get(60, TimeUnit.SECONDS);
+            done.set(true);
+            for (Future<Long> read : reads) {
+                assertTrue(read.get(10, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.tradingplatform.marketdata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SymbolPriceFileTest {
+
+    @TempDir
+    Path dir;
+
+    private static void write(SymbolPriceFile file, long timestamp, double price) throws IOException {
+        file.write(new long[]{timestamp}, new double[]{price}, new long[]{1}, 1);
+    }
+
+    @Test
+    void appendsAndRewritesInTimestampOrder() throws IOException {
+        SymbolPriceFile file = SymbolPriceFile.open(dir.resolve("AAPL.px"));
+        write(file, 10, 1.0);
+        write(file, 30, 3.0);
+        write(file, 20, 2.0);
+
+        SymbolPriceFile.Snapshot snapshot = SymbolPriceFile.open(dir.resolve("AAPL.px")).snapshot();
+        assertEquals(3, snapshot.count);
+        assertEquals(20, snapshot.timestamp(1));
+        assertEquals(3.0, snapshot.price(2));
+    }
+
+    @Test
+    void appendOverwritesARecordCutShortByACrash() throws IOException {
+        Path path = dir.resolve("AAPL.px");
+        write(SymbolPriceFile.open(path), 10, 1.0);
+        Files.write(path, new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        SymbolPriceFile reopened = SymbolPriceFile.open(path);
+        assertEquals(1, reopened.snapshot().count);
+        write(reopened, 20, 2.0);
+
+        SymbolPriceFile.Snapshot snapshot = SymbolPriceFile.open(path).snapshot();
+        assertEquals(2, snapshot.count);
+        assertEquals(20, snapshot.timestamp(1));
+        assertEquals(2.0, snapshot.price(1));
+        assertEquals(SymbolPriceFile.HEADER_SIZE + 2 * SymbolPriceFile.RECORD_SIZE, Files.size(path));
+    }
+}
@@ -0,0 +1,119 @@
+package com.tradingplatform.paging;
+
+import com.tradingplatform.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeekCursorTest {
+
+    @Test
+    void roundTripsDateKeys() {
+        String token = SeekCursor.encode(SeekCursor.TRADES, LocalDate.of(2024, 3, 15), 42L);
+
+        SeekCursor cursor = SeekCursor.decode(SeekCursor.TRADES, token);
+
+        assertEquals(LocalDate.of(2024, 3, 15), cursor.getDateKey());
+        assertEquals(42L, cursor.getId());
+    }
+
+    @Test
+    void roundTripsDateTimeKeys() {
+        LocalDateTime at = LocalDateTime.of(2024, 3, 15, 9, 30, 1, 123_000_000);
+        String token = SeekCursor.encode(SeekCursor.AUDIT_LOGS, at, 7L);
+
+        SeekCursor cursor = SeekCursor.decode(SeekCursor.AUDIT_LOGS, token);
+
+        assertEquals(at, cursor.getDateTimeKey());
+        assertEquals(7L, cursor.getId());
+    }
+
+    @Test
+    void tokensAreUrlSafe() {
+        String token = SeekCursor.encode(SeekCursor.TRADES, LocalDate.of(2024, 3, 15), Long.MAX_VALUE);
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void missingTokenStartsAtTheFirstPage() {
+        assertNull(SeekCursor.decode(SeekCursor.TRADES, null));
+        assertNull(SeekCursor.decode(SeekCursor.TRADES, ""));
+    }
+
+    @Test
+    void rejectsTokensOfAnotherListing() {
+        String token = SeekCursor.encode(SeekCursor.AUDIT_LOGS, LocalDateTime.now(), 1L);
+
+        assertThrows(BadRequestException.class, () -> SeekCursor.decode(SeekCursor.TRADES, token));
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThrows(BadRequestException.class, () -> SeekCursor.decode(SeekCursor.TRADES, "not base64!"));
+        String badId = Base64.getUrlEncoder().encodeToString("T|2024-03-15|x".getBytes(StandardCharsets.UTF_8));
+        assertThrows(BadRequestException.class, () -> SeekCursor.decode(SeekCursor.TRADES, badId));
+        String badKey = SeekCursor.encode(SeekCursor.TRADES, "yesterday", 1L);
+        SeekCursor cursor = SeekCursor.decode(SeekCursor.TRADES, badKey);
+        assertThrows(BadRequestException.class, cursor::getDateKey);
+    }
+
+    // Pages a sorted list the way the repositories do, seeking strictly past each cursor
+    @Test
+    void pagesVisitEveryRowOnceAcrossEqualKeys() {
+        List<long[]> rows = new ArrayList<>();
+        long id = 100;
+        for (int day = 10; day >= 1; day--) {
+            for (int n = 0; n < 3; n++) {
+                rows.add(new long[]{day, id--});
+            }
+        }
+
+        List<Long> seen = new ArrayList<>();
+        int pages = 0;
+        String token = null;
+        do {
+            SeekCursor after = SeekCursor.decode(SeekCursor.TRADES, token);
+            List<long[]> probe = rows.stream()
+                    .filter(r -> after == null || r[0] < after.getDateKey().getDayOfMonth()
+                            || (r[0] == after.getDateKey().getDayOfMonth() && r[1] < after.getId()))
+                    .limit(CursorPage.probe(4).getPageSize())
+                    .collect(Collectors.toList());
+            CursorPage<long[]> page = CursorPage.of(probe, 4,
+                    r -> SeekCursor.encode(SeekCursor.TRADES, LocalDate.of(2024, 1, (int) r[0]), r[1]));
+            page.getContent().forEach(r -> seen.add(r[1]));
+            assertEquals(page.isHasNext(), page.getNextCursor() != null);
+            token = page.getNextCursor();
+            pages++;
+        } while (token != null);
+
+        assertEquals(rows.stream().map(r -> r[1]).collect(Collectors.toList()), seen);
+        assertEquals(8, pages);
+    }
+
+    @Test
+    void probeFetchesOneExtraRowWithinTheSizeLimit() {
+        assertEquals(11, CursorPage.probe(10).getPageSize());
+        assertEquals(2, CursorPage.probe(0).getPageSize());
+        assertEquals(CursorPage.MAX_SIZE + 1, CursorPage.probe(Integer.MAX_VALUE).getPageSize());
+
+        CursorPage<Integer> last = CursorPage.of(Arrays.asList(1, 2, 3), 3, String::valueOf);
+        assertFalse(last.isHasNext());
+        CursorPage<Integer> more = CursorPage.of(Arrays.asList(1, 2, 3, 4), 3, String::valueOf);
+        assertEquals(Arrays.asList(1, 2, 3), more.getContent());
+        assertEquals("3", more.getNextCursor());
+    }
+}
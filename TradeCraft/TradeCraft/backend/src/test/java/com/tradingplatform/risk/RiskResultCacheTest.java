@@ -0,0 +1,165 @@
+package com.tradingplatform.risk;
+
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.ledger.PositionLedger;
+import com.tradingplatform.marketdata.HoldingsMarker;
+import com.tradingplatform.marketdata.PriceUpdateEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RiskResultCacheTest {
+    private static final Long PORTFOLIO = 1L;
+
+    private PositionLedger positionLedger;
+    private HoldingsMarker holdingsMarker;
+    private SimpleMeterRegistry meterRegistry;
+    private RiskResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        positionLedger = mock(PositionLedger.class);
+        holdingsMarker = mock(HoldingsMarker.class);
+        when(positionLedger.getHoldings(PORTFOLIO)).thenReturn(Collections.singletonList(new Holding("AAPL")));
+        when(holdingsMarker.mark(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new RiskResultCache(positionLedger, holdingsMarker, meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlMillis", 60_000L);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("risk.cache.lookups").tag("result", result).counter().count();
+    }
+
+    @Test
+    void concurrentRequestsShareOneComputation() throws Exception {
+        int callers = 8;
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object result = new Object();
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(pool.submit(() -> cache.get(PORTFOLIO, "var:0.99", holdings -> {
+                    runs.incrementAndGet();
+                    started.countDown();
+                    await(release);
+                    return result;
+                })));
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // Every other caller is waiting on the first before it finishes
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (lookups("wait") < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<Object> future : futures) {
+                assertSame(result, future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, runs.get());
+        assertEquals(2, lookups("miss")); // The result and the marked holdings it was computed from
+        assertEquals(callers - 1, lookups("wait"));
+    }
+
+    @Test
+    void aFailureIsRethrownAndNotCached() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> cache.get(PORTFOLIO, "var", holdings -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("no prices");
+        }));
+        Object result = cache.get(PORTFOLIO, "var", holdings -> {
+            runs.incrementAndGet();
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void servesResultsUntilTheLedgerMovesOn() {
+        AtomicInteger runs = new AtomicInteger();
+        when(positionLedger.getVersion(PORTFOLIO)).thenReturn(1L);
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+        assertEquals(1, runs.get());
+
+        when(positionLedger.getVersion(PORTFOLIO)).thenReturn(2L);
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+
+        assertEquals(2, runs.get());
+        assertEquals(1, lookups("hit"));
+    }
+
+    @Test
+    void marksHoldingsOncePerSlotForEveryMetric() {
+        cache.get(PORTFOLIO, "var", List::size);
+        cache.get(PORTFOLIO, "beta", List::size);
+
+        verify(holdingsMarker, times(1)).mark(any());
+    }
+
+    @Test
+    void priceUpdatesDropOnlyPortfoliosHoldingTheSymbol() {
+        AtomicInteger runs = new AtomicInteger();
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+
+        cache.onPriceUpdate(new PriceUpdateEvent(Collections.singleton("MSFT")));
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+        assertEquals(1, runs.get());
+
+        cache.onPriceUpdate(new PriceUpdateEvent(Collections.singleton("AAPL")));
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void expiredSlotsAreRecomputed() {
+        AtomicInteger runs = new AtomicInteger();
+        ReflectionTestUtils.setField(cache, "ttlMillis", 0L);
+
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+        cache.get(PORTFOLIO, "var", holdings -> runs.incrementAndGet());
+
+        assertEquals(2, runs.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
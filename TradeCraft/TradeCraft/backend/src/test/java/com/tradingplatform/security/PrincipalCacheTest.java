@@ -0,0 +1,106 @@
+package com.tradingplatform.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrincipalCacheTest {
+    private static final long LATER = Long.MAX_VALUE;
+
+    private static PrincipalCache cache(int maxEntries) {
+        PrincipalCache cache = new PrincipalCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        return cache;
+    }
+
+    private static UserPrincipal principal(String username) {
+        return new UserPrincipal(1L, username, username + "@example.com", "", null, Collections.emptyList());
+    }
+
+    @Test
+    void servesPrincipalsUntilTheyExpire() {
+        PrincipalCache cache = cache(10);
+        UserPrincipal alice = principal("alice");
+
+        cache.put("live", alice, cache.generation("alice"), LATER);
+        cache.put("expired", alice, cache.generation("alice"), System.currentTimeMillis() - 1);
+
+        assertSame(alice, cache.get("live"));
+        assertNull(cache.get("expired"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntryWhenFull() {
+        PrincipalCache cache = cache(2);
+        cache.put("a", principal("alice"), cache.generation("alice"), LATER);
+        cache.put("b", principal("bob"), cache.generation("bob"), LATER);
+        cache.get("a");
+
+        cache.put("c", principal("carol"), cache.generation("carol"), LATER);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.trackedUsers());
+    }
+
+    @Test
+    void invalidatingAUserRetiresOnlyTheirEntries() {
+        PrincipalCache cache = cache(10);
+        cache.put("a", principal("alice"), cache.generation("alice"), LATER);
+        cache.put("b", principal("bob"), cache.generation("bob"), LATER);
+
+        cache.invalidateUser("alice");
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    void doesNotCacheALoadThatRacedWithAChange() {
+        PrincipalCache cache = cache(10);
+        long before = cache.generation("alice");
+
+        cache.invalidateUser("alice");
+        cache.put("a", principal("alice"), before, LATER);
+
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void dropsGenerationsOfUsersWithoutEntries() {
+        PrincipalCache cache = cache(1);
+        for (int i = 0; i < 100; i++) {
+            String username = "user" + i;
+            cache.put("t" + i, principal(username), cache.generation(username), LATER);
+            cache.invalidateUser(username);
+        }
+
+        assertTrue(cache.trackedUsers() <= 1);
+    }
+
+    // A generation dropped with a user's last entry must not come back to a value a stale load read
+    @Test
+    void generationsNeverGoBackwards() {
+        PrincipalCache cache = cache(1);
+        cache.put("a", principal("alice"), cache.generation("alice"), LATER);
+        long stale = cache.generation("alice");
+
+        cache.invalidateUser("alice");
+        long changed = cache.generation("alice");
+        cache.put("b", principal("bob"), cache.generation("bob"), LATER); // Evicts alice's only entry
+
+        assertTrue(cache.generation("alice") >= changed);
+        cache.put("a2", principal("alice"), stale, LATER);
+        assertNull(cache.get("a2"));
+    }
+}
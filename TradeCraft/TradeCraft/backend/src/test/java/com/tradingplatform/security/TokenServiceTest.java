@@ -0,0 +1,103 @@
+package com.tradingplatform.security;
+
+import com.tradingplatform.EmbeddedDatabaseTest;
+import com.tradingplatform.config.JwtConfig;
+import com.tradingplatform.exception.UnauthorizedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenServiceTest extends EmbeddedDatabaseTest {
+    private static final UserPrincipal ALICE =
+            new UserPrincipal(7L, "alice", "alice@example.com", "", null, Collections.emptyList());
+
+    private JwtConfig jwtConfig;
+    private JwtTokenProvider tokenProvider;
+    private UserDetailsServiceImpl userDetailsService;
+    private TokenRevocationList revocationList;
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        jwtConfig = new JwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "jwtSecret", "test-secret");
+        ReflectionTestUtils.setField(jwtConfig, "jwtExpiration", 3_600_000);
+        ReflectionTestUtils.setField(jwtConfig, "accessExpiration", 300_000);
+        ReflectionTestUtils.setField(jwtConfig, "refreshExpiration", 604_800_000L);
+        tokenProvider = new JwtTokenProvider(jwtConfig);
+        revocationList = new TokenRevocationList(jdbcTemplate, jwtConfig);
+        userDetailsService = mock(UserDetailsServiceImpl.class);
+        when(userDetailsService.loadUserById(7L)).thenReturn(ALICE);
+        tokenService = new TokenService(tokenProvider, userDetailsService, revocationList, jwtConfig);
+    }
+
+    @Test
+    void refreshReturnsANewRefreshToken() {
+        String first = (String) tokenService.issueTokens(ALICE).get("refreshToken");
+
+        Map<String, Object> refreshed = tokenService.refreshTokens(first);
+
+        assertNotNull(refreshed.get("accessToken"));
+        assertNotEquals(first, refreshed.get("refreshToken"));
+    }
+
+    @Test
+    void aRefreshTokenIsAcceptedOnce() {
+        String first = (String) tokenService.issueTokens(ALICE).get("refreshToken");
+        tokenService.refreshTokens(first);
+
+        assertThrows(UnauthorizedException.class, () -> tokenService.refreshTokens(first));
+    }
+
+    // Reuse means the old token leaked, so the rotated one is revoked too
+    @Test
+    void reuseRevokesTheRotatedToken() {
+        String first = (String) tokenService.issueTokens(ALICE).get("refreshToken");
+        String second = (String) tokenService.refreshTokens(first).get("refreshToken");
+
+        assertThrows(UnauthorizedException.class, () -> tokenService.refreshTokens(first));
+        assertThrows(UnauthorizedException.class, () -> tokenService.refreshTokens(second));
+    }
+
+    @Test
+    void aRefreshTokenIsAcceptedOnceAcrossInstances() {
+        TokenService otherInstance = new TokenService(tokenProvider, userDetailsService,
+                new TokenRevocationList(jdbcTemplate, jwtConfig), jwtConfig);
+        String first = (String) tokenService.issueTokens(ALICE).get("refreshToken");
+        tokenService.refreshTokens(first);
+
+        assertThrows(UnauthorizedException.class, () -> otherInstance.refreshTokens(first));
+    }
+
+    @Test
+    void revocationsReachOtherInstancesOnSync() {
+        TokenRevocationList otherInstance = new TokenRevocationList(jdbcTemplate, jwtConfig);
+        Date issuedAt = new Date(System.currentTimeMillis() - 60_000);
+
+        revocationList.revokeUser(7L);
+        assertTrue(revocationList.isRevoked(7L, issuedAt));
+        assertFalse(otherInstance.isRevoked(7L, issuedAt));
+
+        otherInstance.syncRevocations();
+        assertTrue(otherInstance.isRevoked(7L, issuedAt));
+    }
+
+    @Test
+    void rejectsAccessTokens() {
+        String access = (String) tokenService.issueTokens(ALICE).get("accessToken");
+
+        assertThrows(UnauthorizedException.class, () -> tokenService.refreshTokens(access));
+    }
+}
@@ -0,0 +1,159 @@
+package com.tradingplatform.snapshot;
+
+import com.tradingplatform.EmbeddedDatabaseTest;
+import com.tradingplatform.event.TradeEvent;
+import com.tradingplatform.ledger.Holding;
+import com.tradingplatform.model.Portfolio;
+import com.tradingplatform.model.Trade;
+import com.tradingplatform.model.Trade.TradeSide;
+import com.tradingplatform.model.Trade.TradeStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PositionSnapshotServiceTest extends EmbeddedDatabaseTest {
+    private static final LocalDate JAN_1 = LocalDate.of(2024, 1, 1);
+
+    private Long portfolio;
+    private long user;
+    private PositionSnapshotService service;
+
+    @BeforeEach
+    void setUp() {
+        long organization = insertOrganization("Acme");
+        portfolio = insertPortfolio("Main", organization);
+        user = insertUser("trader", organization);
+        service = service();
+        trade("AAPL", 100, 10.0, JAN_1.plusDays(1));
+        trade("AAPL", 50, 12.0, JAN_1.plusDays(4));
+        service.takeSnapshots(JAN_1.plusDays(2));
+        service.takeSnapshots(JAN_1.plusDays(5));
+    }
+
+    private PositionSnapshotService service() {
+        PositionSnapshotService snapshots = new PositionSnapshotService(jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(snapshots, "batchSize", 500);
+        return snapshots;
+    }
+
+    private Trade trade(String symbol, int quantity, double price, LocalDate tradeDate) {
+        long id = insertTrade(portfolio, user, symbol, TradeSide.BUY, quantity, price, tradeDate,
+                TradeStatus.EXECUTED, null);
+        Portfolio owner = new Portfolio();
+        owner.setId(portfolio);
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setPortfolio(owner);
+        trade.setSymbol(symbol);
+        trade.setSide(TradeSide.BUY);
+        trade.setQuantity(quantity);
+        trade.setPrice(price);
+        trade.setTradeDate(tradeDate);
+        trade.setStatus(TradeStatus.EXECUTED);
+        return trade;
+    }
+
+    private int repairs() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM position_snapshot_repairs", Integer.class);
+    }
+
+    // Both listeners, as they run around the commit of the trade's transaction
+    private void created(Trade trade) {
+        TradeEvent event = TradeEvent.of(TradeEvent.Type.CREATED, trade, 1L);
+        service.markTradeEvent(event);
+        service.onTradeEvent(event);
+    }
+
+    private static Map<String, Long> quantities(List<Holding> holdings) {
+        Map<String, Long> quantities = new HashMap<>();
+        holdings.forEach(holding -> quantities.put(holding.getSymbol(), holding.getQuantity()));
+        return quantities;
+    }
+
+    private Map<String, Long> snapshotOn(LocalDate date) {
+        Map<String, Long> quantities = new HashMap<>();
+        jdbcTemplate.query("SELECT symbol, quantity FROM position_snapshots "
+                + "WHERE portfolio_id = ? AND snapshot_date = ?", rs -> {
+                    quantities.put(rs.getString(1), rs.getLong(2));
+                }, portfolio, Date.valueOf(date));
+        return quantities;
+    }
+
+    private static Map<String, Long> holding(Object... symbolsAndQuantities) {
+        Map<String, Long> quantities = new HashMap<>();
+        for (int i = 0; i < symbolsAndQuantities.length; i += 2) {
+            quantities.put((String) symbolsAndQuantities[i], ((Number) symbolsAndQuantities[i + 1]).longValue());
+        }
+        return quantities;
+    }
+
+    @Test
+    void holdingsAsOfCombineTheSnapshotWithLaterTrades() {
+        assertEquals(holding("AAPL", 100), snapshotOn(JAN_1.plusDays(2)));
+        assertEquals(holding("AAPL", 150), snapshotOn(JAN_1.plusDays(5)));
+        assertEquals(holding("AAPL", 100), quantities(service.holdingsAsOf(portfolio, JAN_1.plusDays(3))));
+    }
+
+    @Test
+    void backdatedTradeMarksSnapshotsStaleUntilRepaired() {
+        created(trade("MSFT", 10, 5.0, JAN_1.plusDays(1)));
+
+        assertEquals(1, repairs());
+        // Served without the stale snapshots before the repair runs
+        assertEquals(holding("AAPL", 100, "MSFT", 10), quantities(service.holdingsAsOf(portfolio, JAN_1.plusDays(3))));
+
+        service.repairPending();
+
+        assertEquals(0, repairs());
+        assertEquals(holding("AAPL", 100, "MSFT", 10), snapshotOn(JAN_1.plusDays(2)));
+        assertEquals(holding("AAPL", 150, "MSFT", 10), snapshotOn(JAN_1.plusDays(5)));
+    }
+
+    @Test
+    void markersLeftByAnotherInstanceAreHonouredAndRepaired() {
+        // Committed with its marker, but the instance that made it stopped before repairing
+        trade("MSFT", 10, 5.0, JAN_1.plusDays(3));
+        jdbcTemplate.update("INSERT INTO position_snapshot_repairs (portfolio_id, from_date) VALUES (?, ?)",
+                portfolio, Date.valueOf(JAN_1.plusDays(3)));
+
+        PositionSnapshotService restarted = service();
+        restarted.loadMarkers();
+        assertEquals(holding("AAPL", 150, "MSFT", 10),
+                quantities(restarted.holdingsAsOf(portfolio, JAN_1.plusDays(5))));
+
+        restarted.repairPending();
+
+        assertEquals(0, repairs());
+        assertEquals(holding("AAPL", 100), snapshotOn(JAN_1.plusDays(2)));
+        assertEquals(holding("AAPL", 150, "MSFT", 10), snapshotOn(JAN_1.plusDays(5)));
+    }
+
+    @Test
+    void tradesAfterTheLatestSnapshotMarkNothing() {
+        created(trade("MSFT", 10, 5.0, JAN_1.plusDays(9)));
+
+        assertEquals(0, repairs());
+        service.repairPending();
+        assertEquals(holding("AAPL", 150), snapshotOn(JAN_1.plusDays(5)));
+    }
+
+    @Test
+    void repairsFromTheEarliestOfSeveralMarks() {
+        created(trade("MSFT", 10, 5.0, JAN_1.plusDays(4)));
+        created(trade("MSFT", 5, 5.0, JAN_1.plusDays(1)));
+
+        service.repairPending();
+
+        assertEquals(0, repairs());
+        assertEquals(holding("AAPL", 100, "MSFT", 5), snapshotOn(JAN_1.plusDays(2)));
+        assertEquals(holding("AAPL", 150, "MSFT", 15), snapshotOn(JAN_1.plusDays(5)));
+    }
+}